@@ -0,0 +1,134 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.algorithm.gauss3;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * A 1-dimensional line convolver that operates on all {@link RealType}, like
+ * {@link FloatConvolverRealTypeBuffered}, but with the loops arranged so that
+ * HotSpot's auto-vectorizer (SuperWord) can map them to SIMD instructions.
+ * <p>
+ * The line (plus border) is copied into a float array. Then, for every kernel
+ * tap, one pass over the whole output line does
+ * {@code out[i] += k[j] * (in[i - j] + in[i + j])}, i.e. a plain loop over
+ * contiguous arrays without dependencies between iterations. (The buffered
+ * convolver instead computes the full sum for one output pixel before the
+ * next, which cannot be vectorized.) On CPUs or JVMs without SIMD support the
+ * same loops simply run as scalar code; compare with
+ * {@code -XX:-UseSuperWord} to see the effect of vectorization.
+ * </p>
+ */
+public final class FloatConvolverRealTypeVectorizable< S extends RealType< S >, T extends RealType< T > > implements Runnable
+{
+	public static < S extends RealType< S >, T extends RealType< T > > ConvolverFactory< S, T > factory()
+	{
+		return new ConvolverFactory< S, T >()
+		{
+			@Override
+			public Runnable create( final double[] halfkernel, final RandomAccess< S > in, final RandomAccess< T > out, final int d, final long lineLength )
+			{
+				return new FloatConvolverRealTypeVectorizable< S, T >( halfkernel, in, out, d, lineLength );
+			}
+		};
+	}
+
+	private final float[] kernel;
+
+	private final RandomAccess< S > in;
+
+	private final RandomAccess< T > out;
+
+	private final int d;
+
+	private final int k1;
+
+	private final int lineLength;
+
+	private final float[] src;
+
+	private final float[] dst;
+
+	public FloatConvolverRealTypeVectorizable( final double[] kernel, final RandomAccess< S > in, final RandomAccess< T > out, final int d, final long lineLength )
+	{
+		this.kernel = new float[ kernel.length ];
+		for ( int i = 0; i < kernel.length; ++i )
+			this.kernel[ i ] = ( float ) kernel[ i ];
+		this.in = in;
+		this.out = out;
+		this.d = d;
+		k1 = kernel.length - 1;
+		this.lineLength = ( int ) lineLength;
+		src = new float[ this.lineLength + 2 * k1 ];
+		dst = new float[ this.lineLength ];
+	}
+
+	@Override
+	public void run()
+	{
+		final int n = src.length;
+		for ( int i = 0; i < n; ++i )
+		{
+			src[ i ] = in.get().getRealFloat();
+			in.fwd( d );
+		}
+
+		convolve( src, dst, kernel, lineLength );
+
+		for ( int i = 0; i < lineLength; ++i )
+		{
+			out.get().setReal( dst[ i ] );
+			out.fwd( d );
+		}
+
+		in.move( -n, d );
+		out.move( -lineLength, d );
+	}
+
+	/**
+	 * Symmetric convolution of {@code src} (which has {@code kernel.length - 1}
+	 * border pixels on either side) into the first {@code length} elements of
+	 * {@code dst}.
+	 */
+	static void convolve( final float[] src, final float[] dst, final float[] kernel, final int length )
+	{
+		final int k1 = kernel.length - 1;
+		final float k0 = kernel[ 0 ];
+		for ( int i = 0; i < length; ++i )
+			dst[ i ] = k0 * src[ i + k1 ];
+		for ( int j = 1; j <= k1; ++j )
+		{
+			final float kj = kernel[ j ];
+			final int left = k1 - j;
+			final int right = k1 + j;
+			for ( int i = 0; i < length; ++i )
+				dst[ i ] += kj * ( src[ left + i ] + src[ right + i ] );
+		}
+	}
+}
@@ -33,6 +33,7 @@ import java.util.Random;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
+import net.imglib2.Cursor;
 import net.imglib2.Point;
 import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
@@ -80,6 +81,11 @@ public class Gauss3Benchmark
 		benchmarkGeneric( dimensions, sigma, printIndividualTimes, numRuns );
 		System.out.println( " ================================== " );
 		benchmarkInFloat( dimensions, sigma, printIndividualTimes, numRuns );
+		for ( final double s : new double[] { 3, 10, 20, 50 } )
+		{
+			System.out.println( " ================================== " );
+			benchmarkRecursive( dimensions, s, printIndividualTimes, numRuns / 10 );
+		}
 
 //		visualise( dimensions, sigma );
 	}
@@ -88,13 +94,24 @@ public class Gauss3Benchmark
 			final double[] sigmas, final RandomAccessible< T > source, final RandomAccessibleInterval< T > target,
 			final ConvolverFactory< T, T > convf, final ImgFactory< T > imgf, final T type )
 	{
-		final double[][] halfkernels = Gauss3.halfkernels( sigmas );
 		final int numthreads = Runtime.getRuntime().availableProcessors();
 		final ExecutorService service = Executors.newFixedThreadPool( numthreads );
-		SeparableSymmetricConvolution.convolve( halfkernels, source, target, convf, convf,convf, convf, imgf, type, service );
+		convolve( sigmas, source, target, convf, imgf, type, service );
 		service.shutdown();
 	}
 
+	/**
+	 * Like {@link #convolve(double[], RandomAccessible, RandomAccessibleInterval, ConvolverFactory, ImgFactory, Object)},
+	 * but on an existing {@link ExecutorService} that is not shut down.
+	 */
+	public static < T > void convolve(
+			final double[] sigmas, final RandomAccessible< T > source, final RandomAccessibleInterval< T > target,
+			final ConvolverFactory< T, T > convf, final ImgFactory< T > imgf, final T type, final ExecutorService service )
+	{
+		final double[][] halfkernels = Gauss3.halfkernels( sigmas );
+		SeparableSymmetricConvolution.convolve( halfkernels, source, target, convf, convf,convf, convf, imgf, type, service );
+	}
+
 	public static void benchmarkFloat( final long[] dimensions, final double sigma, final boolean printIndividualTimes, final int numRuns) throws ImgIOException
 	{
 		final FloatType type = new FloatType();
@@ -152,6 +169,16 @@ public class Gauss3Benchmark
 			    convolve( sigmas, Views.extendMirrorSingle( img ), convolved, FloatConvolverRealType.< FloatType, FloatType >factory(), factory, type );
 			}
 	    } );
+
+	    System.out.println( "SeparableSymmetricConvolution with FloatConvolverRealTypeVectorizable" );
+	    BenchmarkHelper.benchmarkAndPrint( numRuns, printIndividualTimes, new Runnable() {
+			@Override
+			public void run()
+			{
+			    convolve( sigmas, Views.extendMirrorSingle( img ), convolved, FloatConvolverRealTypeVectorizable.< FloatType, FloatType >factory(), factory, type );
+			}
+	    } );
+	    printDifferenceToBuffered( sigmas, img, convolved, factory, type );
 	}
 
 	public static void benchmarkNative( final long[] dimensions, final double sigma, final boolean printIndividualTimes, final int numRuns) throws ImgIOException
@@ -195,6 +222,33 @@ public class Gauss3Benchmark
 			    convolve( sigmas, Views.extendMirrorSingle( img ), convolved, ConvolverNativeType.factory( type ), factory, type );
 			}
 	    } );
+
+	    System.out.println( "SeparableSymmetricConvolution with FloatConvolverRealTypeVectorizable" );
+	    BenchmarkHelper.benchmarkAndPrint( numRuns, printIndividualTimes, new Runnable() {
+			@Override
+			public void run()
+			{
+			    convolve( sigmas, Views.extendMirrorSingle( img ), convolved, FloatConvolverRealTypeVectorizable.< FloatType, FloatType >factory(), factory, type );
+			}
+	    } );
+	    printDifferenceToBuffered( sigmas, img, convolved, factory, type );
+	}
+
+	/**
+	 * Prints the largest absolute difference between {@code convolved}, the
+	 * result of {@link FloatConvolverRealTypeVectorizable}, and the result of
+	 * {@link FloatConvolverRealTypeBuffered} on the same input.
+	 */
+	private static void printDifferenceToBuffered( final double[] sigmas, final Img< FloatType > img, final Img< FloatType > convolved, final ArrayImgFactory< FloatType > factory, final FloatType type )
+	{
+		final Img< FloatType > reference = factory.create( img, type );
+		convolve( sigmas, Views.extendMirrorSingle( img ), reference, FloatConvolverRealTypeBuffered.< FloatType, FloatType >factory(), factory, type );
+		double maxDifference = 0;
+		final Cursor< FloatType > c = convolved.cursor();
+		final Cursor< FloatType > r = reference.cursor();
+		while ( c.hasNext() )
+			maxDifference = Math.max( maxDifference, Math.abs( c.next().get() - r.next().get() ) );
+		System.out.println( String.format( "max abs difference to FloatConvolverRealTypeBuffered: %.2e", maxDifference ) );
 	}
 
 	public static void benchmarkGeneric( final long[] dimensions, final double sigma, final boolean printIndividualTimes, final int numRuns) throws ImgIOException
@@ -231,6 +285,90 @@ public class Gauss3Benchmark
 	    } );
 	}
 
+	/**
+	 * Compares the recursive Gaussian ({@link RecursiveGaussConvolver}, through
+	 * {@link TiledGauss3}) with {@link FloatConvolverRealTypeBuffered} for
+	 * throughput and accuracy.
+	 */
+	public static void benchmarkRecursive( final long[] dimensions, final double sigma, final boolean printIndividualTimes, final int numRuns )
+	{
+		final FloatType type = new FloatType();
+		final ArrayImgFactory< FloatType > factory = new ArrayImgFactory< FloatType >();
+		final Img< FloatType > img = factory.create( dimensions, type );
+		final Img< FloatType > convolved = factory.create( dimensions, type );
+		final Img< FloatType > recursive = factory.create( dimensions, type );
+		fillRandom( img );
+
+		final int n = img.numDimensions();
+		final double[] sigmas = new double[ n ];
+		for ( int d = 0; d < n; ++d )
+			sigmas[ d ] = sigma;
+
+		System.out.println( String.format( "sigma = %.1f", sigma ) );
+		final ExecutorService service = Executors.newFixedThreadPool( Runtime.getRuntime().availableProcessors() );
+		try
+		{
+			System.out.println( "SeparableSymmetricConvolution with FloatConvolverRealTypeBuffered" );
+			BenchmarkHelper.benchmarkAndPrint( numRuns, printIndividualTimes, new Runnable() {
+				@Override
+				public void run()
+				{
+					convolve( sigmas, Views.extendMirrorSingle( img ), convolved, FloatConvolverRealTypeBuffered.< FloatType, FloatType >factory(), factory, type, service );
+				}
+			} );
+
+			System.out.println( "TiledGauss3 with FloatConvolverRealTypeBuffered" );
+			final TiledGauss3 fir = new TiledGauss3( service, TiledGauss3.DEFAULT_BLOCK_BYTES, Double.POSITIVE_INFINITY );
+			BenchmarkHelper.benchmarkAndPrint( numRuns, printIndividualTimes, new Runnable() {
+				@Override
+				public void run()
+				{
+					try
+					{
+						fir.gauss( sigmas, Views.extendMirrorSingle( img ), recursive );
+					}
+					catch ( final Exception e )
+					{
+						e.printStackTrace();
+					}
+				}
+			} );
+
+			System.out.println( "TiledGauss3 with RecursiveGaussConvolver" );
+			final TiledGauss3 iir = new TiledGauss3( service, TiledGauss3.DEFAULT_BLOCK_BYTES, 0 );
+			BenchmarkHelper.benchmarkAndPrint( numRuns, printIndividualTimes, new Runnable() {
+				@Override
+				public void run()
+				{
+					try
+					{
+						iir.gauss( sigmas, Views.extendMirrorSingle( img ), recursive );
+					}
+					catch ( final Exception e )
+					{
+						e.printStackTrace();
+					}
+				}
+			} );
+		}
+		finally
+		{
+			service.shutdown();
+		}
+
+		final Cursor< FloatType > c1 = convolved.cursor();
+		final Cursor< FloatType > c2 = recursive.cursor();
+		double maxError = 0;
+		double sumSquaredError = 0;
+		while ( c1.hasNext() )
+		{
+			final double e = c2.next().get() - c1.next().get();
+			maxError = Math.max( maxError, Math.abs( e ) );
+			sumSquaredError += e * e;
+		}
+		System.out.println( String.format( "recursive vs. finite kernel: max error %.2e, rms error %.2e", maxError, Math.sqrt( sumSquaredError / img.size() ) ) );
+	}
+
 	static void fillRandom( final Img< FloatType > img )
 	{
 		final Random random = new Random( 1232324970l );
@@ -0,0 +1,175 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.algorithm.gauss3;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import net.imglib2.Point;
+import net.imglib2.algorithm.gauss.GaussFloat;
+import net.imglib2.exception.IncompatibleTypeException;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+
+import tests.BenchmarkRunner;
+
+/**
+ * JMH port of {@link Gauss3Benchmark#benchmarkFloat} and
+ * {@link Gauss3Benchmark#benchmarkNative}.
+ * <p>
+ * The {@link ExecutorService} for the {@link SeparableSymmetricConvolution}
+ * variants is created once per trial, so that thread creation is not part of
+ * the measurement. ({@link Gauss3#gauss(double[], net.imglib2.RandomAccessible, net.imglib2.RandomAccessibleInterval)}
+ * still creates its own.)
+ * </p>
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 10, time = 1 )
+@Fork( 2 )
+public class Gauss3JmhBenchmark
+{
+	@Param( { "1000x1000", "100x100x100" } )
+	public String dimensions;
+
+	@Param( { "3" } )
+	public double sigma;
+
+	private final FloatType type = new FloatType();
+
+	private final ArrayImgFactory< FloatType > factory = new ArrayImgFactory< FloatType >();
+
+	private Img< FloatType > img;
+
+	private Img< FloatType > convolved;
+
+	private double[] sigmas;
+
+	private double[][] halfkernels;
+
+	private Point min;
+
+	private ExecutorService service;
+
+	@Setup
+	public void setup()
+	{
+		final long[] dims = BenchmarkRunner.parseDimensions( dimensions );
+		img = factory.create( dims, type );
+		convolved = factory.create( dims, type );
+		Gauss3Benchmark.fillRandom( img );
+
+		final int n = img.numDimensions();
+		sigmas = new double[ n ];
+		for ( int d = 0; d < n; ++d )
+			sigmas[ d ] = sigma;
+		halfkernels = Gauss3.halfkernels( sigmas );
+
+		min = new Point( n );
+		img.min( min );
+
+		service = Executors.newFixedThreadPool( Runtime.getRuntime().availableProcessors() );
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		service.shutdown();
+	}
+
+	@Benchmark
+	public Img< FloatType > gaussFloat()
+	{
+		new GaussFloat( sigmas, Views.extendMirrorSingle( img ), img, convolved, min, factory ).call();
+		return convolved;
+	}
+
+	@Benchmark
+	public Img< FloatType > gauss3() throws IncompatibleTypeException
+	{
+		Gauss3.gauss( sigmas, Views.extendMirrorSingle( img ), convolved );
+		return convolved;
+	}
+
+	@Benchmark
+	public Img< FloatType > floatConvolverRealTypeBuffered()
+	{
+		final ConvolverFactory< FloatType, FloatType > convf = FloatConvolverRealTypeBuffered.< FloatType, FloatType >factory();
+		SeparableSymmetricConvolution.convolve( halfkernels, Views.extendMirrorSingle( img ), convolved, convf, convf, convf, convf, factory, type, service );
+		return convolved;
+	}
+
+	@Benchmark
+	public Img< FloatType > floatConvolverRealType()
+	{
+		final ConvolverFactory< FloatType, FloatType > convf = FloatConvolverRealType.< FloatType, FloatType >factory();
+		SeparableSymmetricConvolution.convolve( halfkernels, Views.extendMirrorSingle( img ), convolved, convf, convf, convf, convf, factory, type, service );
+		return convolved;
+	}
+
+	@Benchmark
+	public Img< FloatType > floatConvolverRealTypeVectorizable()
+	{
+		final ConvolverFactory< FloatType, FloatType > convf = FloatConvolverRealTypeVectorizable.< FloatType, FloatType >factory();
+		SeparableSymmetricConvolution.convolve( halfkernels, Views.extendMirrorSingle( img ), convolved, convf, convf, convf, convf, factory, type, service );
+		return convolved;
+	}
+
+	@Benchmark
+	public Img< FloatType > convolverNativeTypeBuffered()
+	{
+		final ConvolverFactory< FloatType, FloatType > convf = ConvolverNativeTypeBuffered.factory( type );
+		SeparableSymmetricConvolution.convolve( halfkernels, Views.extendMirrorSingle( img ), convolved, convf, convf, convf, convf, factory, type, service );
+		return convolved;
+	}
+
+	public static void main( final String[] args ) throws CommandLineOptionException, RunnerException
+	{
+		BenchmarkRunner.main( new String[] { Gauss3JmhBenchmark.class.getSimpleName() } );
+	}
+}
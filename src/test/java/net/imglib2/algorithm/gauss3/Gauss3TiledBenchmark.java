@@ -0,0 +1,180 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.algorithm.gauss3;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.imglib2.Cursor;
+import net.imglib2.Point;
+import net.imglib2.algorithm.gauss.GaussFloat;
+import net.imglib2.exception.IncompatibleTypeException;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.BenchmarkHelper;
+import net.imglib2.view.Views;
+
+/**
+ * Compares {@link TiledGauss3} on a shared {@link ExecutorService} with
+ * {@link GaussFloat}, {@link Gauss3#gauss(double[], net.imglib2.RandomAccessible, net.imglib2.RandomAccessibleInterval)}
+ * and {@link SeparableSymmetricConvolution} with
+ * {@link FloatConvolverRealTypeBuffered}, the latter both with a thread pool
+ * per call (as {@link Gauss3Benchmark#convolve(double[], net.imglib2.RandomAccessible, net.imglib2.RandomAccessibleInterval, ConvolverFactory, net.imglib2.img.ImgFactory, Object)})
+ * and with the shared pool.
+ *
+ * @see Gauss3Benchmark
+ */
+public class Gauss3TiledBenchmark
+{
+	public static void main( final String[] args ) throws InterruptedException, ExecutionException
+	{
+		final long[][] sizes = new long[][] {
+				{ 1000, 1000 },
+				{ 4000, 4000 },
+				{ 100, 100, 100 },
+				{ 256, 256, 256 } };
+		final double sigma = 3;
+		final int numRuns = 20;
+		final boolean printIndividualTimes = false;
+
+		final ExecutorService service = Executors.newFixedThreadPool( Runtime.getRuntime().availableProcessors() );
+		try
+		{
+			for ( final long[] dimensions : sizes )
+			{
+				System.out.print( String.format( "benchmarking Gaussian convolution (sigma = %.1f) of a ", sigma ) );
+				for ( int d = 0; d < dimensions.length; ++d )
+					System.out.print( ( d == 0 ? "" : " x " ) + dimensions[ d ] );
+				System.out.println( " FloatType image." );
+				System.out.println( "showing median runtime over " + numRuns + " trials." );
+				System.out.println();
+				benchmark( dimensions, sigma, printIndividualTimes, numRuns, service );
+				System.out.println( " ================================== " );
+			}
+		}
+		finally
+		{
+			service.shutdown();
+		}
+	}
+
+	public static void benchmark( final long[] dimensions, final double sigma, final boolean printIndividualTimes, final int numRuns, final ExecutorService service ) throws InterruptedException, ExecutionException
+	{
+		final FloatType type = new FloatType();
+		final ArrayImgFactory< FloatType > factory = new ArrayImgFactory< FloatType >();
+		final Img< FloatType > img = factory.create( dimensions, type );
+		final Img< FloatType > convolved = factory.create( dimensions, type );
+		final Img< FloatType > reference = factory.create( dimensions, type );
+		Gauss3Benchmark.fillRandom( img );
+
+		final int n = img.numDimensions();
+		final double[] sigmas = new double[ n ];
+		for ( int d = 0; d < n; ++d )
+			sigmas[ d ] = sigma;
+
+		System.out.println( "GaussFloat" );
+		final Point min = new Point( n );
+		img.min( min );
+		BenchmarkHelper.benchmarkAndPrint( numRuns, printIndividualTimes, new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				new GaussFloat( sigmas, Views.extendMirrorSingle( img ), img, convolved, min, factory ).call();
+			}
+		} );
+
+		System.out.println( "Gauss3" );
+		BenchmarkHelper.benchmarkAndPrint( numRuns, printIndividualTimes, new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					Gauss3.gauss( sigmas, Views.extendMirrorSingle( img ), reference );
+				}
+				catch ( final IncompatibleTypeException e )
+				{
+					e.printStackTrace();
+				}
+			}
+		} );
+
+		System.out.println( "SeparableSymmetricConvolution with FloatConvolverRealTypeBuffered, new thread pool per call" );
+		BenchmarkHelper.benchmarkAndPrint( numRuns, printIndividualTimes, new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				Gauss3Benchmark.convolve( sigmas, Views.extendMirrorSingle( img ), convolved, FloatConvolverRealTypeBuffered.< FloatType, FloatType >factory(), factory, type );
+			}
+		} );
+
+		System.out.println( "SeparableSymmetricConvolution with FloatConvolverRealTypeBuffered, shared thread pool" );
+		BenchmarkHelper.benchmarkAndPrint( numRuns, printIndividualTimes, new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				Gauss3Benchmark.convolve( sigmas, Views.extendMirrorSingle( img ), convolved, FloatConvolverRealTypeBuffered.< FloatType, FloatType >factory(), factory, type, service );
+			}
+		} );
+
+		System.out.println( "TiledGauss3, shared thread pool" );
+		final TiledGauss3 tiled = new TiledGauss3( service );
+		BenchmarkHelper.benchmarkAndPrint( numRuns, printIndividualTimes, new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					tiled.gauss( sigmas, Views.extendMirrorSingle( img ), convolved );
+				}
+				catch ( final Exception e )
+				{
+					e.printStackTrace();
+				}
+			}
+		} );
+		System.out.println( "max difference TiledGauss3 - Gauss3: " + maxDifference( convolved, reference ) );
+	}
+
+	static double maxDifference( final Img< FloatType > a, final Img< FloatType > b )
+	{
+		final Cursor< FloatType > ca = a.cursor();
+		final Cursor< FloatType > cb = b.cursor();
+		double max = 0;
+		while ( ca.hasNext() )
+			max = Math.max( max, Math.abs( ca.next().get() - cb.next().get() ) );
+		return max;
+	}
+}
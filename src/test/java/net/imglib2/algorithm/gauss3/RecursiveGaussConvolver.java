@@ -0,0 +1,162 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.algorithm.gauss3;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Recursive (IIR) approximation of a Gaussian convolution along one line,
+ * after I.T. Young and L.J. van Vliet, "Recursive implementation of the
+ * Gaussian filter", Signal Processing 44 (1995). A causal and an anti-causal
+ * third-order filter are applied one after the other, so the cost per pixel
+ * does not depend on sigma.
+ * <p>
+ * Used through {@link #factory(double)} like the other convolvers, where the
+ * half-kernel passed to {@link ConvolverFactory#create} only determines the
+ * border: {@code halfkernel.length - 1} pixels on either side of the line are
+ * read to let the filter settle (with the half-kernels from
+ * {@link Gauss3#halfkernels(double[])} that is about 3 sigma, so the source
+ * needs to be extended exactly as for the finite kernel).
+ * </p>
+ * <p>
+ * Valid for sigma &ge; 0.5.
+ * </p>
+ */
+public final class RecursiveGaussConvolver< S extends RealType< S >, T extends RealType< T > > implements Runnable
+{
+	public static < S extends RealType< S >, T extends RealType< T > > ConvolverFactory< S, T > factory( final double sigma )
+	{
+		return new ConvolverFactory< S, T >()
+		{
+			@Override
+			public Runnable create( final double[] halfkernel, final RandomAccess< S > in, final RandomAccess< T > out, final int d, final long lineLength )
+			{
+				return new RecursiveGaussConvolver< S, T >( sigma, halfkernel.length - 1, in, out, d, lineLength );
+			}
+		};
+	}
+
+	private final RandomAccess< S > in;
+
+	private final RandomAccess< T > out;
+
+	private final int d;
+
+	private final int border;
+
+	private final int lineLength;
+
+	private final double[] buf;
+
+	private final double b;
+
+	private final double a1;
+
+	private final double a2;
+
+	private final double a3;
+
+	public RecursiveGaussConvolver( final double sigma, final int border, final RandomAccess< S > in, final RandomAccess< T > out, final int d, final long lineLength )
+	{
+		this.in = in;
+		this.out = out;
+		this.d = d;
+		this.border = border;
+		this.lineLength = ( int ) lineLength;
+		buf = new double[ this.lineLength + 2 * border ];
+
+		final double[] coefficients = coefficients( sigma );
+		b = coefficients[ 0 ];
+		a1 = coefficients[ 1 ];
+		a2 = coefficients[ 2 ];
+		a3 = coefficients[ 3 ];
+	}
+
+	/**
+	 * @return { B, b1/b0, b2/b0, b3/b0 } of the recursion
+	 *         {@code w[i] = B x[i] + (b1 w[i-1] + b2 w[i-2] + b3 w[i-3]) / b0}.
+	 */
+	public static double[] coefficients( final double sigma )
+	{
+		if ( sigma < 0.5 )
+			throw new IllegalArgumentException( "recursive Gaussian requires sigma >= 0.5" );
+		final double q = sigma >= 2.5
+				? 0.98711 * sigma - 0.96330
+				: 3.97156 - 4.14554 * Math.sqrt( 1 - 0.26891 * sigma );
+		final double q2 = q * q;
+		final double q3 = q2 * q;
+		final double b0 = 1.57825 + 2.44413 * q + 1.4281 * q2 + 0.422205 * q3;
+		final double b1 = 2.44413 * q + 2.85619 * q2 + 1.26661 * q3;
+		final double b2 = -( 1.4281 * q2 + 1.26661 * q3 );
+		final double b3 = 0.422205 * q3;
+		return new double[] { 1 - ( b1 + b2 + b3 ) / b0, b1 / b0, b2 / b0, b3 / b0 };
+	}
+
+	@Override
+	public void run()
+	{
+		final int n = buf.length;
+		for ( int i = 0; i < n; ++i )
+		{
+			buf[ i ] = in.get().getRealDouble();
+			in.fwd( d );
+		}
+
+		// causal pass, starting in steady state for the first value
+		double w1 = buf[ 0 ], w2 = w1, w3 = w1;
+		for ( int i = 0; i < n; ++i )
+		{
+			final double w = b * buf[ i ] + a1 * w1 + a2 * w2 + a3 * w3;
+			buf[ i ] = w;
+			w3 = w2;
+			w2 = w1;
+			w1 = w;
+		}
+
+		// anti-causal pass
+		double y1 = buf[ n - 1 ], y2 = y1, y3 = y1;
+		for ( int i = n - 1; i >= 0; --i )
+		{
+			final double y = b * buf[ i ] + a1 * y1 + a2 * y2 + a3 * y3;
+			buf[ i ] = y;
+			y3 = y2;
+			y2 = y1;
+			y1 = y;
+		}
+
+		for ( int i = border; i < border + lineLength; ++i )
+		{
+			out.get().setReal( buf[ i ] );
+			out.fwd( d );
+		}
+
+		in.move( -n, d );
+		out.move( -lineLength, d );
+	}
+}
@@ -0,0 +1,274 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.algorithm.gauss3;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+
+/**
+ * Gaussian convolution with the same kernels and convolvers as
+ * {@link Gauss3}, but
+ * <ul>
+ * <li>running on a long-lived {@link ExecutorService} (for example a
+ * {@code ForkJoinPool}) that is passed in once and reused for every call,</li>
+ * <li>splitting each separable pass into blocks of whole lines that fit into
+ * the cache ({@code blockBytes}, default 256 KB), which are the tasks
+ * submitted to the executor,</li>
+ * <li>keeping the intermediate {@link FloatType} images between calls with
+ * the same size.</li>
+ * <li>using the {@link RecursiveGaussConvolver recursive filter} for axes with
+ * sigma &ge; {@code recursiveSigma} (default {@value #DEFAULT_RECURSIVE_SIGMA}),
+ * whose cost does not grow with sigma.</li>
+ * </ul>
+ * For a pass along axis d the lines of a block are neighbours along the
+ * fastest other axis, so that, for d &gt; 0, consecutive lines share cache
+ * lines.
+ * <p>
+ * Because of the reused intermediate images, calls on one instance are
+ * serialized.
+ * </p>
+ */
+public class TiledGauss3
+{
+	public static final int DEFAULT_BLOCK_BYTES = 256 * 1024;
+
+	public static final double DEFAULT_RECURSIVE_SIGMA = 10;
+
+	private final ExecutorService service;
+
+	private final int blockBytes;
+
+	private final double recursiveSigma;
+
+	private Img< FloatType > tmp1;
+
+	private Img< FloatType > tmp2;
+
+	public TiledGauss3( final ExecutorService service )
+	{
+		this( service, DEFAULT_BLOCK_BYTES, DEFAULT_RECURSIVE_SIGMA );
+	}
+
+	/**
+	 * @param service
+	 *            executor for the blocks of each pass. It is not shut down by
+	 *            this class.
+	 * @param blockBytes
+	 *            target size of the input and output lines of one block.
+	 * @param recursiveSigma
+	 *            axes with sigma at or above this value are convolved with the
+	 *            recursive filter ({@link Double#POSITIVE_INFINITY} to always
+	 *            use the finite kernel).
+	 */
+	public TiledGauss3( final ExecutorService service, final int blockBytes, final double recursiveSigma )
+	{
+		this.service = service;
+		this.blockBytes = blockBytes;
+		this.recursiveSigma = Math.max( 0.5, recursiveSigma );
+	}
+
+	/**
+	 * Convolve source with a Gaussian kernel and write the result to target.
+	 * Like {@link Gauss3#gauss(double[], RandomAccessible, RandomAccessibleInterval)},
+	 * source must be defined on target extended by the kernel radius.
+	 */
+	public synchronized < S extends RealType< S >, T extends RealType< T > > void gauss( final double[] sigmas, final RandomAccessible< S > source, final RandomAccessibleInterval< T > target ) throws InterruptedException, ExecutionException
+	{
+		final int n = target.numDimensions();
+		final double[][] halfkernels = Gauss3.halfkernels( sigmas );
+
+		if ( n == 1 )
+		{
+			convolvePass( halfkernels[ 0 ], source, target, target, 0, this.< S, T >factory( sigmas[ 0 ] ) );
+			return;
+		}
+
+		// intermediate results of pass d must cover target extended by the
+		// kernel radius along the axes that are not convolved yet
+		final Interval[] passIntervals = new Interval[ n ];
+		for ( int d = 0; d < n; ++d )
+		{
+			final long[] min = new long[ n ];
+			final long[] max = new long[ n ];
+			target.min( min );
+			target.max( max );
+			for ( int e = d + 1; e < n; ++e )
+			{
+				min[ e ] -= halfkernels[ e ].length - 1;
+				max[ e ] += halfkernels[ e ].length - 1;
+			}
+			passIntervals[ d ] = new FinalInterval( min, max );
+		}
+		ensureTmpImages( passIntervals[ 0 ] );
+		final long[] tmpMin = new long[ n ];
+		passIntervals[ 0 ].min( tmpMin );
+		final RandomAccessible< FloatType > t1 = Views.translate( tmp1, tmpMin );
+		final RandomAccessible< FloatType > t2 = n > 2 ? Views.translate( tmp2, tmpMin ) : null;
+
+		convolvePass( halfkernels[ 0 ], source, t1, passIntervals[ 0 ], 0, this.< S, FloatType >factory( sigmas[ 0 ] ) );
+		for ( int d = 1; d < n - 1; ++d )
+		{
+			final boolean odd = d % 2 == 1;
+			convolvePass( halfkernels[ d ], odd ? t1 : t2, odd ? t2 : t1, passIntervals[ d ], d, this.< FloatType, FloatType >factory( sigmas[ d ] ) );
+		}
+		convolvePass( halfkernels[ n - 1 ], n % 2 == 0 ? t1 : t2, target, target, n - 1, this.< FloatType, T >factory( sigmas[ n - 1 ] ) );
+	}
+
+	private < A extends RealType< A >, B extends RealType< B > > ConvolverFactory< A, B > factory( final double sigma )
+	{
+		return sigma >= recursiveSigma
+				? RecursiveGaussConvolver.< A, B >factory( sigma )
+				: FloatConvolverRealTypeBuffered.< A, B >factory();
+	}
+
+	private void ensureTmpImages( final Interval interval )
+	{
+		final long[] dims = new long[ interval.numDimensions() ];
+		interval.dimensions( dims );
+		if ( tmp1 != null && tmp1.numDimensions() == dims.length )
+		{
+			boolean same = true;
+			for ( int d = 0; d < dims.length; ++d )
+				same &= tmp1.dimension( d ) == dims[ d ];
+			if ( same )
+				return;
+		}
+		final ArrayImgFactory< FloatType > factory = new ArrayImgFactory< FloatType >();
+		tmp1 = factory.create( dims, new FloatType() );
+		tmp2 = dims.length > 2 ? factory.create( dims, new FloatType() ) : null;
+	}
+
+	/**
+	 * Convolve all lines along axis d of outInterval, block by block.
+	 */
+	private < A, B > void convolvePass( final double[] halfkernel, final RandomAccessible< A > in, final RandomAccessible< B > out, final Interval outInterval, final int d, final ConvolverFactory< A, B > factory ) throws InterruptedException, ExecutionException
+	{
+		final int n = outInterval.numDimensions();
+		final int k1 = halfkernel.length - 1;
+		final long lineLength = outInterval.dimension( d );
+
+		// number of lines per block, distributed over the other axes,
+		// fastest axis first
+		long linesPerBlock = Math.max( 1, blockBytes / ( 4 * ( 2 * lineLength + 2 * k1 ) ) );
+		final long[] blockSize = new long[ n ];
+		for ( int e = 0; e < n; ++e )
+		{
+			if ( e == d )
+				blockSize[ e ] = lineLength;
+			else
+			{
+				blockSize[ e ] = Math.max( 1, Math.min( outInterval.dimension( e ), linesPerBlock ) );
+				linesPerBlock = Math.max( 1, linesPerBlock / blockSize[ e ] );
+			}
+		}
+
+		final List< Callable< Void > > tasks = new ArrayList< Callable< Void > >();
+		final long[] blockMin = new long[ n ];
+		outInterval.min( blockMin );
+		while ( true )
+		{
+			final long[] min = blockMin.clone();
+			final long[] max = new long[ n ];
+			for ( int e = 0; e < n; ++e )
+				max[ e ] = Math.min( min[ e ] + blockSize[ e ] - 1, outInterval.max( e ) );
+			tasks.add( new Callable< Void >()
+			{
+				@Override
+				public Void call()
+				{
+					convolveBlock( halfkernel, k1, in, out, min, max, d, factory );
+					return null;
+				}
+			} );
+
+			int e = 0;
+			for ( ; e < n; ++e )
+			{
+				if ( e == d )
+					continue;
+				blockMin[ e ] += blockSize[ e ];
+				if ( blockMin[ e ] <= outInterval.max( e ) )
+					break;
+				blockMin[ e ] = outInterval.min( e );
+			}
+			if ( e == n )
+				break;
+		}
+
+		for ( final Future< Void > future : service.invokeAll( tasks ) )
+			future.get();
+	}
+
+	private static < A, B > void convolveBlock( final double[] halfkernel, final int k1, final RandomAccessible< A > in, final RandomAccessible< B > out, final long[] min, final long[] max, final int d, final ConvolverFactory< A, B > factory )
+	{
+		final int n = min.length;
+		final long[] srcMin = min.clone();
+		final long[] srcMax = max.clone();
+		srcMin[ d ] -= k1;
+		srcMax[ d ] += k1;
+		final RandomAccess< A > inAccess = in.randomAccess( new FinalInterval( srcMin, srcMax ) );
+		final RandomAccess< B > outAccess = out.randomAccess( new FinalInterval( min, max ) );
+		final Runnable convolver = factory.create( halfkernel, inAccess, outAccess, d, max[ d ] - min[ d ] + 1 );
+
+		final long[] position = min.clone();
+		while ( true )
+		{
+			outAccess.setPosition( position );
+			inAccess.setPosition( position );
+			inAccess.setPosition( position[ d ] - k1, d );
+			convolver.run();
+
+			int e = 0;
+			for ( ; e < n; ++e )
+			{
+				if ( e == d )
+					continue;
+				if ( ++position[ e ] <= max[ e ] )
+					break;
+				position[ e ] = min[ e ];
+			}
+			if ( e == n )
+				break;
+		}
+	}
+}
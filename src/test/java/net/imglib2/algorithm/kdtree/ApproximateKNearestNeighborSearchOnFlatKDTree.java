@@ -0,0 +1,141 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.algorithm.kdtree;
+
+/**
+ * Approximate k-nearest neighbor search on a {@link FlatKDTree}.
+ * <p>
+ * A subtree on the far side of a split plane is skipped if
+ * {@code (1 + epsilon)} times the distance to the plane is not smaller than
+ * the distance to the current k-th candidate. All points in a skipped subtree
+ * are at least that far from the query, so the i-th neighbor found is at
+ * most {@code (1 + epsilon)} times farther than the true i-th nearest
+ * neighbor. {@code epsilon = 0} is the exact search.
+ * </p>
+ * <p>
+ * In addition, the number of nodes visited per search can be limited. The
+ * near side is always searched first, so when the budget runs out the
+ * candidates are the best found on the way down and back, but the
+ * {@code (1 + epsilon)} bound no longer holds.
+ * </p>
+ */
+public class ApproximateKNearestNeighborSearchOnFlatKDTree< T > extends KNearestNeighborSearchOnFlatKDTree< T >
+{
+	protected final double epsilon;
+
+	protected final int maxVisits;
+
+	/**
+	 * {@code (1 + epsilon)^2}, to compare with squared distances.
+	 */
+	private final double squFactor;
+
+	protected int numVisits;
+
+	/**
+	 * @param epsilon
+	 *            allowed relative error of the distances, {@code >= 0}.
+	 * @param maxVisits
+	 *            maximum number of nodes visited per search, at least
+	 *            {@code k}, {@link Integer#MAX_VALUE} for no limit.
+	 */
+	public ApproximateKNearestNeighborSearchOnFlatKDTree( final FlatKDTree< T > tree, final int k, final double epsilon, final int maxVisits )
+	{
+		super( tree, k );
+		if ( epsilon < 0 )
+			throw new IllegalArgumentException( "epsilon must not be negative" );
+		if ( maxVisits < k )
+			throw new IllegalArgumentException( "maxVisits must be at least k" );
+		this.epsilon = epsilon;
+		this.maxVisits = maxVisits;
+		squFactor = ( 1 + epsilon ) * ( 1 + epsilon );
+	}
+
+	public ApproximateKNearestNeighborSearchOnFlatKDTree( final FlatKDTree< T > tree, final int k, final double epsilon )
+	{
+		this( tree, k, epsilon, Integer.MAX_VALUE );
+	}
+
+	@Override
+	public void search( final double[] position )
+	{
+		numVisits = 0;
+		super.search( position );
+	}
+
+	@Override
+	protected void searchNode( final int node, final int splitDimension )
+	{
+		++numVisits;
+		final int offset = node * n;
+		double distance = 0;
+		for ( int d = 0; d < n; ++d )
+		{
+			final double diff = query[ d ] - positions[ offset + d ];
+			distance += diff * diff;
+		}
+		if ( distance < bestSquDistances[ k - 1 ] )
+			insert( node, distance );
+
+		final double axisDiff = query[ splitDimension ] - positions[ offset + splitDimension ];
+		final int left = 2 * node + 1;
+		final int near = axisDiff < 0 ? left : left + 1;
+		final int far = axisDiff < 0 ? left + 1 : left;
+		final int childSplitDimension = splitDimension + 1 == n ? 0 : splitDimension + 1;
+		if ( near < size && numVisits < maxVisits )
+			searchNode( near, childSplitDimension );
+		if ( far < size && numVisits < maxVisits && axisDiff * axisDiff * squFactor < bestSquDistances[ k - 1 ] )
+			searchNode( far, childSplitDimension );
+	}
+
+	/**
+	 * @return the number of nodes visited by the last search.
+	 */
+	public int getNumVisits()
+	{
+		return numVisits;
+	}
+
+	public double getEpsilon()
+	{
+		return epsilon;
+	}
+
+	@Override
+	public ApproximateKNearestNeighborSearchOnFlatKDTree< T > copy()
+	{
+		final ApproximateKNearestNeighborSearchOnFlatKDTree< T > copy = new ApproximateKNearestNeighborSearchOnFlatKDTree< T >( tree, k, epsilon, maxVisits );
+		System.arraycopy( query, 0, copy.query, 0, n );
+		System.arraycopy( bestNodes, 0, copy.bestNodes, 0, k );
+		System.arraycopy( bestSquDistances, 0, copy.bestSquDistances, 0, k );
+		for ( int i = 0; i < k; ++i )
+			copy.bestPositions[ i ].setPosition( bestPositions[ i ] );
+		copy.numVisits = numVisits;
+		return copy;
+	}
+}
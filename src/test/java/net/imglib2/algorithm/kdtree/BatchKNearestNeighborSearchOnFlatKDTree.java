@@ -0,0 +1,120 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.algorithm.kdtree;
+
+/**
+ * k-nearest neighbor search for many nearby queries. The k neighbors of the
+ * previous query are k distinct points, so the largest of their distances to
+ * the new query bounds the distance to its k-th nearest neighbor. The search
+ * starts with that (inclusive) bound instead of infinity. The result is the
+ * same as from {@link KNearestNeighborSearchOnFlatKDTree#search(double[])}.
+ */
+public class BatchKNearestNeighborSearchOnFlatKDTree< T > extends KNearestNeighborSearchOnFlatKDTree< T >
+{
+	public BatchKNearestNeighborSearchOnFlatKDTree( final FlatKDTree< T > tree, final int k )
+	{
+		super( tree, k );
+	}
+
+	/**
+	 * Searches the k nearest neighbors of {@code position}, using the result
+	 * of the previous search as a bound.
+	 */
+	public void searchNear( final double[] position )
+	{
+		if ( bestNodes[ k - 1 ] < 0 )
+		{
+			search( position );
+			return;
+		}
+		if ( position != query )
+			System.arraycopy( position, 0, query, 0, n );
+		double bound = 0;
+		for ( int i = 0; i < k; ++i )
+		{
+			final int offset = bestNodes[ i ] * n;
+			double distance = 0;
+			for ( int d = 0; d < n; ++d )
+			{
+				final double diff = query[ d ] - positions[ offset + d ];
+				distance += diff * diff;
+			}
+			bound = Math.max( bound, distance );
+		}
+		// the comparisons in searchNode are strict, so this finds all nodes
+		// at distance <= bound
+		final double limit = Math.nextUp( bound );
+		for ( int i = 0; i < k; ++i )
+		{
+			bestNodes[ i ] = -1;
+			bestSquDistances[ i ] = limit;
+		}
+		searchNode( 0, 0 );
+		for ( int i = 0; i < k; ++i )
+			for ( int d = 0; d < n; ++d )
+				bestPositions[ i ].setPosition( positions[ bestNodes[ i ] * n + d ], d );
+	}
+
+	/**
+	 * Searches the k nearest neighbors of a block of queries. Consecutive
+	 * queries should be close to each other.
+	 *
+	 * @param queries
+	 *            {@code n} coordinates per query.
+	 * @param nodes
+	 *            receives the nodes of the k nearest neighbors of each query,
+	 *            {@code k} per query, nearest first.
+	 * @param squDistances
+	 *            receives the squared distances of the k nearest neighbors of
+	 *            each query, {@code k} per query, may be {@code null}.
+	 */
+	public void search( final double[] queries, final int numQueries, final int[] nodes, final double[] squDistances )
+	{
+		final double[] position = new double[ n ];
+		for ( int i = 0; i < numQueries; ++i )
+		{
+			System.arraycopy( queries, i * n, position, 0, n );
+			searchNear( position );
+			System.arraycopy( bestNodes, 0, nodes, i * k, k );
+			if ( squDistances != null )
+				System.arraycopy( bestSquDistances, 0, squDistances, i * k, k );
+		}
+	}
+
+	@Override
+	public BatchKNearestNeighborSearchOnFlatKDTree< T > copy()
+	{
+		final BatchKNearestNeighborSearchOnFlatKDTree< T > copy = new BatchKNearestNeighborSearchOnFlatKDTree< T >( tree, k );
+		System.arraycopy( query, 0, copy.query, 0, n );
+		System.arraycopy( bestNodes, 0, copy.bestNodes, 0, k );
+		System.arraycopy( bestSquDistances, 0, copy.bestSquDistances, 0, k );
+		for ( int i = 0; i < k; ++i )
+			copy.bestPositions[ i ].setPosition( bestPositions[ i ] );
+		return copy;
+	}
+}
@@ -0,0 +1,174 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.algorithm.kdtree;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.imglib2.Cursor;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.util.Parallel;
+import net.imglib2.algorithm.util.Tiling;
+import net.imglib2.type.Type;
+import net.imglib2.view.Views;
+
+/**
+ * Nearest neighbor search for many nearby queries, such as the pixels of a
+ * raster. The distance from a query to the previous nearest neighbor bounds
+ * the distance to the new one, so the search starts with that bound instead
+ * of infinity and prunes most of the tree right away. The bound is
+ * inclusive, and the tree is traversed in the same order as by
+ * {@link NearestNeighborSearchOnFlatKDTree#search(double[])}, so the result is
+ * the same node, also for ties.
+ * <p>
+ * {@link #fill(FlatKDTree, RandomAccessibleInterval, int[], int)} renders the
+ * nearest neighbor values into a target in parallel, by tiles, with one
+ * search per thread.
+ * </p>
+ */
+public class BatchNearestNeighborSearchOnFlatKDTree< T > extends NearestNeighborSearchOnFlatKDTree< T >
+{
+	public BatchNearestNeighborSearchOnFlatKDTree( final FlatKDTree< T > tree )
+	{
+		super( tree );
+	}
+
+	/**
+	 * Searches the nearest neighbor of {@code position}, using the result of
+	 * the previous search as a bound.
+	 */
+	public void searchNear( final double[] position )
+	{
+		if ( bestNode < 0 )
+		{
+			search( position );
+			return;
+		}
+		if ( position != query )
+			System.arraycopy( position, 0, query, 0, n );
+		final int offset = bestNode * n;
+		double bound = 0;
+		for ( int d = 0; d < n; ++d )
+		{
+			final double diff = query[ d ] - positions[ offset + d ];
+			bound += diff * diff;
+		}
+		// the comparisons in searchNode are strict, so this finds all nodes
+		// at distance <= bound
+		bestSquDistance = Math.nextUp( bound );
+		bestNode = -1;
+		searchNode( 0, 0 );
+		for ( int d = 0; d < n; ++d )
+			bestPosition.setPosition( positions[ bestNode * n + d ], d );
+	}
+
+	/**
+	 * Searches the nearest neighbors of a block of queries. Consecutive
+	 * queries should be close to each other.
+	 *
+	 * @param queries
+	 *            {@code n} coordinates per query.
+	 * @param nodes
+	 *            receives the node of the nearest neighbor of each query.
+	 * @param squDistances
+	 *            receives the squared distance to the nearest neighbor of
+	 *            each query, may be {@code null}.
+	 */
+	public void search( final double[] queries, final int numQueries, final int[] nodes, final double[] squDistances )
+	{
+		final double[] position = new double[ n ];
+		for ( int i = 0; i < numQueries; ++i )
+		{
+			System.arraycopy( queries, i * n, position, 0, n );
+			searchNear( position );
+			nodes[ i ] = bestNode;
+			if ( squDistances != null )
+				squDistances[ i ] = bestSquDistance;
+		}
+	}
+
+	@Override
+	public BatchNearestNeighborSearchOnFlatKDTree< T > copy()
+	{
+		final BatchNearestNeighborSearchOnFlatKDTree< T > copy = new BatchNearestNeighborSearchOnFlatKDTree< T >( tree );
+		System.arraycopy( query, 0, copy.query, 0, n );
+		copy.bestNode = bestNode;
+		copy.bestSquDistance = bestSquDistance;
+		copy.bestPosition.setPosition( bestPosition );
+		return copy;
+	}
+
+	/**
+	 * Sets every pixel of {@code target} to the value of its nearest neighbor
+	 * in {@code tree}.
+	 *
+	 * @param tileSize
+	 *            size of the tiles along each axis. The pixels of a tile are
+	 *            visited in flat order by one thread.
+	 */
+	public static < T extends Type< T > > void fill( final FlatKDTree< T > tree, final RandomAccessibleInterval< T > target, final int[] tileSize, final int numThreads )
+	{
+		if ( tree.numDimensions() != target.numDimensions() )
+			throw new IllegalArgumentException( "tree and target must have the same number of dimensions" );
+		if ( tree.size() == 0 )
+			return;
+		if ( tree.getValue( 0 ) == null )
+			throw new IllegalArgumentException( "tree has no values" );
+
+		final List< Interval > tiles = Tiling.tiles( target, tileSize );
+		final AtomicInteger nextTile = new AtomicInteger();
+
+		final int numTasks = Math.max( 1, Math.min( numThreads, tiles.size() ) );
+		Parallel.run( "BatchNearestNeighborSearchOnFlatKDTree", numTasks, new Parallel.Task()
+		{
+			@Override
+			public void run( final int t )
+			{
+				fillTiles( tree, target, tiles, nextTile );
+			}
+		} );
+	}
+
+	private static < T extends Type< T > > void fillTiles( final FlatKDTree< T > tree, final RandomAccessibleInterval< T > target, final List< Interval > tiles, final AtomicInteger nextTile )
+	{
+		final BatchNearestNeighborSearchOnFlatKDTree< T > search = new BatchNearestNeighborSearchOnFlatKDTree< T >( tree );
+		final double[] position = new double[ tree.numDimensions() ];
+		for ( int i = nextTile.getAndIncrement(); i < tiles.size(); i = nextTile.getAndIncrement() )
+		{
+			final Cursor< T > c = Views.flatIterable( Views.interval( target, tiles.get( i ) ) ).localizingCursor();
+			while ( c.hasNext() )
+			{
+				c.fwd();
+				c.localize( position );
+				search.searchNear( position );
+				c.get().set( tree.getValue( search.getNode() ) );
+			}
+		}
+	}
+}
@@ -0,0 +1,259 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.algorithm.kdtree;
+
+import java.util.Arrays;
+
+/**
+ * Partitions the points of a {@link FlatKDTree} into those inside and outside
+ * a convex polytope, like {@link ClipConvexPolytopeKDTree} does for a
+ * {@link net.imglib2.KDTree}. The polytope is given as half-spaces
+ * {@code (normal, d)}; a point is inside if {@code normal . x >= d} for all of
+ * them.
+ * <p>
+ * The traversal keeps the bounding box of the current subtree. Half-spaces
+ * that contain the whole box are dropped for the subtree; if no half-space is
+ * left, or one excludes the whole box, the subtree is reported without
+ * looking at its points. In implicit layout the nodes of a subtree on each
+ * level are a contiguous range of indices, so reporting a subtree is a few
+ * array copies.
+ * </p>
+ */
+public class ClipConvexPolytopeFlatKDTree< T >
+{
+	private final FlatKDTree< T > tree;
+
+	private final int n;
+
+	private final double[] positions;
+
+	private final int size;
+
+	private final double[] cellMin;
+
+	private final double[] cellMax;
+
+	private double[][] planes;
+
+	private int[] inside;
+
+	private int numInside;
+
+	private int[] outside;
+
+	private int numOutside;
+
+	public ClipConvexPolytopeFlatKDTree( final FlatKDTree< T > tree )
+	{
+		this.tree = tree;
+		n = tree.numDimensions();
+		positions = tree.positions();
+		size = tree.size();
+		cellMin = new double[ n ];
+		cellMax = new double[ n ];
+		inside = new int[ 16 ];
+		outside = new int[ 16 ];
+	}
+
+	public FlatKDTree< T > getTree()
+	{
+		return tree;
+	}
+
+	/**
+	 * @param planes
+	 *            half-spaces, {@code planes[ i ][ 0 .. n - 1 ]} is the normal
+	 *            and {@code planes[ i ][ n ]} the distance.
+	 */
+	public void clip( final double[][] planes )
+	{
+		this.planes = planes;
+		numInside = 0;
+		numOutside = 0;
+		if ( size == 0 )
+			return;
+		for ( int d = 0; d < n; ++d )
+		{
+			cellMin[ d ] = tree.realMin( d );
+			cellMax[ d ] = tree.realMax( d );
+		}
+		final int[] active = new int[ planes.length ];
+		for ( int i = 0; i < active.length; ++i )
+			active[ i ] = i;
+		clip( 0, 0, active, active.length );
+	}
+
+	private void clip( final int node, final int splitDimension, final int[] active, final int numActive )
+	{
+		// test the bounding box of the subtree against the active planes,
+		// the planes that contain the whole box are dropped
+		int[] remaining = null;
+		int numRemaining = 0;
+		for ( int i = 0; i < numActive; ++i )
+		{
+			final double[] plane = planes[ active[ i ] ];
+			double dotMin = 0;
+			double dotMax = 0;
+			for ( int d = 0; d < n; ++d )
+			{
+				final double a = plane[ d ] * cellMin[ d ];
+				final double b = plane[ d ] * cellMax[ d ];
+				dotMin += Math.min( a, b );
+				dotMax += Math.max( a, b );
+			}
+			if ( dotMax < plane[ n ] )
+			{
+				addSubtree( node, false );
+				return;
+			}
+			if ( dotMin < plane[ n ] )
+			{
+				if ( remaining != null )
+					remaining[ numRemaining ] = active[ i ];
+				++numRemaining;
+			}
+			else if ( remaining == null )
+			{
+				remaining = new int[ numActive ];
+				System.arraycopy( active, 0, remaining, 0, numRemaining );
+			}
+		}
+		if ( numRemaining == 0 )
+		{
+			addSubtree( node, true );
+			return;
+		}
+		if ( remaining == null )
+			remaining = active;
+
+		// test the node itself
+		final int offset = node * n;
+		boolean isInside = true;
+		for ( int i = 0; i < numRemaining && isInside; ++i )
+		{
+			final double[] plane = planes[ remaining[ i ] ];
+			double dot = 0;
+			for ( int d = 0; d < n; ++d )
+				dot += positions[ offset + d ] * plane[ d ];
+			isInside = dot >= plane[ n ];
+		}
+		if ( isInside )
+		{
+			inside = ensureCapacity( inside, numInside + 1 );
+			inside[ numInside++ ] = node;
+		}
+		else
+		{
+			outside = ensureCapacity( outside, numOutside + 1 );
+			outside[ numOutside++ ] = node;
+		}
+
+		// recurse into the children with their bounding boxes
+		final double split = positions[ offset + splitDimension ];
+		final int childSplitDimension = splitDimension + 1 == n ? 0 : splitDimension + 1;
+		final int left = 2 * node + 1;
+		if ( left < size )
+		{
+			final double tmp = cellMax[ splitDimension ];
+			cellMax[ splitDimension ] = split;
+			clip( left, childSplitDimension, remaining, numRemaining );
+			cellMax[ splitDimension ] = tmp;
+		}
+		if ( left + 1 < size )
+		{
+			final double tmp = cellMin[ splitDimension ];
+			cellMin[ splitDimension ] = split;
+			clip( left + 1, childSplitDimension, remaining, numRemaining );
+			cellMin[ splitDimension ] = tmp;
+		}
+	}
+
+	/**
+	 * Adds all nodes of the subtree rooted at {@code node} to the inside or
+	 * outside nodes.
+	 */
+	private void addSubtree( final int node, final boolean toInside )
+	{
+		int[] nodes = toInside ? inside : outside;
+		int count = toInside ? numInside : numOutside;
+		int first = node;
+		int last = node;
+		while ( first < size )
+		{
+			final int length = Math.min( last, size - 1 ) - first + 1;
+			nodes = ensureCapacity( nodes, count + length );
+			for ( int i = 0; i < length; ++i )
+				nodes[ count++ ] = first + i;
+			first = 2 * first + 1;
+			last = 2 * last + 2;
+		}
+		if ( toInside )
+		{
+			inside = nodes;
+			numInside = count;
+		}
+		else
+		{
+			outside = nodes;
+			numOutside = count;
+		}
+	}
+
+	private static int[] ensureCapacity( final int[] nodes, final int capacity )
+	{
+		if ( capacity <= nodes.length )
+			return nodes;
+		return Arrays.copyOf( nodes, Math.max( capacity, 2 * nodes.length ) );
+	}
+
+	/**
+	 * @return the nodes inside the polytope after the last {@link #clip}.
+	 */
+	public int[] getInsideNodes()
+	{
+		return Arrays.copyOf( inside, numInside );
+	}
+
+	/**
+	 * @return the nodes outside the polytope after the last {@link #clip}.
+	 */
+	public int[] getOutsideNodes()
+	{
+		return Arrays.copyOf( outside, numOutside );
+	}
+
+	public int numInsideNodes()
+	{
+		return numInside;
+	}
+
+	public int numOutsideNodes()
+	{
+		return numOutside;
+	}
+}
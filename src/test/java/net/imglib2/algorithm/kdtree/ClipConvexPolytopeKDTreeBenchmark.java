@@ -113,6 +113,21 @@ public class ClipConvexPolytopeKDTreeBenchmark
 				}
 			}
 		} );
+
+		System.out.println( "partitioning flat kdtree of points:" );
+		final FlatKDTree< Point > flatKDTree = new FlatKDTree< Point >( points, points );
+		final ClipConvexPolytopeFlatKDTree< Point > flatClipper = new ClipConvexPolytopeFlatKDTree< Point >( flatKDTree );
+		BenchmarkHelper.benchmarkAndPrint( 20, false, new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				for ( int i = 0; i < 500; ++i )
+				{
+					flatClipper.clip( planes );
+				}
+			}
+		} );
 	}
 
 	@SuppressWarnings( "unchecked" )
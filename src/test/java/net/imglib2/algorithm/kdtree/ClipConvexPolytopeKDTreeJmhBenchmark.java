@@ -0,0 +1,132 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.algorithm.kdtree;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.imglib2.KDTree;
+import net.imglib2.Point;
+import net.imglib2.util.LinAlgHelpers;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+
+import tests.BenchmarkRunner;
+
+/**
+ * JMH port of {@link ClipConvexPolytopeKDTreeBenchmark}. Measures a single
+ * clip (instead of 500 in a row) plus the time to build the {@link KDTree}.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 10, time = 1 )
+@Fork( 2 )
+public class ClipConvexPolytopeKDTreeJmhBenchmark
+{
+	@Param( { "10000", "100000" } )
+	public int nPoints;
+
+	private ArrayList< Point > points;
+
+	private double[][] planes;
+
+	private ClipConvexPolytopeKDTree< Point > clipper;
+
+	@Setup
+	public void setup()
+	{
+		final int w = 400;
+		final int h = 400;
+		final Random rand = new Random( 123124 );
+		points = new ArrayList< Point >();
+		for ( int i = 0; i < nPoints; ++i )
+		{
+			final long x = rand.nextInt( w );
+			final long y = rand.nextInt( h );
+			points.add( new Point( x, y ) );
+		}
+
+		planes = new double[][] {
+				{ 1, 1, 230 },
+				{ -1, 1, -30 },
+				{ 0.1, -1, -230 },
+				{ -0.5, -1, -290 },
+				{ -1, 0.1, -200 } };
+		for ( final double[] plane : planes )
+		{
+			final double[] normal = new double[] { plane[ 0 ], plane[ 1 ] };
+			LinAlgHelpers.scale( normal, 1.0 / LinAlgHelpers.length( normal ), normal );
+			plane[ 0 ] = normal[ 0 ];
+			plane[ 1 ] = normal[ 1 ];
+		}
+
+		clipper = new ClipConvexPolytopeKDTree< Point >( new KDTree< Point >( points, points ) );
+	}
+
+	@Benchmark
+	public void partitionList( final Blackhole bh )
+	{
+		final ArrayList< Point >[] insideoutside = ClipConvexPolytopeKDTreeBenchmark.getInsidePoints( points, planes );
+		bh.consume( insideoutside[ 0 ] );
+		bh.consume( insideoutside[ 1 ] );
+	}
+
+	@Benchmark
+	public ClipConvexPolytopeKDTree< Point > clipKDTree()
+	{
+		clipper.clip( planes );
+		return clipper;
+	}
+
+	@Benchmark
+	public KDTree< Point > buildKDTree()
+	{
+		return new KDTree< Point >( points, points );
+	}
+
+	public static void main( final String[] args ) throws CommandLineOptionException, RunnerException
+	{
+		BenchmarkRunner.main( new String[] { ClipConvexPolytopeKDTreeJmhBenchmark.class.getSimpleName() } );
+	}
+}
@@ -0,0 +1,435 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.algorithm.kdtree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import net.imglib2.EuclideanSpace;
+import net.imglib2.IterableRealInterval;
+import net.imglib2.KDTree;
+import net.imglib2.RealCursor;
+import net.imglib2.RealLocalizable;
+
+/**
+ * A kd-tree that stores its nodes in implicit layout: node {@code i} has
+ * children {@code 2 i + 1} and {@code 2 i + 2}, its coordinates are
+ * {@code positions[ i * n .. i * n + n - 1 ]} and the index of its point in
+ * the input is {@code indices[ i ]}. There are no node objects, so the tree
+ * needs {@code 8 n + 4} bytes per point (plus the values, which are not
+ * copied), and a search walks through two arrays only.
+ * <p>
+ * The tree is left-balanced (every level is full except the last, which is
+ * filled from the left), so the nodes occupy exactly the indices
+ * {@code 0 .. size - 1}. As in {@link KDTree}, the split dimension cycles with
+ * the depth. Each subtree is built by selecting the point that goes to its
+ * root (the element of rank "size of the left subtree" along the split
+ * dimension) with quickselect, which partitions the rest into the two
+ * subtrees. The two subtrees of a node are independent, so they are built
+ * by recursive fork-join tasks, down to subtrees of
+ * {@link #MIN_PARALLEL_SIZE} points, which are built sequentially.
+ * </p>
+ *
+ * @see NearestNeighborSearchOnFlatKDTree
+ * @see KNearestNeighborSearchOnFlatKDTree
+ * @see ClipConvexPolytopeFlatKDTree
+ * @see SplitHyperPlaneFlatKDTree
+ */
+public class FlatKDTree< T > implements EuclideanSpace
+{
+	/**
+	 * Subtrees with at most this many points are built sequentially by one
+	 * fork-join task.
+	 */
+	private static final int MIN_PARALLEL_SIZE = 1 << 13;
+
+	private final int n;
+
+	private final int size;
+
+	private final double[] positions;
+
+	private final int[] indices;
+
+	private final List< T > values;
+
+	private final double[] min;
+
+	private final double[] max;
+
+	/**
+	 * @param values
+	 *            the value of each point, or {@code null}.
+	 * @param positions
+	 *            the positions of the points.
+	 */
+	public FlatKDTree( final List< T > values, final List< ? extends RealLocalizable > positions, final int numThreads )
+	{
+		this( positions.get( 0 ).numDimensions(), coordinates( positions ), values, numThreads );
+	}
+
+	public FlatKDTree( final List< T > values, final List< ? extends RealLocalizable > positions )
+	{
+		this( values, positions, Runtime.getRuntime().availableProcessors() );
+	}
+
+	/**
+	 * Builds the tree from the samples of {@code samples}, for example a
+	 * {@code RealPointSampleList}. The values are taken as returned by the
+	 * cursor, so they must be distinct objects per sample.
+	 */
+	public FlatKDTree( final IterableRealInterval< T > samples, final int numThreads )
+	{
+		this( samples.numDimensions(), sampleCoordinates( samples ), values( samples ), numThreads );
+	}
+
+	/**
+	 * @param coordinates
+	 *            coordinates of the points, {@code numDimensions} values per
+	 *            point. This array is not modified.
+	 * @param values
+	 *            the value of each point, or {@code null}.
+	 */
+	public FlatKDTree( final int numDimensions, final double[] coordinates, final List< T > values, final int numThreads )
+	{
+		this.n = numDimensions;
+		this.size = coordinates.length / numDimensions;
+		this.positions = new double[ size * n ];
+		this.indices = new int[ size ];
+		this.values = values;
+		this.min = new double[ n ];
+		this.max = new double[ n ];
+		if ( size == 0 )
+			return;
+
+		for ( int d = 0; d < n; ++d )
+		{
+			min[ d ] = Double.POSITIVE_INFINITY;
+			max[ d ] = Double.NEGATIVE_INFINITY;
+		}
+		for ( int i = 0; i < size; ++i )
+		{
+			for ( int d = 0; d < n; ++d )
+			{
+				final double x = coordinates[ i * n + d ];
+				if ( x < min[ d ] )
+					min[ d ] = x;
+				if ( x > max[ d ] )
+					max[ d ] = x;
+			}
+		}
+
+		final int[] permutation = new int[ size ];
+		for ( int i = 0; i < size; ++i )
+			permutation[ i ] = i;
+		build( coordinates, permutation, numThreads );
+	}
+
+	@Override
+	public int numDimensions()
+	{
+		return n;
+	}
+
+	/**
+	 * @return the number of points.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	public double getDoublePosition( final int node, final int d )
+	{
+		return positions[ node * n + d ];
+	}
+
+	public void localize( final int node, final double[] position )
+	{
+		System.arraycopy( positions, node * n, position, 0, n );
+	}
+
+	/**
+	 * @return the coordinates of all nodes, {@code n} per node, in node order.
+	 *         This is the internal array, do not modify it.
+	 */
+	public double[] positions()
+	{
+		return positions;
+	}
+
+	/**
+	 * @return the index in the input of the point at {@code node}.
+	 */
+	public int getIndex( final int node )
+	{
+		return indices[ node ];
+	}
+
+	/**
+	 * @return the value of the point at {@code node}, or {@code null} if the
+	 *         tree has no values.
+	 */
+	public T getValue( final int node )
+	{
+		return values == null ? null : values.get( indices[ node ] );
+	}
+
+	/**
+	 * @return the split dimension of {@code node}, its depth modulo
+	 *         {@code n}.
+	 */
+	public int splitDimension( final int node )
+	{
+		return ( 31 - Integer.numberOfLeadingZeros( node + 1 ) ) % n;
+	}
+
+	/**
+	 * @return the minimum coordinates of all points.
+	 */
+	public double realMin( final int d )
+	{
+		return min[ d ];
+	}
+
+	/**
+	 * @return the maximum coordinates of all points.
+	 */
+	public double realMax( final int d )
+	{
+		return max[ d ];
+	}
+
+	/**
+	 * @return the number of nodes in the left subtree of a left-balanced tree
+	 *         of {@code size} nodes.
+	 */
+	static int leftSize( final int size )
+	{
+		if ( size <= 1 )
+			return 0;
+		// depth of the last level, the levels above it are full
+		final int h = 31 - Integer.numberOfLeadingZeros( size );
+		final int full = ( 1 << h ) - 1;
+		final int last = size - full;
+		return ( full - 1 ) / 2 + Math.min( last, 1 << ( h - 1 ) );
+	}
+
+	/**
+	 * A subtree to build: node index and the range of the permutation that
+	 * holds its points.
+	 */
+	private static class Range
+	{
+		final int node;
+
+		final int from;
+
+		final int to;
+
+		Range( final int node, final int from, final int to )
+		{
+			this.node = node;
+			this.from = from;
+			this.to = to;
+		}
+	}
+
+	private void build( final double[] coordinates, final int[] permutation, final int numThreads )
+	{
+		final Range root = new Range( 0, 0, size );
+		if ( numThreads <= 1 || size <= MIN_PARALLEL_SIZE )
+		{
+			buildSubtree( coordinates, permutation, root );
+			return;
+		}
+
+		final ForkJoinPool pool = new ForkJoinPool( numThreads );
+		try
+		{
+			pool.invoke( new BuildTask( coordinates, permutation, root ) );
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Partitions a subtree and forks the builds of its two children, or
+	 * builds it sequentially if it has at most {@link #MIN_PARALLEL_SIZE}
+	 * points.
+	 */
+	private class BuildTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final double[] coordinates;
+
+		private final int[] permutation;
+
+		private final Range range;
+
+		BuildTask( final double[] coordinates, final int[] permutation, final Range range )
+		{
+			this.coordinates = coordinates;
+			this.permutation = permutation;
+			this.range = range;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if ( range.to - range.from <= MIN_PARALLEL_SIZE )
+			{
+				buildSubtree( coordinates, permutation, range );
+				return;
+			}
+			final Range[] children = partition( coordinates, permutation, range );
+			invokeAll( new BuildTask( coordinates, permutation, children[ 0 ] ), new BuildTask( coordinates, permutation, children[ 1 ] ) );
+		}
+	}
+
+	private void buildSubtree( final double[] coordinates, final int[] permutation, final Range range )
+	{
+		if ( range.from >= range.to )
+			return;
+		final Range[] children = partition( coordinates, permutation, range );
+		buildSubtree( coordinates, permutation, children[ 0 ] );
+		buildSubtree( coordinates, permutation, children[ 1 ] );
+	}
+
+	/**
+	 * Selects the root of the subtree, stores it and returns the ranges of its
+	 * two children.
+	 */
+	private Range[] partition( final double[] coordinates, final int[] permutation, final Range range )
+	{
+		final int node = range.node;
+		final int k = range.from + leftSize( range.to - range.from );
+		select( coordinates, permutation, range.from, range.to - 1, k, splitDimension( node ) );
+
+		final int point = permutation[ k ];
+		System.arraycopy( coordinates, point * n, positions, node * n, n );
+		indices[ node ] = point;
+		return new Range[] {
+				new Range( 2 * node + 1, range.from, k ),
+				new Range( 2 * node + 2, k + 1, range.to ) };
+	}
+
+	/**
+	 * Reorders {@code permutation[ left .. right ]} such that the element at
+	 * {@code k} is the one of that rank along {@code d}, with smaller or equal
+	 * elements before and larger or equal ones after it.
+	 */
+	private void select( final double[] coordinates, final int[] permutation, int left, int right, final int k, final int d )
+	{
+		while ( right > left )
+		{
+			// median of three as pivot
+			final int mid = ( left + right ) >>> 1;
+			if ( key( coordinates, permutation, mid, d ) < key( coordinates, permutation, left, d ) )
+				swap( permutation, mid, left );
+			if ( key( coordinates, permutation, right, d ) < key( coordinates, permutation, left, d ) )
+				swap( permutation, right, left );
+			if ( key( coordinates, permutation, right, d ) < key( coordinates, permutation, mid, d ) )
+				swap( permutation, right, mid );
+			final double pivot = key( coordinates, permutation, mid, d );
+
+			int i = left;
+			int j = right;
+			while ( i <= j )
+			{
+				while ( key( coordinates, permutation, i, d ) < pivot )
+					++i;
+				while ( key( coordinates, permutation, j, d ) > pivot )
+					--j;
+				if ( i <= j )
+				{
+					swap( permutation, i, j );
+					++i;
+					--j;
+				}
+			}
+			if ( k <= j )
+				right = j;
+			else if ( k >= i )
+				left = i;
+			else
+				return;
+		}
+	}
+
+	private double key( final double[] coordinates, final int[] permutation, final int i, final int d )
+	{
+		return coordinates[ permutation[ i ] * n + d ];
+	}
+
+	private static void swap( final int[] permutation, final int i, final int j )
+	{
+		final int tmp = permutation[ i ];
+		permutation[ i ] = permutation[ j ];
+		permutation[ j ] = tmp;
+	}
+
+	private static double[] coordinates( final List< ? extends RealLocalizable > positions )
+	{
+		final int n = positions.get( 0 ).numDimensions();
+		final double[] coordinates = new double[ positions.size() * n ];
+		int i = 0;
+		for ( final RealLocalizable p : positions )
+			for ( int d = 0; d < n; ++d )
+				coordinates[ i++ ] = p.getDoublePosition( d );
+		return coordinates;
+	}
+
+	private static double[] sampleCoordinates( final IterableRealInterval< ? > samples )
+	{
+		final int n = samples.numDimensions();
+		final double[] coordinates = new double[ ( int ) samples.size() * n ];
+		final RealCursor< ? > c = samples.localizingCursor();
+		int i = 0;
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			for ( int d = 0; d < n; ++d )
+				coordinates[ i++ ] = c.getDoublePosition( d );
+		}
+		return coordinates;
+	}
+
+	private static < T > List< T > values( final IterableRealInterval< T > samples )
+	{
+		final List< T > values = new ArrayList< T >( ( int ) samples.size() );
+		for ( final T t : samples )
+			values.add( t );
+		return values;
+	}
+}
@@ -0,0 +1,227 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.algorithm.kdtree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import net.imglib2.KDTree;
+import net.imglib2.KDTreeNode;
+import net.imglib2.RealPoint;
+import net.imglib2.neighborsearch.KNearestNeighborSearchOnKDTree;
+import net.imglib2.neighborsearch.NearestNeighborSearchOnKDTree;
+import net.imglib2.util.Util;
+
+/**
+ * Compares {@link FlatKDTree} with {@link KDTree} for uniformly distributed
+ * points: build time (flat tree with 1 and all threads), retained heap,
+ * latency of nearest and k-nearest neighbor queries and time to clip to a box
+ * with {@link ClipConvexPolytopeKDTree} and {@link ClipConvexPolytopeFlatKDTree}.
+ * The query results are checked to be the same.
+ * <p>
+ * The point counts go from 10^5 up to {@code -DmaxPoints} (default 10^7).
+ * The node-based tree needs about 100 bytes per point, so it is only built up
+ * to {@code -DmaxLibraryPoints} (default 10^7); above that only the flat tree
+ * is measured. 10^8 points in 3D need a heap of about 8 GB.
+ * </p>
+ */
+public class FlatKDTreeBenchmark
+{
+	public static void main( final String[] args )
+	{
+		final int n = Integer.getInteger( "n", 3 );
+		final long maxPoints = Long.getLong( "maxPoints", 10000000 );
+		final long maxLibraryPoints = Long.getLong( "maxLibraryPoints", 10000000 );
+		final int numThreads = Runtime.getRuntime().availableProcessors();
+		final int numQueries = 100000;
+		final int k = 8;
+
+		System.out.println( n + "D, " + numThreads + " threads, " + numQueries + " queries, k = " + k );
+		System.out.println( String.format( "%-10s %-8s %10s %10s %10s %10s %10s %10s %10s %10s %10s",
+				"points", "tree", "build ms", "build ms", "heap MB", "NN ns", "kNN ns", "clip ms", "inside", "NN same", "kNN same" ) );
+		System.out.println( String.format( "%-10s %-8s %10s %10s", "", "", "1 thread", "all" ) );
+		for ( long numPoints = 100000; numPoints <= maxPoints; numPoints *= 10 )
+			benchmark( ( int ) numPoints, n, numThreads, numQueries, k, numPoints <= maxLibraryPoints );
+	}
+
+	public static void benchmark( final int numPoints, final int n, final int numThreads, final int numQueries, final int k, final boolean library )
+	{
+		final int numRuns = numPoints <= 1000000 ? 5 : 1;
+		final Random random = new Random( 1l );
+		final double[] coordinates = new double[ numPoints * n ];
+		for ( int i = 0; i < coordinates.length; ++i )
+			coordinates[ i ] = random.nextDouble();
+		final double[][] queries = new double[ numQueries ][ n ];
+		for ( final double[] q : queries )
+			for ( int d = 0; d < n; ++d )
+				q[ d ] = random.nextDouble();
+
+		// the box [ 0.25, 0.75 ]^n as 2n half-spaces
+		final double[][] planes = new double[ 2 * n ][ n + 1 ];
+		for ( int d = 0; d < n; ++d )
+		{
+			planes[ 2 * d ][ d ] = 1;
+			planes[ 2 * d ][ n ] = 0.25;
+			planes[ 2 * d + 1 ][ d ] = -1;
+			planes[ 2 * d + 1 ][ n ] = -0.75;
+		}
+
+		List< RealPoint > points = null;
+		double[] libraryNN = null;
+		double[] libraryKNN = null;
+		if ( library )
+		{
+			points = new ArrayList< RealPoint >( numPoints );
+			for ( int i = 0; i < numPoints; ++i )
+			{
+				final RealPoint p = new RealPoint( n );
+				for ( int d = 0; d < n; ++d )
+					p.setPosition( coordinates[ i * n + d ], d );
+				points.add( p );
+			}
+
+			final long[] buildTimes = new long[ numRuns ];
+			KDTree< RealPoint > kdtree = null;
+			long bytes = 0;
+			for ( int i = 0; i < numRuns; ++i )
+			{
+				kdtree = null;
+				final long before = usedMemory();
+				final long start = System.currentTimeMillis();
+				kdtree = new KDTree< RealPoint >( points, points );
+				buildTimes[ i ] = System.currentTimeMillis() - start;
+				bytes = usedMemory() - before;
+			}
+
+			libraryNN = new double[ numQueries ];
+			final NearestNeighborSearchOnKDTree< RealPoint > nn = new NearestNeighborSearchOnKDTree< RealPoint >( kdtree );
+			final RealPoint query = new RealPoint( n );
+			long start = System.nanoTime();
+			for ( int i = 0; i < numQueries; ++i )
+			{
+				query.setPosition( queries[ i ] );
+				nn.search( query );
+				libraryNN[ i ] = nn.getSquareDistance();
+			}
+			final long nnTime = System.nanoTime() - start;
+
+			libraryKNN = new double[ numQueries ];
+			final KNearestNeighborSearchOnKDTree< RealPoint > knn = new KNearestNeighborSearchOnKDTree< RealPoint >( kdtree, k );
+			start = System.nanoTime();
+			for ( int i = 0; i < numQueries; ++i )
+			{
+				query.setPosition( queries[ i ] );
+				knn.search( query );
+				libraryKNN[ i ] = knn.getSquareDistance( k - 1 );
+			}
+			final long knnTime = System.nanoTime() - start;
+
+			final ClipConvexPolytopeKDTree< RealPoint > clipper = new ClipConvexPolytopeKDTree< RealPoint >( kdtree );
+			final long[] clipTimes = new long[ numRuns ];
+			for ( int i = 0; i < numRuns; ++i )
+			{
+				start = System.currentTimeMillis();
+				clipper.clip( planes );
+				clipTimes[ i ] = System.currentTimeMillis() - start;
+			}
+			int inside = 0;
+			for ( @SuppressWarnings( "unused" ) final KDTreeNode< RealPoint > node : clipper.getInsideNodes() )
+				++inside;
+
+			System.out.println( String.format( "%-10d %-8s %10d %10s %10.1f %10.0f %10.0f %10d %10d", numPoints, "KDTree",
+					Util.median( buildTimes ), "-", bytes / 1e6, ( double ) nnTime / numQueries, ( double ) knnTime / numQueries,
+					Util.median( clipTimes ), inside ) );
+			kdtree = null;
+		}
+
+		final long[] serialTimes = new long[ numRuns ];
+		for ( int i = 0; i < numRuns; ++i )
+		{
+			final long start = System.currentTimeMillis();
+			new FlatKDTree< RealPoint >( n, coordinates, points, 1 );
+			serialTimes[ i ] = System.currentTimeMillis() - start;
+		}
+		final long[] parallelTimes = new long[ numRuns ];
+		FlatKDTree< RealPoint > tree = null;
+		long bytes = 0;
+		for ( int i = 0; i < numRuns; ++i )
+		{
+			tree = null;
+			final long before = usedMemory();
+			final long start = System.currentTimeMillis();
+			tree = new FlatKDTree< RealPoint >( n, coordinates, points, numThreads );
+			parallelTimes[ i ] = System.currentTimeMillis() - start;
+			bytes = usedMemory() - before;
+		}
+
+		int nnSame = 0;
+		final NearestNeighborSearchOnFlatKDTree< RealPoint > nn = new NearestNeighborSearchOnFlatKDTree< RealPoint >( tree );
+		long start = System.nanoTime();
+		for ( int i = 0; i < numQueries; ++i )
+		{
+			nn.search( queries[ i ] );
+			if ( libraryNN != null && libraryNN[ i ] == nn.getSquareDistance() )
+				++nnSame;
+		}
+		final long nnTime = System.nanoTime() - start;
+
+		int knnSame = 0;
+		final KNearestNeighborSearchOnFlatKDTree< RealPoint > knn = new KNearestNeighborSearchOnFlatKDTree< RealPoint >( tree, k );
+		start = System.nanoTime();
+		for ( int i = 0; i < numQueries; ++i )
+		{
+			knn.search( queries[ i ] );
+			if ( libraryKNN != null && libraryKNN[ i ] == knn.getSquareDistance( k - 1 ) )
+				++knnSame;
+		}
+		final long knnTime = System.nanoTime() - start;
+
+		final ClipConvexPolytopeFlatKDTree< RealPoint > clipper = new ClipConvexPolytopeFlatKDTree< RealPoint >( tree );
+		final long[] clipTimes = new long[ numRuns ];
+		for ( int i = 0; i < numRuns; ++i )
+		{
+			start = System.currentTimeMillis();
+			clipper.clip( planes );
+			clipTimes[ i ] = System.currentTimeMillis() - start;
+		}
+
+		System.out.println( String.format( "%-10d %-8s %10d %10d %10.1f %10.0f %10.0f %10d %10d %10s %10s", numPoints, "flat",
+				Util.median( serialTimes ), Util.median( parallelTimes ), bytes / 1e6, ( double ) nnTime / numQueries, ( double ) knnTime / numQueries,
+				Util.median( clipTimes ), clipper.numInsideNodes(),
+				library ? nnSame + "/" + numQueries : "-", library ? knnSame + "/" + numQueries : "-" ) );
+	}
+
+	private static long usedMemory()
+	{
+		final Runtime runtime = Runtime.getRuntime();
+		for ( int i = 0; i < 3; ++i )
+			System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
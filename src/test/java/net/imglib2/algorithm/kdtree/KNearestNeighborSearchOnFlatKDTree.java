@@ -0,0 +1,217 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.algorithm.kdtree;
+
+import net.imglib2.RealLocalizable;
+import net.imglib2.RealPoint;
+import net.imglib2.Sampler;
+import net.imglib2.algorithm.kdtree.NearestNeighborSearchOnFlatKDTree.NodeSampler;
+import net.imglib2.neighborsearch.KNearestNeighborSearch;
+
+/**
+ * Exact k-nearest neighbor search on a {@link FlatKDTree}. The candidates are
+ * kept sorted by distance in two arrays of length k.
+ */
+public class KNearestNeighborSearchOnFlatKDTree< T > implements KNearestNeighborSearch< T >
+{
+	protected final FlatKDTree< T > tree;
+
+	protected final int n;
+
+	protected final int k;
+
+	protected final double[] positions;
+
+	protected final int size;
+
+	protected final double[] query;
+
+	protected final int[] bestNodes;
+
+	protected final double[] bestSquDistances;
+
+	protected final RealPoint[] bestPositions;
+
+	public KNearestNeighborSearchOnFlatKDTree( final FlatKDTree< T > tree, final int k )
+	{
+		this.tree = tree;
+		this.k = k;
+		n = tree.numDimensions();
+		positions = tree.positions();
+		size = tree.size();
+		query = new double[ n ];
+		bestNodes = new int[ k ];
+		bestSquDistances = new double[ k ];
+		bestPositions = new RealPoint[ k ];
+		for ( int i = 0; i < k; ++i )
+			bestPositions[ i ] = new RealPoint( n );
+	}
+
+	@Override
+	public int numDimensions()
+	{
+		return n;
+	}
+
+	@Override
+	public int getK()
+	{
+		return k;
+	}
+
+	@Override
+	public void search( final RealLocalizable reference )
+	{
+		reference.localize( query );
+		search( query );
+	}
+
+	/**
+	 * Searches the k nearest neighbors of {@code position}. If the tree has
+	 * fewer than k points, the remaining neighbors have node -1 and infinite
+	 * distance.
+	 */
+	public void search( final double[] position )
+	{
+		if ( position != query )
+			System.arraycopy( position, 0, query, 0, n );
+		for ( int i = 0; i < k; ++i )
+		{
+			bestNodes[ i ] = -1;
+			bestSquDistances[ i ] = Double.POSITIVE_INFINITY;
+		}
+		if ( size > 0 )
+			searchNode( 0, 0 );
+		for ( int i = 0; i < k && bestNodes[ i ] >= 0; ++i )
+			for ( int d = 0; d < n; ++d )
+				bestPositions[ i ].setPosition( positions[ bestNodes[ i ] * n + d ], d );
+	}
+
+	protected void searchNode( final int node, final int splitDimension )
+	{
+		final int offset = node * n;
+		double distance = 0;
+		for ( int d = 0; d < n; ++d )
+		{
+			final double diff = query[ d ] - positions[ offset + d ];
+			distance += diff * diff;
+		}
+		if ( distance < bestSquDistances[ k - 1 ] )
+			insert( node, distance );
+
+		final double axisDiff = query[ splitDimension ] - positions[ offset + splitDimension ];
+		final int left = 2 * node + 1;
+		final int near = axisDiff < 0 ? left : left + 1;
+		final int far = axisDiff < 0 ? left + 1 : left;
+		final int childSplitDimension = splitDimension + 1 == n ? 0 : splitDimension + 1;
+		if ( near < size )
+			searchNode( near, childSplitDimension );
+		if ( far < size && axisDiff * axisDiff < bestSquDistances[ k - 1 ] )
+			searchNode( far, childSplitDimension );
+	}
+
+	protected void insert( final int node, final double distance )
+	{
+		int i = k - 1;
+		for ( ; i > 0 && bestSquDistances[ i - 1 ] > distance; --i )
+		{
+			bestSquDistances[ i ] = bestSquDistances[ i - 1 ];
+			bestNodes[ i ] = bestNodes[ i - 1 ];
+		}
+		bestSquDistances[ i ] = distance;
+		bestNodes[ i ] = node;
+	}
+
+	/**
+	 * @return the node of the i-th nearest neighbor found by the last search.
+	 */
+	public int getNode( final int i )
+	{
+		return bestNodes[ i ];
+	}
+
+	@Override
+	public Sampler< T > getSampler( final int i )
+	{
+		return new NodeSampler< T >( tree, bestNodes[ i ] );
+	}
+
+	@Override
+	public RealLocalizable getPosition( final int i )
+	{
+		return bestPositions[ i ];
+	}
+
+	@Override
+	public double getSquareDistance( final int i )
+	{
+		return bestSquDistances[ i ];
+	}
+
+	@Override
+	public double getDistance( final int i )
+	{
+		return Math.sqrt( bestSquDistances[ i ] );
+	}
+
+	@Override
+	public Sampler< T > getSampler()
+	{
+		return getSampler( 0 );
+	}
+
+	@Override
+	public RealLocalizable getPosition()
+	{
+		return getPosition( 0 );
+	}
+
+	@Override
+	public double getSquareDistance()
+	{
+		return getSquareDistance( 0 );
+	}
+
+	@Override
+	public double getDistance()
+	{
+		return getDistance( 0 );
+	}
+
+	@Override
+	public KNearestNeighborSearchOnFlatKDTree< T > copy()
+	{
+		final KNearestNeighborSearchOnFlatKDTree< T > copy = new KNearestNeighborSearchOnFlatKDTree< T >( tree, k );
+		System.arraycopy( query, 0, copy.query, 0, n );
+		System.arraycopy( bestNodes, 0, copy.bestNodes, 0, k );
+		System.arraycopy( bestSquDistances, 0, copy.bestSquDistances, 0, k );
+		for ( int i = 0; i < k; ++i )
+			copy.bestPositions[ i ].setPosition( bestPositions[ i ] );
+		return copy;
+	}
+}
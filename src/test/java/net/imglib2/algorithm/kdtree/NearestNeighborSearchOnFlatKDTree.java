@@ -0,0 +1,192 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.algorithm.kdtree;
+
+import net.imglib2.RealLocalizable;
+import net.imglib2.RealPoint;
+import net.imglib2.Sampler;
+import net.imglib2.neighborsearch.NearestNeighborSearch;
+
+/**
+ * Exact nearest neighbor search on a {@link FlatKDTree}.
+ */
+public class NearestNeighborSearchOnFlatKDTree< T > implements NearestNeighborSearch< T >
+{
+	protected final FlatKDTree< T > tree;
+
+	protected final int n;
+
+	protected final double[] positions;
+
+	protected final int size;
+
+	protected final double[] query;
+
+	protected final RealPoint bestPosition;
+
+	protected int bestNode;
+
+	protected double bestSquDistance;
+
+	public NearestNeighborSearchOnFlatKDTree( final FlatKDTree< T > tree )
+	{
+		this.tree = tree;
+		n = tree.numDimensions();
+		positions = tree.positions();
+		size = tree.size();
+		query = new double[ n ];
+		bestPosition = new RealPoint( n );
+		bestNode = -1;
+	}
+
+	@Override
+	public int numDimensions()
+	{
+		return n;
+	}
+
+	@Override
+	public void search( final RealLocalizable reference )
+	{
+		reference.localize( query );
+		search( query );
+	}
+
+	/**
+	 * Searches the nearest neighbor of {@code position}.
+	 */
+	public void search( final double[] position )
+	{
+		if ( position != query )
+			System.arraycopy( position, 0, query, 0, n );
+		bestNode = -1;
+		bestSquDistance = Double.POSITIVE_INFINITY;
+		if ( size > 0 )
+			searchNode( 0, 0 );
+		if ( bestNode >= 0 )
+			for ( int d = 0; d < n; ++d )
+				bestPosition.setPosition( positions[ bestNode * n + d ], d );
+	}
+
+	protected void searchNode( final int node, final int splitDimension )
+	{
+		final int offset = node * n;
+		double distance = 0;
+		for ( int d = 0; d < n; ++d )
+		{
+			final double diff = query[ d ] - positions[ offset + d ];
+			distance += diff * diff;
+		}
+		if ( distance < bestSquDistance )
+		{
+			bestSquDistance = distance;
+			bestNode = node;
+		}
+
+		final double axisDiff = query[ splitDimension ] - positions[ offset + splitDimension ];
+		final int left = 2 * node + 1;
+		final int near = axisDiff < 0 ? left : left + 1;
+		final int far = axisDiff < 0 ? left + 1 : left;
+		final int childSplitDimension = splitDimension + 1 == n ? 0 : splitDimension + 1;
+		if ( near < size )
+			searchNode( near, childSplitDimension );
+		if ( far < size && axisDiff * axisDiff < bestSquDistance )
+			searchNode( far, childSplitDimension );
+	}
+
+	/**
+	 * @return the node of the nearest neighbor found by the last search.
+	 */
+	public int getNode()
+	{
+		return bestNode;
+	}
+
+	@Override
+	public Sampler< T > getSampler()
+	{
+		return new NodeSampler< T >( tree, bestNode );
+	}
+
+	@Override
+	public RealLocalizable getPosition()
+	{
+		return bestPosition;
+	}
+
+	@Override
+	public double getSquareDistance()
+	{
+		return bestSquDistance;
+	}
+
+	@Override
+	public double getDistance()
+	{
+		return Math.sqrt( bestSquDistance );
+	}
+
+	@Override
+	public NearestNeighborSearchOnFlatKDTree< T > copy()
+	{
+		final NearestNeighborSearchOnFlatKDTree< T > copy = new NearestNeighborSearchOnFlatKDTree< T >( tree );
+		System.arraycopy( query, 0, copy.query, 0, n );
+		copy.bestNode = bestNode;
+		copy.bestSquDistance = bestSquDistance;
+		copy.bestPosition.setPosition( bestPosition );
+		return copy;
+	}
+
+	/**
+	 * The value of one node of a {@link FlatKDTree}.
+	 */
+	static class NodeSampler< T > implements Sampler< T >
+	{
+		private final FlatKDTree< T > tree;
+
+		private final int node;
+
+		NodeSampler( final FlatKDTree< T > tree, final int node )
+		{
+			this.tree = tree;
+			this.node = node;
+		}
+
+		@Override
+		public T get()
+		{
+			return tree.getValue( node );
+		}
+
+		@Override
+		public NodeSampler< T > copy()
+		{
+			return this;
+		}
+	}
+}
@@ -0,0 +1,340 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.algorithm.kdtree;
+
+import java.util.Arrays;
+
+import net.imglib2.RealLocalizable;
+import net.imglib2.RealPoint;
+import net.imglib2.Sampler;
+import net.imglib2.algorithm.kdtree.NearestNeighborSearchOnFlatKDTree.NodeSampler;
+import net.imglib2.neighborsearch.RadiusNeighborSearch;
+
+/**
+ * Finds all points of a {@link FlatKDTree} within a radius of a query,
+ * optionally sorted by distance, optionally only the k nearest of them. The
+ * result is kept in two primitive arrays (nodes and squared distances) that
+ * are reused from query to query and only grow when a query has more
+ * neighbors than any before, so a search does not allocate.
+ */
+public class RadiusNeighborSearchOnFlatKDTree< T > implements RadiusNeighborSearch< T >
+{
+	protected final FlatKDTree< T > tree;
+
+	protected final int n;
+
+	protected final double[] positions;
+
+	protected final int size;
+
+	protected final double[] query;
+
+	protected int[] nodes;
+
+	protected double[] squDistances;
+
+	protected int numNeighbors;
+
+	protected double squRadius;
+
+	protected int maxNeighbors;
+
+	public RadiusNeighborSearchOnFlatKDTree( final FlatKDTree< T > tree )
+	{
+		this.tree = tree;
+		n = tree.numDimensions();
+		positions = tree.positions();
+		size = tree.size();
+		query = new double[ n ];
+		nodes = new int[ 16 ];
+		squDistances = new double[ 16 ];
+	}
+
+	@Override
+	public int numDimensions()
+	{
+		return n;
+	}
+
+	@Override
+	public void search( final RealLocalizable reference, final double radius, final boolean sortResults )
+	{
+		reference.localize( query );
+		search( query, radius, sortResults, Integer.MAX_VALUE );
+	}
+
+	/**
+	 * Finds the points within {@code radius} of {@code position}.
+	 *
+	 * @param sortResults
+	 *            whether to sort the neighbors by distance, nearest first.
+	 * @param maxNeighbors
+	 *            if there are more neighbors, only the {@code maxNeighbors}
+	 *            nearest are returned (always sorted).
+	 */
+	public void search( final double[] position, final double radius, final boolean sortResults, final int maxNeighbors )
+	{
+		if ( position != query )
+			System.arraycopy( position, 0, query, 0, n );
+		squRadius = radius * radius;
+		numNeighbors = 0;
+		if ( size == 0 || maxNeighbors <= 0 )
+			return;
+		if ( maxNeighbors == Integer.MAX_VALUE )
+		{
+			searchNode( 0, 0 );
+			if ( sortResults )
+				sort( 0, numNeighbors - 1 );
+		}
+		else
+		{
+			this.maxNeighbors = maxNeighbors;
+			ensureCapacity( Math.min( maxNeighbors, size ) );
+			searchNodeBounded( 0, 0 );
+		}
+	}
+
+	private void searchNode( final int node, final int splitDimension )
+	{
+		final int offset = node * n;
+		double distance = 0;
+		for ( int d = 0; d < n; ++d )
+		{
+			final double diff = query[ d ] - positions[ offset + d ];
+			distance += diff * diff;
+		}
+		if ( distance <= squRadius )
+		{
+			if ( numNeighbors == nodes.length )
+				ensureCapacity( 2 * numNeighbors );
+			nodes[ numNeighbors ] = node;
+			squDistances[ numNeighbors ] = distance;
+			++numNeighbors;
+		}
+
+		final double axisDiff = query[ splitDimension ] - positions[ offset + splitDimension ];
+		final int left = 2 * node + 1;
+		final int near = axisDiff < 0 ? left : left + 1;
+		final int far = axisDiff < 0 ? left + 1 : left;
+		final int childSplitDimension = splitDimension + 1 == n ? 0 : splitDimension + 1;
+		if ( near < size )
+			searchNode( near, childSplitDimension );
+		if ( far < size && axisDiff * axisDiff <= squRadius )
+			searchNode( far, childSplitDimension );
+	}
+
+	/**
+	 * Like {@link #searchNode}, but keeps only the {@link #maxNeighbors}
+	 * nearest, sorted. Once there are that many, the distance of the farthest
+	 * of them is the bound.
+	 */
+	private void searchNodeBounded( final int node, final int splitDimension )
+	{
+		final int offset = node * n;
+		double distance = 0;
+		for ( int d = 0; d < n; ++d )
+		{
+			final double diff = query[ d ] - positions[ offset + d ];
+			distance += diff * diff;
+		}
+		if ( distance <= bound() )
+			insert( node, distance );
+
+		final double axisDiff = query[ splitDimension ] - positions[ offset + splitDimension ];
+		final int left = 2 * node + 1;
+		final int near = axisDiff < 0 ? left : left + 1;
+		final int far = axisDiff < 0 ? left + 1 : left;
+		final int childSplitDimension = splitDimension + 1 == n ? 0 : splitDimension + 1;
+		if ( near < size )
+			searchNodeBounded( near, childSplitDimension );
+		if ( far < size && axisDiff * axisDiff <= bound() )
+			searchNodeBounded( far, childSplitDimension );
+	}
+
+	private double bound()
+	{
+		return numNeighbors < maxNeighbors ? squRadius : squDistances[ numNeighbors - 1 ];
+	}
+
+	private void insert( final int node, final double distance )
+	{
+		if ( numNeighbors == maxNeighbors )
+		{
+			// replace the farthest, ties keep the one found first
+			if ( distance == squDistances[ numNeighbors - 1 ] )
+				return;
+			--numNeighbors;
+		}
+		int i = numNeighbors++;
+		for ( ; i > 0 && squDistances[ i - 1 ] > distance; --i )
+		{
+			squDistances[ i ] = squDistances[ i - 1 ];
+			nodes[ i ] = nodes[ i - 1 ];
+		}
+		squDistances[ i ] = distance;
+		nodes[ i ] = node;
+	}
+
+	private void ensureCapacity( final int capacity )
+	{
+		if ( capacity > nodes.length )
+		{
+			nodes = Arrays.copyOf( nodes, capacity );
+			squDistances = Arrays.copyOf( squDistances, capacity );
+		}
+	}
+
+	/**
+	 * Sorts {@code nodes[ left .. right ]} and
+	 * {@code squDistances[ left .. right ]} by distance.
+	 */
+	private void sort( int left, int right )
+	{
+		while ( right - left > 16 )
+		{
+			final double pivot = squDistances[ ( left + right ) >>> 1 ];
+			int i = left;
+			int j = right;
+			while ( i <= j )
+			{
+				while ( squDistances[ i ] < pivot )
+					++i;
+				while ( squDistances[ j ] > pivot )
+					--j;
+				if ( i <= j )
+				{
+					swap( i, j );
+					++i;
+					--j;
+				}
+			}
+			// recurse into the smaller part
+			if ( j - left < right - i )
+			{
+				sort( left, j );
+				left = i;
+			}
+			else
+			{
+				sort( i, right );
+				right = j;
+			}
+		}
+		for ( int i = left + 1; i <= right; ++i )
+			for ( int j = i; j > left && squDistances[ j - 1 ] > squDistances[ j ]; --j )
+				swap( j - 1, j );
+	}
+
+	private void swap( final int i, final int j )
+	{
+		final int node = nodes[ i ];
+		nodes[ i ] = nodes[ j ];
+		nodes[ j ] = node;
+		final double distance = squDistances[ i ];
+		squDistances[ i ] = squDistances[ j ];
+		squDistances[ j ] = distance;
+	}
+
+	@Override
+	public int numNeighbors()
+	{
+		return numNeighbors;
+	}
+
+	/**
+	 * @return the node of the i-th neighbor.
+	 */
+	public int getNode( final int i )
+	{
+		return nodes[ i ];
+	}
+
+	/**
+	 * @return the nodes of the neighbors, valid up to
+	 *         {@link #numNeighbors()}. This is the internal buffer, it is
+	 *         overwritten by the next search.
+	 */
+	public int[] nodes()
+	{
+		return nodes;
+	}
+
+	/**
+	 * @return the squared distances of the neighbors, valid up to
+	 *         {@link #numNeighbors()}. This is the internal buffer, it is
+	 *         overwritten by the next search.
+	 */
+	public double[] squDistances()
+	{
+		return squDistances;
+	}
+
+	@Override
+	public Sampler< T > getSampler( final int i )
+	{
+		return new NodeSampler< T >( tree, nodes[ i ] );
+	}
+
+	/**
+	 * @return a new {@link RealPoint} at the i-th neighbor. Use
+	 *         {@link FlatKDTree#localize(int, double[])} with
+	 *         {@link #getNode(int)} to avoid the allocation.
+	 */
+	@Override
+	public RealLocalizable getPosition( final int i )
+	{
+		final RealPoint position = new RealPoint( n );
+		for ( int d = 0; d < n; ++d )
+			position.setPosition( tree.getDoublePosition( nodes[ i ], d ), d );
+		return position;
+	}
+
+	@Override
+	public double getSquareDistance( final int i )
+	{
+		return squDistances[ i ];
+	}
+
+	@Override
+	public double getDistance( final int i )
+	{
+		return Math.sqrt( squDistances[ i ] );
+	}
+
+	public RadiusNeighborSearchOnFlatKDTree< T > copy()
+	{
+		final RadiusNeighborSearchOnFlatKDTree< T > copy = new RadiusNeighborSearchOnFlatKDTree< T >( tree );
+		System.arraycopy( query, 0, copy.query, 0, n );
+		copy.nodes = nodes.clone();
+		copy.squDistances = squDistances.clone();
+		copy.numNeighbors = numNeighbors;
+		copy.squRadius = squRadius;
+		copy.maxNeighbors = maxNeighbors;
+		return copy;
+	}
+}
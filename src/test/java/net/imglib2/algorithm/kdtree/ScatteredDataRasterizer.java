@@ -0,0 +1,292 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.algorithm.kdtree;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.imglib2.Cursor;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.util.Parallel;
+import net.imglib2.algorithm.util.Tiling;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.view.Views;
+
+/**
+ * Renders scattered samples, the values of a {@link FlatKDTree}, into a
+ * raster: nearest neighbor, inverse distance weighting of the k nearest
+ * samples, or modified Shepard interpolation of the samples within a radius.
+ * <p>
+ * The sample values are converted to a {@code double[]} in node order once,
+ * so that the inner loops do not go through the sample type. The target is
+ * rendered in parallel by tiles, each thread with its own searches, which use
+ * the result of the previous pixel as a bound (see
+ * {@link BatchNearestNeighborSearchOnFlatKDTree}). The weights of inverse
+ * distance weighting are {@code 1 / distance^p}, as in
+ * {@link net.imglib2.interpolation.neighborsearch.InverseDistanceWeightingInterpolator};
+ * for {@code p = 1} and {@code p = 2} they are computed without
+ * {@link Math#pow}.
+ * </p>
+ */
+public class ScatteredDataRasterizer< T extends RealType< T > >
+{
+	private final FlatKDTree< T > tree;
+
+	private final int n;
+
+	private final double[] values;
+
+	public ScatteredDataRasterizer( final FlatKDTree< T > tree )
+	{
+		if ( tree.size() > 0 && tree.getValue( 0 ) == null )
+			throw new IllegalArgumentException( "tree has no values" );
+		this.tree = tree;
+		n = tree.numDimensions();
+		values = new double[ tree.size() ];
+		for ( int i = 0; i < values.length; ++i )
+			values[ i ] = tree.getValue( i ).getRealDouble();
+	}
+
+	/**
+	 * Computes the value at one position. Created per thread, so it may keep
+	 * state from one position to the next.
+	 */
+	private interface Estimator
+	{
+		public double value( final double[] position );
+	}
+
+	private interface EstimatorFactory
+	{
+		public Estimator create();
+	}
+
+	/**
+	 * Sets each pixel of {@code target} to the value of its nearest sample.
+	 */
+	public < U extends RealType< U > > void nearestNeighbor( final RandomAccessibleInterval< U > target, final int[] tileSize, final int numThreads )
+	{
+		render( target, new EstimatorFactory()
+		{
+			@Override
+			public Estimator create()
+			{
+				return new NearestNeighborEstimator();
+			}
+		}, tileSize, numThreads );
+	}
+
+	/**
+	 * Sets each pixel of {@code target} to the inverse distance weighted mean
+	 * of its {@code k} nearest samples, with weights
+	 * {@code 1 / distance^p}. A pixel on a sample gets its value.
+	 */
+	public < U extends RealType< U > > void inverseDistanceWeighting( final RandomAccessibleInterval< U > target, final int k, final double p, final int[] tileSize, final int numThreads )
+	{
+		render( target, new EstimatorFactory()
+		{
+			@Override
+			public Estimator create()
+			{
+				return new InverseDistanceWeightingEstimator( k, p );
+			}
+		}, tileSize, numThreads );
+	}
+
+	/**
+	 * Sets each pixel of {@code target} to the modified Shepard interpolation
+	 * of the samples within {@code radius}, with weights
+	 * {@code ( ( radius - distance ) / ( radius distance ) )^2}. A pixel on a
+	 * sample gets its value, a pixel without samples within {@code radius}
+	 * the value of its nearest sample.
+	 */
+	public < U extends RealType< U > > void shepard( final RandomAccessibleInterval< U > target, final double radius, final int[] tileSize, final int numThreads )
+	{
+		render( target, new EstimatorFactory()
+		{
+			@Override
+			public Estimator create()
+			{
+				return new ShepardEstimator( radius );
+			}
+		}, tileSize, numThreads );
+	}
+
+	private class NearestNeighborEstimator implements Estimator
+	{
+		private final BatchNearestNeighborSearchOnFlatKDTree< T > search = new BatchNearestNeighborSearchOnFlatKDTree< T >( tree );
+
+		@Override
+		public double value( final double[] position )
+		{
+			search.searchNear( position );
+			return values[ search.getNode() ];
+		}
+	}
+
+	private class InverseDistanceWeightingEstimator implements Estimator
+	{
+		private final BatchKNearestNeighborSearchOnFlatKDTree< T > search;
+
+		private final int k;
+
+		private final double p;
+
+		InverseDistanceWeightingEstimator( final int k, final double p )
+		{
+			this.k = Math.min( k, tree.size() );
+			this.p = p;
+			search = new BatchKNearestNeighborSearchOnFlatKDTree< T >( tree, this.k );
+		}
+
+		@Override
+		public double value( final double[] position )
+		{
+			search.searchNear( position );
+			if ( search.getSquareDistance( 0 ) == 0 )
+				return values[ search.getNode( 0 ) ];
+
+			double sum = 0;
+			double weights = 0;
+			if ( p == 2 )
+			{
+				for ( int i = 0; i < k; ++i )
+				{
+					final double w = 1.0 / search.getSquareDistance( i );
+					sum += w * values[ search.getNode( i ) ];
+					weights += w;
+				}
+			}
+			else if ( p == 1 )
+			{
+				for ( int i = 0; i < k; ++i )
+				{
+					final double w = 1.0 / Math.sqrt( search.getSquareDistance( i ) );
+					sum += w * values[ search.getNode( i ) ];
+					weights += w;
+				}
+			}
+			else
+			{
+				final double halfP = -0.5 * p;
+				for ( int i = 0; i < k; ++i )
+				{
+					final double w = Math.pow( search.getSquareDistance( i ), halfP );
+					sum += w * values[ search.getNode( i ) ];
+					weights += w;
+				}
+			}
+			return sum / weights;
+		}
+	}
+
+	private class ShepardEstimator implements Estimator
+	{
+		private final RadiusNeighborSearchOnFlatKDTree< T > search = new RadiusNeighborSearchOnFlatKDTree< T >( tree );
+
+		private final BatchNearestNeighborSearchOnFlatKDTree< T > fallback = new BatchNearestNeighborSearchOnFlatKDTree< T >( tree );
+
+		private final double radius;
+
+		ShepardEstimator( final double radius )
+		{
+			this.radius = radius;
+		}
+
+		@Override
+		public double value( final double[] position )
+		{
+			search.search( position, radius, false, Integer.MAX_VALUE );
+			final int numNeighbors = search.numNeighbors();
+			if ( numNeighbors == 0 )
+			{
+				fallback.searchNear( position );
+				return values[ fallback.getNode() ];
+			}
+
+			final int[] nodes = search.nodes();
+			final double[] squDistances = search.squDistances();
+			double sum = 0;
+			double weights = 0;
+			for ( int i = 0; i < numNeighbors; ++i )
+			{
+				if ( squDistances[ i ] == 0 )
+					return values[ nodes[ i ] ];
+				final double distance = Math.sqrt( squDistances[ i ] );
+				final double a = ( radius - distance ) / ( radius * distance );
+				final double w = a * a;
+				sum += w * values[ nodes[ i ] ];
+				weights += w;
+			}
+			// all neighbors exactly on the radius
+			if ( weights == 0 )
+			{
+				fallback.searchNear( position );
+				return values[ fallback.getNode() ];
+			}
+			return sum / weights;
+		}
+	}
+
+	private < U extends RealType< U > > void render( final RandomAccessibleInterval< U > target, final EstimatorFactory factory, final int[] tileSize, final int numThreads )
+	{
+		if ( n != target.numDimensions() )
+			throw new IllegalArgumentException( "tree and target must have the same number of dimensions" );
+		if ( tree.size() == 0 )
+			return;
+
+		final List< Interval > tiles = Tiling.tiles( target, tileSize );
+		final AtomicInteger nextTile = new AtomicInteger();
+
+		final int numTasks = Math.max( 1, Math.min( numThreads, tiles.size() ) );
+		Parallel.run( "ScatteredDataRasterizer", numTasks, new Parallel.Task()
+		{
+			@Override
+			public void run( final int t )
+			{
+				renderTiles( target, tiles, nextTile, factory.create() );
+			}
+		} );
+	}
+
+	private < U extends RealType< U > > void renderTiles( final RandomAccessibleInterval< U > target, final List< Interval > tiles, final AtomicInteger nextTile, final Estimator estimator )
+	{
+		final double[] position = new double[ n ];
+		for ( int i = nextTile.getAndIncrement(); i < tiles.size(); i = nextTile.getAndIncrement() )
+		{
+			final Cursor< U > c = Views.flatIterable( Views.interval( target, tiles.get( i ) ) ).localizingCursor();
+			while ( c.hasNext() )
+			{
+				c.fwd();
+				c.localize( position );
+				c.get().setReal( estimator.value( position ) );
+			}
+		}
+	}
+}
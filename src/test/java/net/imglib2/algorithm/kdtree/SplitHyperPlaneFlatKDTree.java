@@ -0,0 +1,72 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.algorithm.kdtree;
+
+/**
+ * Partitions the points of a {@link FlatKDTree} into those above and below a
+ * hyperplane, like {@link SplitHyperPlaneKDTree} does for a
+ * {@link net.imglib2.KDTree}. A point is above if
+ * {@code normal . x >= distance}. This is clipping with a single half-space.
+ */
+public class SplitHyperPlaneFlatKDTree< T >
+{
+	private final ClipConvexPolytopeFlatKDTree< T > clipper;
+
+	private final double[][] planes;
+
+	public SplitHyperPlaneFlatKDTree( final FlatKDTree< T > tree )
+	{
+		clipper = new ClipConvexPolytopeFlatKDTree< T >( tree );
+		planes = new double[ 1 ][ tree.numDimensions() + 1 ];
+	}
+
+	public void split( final HyperPlane plane )
+	{
+		final double[] normal = plane.getNormal();
+		final int n = normal.length;
+		System.arraycopy( normal, 0, planes[ 0 ], 0, n );
+		planes[ 0 ][ n ] = plane.getDistance();
+		clipper.clip( planes );
+	}
+
+	/**
+	 * @return the nodes above the plane after the last {@link #split}.
+	 */
+	public int[] getAboveNodes()
+	{
+		return clipper.getInsideNodes();
+	}
+
+	/**
+	 * @return the nodes below the plane after the last {@link #split}.
+	 */
+	public int[] getBelowNodes()
+	{
+		return clipper.getOutsideNodes();
+	}
+}
@@ -0,0 +1,296 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.algorithm.morphology;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.imglib2.algorithm.neighborhood.Shape;
+import net.imglib2.algorithm.util.Parallel;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.type.logic.BitType;
+
+/**
+ * Dilation and erosion of binary {@link BitType} images backed by a
+ * {@link LongArray}, 64 pixels at a time.
+ * <p>
+ * The image is repacked so that every line along X starts at a word
+ * boundary, with padding words on either side filled with the value outside
+ * the image (0 for dilation, 1 for erosion, as in {@link Dilation} and
+ * {@link Erosion}). Then, for every offset of a structuring element, the
+ * shifted source lines are ORed (dilation) or ANDed (erosion) into the
+ * result, a whole word per operation. Offsets along X become bit shifts
+ * across word boundaries, offsets along the other axes select another line.
+ * Decomposed structuring elements (from {@link StructuringElements}) are
+ * applied one shape after the other.
+ * </p>
+ */
+public class BinaryMorphology
+{
+	public static ArrayImg< BitType, LongArray > dilate( final ArrayImg< BitType, LongArray > source, final Shape strel, final int numThreads )
+	{
+		return dilate( source, Collections.singletonList( strel ), numThreads );
+	}
+
+	public static ArrayImg< BitType, LongArray > dilate( final ArrayImg< BitType, LongArray > source, final List< Shape > strels, final int numThreads )
+	{
+		return new BinaryMorphology( source, strels, true ).compute( source, numThreads );
+	}
+
+	public static ArrayImg< BitType, LongArray > erode( final ArrayImg< BitType, LongArray > source, final Shape strel, final int numThreads )
+	{
+		return erode( source, Collections.singletonList( strel ), numThreads );
+	}
+
+	public static ArrayImg< BitType, LongArray > erode( final ArrayImg< BitType, LongArray > source, final List< Shape > strels, final int numThreads )
+	{
+		return new BinaryMorphology( source, strels, false ).compute( source, numThreads );
+	}
+
+	private final long[] dimensions;
+
+	private final List< List< long[] > > offsets;
+
+	private final boolean dilate;
+
+	/** value outside the image, also the identity of the combining operation */
+	private final long fill;
+
+	private final int width;
+
+	private final int numRows;
+
+	private final int wordsPerRow;
+
+	/** padding words on either side of a row */
+	private final int padding;
+
+	private final int rowStride;
+
+	/** mask of the bits beyond the image width in the last word of a row */
+	private final long tailMask;
+
+	private BinaryMorphology( final ArrayImg< BitType, LongArray > source, final List< Shape > strels, final boolean dilate )
+	{
+		final int n = source.numDimensions();
+		dimensions = new long[ n ];
+		source.dimensions( dimensions );
+		this.dilate = dilate;
+		fill = dilate ? 0 : -1l;
+
+		offsets = new ArrayList< List< long[] > >();
+		long maxShift = 0;
+		for ( final Shape strel : strels )
+		{
+			final List< long[] > o = ShapeOffsets.offsets( strel, n );
+			for ( final long[] offset : o )
+				maxShift = Math.max( maxShift, Math.abs( offset[ 0 ] ) );
+			offsets.add( o );
+		}
+
+		width = ( int ) dimensions[ 0 ];
+		numRows = ( int ) ( source.size() / width );
+		wordsPerRow = ( width + 63 ) / 64;
+		padding = ( int ) ( ( maxShift + 63 ) / 64 ) + 1;
+		rowStride = wordsPerRow + 2 * padding;
+		if ( ( long ) numRows * rowStride > Integer.MAX_VALUE )
+			throw new IllegalArgumentException( "image too large for packed binary morphology" );
+		tailMask = width % 64 == 0 ? 0 : -1l << ( width % 64 );
+	}
+
+	private ArrayImg< BitType, LongArray > compute( final ArrayImg< BitType, LongArray > source, final int numThreads )
+	{
+		long[] in = pack( source.update( null ).getCurrentStorageArray() );
+		long[] out = new long[ in.length ];
+		for ( final List< long[] > shapeOffsets : offsets )
+		{
+			apply( in, out, shapeOffsets, numThreads );
+			final long[] tmp = in;
+			in = out;
+			out = tmp;
+		}
+		final ArrayImg< BitType, LongArray > target = ArrayImgs.bits( dimensions );
+		unpack( in, target.update( null ).getCurrentStorageArray() );
+		return target;
+	}
+
+	/**
+	 * Combines the shifted lines of {@code in} for all offsets into
+	 * {@code out}, rows split between threads.
+	 */
+	private void apply( final long[] in, final long[] out, final List< long[] > shapeOffsets, final int numThreads )
+	{
+		Parallel.runRanges( "BinaryMorphology", numRows, numThreads, new Parallel.RangeTask()
+		{
+			@Override
+			public void run( final long firstRow, final long lastRow )
+			{
+				applyToRows( in, out, shapeOffsets, ( int ) firstRow, ( int ) lastRow );
+			}
+		} );
+	}
+
+	private void applyToRows( final long[] in, final long[] out, final List< long[] > shapeOffsets, final int firstRow, final int lastRow )
+	{
+		final int n = dimensions.length;
+		final long[] row = new long[ n ];
+		for ( int r = firstRow; r < lastRow; ++r )
+		{
+			// coordinates of the row along axes 1..n-1
+			long i = r;
+			for ( int d = 1; d < n; ++d )
+			{
+				row[ d ] = i % dimensions[ d ];
+				i /= dimensions[ d ];
+			}
+
+			final int outBase = r * rowStride;
+			for ( int k = 0; k < padding; ++k )
+			{
+				out[ outBase + k ] = fill;
+				out[ outBase + padding + wordsPerRow + k ] = fill;
+			}
+			final int outStart = outBase + padding;
+			for ( int k = 0; k < wordsPerRow; ++k )
+				out[ outStart + k ] = fill;
+
+			for ( final long[] offset : shapeOffsets )
+			{
+				// source row, skipped if outside (combining with fill is a
+				// no-op)
+				long sourceRow = 0;
+				long step = 1;
+				boolean inside = true;
+				for ( int d = 1; d < n; ++d )
+				{
+					final long p = row[ d ] + offset[ d ];
+					if ( p < 0 || p >= dimensions[ d ] )
+					{
+						inside = false;
+						break;
+					}
+					sourceRow += p * step;
+					step *= dimensions[ d ];
+				}
+				if ( !inside )
+					continue;
+
+				final long bitStart = ( sourceRow * rowStride + padding ) * 64 + offset[ 0 ];
+				final int word = ( int ) ( bitStart >> 6 );
+				final int shift = ( int ) ( bitStart & 63 );
+				if ( dilate )
+				{
+					if ( shift == 0 )
+						for ( int k = 0; k < wordsPerRow; ++k )
+							out[ outStart + k ] |= in[ word + k ];
+					else
+						for ( int k = 0; k < wordsPerRow; ++k )
+							out[ outStart + k ] |= ( in[ word + k ] >>> shift ) | ( in[ word + k + 1 ] << ( 64 - shift ) );
+				}
+				else
+				{
+					if ( shift == 0 )
+						for ( int k = 0; k < wordsPerRow; ++k )
+							out[ outStart + k ] &= in[ word + k ];
+					else
+						for ( int k = 0; k < wordsPerRow; ++k )
+							out[ outStart + k ] &= ( in[ word + k ] >>> shift ) | ( in[ word + k + 1 ] << ( 64 - shift ) );
+				}
+			}
+
+			// bits beyond the image width must read as outside
+			out[ outStart + wordsPerRow - 1 ] = ( out[ outStart + wordsPerRow - 1 ] & ~tailMask ) | ( fill & tailMask );
+		}
+	}
+
+	/**
+	 * Copies the flat bit storage of the image into word-aligned, padded rows.
+	 */
+	private long[] pack( final long[] data )
+	{
+		final long[] rows = new long[ numRows * rowStride ];
+		for ( int r = 0; r < numRows; ++r )
+		{
+			final int base = r * rowStride;
+			for ( int k = 0; k < padding; ++k )
+			{
+				rows[ base + k ] = fill;
+				rows[ base + padding + wordsPerRow + k ] = fill;
+			}
+			final long bitStart = ( long ) r * width;
+			for ( int k = 0; k < wordsPerRow; ++k )
+				rows[ base + padding + k ] = get64( data, bitStart + 64l * k );
+			final int last = base + padding + wordsPerRow - 1;
+			rows[ last ] = ( rows[ last ] & ~tailMask ) | ( fill & tailMask );
+		}
+		return rows;
+	}
+
+	/**
+	 * Copies word-aligned rows back into the flat bit storage of an image.
+	 */
+	private void unpack( final long[] rows, final long[] data )
+	{
+		for ( int r = 0; r < numRows; ++r )
+		{
+			final int base = r * rowStride + padding;
+			final long bitStart = ( long ) r * width;
+			for ( int k = 0; k < wordsPerRow; ++k )
+				set64( data, bitStart + 64l * k, rows[ base + k ], Math.min( 64, width - 64 * k ) );
+		}
+	}
+
+	/** @return 64 bits starting at {@code bitPos}, 0 beyond the array. */
+	private static long get64( final long[] data, final long bitPos )
+	{
+		final int w = ( int ) ( bitPos >>> 6 );
+		final int s = ( int ) ( bitPos & 63 );
+		long v = data[ w ] >>> s;
+		if ( s != 0 && w + 1 < data.length )
+			v |= data[ w + 1 ] << ( 64 - s );
+		return v;
+	}
+
+	/** Writes the lowest {@code numBits} bits of value at {@code bitPos}. */
+	private static void set64( final long[] data, final long bitPos, final long value, final int numBits )
+	{
+		final long mask = numBits == 64 ? -1l : ( 1l << numBits ) - 1;
+		final long v = value & mask;
+		final int w = ( int ) ( bitPos >>> 6 );
+		final int s = ( int ) ( bitPos & 63 );
+		data[ w ] = ( data[ w ] & ~( mask << s ) ) | ( v << s );
+		if ( s != 0 && s + numBits > 64 )
+		{
+			final long mask2 = mask >>> ( 64 - s );
+			data[ w + 1 ] = ( data[ w + 1 ] & ~mask2 ) | ( v >>> ( 64 - s ) );
+		}
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.algorithm.morphology;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import net.imglib2.algorithm.neighborhood.Shape;
+import net.imglib2.algorithm.util.ImgComparison;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.type.logic.BitType;
+import net.imglib2.util.Util;
+
+/**
+ * Compares {@link BinaryMorphology} with the generic {@link Dilation} and
+ * {@link Erosion} on the same random binary mask, for the disk, diamond and
+ * square decompositions of {@link StructuringElements} at several radii, and
+ * checks that the results are identical.
+ */
+public class BinaryMorphologyBenchmark
+{
+	public static void main( final String[] args )
+	{
+		final int numRuns = 5;
+		benchmark( new long[] { 1024, 1024 }, new int[] { 1, 3, 6, 10, 20 }, numRuns );
+		benchmark( new long[] { 256, 256, 64 }, new int[] { 1, 3, 6 }, numRuns );
+	}
+
+	public static void benchmark( final long[] dimensions, final int[] radii, final int numRuns )
+	{
+		final ArrayImg< BitType, LongArray > mask = ArrayImgs.bits( dimensions );
+		final Random random = new Random( 1l );
+		for ( final BitType t : mask )
+			t.set( random.nextInt( 100 ) == 0 );
+		final int n = mask.numDimensions();
+
+		System.out.println();
+		System.out.println( "Binary mask " + Util.printCoordinates( dimensions ) + ", 1% foreground, 1 thread, median of " + numRuns + " runs." );
+		System.out.println( "Strel\tRadius\tOperation\tGeneric (ms)\tPacked (ms)\tSpeedup\tIdentical" );
+		for ( final int radius : radii )
+		{
+			final Map< String, List< Shape > > strels = new LinkedHashMap< String, List< Shape > >();
+			strels.put( "disk", StructuringElements.disk( radius, n, n == 2 ? 4 : 0 ) );
+			strels.put( "diamond", StructuringElements.diamond( radius, n, true ) );
+			strels.put( "square", StructuringElements.square( radius, n, true ) );
+			for ( final Map.Entry< String, List< Shape > > entry : strels.entrySet() )
+			{
+				final List< Shape > strel = entry.getValue();
+				final ArrayImg< BitType, LongArray > dilated = BinaryMorphology.dilate( mask, strel, 1 );
+				for ( final boolean dilate : new boolean[] { true, false } )
+				{
+					// erode the dilated mask, so that there is something left
+					final ArrayImg< BitType, LongArray > source = dilate ? mask : dilated;
+					Img< BitType > generic = null;
+					Img< BitType > packed = null;
+					final long[] genericTimes = new long[ numRuns ];
+					final long[] packedTimes = new long[ numRuns ];
+					for ( int i = 0; i < numRuns; ++i )
+					{
+						long start = System.currentTimeMillis();
+						generic = dilate ? Dilation.dilate( source, strel, 1 ) : Erosion.erode( source, strel, 1 );
+						genericTimes[ i ] = System.currentTimeMillis() - start;
+
+						start = System.currentTimeMillis();
+						packed = dilate ? BinaryMorphology.dilate( source, strel, 1 ) : BinaryMorphology.erode( source, strel, 1 );
+						packedTimes[ i ] = System.currentTimeMillis() - start;
+					}
+					final long g = Util.median( genericTimes );
+					final long p = Util.median( packedTimes );
+					System.out.println( entry.getKey() + "\t" + radius + "\t" + ( dilate ? "dilate" : "erode" ) + "\t" + g + "\t" + p + "\t"
+							+ String.format( "%.1f", ( double ) g / Math.max( 1, p ) ) + "\t" + ImgComparison.identical( generic, packed ) );
+				}
+			}
+		}
+	}
+}
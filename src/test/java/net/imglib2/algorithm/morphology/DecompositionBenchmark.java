@@ -0,0 +1,94 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.algorithm.morphology;
+
+import java.util.List;
+
+import net.imglib2.algorithm.morphology.DecompositionSelector.Candidate;
+import net.imglib2.algorithm.morphology.DecompositionSelector.Family;
+import net.imglib2.img.Img;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.util.Util;
+
+/**
+ * Calibrates the {@link DecompositionSelector} cost model, then prints, per
+ * structuring element and radius, the pixel error, the measured and predicted
+ * time and the measured speedup over the undecomposed element of every
+ * decomposition, and which one is chosen for a few error tolerances.
+ * <p>
+ * This extends the error table of {@link DiscStrelTest#computeError()} and
+ * the timings of {@link DiscStrelTest#testDecompositionPerformance(String[])}
+ * and {@link DiamondNeighborhoodTest} to all families, with the prediction
+ * next to the measurement so that the model can be checked.
+ * </p>
+ */
+public class DecompositionBenchmark
+{
+	private static final double[] TOLERANCES = new double[] { 0, 0.02, 0.1 };
+
+	public static void main( final String[] args )
+	{
+		final int numRuns = 3;
+		report( new long[] { 1024, 1024 }, new int[] { 1, 2, 3, 5, 8, 12, 17, 25 }, numRuns );
+		report( new long[] { 128, 128, 64 }, new int[] { 1, 2, 3, 5, 8 }, numRuns );
+	}
+
+	public static void report( final long[] imageSize, final int[] radii, final int numRuns )
+	{
+		final int n = imageSize.length;
+		final DecompositionSelector selector = DecompositionSelector.calibrate( n, numRuns );
+		final Img< UnsignedByteType > img = DecompositionSelector.randomImage( imageSize );
+
+		System.out.println();
+		System.out.println( "===== " + Util.printCoordinates( imageSize ) + " =====" );
+		System.out.println( "Calibrated model: " + selector );
+		System.out.println( String.format( "%-22s %6s %7s %9s %8s %12s %13s %8s", "strel", "radius", "shapes", "offsets", "error", "measured ms", "predicted ms", "speedup" ) );
+		for ( final Family family : Family.values() )
+		{
+			for ( final int radius : radii )
+			{
+				final List< Candidate > candidates = DecompositionSelector.candidates( family, radius, n );
+				final Candidate reference = candidates.get( 0 );
+				long referenceTime = 0;
+				for ( final Candidate candidate : candidates )
+				{
+					final long time = DecompositionSelector.time( img, candidate.strels, numRuns );
+					if ( candidate == reference )
+						referenceTime = time;
+					System.out.println( String.format( "%-22s %6d %7d %9d %8.4f %12d %13.1f %8.2f", candidate.name(), radius, candidate.numShapes, candidate.numOffsets,
+							DecompositionSelector.error( candidate, reference ), time, selector.predict( candidate, img.size() ),
+							time == 0 ? 0 : ( double ) referenceTime / time ) );
+				}
+				final StringBuilder chosen = new StringBuilder( "  chosen:" );
+				for ( final double tolerance : TOLERANCES )
+					chosen.append( String.format( "  tolerance %.2f -> %s", tolerance, selector.choose( family, radius, imageSize, tolerance ).name() ) );
+				System.out.println( chosen );
+			}
+		}
+	}
+}
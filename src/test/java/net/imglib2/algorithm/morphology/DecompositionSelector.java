@@ -0,0 +1,393 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.algorithm.morphology;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import net.imglib2.algorithm.neighborhood.Shape;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.util.Util;
+
+/**
+ * Chooses the fastest decomposition of a disk, diamond or square structuring
+ * element whose shape error is within a tolerance.
+ * <p>
+ * The candidates are the decompositions offered by {@link StructuringElements}
+ * : levels 0 (none), 4, 6 and 8 for 2D disks, and plain or decomposed for
+ * diamonds and squares. The error of a candidate is the fraction of pixels by
+ * which its footprint (the Minkowski sum of its shapes, i.e. the dilation of
+ * a single point) differs from that of the undecomposed element, as in
+ * {@link DiscStrelTest#computeError()}. It is exact, and 0 for diamonds and
+ * squares.
+ * </p>
+ * <p>
+ * The time of {@link Dilation#dilate(Img, List, int)} with 1 thread is
+ * modeled as
+ *
+ * <pre>
+ * t = numPixels * ( perPixelShape * numShapes + perPixelOffset * numOffsets ) + perShape * numShapes
+ * </pre>
+ *
+ * in nanoseconds, where {@code numOffsets} is the total number of offsets of
+ * all shapes: every shape is a pass over the image which visits every offset,
+ * and allocates a new image. The coefficients are fitted by
+ * {@link #calibrate(int, int)}; the default ones are rough values for a
+ * current desktop machine and only their ratios matter for the choice.
+ * </p>
+ */
+public class DecompositionSelector
+{
+	public static enum Family
+	{
+		DISK, DIAMOND, SQUARE
+	}
+
+	/**
+	 * One way of building a structuring element.
+	 */
+	public static class Candidate
+	{
+		public final Family family;
+
+		public final long radius;
+
+		/**
+		 * decomposition level for disks, 0 (plain) or 1 (decomposed) for
+		 * diamonds and squares.
+		 */
+		public final int level;
+
+		public final int numDimensions;
+
+		public final List< Shape > strels;
+
+		public final int numShapes;
+
+		public final long numOffsets;
+
+		private Candidate( final Family family, final long radius, final int numDimensions, final int level )
+		{
+			this.family = family;
+			this.radius = radius;
+			this.level = level;
+			this.numDimensions = numDimensions;
+			switch ( family )
+			{
+			case DISK:
+				strels = StructuringElements.disk( radius, numDimensions, level );
+				break;
+			case DIAMOND:
+				strels = StructuringElements.diamond( ( int ) radius, numDimensions, level != 0 );
+				break;
+			default:
+				strels = StructuringElements.square( ( int ) radius, numDimensions, level != 0 );
+			}
+			numShapes = strels.size();
+			long offsets = 0;
+			for ( final Shape strel : strels )
+				offsets += ShapeOffsets.offsets( strel, numDimensions ).size();
+			numOffsets = offsets;
+		}
+
+		public String name()
+		{
+			if ( family == Family.DISK )
+				return level == 0 ? "disk" : "disk (" + level + " lines)";
+			return family.name().toLowerCase() + ( level == 0 ? "" : " (decomposed)" );
+		}
+
+		@Override
+		public String toString()
+		{
+			return name() + " r=" + radius;
+		}
+	}
+
+	/** ns per pixel and shape */
+	private final double perPixelShape;
+
+	/** ns per pixel and offset */
+	private final double perPixelOffset;
+
+	/** ns per shape */
+	private final double perShape;
+
+	public DecompositionSelector()
+	{
+		this( 5, 1.5, 20000 );
+	}
+
+	public DecompositionSelector( final double perPixelShape, final double perPixelOffset, final double perShape )
+	{
+		this.perPixelShape = perPixelShape;
+		this.perPixelOffset = perPixelOffset;
+		this.perShape = perShape;
+	}
+
+	/**
+	 * @return all decompositions of the given family, the undecomposed one
+	 *         first.
+	 */
+	public static List< Candidate > candidates( final Family family, final long radius, final int numDimensions )
+	{
+		final List< Candidate > candidates = new ArrayList< Candidate >();
+		candidates.add( new Candidate( family, radius, numDimensions, 0 ) );
+		if ( family != Family.DISK )
+			candidates.add( new Candidate( family, radius, numDimensions, 1 ) );
+		else if ( numDimensions == 2 )
+			for ( final int level : new int[] { 4, 6, 8 } )
+				candidates.add( new Candidate( family, radius, numDimensions, level ) );
+		return candidates;
+	}
+
+	/**
+	 * @return predicted time in ms of dilating an image of {@code numPixels}
+	 *         pixels with the candidate.
+	 */
+	public double predict( final Candidate candidate, final long numPixels )
+	{
+		return ( numPixels * ( perPixelShape * candidate.numShapes + perPixelOffset * candidate.numOffsets ) + perShape * candidate.numShapes ) / 1e6;
+	}
+
+	/**
+	 * @return the candidate of the given family with the lowest predicted time
+	 *         on an image of the given size, among those whose
+	 *         {@link #error(Candidate, Candidate) error} is at most
+	 *         {@code tolerance}. The undecomposed element always qualifies.
+	 */
+	public Candidate choose( final Family family, final long radius, final long[] imageSize, final double tolerance )
+	{
+		final int n = imageSize.length;
+		long numPixels = 1;
+		for ( final long s : imageSize )
+			numPixels *= s;
+
+		final List< Candidate > candidates = candidates( family, radius, n );
+		final Candidate reference = candidates.get( 0 );
+		Candidate best = reference;
+		for ( final Candidate candidate : candidates )
+			if ( predict( candidate, numPixels ) < predict( best, numPixels ) && error( candidate, reference ) <= tolerance )
+				best = candidate;
+		return best;
+	}
+
+	/**
+	 * @return the number of pixels by which the footprints of the two
+	 *         candidates differ, divided by the size of the footprint of
+	 *         {@code reference}.
+	 */
+	public static double error( final Candidate candidate, final Candidate reference )
+	{
+		if ( candidate == reference )
+			return 0;
+		final int n = reference.numDimensions;
+		long extent = 0;
+		for ( final Candidate c : new Candidate[] { candidate, reference } )
+		{
+			long e = 0;
+			for ( final Shape strel : c.strels )
+			{
+				final long[][] bounds = ShapeOffsets.bounds( strel, n );
+				long m = 0;
+				for ( int d = 0; d < n; ++d )
+					m = Math.max( m, Math.max( -bounds[ 0 ][ d ], bounds[ 1 ][ d ] ) );
+				e += m;
+			}
+			extent = Math.max( extent, e );
+		}
+		final boolean[] a = footprint( candidate.strels, n, extent );
+		final boolean[] b = footprint( reference.strels, n, extent );
+		long mismatch = 0;
+		long size = 0;
+		for ( int i = 0; i < a.length; ++i )
+		{
+			if ( a[ i ] != b[ i ] )
+				++mismatch;
+			if ( b[ i ] )
+				++size;
+		}
+		return ( double ) mismatch / size;
+	}
+
+	/**
+	 * @return the Minkowski sum of the shapes, as a mask of side
+	 *         {@code 2 * extent + 1} centered at the origin.
+	 */
+	private static boolean[] footprint( final List< Shape > strels, final int n, final long extent )
+	{
+		final int side = ( int ) ( 2 * extent + 1 );
+		final int[] steps = new int[ n ];
+		int size = 1;
+		for ( int d = 0; d < n; ++d )
+		{
+			steps[ d ] = size;
+			size *= side;
+		}
+		int center = 0;
+		for ( int d = 0; d < n; ++d )
+			center += ( int ) extent * steps[ d ];
+
+		boolean[] mask = new boolean[ size ];
+		mask[ center ] = true;
+		for ( final Shape strel : strels )
+		{
+			final List< long[] > offsets = ShapeOffsets.offsets( strel, n );
+			final int[] deltas = new int[ offsets.size() ];
+			for ( int o = 0; o < deltas.length; ++o )
+				for ( int d = 0; d < n; ++d )
+					deltas[ o ] += ( int ) offsets.get( o )[ d ] * steps[ d ];
+			final boolean[] sum = new boolean[ size ];
+			for ( int i = 0; i < size; ++i )
+				if ( mask[ i ] )
+					for ( final int delta : deltas )
+						sum[ i + delta ] = true;
+			mask = sum;
+		}
+		return mask;
+	}
+
+	/**
+	 * Fits the coefficients of the model to the times of
+	 * {@link Dilation#dilate(Img, List, int)} with all candidates of all
+	 * families at a few radii, on two image sizes, by least squares.
+	 *
+	 * @param numRuns
+	 *            the median of that many runs is used per measurement.
+	 */
+	public static DecompositionSelector calibrate( final int numDimensions, final int numRuns )
+	{
+		final long[][] sizes = new long[ 2 ][ numDimensions ];
+		Arrays.fill( sizes[ 0 ], numDimensions == 2 ? 256 : 48 );
+		Arrays.fill( sizes[ 1 ], numDimensions == 2 ? 1024 : 96 );
+		final int[] radii = numDimensions == 2 ? new int[] { 2, 5, 10 } : new int[] { 2, 4 };
+
+		// normal equations of t = x0 * numPixels * numShapes + x1 * numPixels * numOffsets + x2 * numShapes
+		final double[][] ata = new double[ 3 ][ 3 ];
+		final double[] atb = new double[ 3 ];
+		for ( final long[] size : sizes )
+		{
+			final Img< UnsignedByteType > img = randomImage( size );
+			final long numPixels = img.size();
+			for ( final Family family : Family.values() )
+			{
+				for ( final int radius : radii )
+				{
+					for ( final Candidate candidate : candidates( family, radius, numDimensions ) )
+					{
+						final double t = 1e6 * time( img, candidate.strels, numRuns );
+						final double[] row = new double[] { ( double ) numPixels * candidate.numShapes, ( double ) numPixels * candidate.numOffsets, candidate.numShapes };
+						for ( int i = 0; i < 3; ++i )
+						{
+							for ( int j = 0; j < 3; ++j )
+								ata[ i ][ j ] += row[ i ] * row[ j ];
+							atb[ i ] += row[ i ] * t;
+						}
+					}
+				}
+			}
+		}
+		final double[] x = solve( ata, atb );
+		return new DecompositionSelector( Math.max( 0, x[ 0 ] ), Math.max( 0, x[ 1 ] ), Math.max( 0, x[ 2 ] ) );
+	}
+
+	/**
+	 * @return median time in ms of {@code numRuns} single-threaded dilations,
+	 *         after one warm-up run.
+	 */
+	public static long time( final Img< UnsignedByteType > img, final List< Shape > strels, final int numRuns )
+	{
+		Dilation.dilate( img, strels, 1 );
+		final long[] times = new long[ numRuns ];
+		for ( int i = 0; i < numRuns; ++i )
+		{
+			final long start = System.currentTimeMillis();
+			Dilation.dilate( img, strels, 1 );
+			times[ i ] = System.currentTimeMillis() - start;
+		}
+		return Util.median( times );
+	}
+
+	public static Img< UnsignedByteType > randomImage( final long[] size )
+	{
+		final Img< UnsignedByteType > img = ArrayImgs.unsignedBytes( size );
+		final Random random = new Random( 1l );
+		for ( final UnsignedByteType t : img )
+			t.set( random.nextInt( 256 ) );
+		return img;
+	}
+
+	/**
+	 * Solves {@code a x = b} by Gaussian elimination with partial pivoting.
+	 * Unknowns that cannot be determined are set to 0.
+	 */
+	private static double[] solve( final double[][] a, final double[] b )
+	{
+		final int n = b.length;
+		final double[][] m = new double[ n ][];
+		for ( int i = 0; i < n; ++i )
+		{
+			m[ i ] = Arrays.copyOf( a[ i ], n + 1 );
+			m[ i ][ n ] = b[ i ];
+		}
+		for ( int col = 0; col < n; ++col )
+		{
+			int pivot = col;
+			for ( int row = col + 1; row < n; ++row )
+				if ( Math.abs( m[ row ][ col ] ) > Math.abs( m[ pivot ][ col ] ) )
+					pivot = row;
+			final double[] tmp = m[ col ];
+			m[ col ] = m[ pivot ];
+			m[ pivot ] = tmp;
+			if ( m[ col ][ col ] == 0 )
+				continue;
+			for ( int row = 0; row < n; ++row )
+			{
+				if ( row == col )
+					continue;
+				final double f = m[ row ][ col ] / m[ col ][ col ];
+				for ( int k = col; k <= n; ++k )
+					m[ row ][ k ] -= f * m[ col ][ k ];
+			}
+		}
+		final double[] x = new double[ n ];
+		for ( int i = 0; i < n; ++i )
+			x[ i ] = m[ i ][ i ] == 0 ? 0 : m[ i ][ n ] / m[ i ][ i ];
+		return x;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format( "t = numPixels * ( %.3f ns * numShapes + %.3f ns * numOffsets ) + %.0f ns * numShapes", perPixelShape, perPixelOffset, perShape );
+	}
+}
@@ -106,6 +106,10 @@ public class DilationTests
 		final Img< FloatType > img4 = Dilation.dilateFull( img, strel, minVal, 1 );
 		ImageJFunctions.show( img4, "DilatedToNewImgFULL" );
 
+		// Dilate the binary mask with the bit-packed implementation
+		final Img< BitType > imgBits4 = BinaryMorphology.dilate( bitsImg, strel, 1 );
+		ImageJFunctions.show( imgBits4, "BitsDilatedPacked" );
+
 //		// Dilate in place
 //		final Interval interval = FinalInterval.createMinSize( new long[] { 100, -10, 80, 100 } );
 //		Dilation.dilateInPlace( img, interval, strel, minVal, 1 );
@@ -0,0 +1,115 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.algorithm.morphology;
+
+import java.util.Collections;
+import java.util.List;
+
+import net.imglib2.algorithm.neighborhood.Shape;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.logic.BitType;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Drop-in replacement for {@link Dilation#dilate(Img, List, int)} and
+ * {@link Erosion#erode(Img, List, int)} that picks a faster implementation
+ * when the structuring element allows it, and falls back to
+ * {@link Dilation} / {@link Erosion} otherwise:
+ * <ul>
+ * <li>binary images ({@link BitType} backed by a {@link LongArray}) are
+ * processed 64 pixels at a time by {@link BinaryMorphology}, for any
+ * shape.</li>
+ * <li>if every shape is an axis-aligned box (rectangles, squares, lines along
+ * an axis, and their decompositions), {@link VanHerkGilWerman} is used, whose
+ * cost per pixel does not depend on the radius.</li>
+ * <li>if every shape is a line of equally spaced offsets along any direction
+ * ({@code PeriodicLineShape}, {@code PairOfPointsShape}),
+ * {@link LineMorphology} processes each discrete line with a stride.</li>
+ * <li>{@link ArrayImg}s of {@code UnsignedByteType}, {@code UnsignedShortType}
+ * and {@code FloatType} are processed on their primitive arrays by
+ * {@link PrimitiveMorphology}, for any shape.</li>
+ * </ul>
+ */
+public class FastMorphology
+{
+	public static < T extends RealType< T > & NativeType< T > > Img< T > dilate( final Img< T > source, final Shape strel, final int numThreads )
+	{
+		return dilate( source, Collections.singletonList( strel ), numThreads );
+	}
+
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	public static < T extends RealType< T > & NativeType< T > > Img< T > dilate( final Img< T > source, final List< Shape > strels, final int numThreads )
+	{
+		if ( isPackedBits( source ) )
+			return ( Img ) BinaryMorphology.dilate( ( ArrayImg ) source, strels, numThreads );
+		final List< long[][] > boxes = VanHerkGilWerman.boxes( strels, source.numDimensions() );
+		if ( boxes != null )
+			return VanHerkGilWerman.dilate( source, boxes, numThreads );
+		final List< long[][] > lines = LineMorphology.lines( strels, source.numDimensions() );
+		if ( lines != null )
+			return LineMorphology.dilate( source, lines, numThreads );
+		if ( PrimitiveMorphology.isSupported( source ) )
+			return PrimitiveMorphology.dilate( source, strels, numThreads );
+		return Dilation.dilate( source, strels, numThreads );
+	}
+
+	public static < T extends RealType< T > & NativeType< T > > Img< T > erode( final Img< T > source, final Shape strel, final int numThreads )
+	{
+		return erode( source, Collections.singletonList( strel ), numThreads );
+	}
+
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	public static < T extends RealType< T > & NativeType< T > > Img< T > erode( final Img< T > source, final List< Shape > strels, final int numThreads )
+	{
+		if ( isPackedBits( source ) )
+			return ( Img ) BinaryMorphology.erode( ( ArrayImg ) source, strels, numThreads );
+		final List< long[][] > boxes = VanHerkGilWerman.boxes( strels, source.numDimensions() );
+		if ( boxes != null )
+			return VanHerkGilWerman.erode( source, boxes, numThreads );
+		final List< long[][] > lines = LineMorphology.lines( strels, source.numDimensions() );
+		if ( lines != null )
+			return LineMorphology.erode( source, lines, numThreads );
+		if ( PrimitiveMorphology.isSupported( source ) )
+			return PrimitiveMorphology.erode( source, strels, numThreads );
+		return Erosion.erode( source, strels, numThreads );
+	}
+
+	/**
+	 * @return whether {@code img} is an {@link ArrayImg} of {@link BitType}
+	 *         backed by a {@link LongArray}.
+	 */
+	static boolean isPackedBits( final Img< ? > img )
+	{
+		return img instanceof ArrayImg
+				&& img.firstElement() instanceof BitType
+				&& ( ( ArrayImg< ?, ? > ) img ).update( null ) instanceof LongArray;
+	}
+}
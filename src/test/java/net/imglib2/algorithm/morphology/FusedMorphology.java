@@ -0,0 +1,343 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.algorithm.morphology;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.imglib2.Cursor;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.morphology.TiledMorphology.Operation;
+import net.imglib2.algorithm.neighborhood.Shape;
+import net.imglib2.algorithm.util.Parallel;
+import net.imglib2.algorithm.util.Tiling;
+import net.imglib2.img.Img;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.view.Views;
+
+/**
+ * Computes dilation, erosion and the compound operators (opening, closing,
+ * top-hat, black top-hat) tile by tile, without any full-size intermediate
+ * image.
+ * <p>
+ * {@link Opening}, {@link Closing}, {@link TopHat} and {@link BlackTopHat}
+ * allocate a full-size image per shape of the structuring element chain and
+ * per pass, and the top-hats another one for the subtraction. Here, each
+ * worker thread owns two {@code double[]} buffers the size of one tile plus
+ * halo. A tile is loaded into the first buffer, every shape of every pass is
+ * applied from one buffer into the other (the region where the values are
+ * valid shrinks by the extent of the shape each time), and the inner part is
+ * written to the target, subtracted from or by the source for the top-hats.
+ * The only full-size image allocated is the result.
+ * </p>
+ * <p>
+ * Pixels outside the image count as the minimum value of the type for
+ * dilations and as the maximum for erosions, as in {@link Dilation} and
+ * {@link Erosion}, so the result is identical to that of the whole-image
+ * operators, for all types whose values are exactly representable as
+ * {@code double}.
+ * </p>
+ */
+public class FusedMorphology
+{
+	/**
+	 * Applies {@code operation} tile by tile.
+	 *
+	 * @param tileSize
+	 *            size of the tiles (without halo) along each axis.
+	 * @param numThreads
+	 *            number of worker threads. With 1, everything runs in the
+	 *            calling thread.
+	 */
+	public static < T extends RealType< T > & NativeType< T > > Img< T > compute( final Operation operation, final Img< T > source, final List< Shape > strels, final int[] tileSize, final int numThreads )
+	{
+		final Img< T > target = source.factory().create( source, source.firstElement().createVariable() );
+		new FusedMorphology( operation, source, strels, tileSize ).compute( source, target, numThreads );
+		return target;
+	}
+
+	private final int n;
+
+	private final Operation operation;
+
+	private final long[] imgMin;
+
+	private final long[] imgMax;
+
+	private final long[] halo;
+
+	private final int[] tileSize;
+
+	/** per pass: dilate or erode */
+	private final boolean[] passes;
+
+	/** per shape: offsets, as { offset[0..n-1] } */
+	private final long[][][] shapeOffsets;
+
+	/** per shape: { min, max } of its offsets along each axis */
+	private final long[][][] shapeBounds;
+
+	private final double minValue;
+
+	private final double maxValue;
+
+	private FusedMorphology( final Operation operation, final Img< ? extends RealType< ? > > source, final List< Shape > strels, final int[] tileSize )
+	{
+		this.n = source.numDimensions();
+		this.operation = operation;
+		this.imgMin = new long[ n ];
+		this.imgMax = new long[ n ];
+		source.min( imgMin );
+		source.max( imgMax );
+		this.halo = TiledMorphology.halo( operation, strels, n );
+		this.tileSize = tileSize;
+
+		switch ( operation )
+		{
+		case DILATE:
+			passes = new boolean[] { true };
+			break;
+		case ERODE:
+			passes = new boolean[] { false };
+			break;
+		case OPEN:
+		case TOP_HAT:
+			passes = new boolean[] { false, true };
+			break;
+		case CLOSE:
+		case BLACK_TOP_HAT:
+			passes = new boolean[] { true, false };
+			break;
+		default:
+			throw new IllegalArgumentException( "unknown operation: " + operation );
+		}
+
+		shapeOffsets = new long[ strels.size() ][][];
+		shapeBounds = new long[ strels.size() ][][];
+		for ( int s = 0; s < strels.size(); ++s )
+		{
+			shapeOffsets[ s ] = ShapeOffsets.offsets( strels.get( s ), n ).toArray( new long[ 0 ][] );
+			shapeBounds[ s ] = ShapeOffsets.bounds( strels.get( s ), n );
+		}
+
+		final RealType< ? > type = source.firstElement();
+		minValue = type.getMinValue();
+		maxValue = type.getMaxValue();
+	}
+
+	/**
+	 * @return the number of pixels of the largest tile plus halo.
+	 */
+	private int scratchSize()
+	{
+		long size = 1;
+		for ( int d = 0; d < n; ++d )
+			size *= Math.min( imgMax[ d ] - imgMin[ d ] + 1, tileSize[ d ] + 2 * halo[ d ] );
+		if ( size > Integer.MAX_VALUE )
+			throw new IllegalArgumentException( "tile plus halo is too large: " + size + " pixels" );
+		return ( int ) size;
+	}
+
+	private < T extends RealType< T > > void compute( final RandomAccessibleInterval< T > source, final RandomAccessibleInterval< T > target, final int numThreads )
+	{
+		final List< Interval > tiles = Tiling.tiles( source, tileSize );
+		final int scratchSize = scratchSize();
+		final AtomicInteger nextTile = new AtomicInteger();
+
+		final int numTasks = Math.max( 1, Math.min( numThreads, tiles.size() ) );
+		Parallel.run( "FusedMorphology", numTasks, new Parallel.Task()
+		{
+			@Override
+			public void run( final int t )
+			{
+				processTiles( source, target, tiles, nextTile, new double[ scratchSize ], new double[ scratchSize ] );
+			}
+		} );
+	}
+
+	private < T extends RealType< T > > void processTiles( final RandomAccessibleInterval< T > source, final RandomAccessibleInterval< T > target, final List< Interval > tiles, final AtomicInteger nextTile, final double[] scratch1, final double[] scratch2 )
+	{
+		for ( int i = nextTile.getAndIncrement(); i < tiles.size(); i = nextTile.getAndIncrement() )
+			processTile( source, target, tiles.get( i ), scratch1, scratch2 );
+	}
+
+	private < T extends RealType< T > > void processTile( final RandomAccessibleInterval< T > source, final RandomAccessibleInterval< T > target, final Interval tile, final double[] scratch1, final double[] scratch2 )
+	{
+		// tile plus halo, clipped at the image border
+		final long[] min = new long[ n ];
+		final long[] max = new long[ n ];
+		final int[] steps = new int[ n ];
+		int size = 1;
+		for ( int d = 0; d < n; ++d )
+		{
+			min[ d ] = Math.max( imgMin[ d ], tile.min( d ) - halo[ d ] );
+			max[ d ] = Math.min( imgMax[ d ], tile.max( d ) + halo[ d ] );
+			steps[ d ] = size;
+			size *= ( int ) ( max[ d ] - min[ d ] + 1 );
+		}
+
+		double[] in = scratch1;
+		double[] out = scratch2;
+		final Cursor< T > c = Views.flatIterable( Views.interval( source, min, max ) ).cursor();
+		for ( int i = 0; i < size; ++i )
+			in[ i ] = c.next().getRealDouble();
+
+		// region in which the values of in are valid
+		final long[] validMin = min.clone();
+		final long[] validMax = max.clone();
+		final long[] nextMin = new long[ n ];
+		final long[] nextMax = new long[ n ];
+		for ( final boolean dilate : passes )
+		{
+			for ( int s = 0; s < shapeOffsets.length; ++s )
+			{
+				final long[][] bounds = shapeBounds[ s ];
+				for ( int d = 0; d < n; ++d )
+				{
+					nextMin[ d ] = validMin[ d ] == imgMin[ d ] ? validMin[ d ] : validMin[ d ] - Math.min( 0, bounds[ 0 ][ d ] );
+					nextMax[ d ] = validMax[ d ] == imgMax[ d ] ? validMax[ d ] : validMax[ d ] - Math.max( 0, bounds[ 1 ][ d ] );
+				}
+				apply( in, out, min, steps, nextMin, nextMax, shapeOffsets[ s ], dilate );
+				final double[] tmp = in;
+				in = out;
+				out = tmp;
+				System.arraycopy( nextMin, 0, validMin, 0, n );
+				System.arraycopy( nextMax, 0, validMax, 0, n );
+			}
+		}
+
+		write( in, min, steps, source, target, tile );
+	}
+
+	/**
+	 * Computes the maximum (minimum) over one shape for all pixels in
+	 * {@code regionMin..regionMax}, row by row. For each offset, the pixels of
+	 * the row whose neighbor at that offset is inside the image form a
+	 * contiguous range, so the inner loop has no bounds checks.
+	 */
+	private void apply( final double[] in, final double[] out, final long[] min, final int[] steps, final long[] regionMin, final long[] regionMax, final long[][] offsets, final boolean dilate )
+	{
+		final double outside = dilate ? minValue : maxValue;
+		final int[] deltas = new int[ offsets.length ];
+		for ( int o = 0; o < offsets.length; ++o )
+			for ( int d = 0; d < n; ++d )
+				deltas[ o ] += ( int ) offsets[ o ][ d ] * steps[ d ];
+
+		final long[] position = regionMin.clone();
+		while ( true )
+		{
+			int rowStart = 0;
+			for ( int d = 1; d < n; ++d )
+				rowStart += ( int ) ( position[ d ] - min[ d ] ) * steps[ d ];
+			rowStart -= ( int ) min[ 0 ];
+
+			for ( int x = ( int ) regionMin[ 0 ]; x <= regionMax[ 0 ]; ++x )
+				out[ rowStart + x ] = outside;
+
+			offsets: for ( int o = 0; o < offsets.length; ++o )
+			{
+				final long[] offset = offsets[ o ];
+				for ( int d = 1; d < n; ++d )
+				{
+					final long p = position[ d ] + offset[ d ];
+					if ( p < imgMin[ d ] || p > imgMax[ d ] )
+						continue offsets;
+				}
+				final int from = rowStart + ( int ) Math.max( regionMin[ 0 ], imgMin[ 0 ] - offset[ 0 ] );
+				final int to = rowStart + ( int ) Math.min( regionMax[ 0 ], imgMax[ 0 ] - offset[ 0 ] );
+				final int delta = deltas[ o ];
+				if ( dilate )
+				{
+					for ( int i = from; i <= to; ++i )
+						if ( in[ i + delta ] > out[ i ] )
+							out[ i ] = in[ i + delta ];
+				}
+				else
+				{
+					for ( int i = from; i <= to; ++i )
+						if ( in[ i + delta ] < out[ i ] )
+							out[ i ] = in[ i + delta ];
+				}
+			}
+
+			int d = 1;
+			for ( ; d < n; ++d )
+			{
+				if ( ++position[ d ] <= regionMax[ d ] )
+					break;
+				position[ d ] = regionMin[ d ];
+			}
+			if ( d >= n )
+				break;
+		}
+	}
+
+	/**
+	 * Writes the tile part of {@code result} to the target, combined with the
+	 * source for the top-hats.
+	 */
+	private < T extends RealType< T > > void write( final double[] result, final long[] min, final int[] steps, final RandomAccessibleInterval< T > source, final RandomAccessibleInterval< T > target, final Interval tile )
+	{
+		final Cursor< T > t = Views.flatIterable( Views.interval( target, tile ) ).cursor();
+		final Cursor< T > s = Views.flatIterable( Views.interval( source, tile ) ).cursor();
+		final long[] position = new long[ n ];
+		tile.min( position );
+		while ( true )
+		{
+			int i = ( int ) ( tile.min( 0 ) - min[ 0 ] );
+			for ( int d = 1; d < n; ++d )
+				i += ( int ) ( position[ d ] - min[ d ] ) * steps[ d ];
+			for ( long x = tile.min( 0 ); x <= tile.max( 0 ); ++x, ++i )
+			{
+				switch ( operation )
+				{
+				case TOP_HAT:
+					t.next().setReal( s.next().getRealDouble() - result[ i ] );
+					break;
+				case BLACK_TOP_HAT:
+					t.next().setReal( result[ i ] - s.next().getRealDouble() );
+					break;
+				default:
+					t.next().setReal( result[ i ] );
+				}
+			}
+
+			int d = 1;
+			for ( ; d < n; ++d )
+			{
+				if ( ++position[ d ] <= tile.max( d ) )
+					break;
+				position[ d ] = tile.min( d );
+			}
+			if ( d >= n )
+				break;
+		}
+	}
+}
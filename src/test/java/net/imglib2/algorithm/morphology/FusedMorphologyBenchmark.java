@@ -0,0 +1,130 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.algorithm.morphology;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import net.imglib2.algorithm.morphology.TiledMorphology.Operation;
+import net.imglib2.algorithm.neighborhood.Shape;
+import net.imglib2.algorithm.util.ImgComparison;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Util;
+
+/**
+ * Compares the compound operators of this package ({@link Opening},
+ * {@link Closing}, {@link TopHat}, {@link BlackTopHat}) with
+ * {@link FusedMorphology} on large images, in time and in bytes allocated,
+ * and checks that the results are identical.
+ * <p>
+ * Both run in the calling thread, so that the bytes allocated by the
+ * operation can be read from the {@link com.sun.management.ThreadMXBean} of
+ * that thread. This is the total allocated, not the peak, but for these
+ * operators, which never free an intermediate image before the end, the two
+ * are about the same.
+ * </p>
+ */
+public class FusedMorphologyBenchmark
+{
+	private static final Operation[] OPERATIONS = new Operation[] { Operation.OPEN, Operation.CLOSE, Operation.TOP_HAT, Operation.BLACK_TOP_HAT };
+
+	public static void main( final String[] args )
+	{
+		final int numRuns = 3;
+		final int tileSize = Integer.getInteger( "tileSize", 64 );
+		benchmark( new long[] { 2048, 2048 }, 5, tileSize, numRuns );
+		benchmark( new long[] { 256, 256, 128 }, 3, tileSize, numRuns );
+	}
+
+	public static void benchmark( final long[] dimensions, final int radius, final int tileSize, final int numRuns )
+	{
+		final int n = dimensions.length;
+		final Img< FloatType > img = ArrayImgs.floats( dimensions );
+		final Random random = new Random( 1l );
+		for ( final FloatType t : img )
+			t.set( random.nextFloat() );
+		final int[] tile = new int[ n ];
+		Arrays.fill( tile, tileSize );
+
+		final Map< String, List< Shape > > strels = new LinkedHashMap< String, List< Shape > >();
+		strels.put( "square (decomposed)", StructuringElements.square( radius, n, true ) );
+		strels.put( "diamond (decomposed)", StructuringElements.diamond( radius, n, true ) );
+
+		System.out.println();
+		System.out.println( "===== " + Util.printCoordinates( dimensions ) + " float, radius " + radius + ", tile size " + tileSize + ", 1 thread =====" );
+		System.out.println( String.format( "%-14s %-22s %12s %12s %14s %14s %10s", "operation", "strel", "library ms", "fused ms", "library MB", "fused MB", "identical" ) );
+		for ( final Operation operation : OPERATIONS )
+		{
+			for ( final Map.Entry< String, List< Shape > > entry : strels.entrySet() )
+			{
+				final List< Shape > strel = entry.getValue();
+				Img< FloatType > library = null;
+				Img< FloatType > fused = null;
+				final long[] libraryTimes = new long[ numRuns ];
+				final long[] fusedTimes = new long[ numRuns ];
+				long libraryBytes = 0;
+				long fusedBytes = 0;
+				for ( int i = 0; i < numRuns; ++i )
+				{
+					long bytes = allocatedBytes();
+					long start = System.currentTimeMillis();
+					library = TiledMorphology.compute( operation, img, strel, 1 );
+					libraryTimes[ i ] = System.currentTimeMillis() - start;
+					libraryBytes = allocatedBytes() - bytes;
+
+					bytes = allocatedBytes();
+					start = System.currentTimeMillis();
+					fused = FusedMorphology.compute( operation, img, strel, tile, 1 );
+					fusedTimes[ i ] = System.currentTimeMillis() - start;
+					fusedBytes = allocatedBytes() - bytes;
+				}
+				System.out.println( String.format( "%-14s %-22s %12d %12d %14.1f %14.1f %10s", operation, entry.getKey(),
+						Util.median( libraryTimes ), Util.median( fusedTimes ),
+						libraryBytes / 1e6, fusedBytes / 1e6, ImgComparison.identical( library, fused ) ) );
+			}
+		}
+	}
+
+	/**
+	 * @return the bytes allocated so far by the calling thread, or 0 if the
+	 *         JVM cannot tell.
+	 */
+	private static long allocatedBytes()
+	{
+		final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if ( bean instanceof com.sun.management.ThreadMXBean )
+			return ( ( com.sun.management.ThreadMXBean ) bean ).getThreadAllocatedBytes( Thread.currentThread().getId() );
+		return 0;
+	}
+}
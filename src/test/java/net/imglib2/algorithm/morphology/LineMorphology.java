@@ -0,0 +1,207 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.algorithm.morphology;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.neighborhood.Shape;
+import net.imglib2.algorithm.util.Parallel;
+import net.imglib2.img.Img;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Dilation and erosion with structuring elements whose offsets are
+ * {@code k * step} for consecutive {@code k}, along an arbitrary direction:
+ * {@code PeriodicLineShape} ({@code k = -span..span}, {@code step} the
+ * increments) and {@code PairOfPointsShape} ({@code k = 0..1}, {@code step}
+ * the offset).
+ * <p>
+ * Such an operation is one-dimensional: every pixel lies on exactly one
+ * discrete line {@code x + t * step} through the image, and the result on
+ * that line only depends on the values along it. Each line is read with a
+ * stride of {@code step}, the running maximum over the window
+ * {@code kmin..kmax} is computed with
+ * {@link VanHerkGilWerman#runningMax(double[], int, long, int, double[], double[], double[])
+ * van Herk/Gil-Werman} (3 comparisons per pixel, whatever the span) and the
+ * line is written back in place.
+ * </p>
+ * <p>
+ * As in {@link Dilation} and {@link Erosion}, pixels outside the source do
+ * not contribute. Erosion is computed as -dilate(-f).
+ * </p>
+ *
+ * @see FastMorphology
+ */
+public class LineMorphology
+{
+	/**
+	 * @return the {@link ShapeOffsets#line(Shape, int)} of every shape, or
+	 *         {@code null} if one of them is not a line.
+	 */
+	public static List< long[][] > lines( final List< Shape > strels, final int numDimensions )
+	{
+		final List< long[][] > lines = new ArrayList< long[][] >();
+		for ( final Shape strel : strels )
+		{
+			final long[][] line = ShapeOffsets.line( strel, numDimensions );
+			if ( line == null )
+				return null;
+			lines.add( line );
+		}
+		return lines;
+	}
+
+	public static < T extends RealType< T > & NativeType< T > > Img< T > dilate( final Img< T > source, final List< long[][] > lines, final int numThreads )
+	{
+		final Img< T > target = source.factory().create( source, source.firstElement().createVariable() );
+		VanHerkGilWerman.copy( source, target );
+		for ( final long[][] line : lines )
+			apply( target, line, true, numThreads );
+		return target;
+	}
+
+	public static < T extends RealType< T > & NativeType< T > > Img< T > erode( final Img< T > source, final List< long[][] > lines, final int numThreads )
+	{
+		final Img< T > target = source.factory().create( source, source.firstElement().createVariable() );
+		VanHerkGilWerman.copy( source, target );
+		for ( final long[][] line : lines )
+			apply( target, line, false, numThreads );
+		return target;
+	}
+
+	/**
+	 * Dilates (or erodes) {@code img} in place by the line
+	 * {@code { step, { kmin, kmax } }}.
+	 */
+	public static < T extends RealType< T > > void apply( final RandomAccessibleInterval< T > img, final long[][] line, final boolean dilate, final int numThreads )
+	{
+		Parallel.runRanges( "LineMorphology", img.size(), numThreads, new Parallel.RangeTask()
+		{
+			@Override
+			public void run( final long first, final long last )
+			{
+				processLines( img, line[ 0 ], line[ 1 ][ 0 ], line[ 1 ][ 1 ], dilate, first, last );
+			}
+		} );
+	}
+
+	/**
+	 * Processes the lines that start at a pixel with flat index in
+	 * {@code [first, last)}. A line starts at {@code x} if {@code x - step}
+	 * is outside the image.
+	 */
+	private static < T extends RealType< T > > void processLines( final RandomAccessibleInterval< T > img, final long[] step, final long kmin, final long kmax, final boolean dilate, final long first, final long last )
+	{
+		final int n = img.numDimensions();
+		final long[] min = new long[ n ];
+		final long[] max = new long[ n ];
+		img.min( min );
+		img.max( max );
+
+		// no line is longer than the image along any axis it moves on
+		long maxLength = Long.MAX_VALUE;
+		for ( int d = 0; d < n; ++d )
+			if ( step[ d ] != 0 )
+				maxLength = Math.min( maxLength, ( img.dimension( d ) + Math.abs( step[ d ] ) - 1 ) / Math.abs( step[ d ] ) );
+		final int w = ( int ) ( kmax - kmin + 1 );
+		final int padded = ( int ) maxLength + w - 1;
+		final double[] values = new double[ ( int ) maxLength ];
+		final double[] ext = new double[ padded ];
+		final double[] g = new double[ padded ];
+		final double[] h = new double[ padded ];
+		final double sign = dilate ? 1 : -1;
+
+		final RandomAccess< T > ra = img.randomAccess();
+		final T type = ra.get();
+		final double outside = dilate ? type.getMinValue() : type.getMaxValue();
+
+		final long[] position = new long[ n ];
+		final long[] p = new long[ n ];
+		long index = first;
+		for ( int d = 0; d < n; ++d )
+		{
+			final long size = img.dimension( d );
+			position[ d ] = min[ d ] + index % size;
+			index /= size;
+		}
+		for ( long i = first; i < last; ++i )
+		{
+			if ( !inside( position, step, -1, min, max ) )
+			{
+				ra.setPosition( position );
+				System.arraycopy( position, 0, p, 0, n );
+				int length = 0;
+				while ( true )
+				{
+					values[ length++ ] = sign * ra.get().getRealDouble();
+					for ( int d = 0; d < n; ++d )
+						p[ d ] += step[ d ];
+					if ( !inside( p, step, 0, min, max ) )
+						break;
+					ra.move( step );
+				}
+
+				VanHerkGilWerman.runningMax( values, length, kmin, w, ext, g, h );
+
+				ra.setPosition( position );
+				for ( int k = 0; k < length; ++k )
+				{
+					if ( k > 0 )
+						ra.move( step );
+					ra.get().setReal( values[ k ] == Double.NEGATIVE_INFINITY ? outside : sign * values[ k ] );
+				}
+			}
+
+			for ( int d = 0; d < n; ++d )
+			{
+				if ( ++position[ d ] <= max[ d ] )
+					break;
+				position[ d ] = min[ d ];
+			}
+		}
+	}
+
+	/**
+	 * @return whether {@code position + factor * step} is inside
+	 *         {@code min..max}.
+	 */
+	private static boolean inside( final long[] position, final long[] step, final int factor, final long[] min, final long[] max )
+	{
+		for ( int d = 0; d < position.length; ++d )
+		{
+			final long p = position[ d ] + factor * step[ d ];
+			if ( p < min[ d ] || p > max[ d ] )
+				return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.algorithm.morphology;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import net.imglib2.algorithm.neighborhood.PairOfPointsShape;
+import net.imglib2.algorithm.neighborhood.PeriodicLineShape;
+import net.imglib2.algorithm.neighborhood.Shape;
+import net.imglib2.algorithm.util.ImgComparison;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.util.Util;
+
+/**
+ * Sweeps span and direction of {@link PeriodicLineShape}, and offset of
+ * {@link PairOfPointsShape}, and compares for each the generic
+ * {@link Dilation}, the primitive-array {@link PrimitiveMorphology} (which
+ * treats the shape as an arbitrary list of offsets) and the strided
+ * {@link LineMorphology}, and checks that the results are identical.
+ */
+public class LineShapeBenchmark
+{
+	private static final int[][] DIRECTIONS = new int[][] {
+			{ 1, 0 },
+			{ 0, 1 },
+			{ 1, 1 },
+			{ 2, 1 },
+			{ 3, -2 },
+			{ 20, -15 } };
+
+	private static final int[] SPANS = new int[] { 1, 2, 5, 10, 20, 50 };
+
+	private static final long[][] PAIR_OFFSETS = new long[][] {
+			{ 1, 0 },
+			{ 0, 5 },
+			{ -10, 20 },
+			{ 10, 20 },
+			{ 100, -3 } };
+
+	public static void main( final String[] args )
+	{
+		final int numRuns = 3;
+		final long[] dimensions = new long[] { 1024, 1024 };
+		final Img< UnsignedByteType > img = ArrayImgs.unsignedBytes( dimensions );
+		final Random random = new Random( 1l );
+		for ( final UnsignedByteType t : img )
+			t.set( random.nextInt( 256 ) );
+
+		System.out.println( "PeriodicLineShape, " + Util.printCoordinates( dimensions ) + ", dilation, 1 thread, median of " + numRuns + " runs." );
+		System.out.println( "Direction\tSpan\tGeneric (ms)\tPrimitive (ms)\tStrided (ms)\tIdentical" );
+		for ( final int[] direction : DIRECTIONS )
+			for ( final int span : SPANS )
+				compare( img, new PeriodicLineShape( span, direction ), Util.printCoordinates( direction ) + "\t" + span, numRuns );
+
+		System.out.println();
+		System.out.println( "PairOfPointsShape, " + Util.printCoordinates( dimensions ) + ", dilation, 1 thread, median of " + numRuns + " runs." );
+		System.out.println( "Offset\t\tGeneric (ms)\tPrimitive (ms)\tStrided (ms)\tIdentical" );
+		for ( final long[] offset : PAIR_OFFSETS )
+			compare( img, new PairOfPointsShape( offset ), Util.printCoordinates( offset ) + "\t", numRuns );
+	}
+
+	private static void compare( final Img< UnsignedByteType > img, final Shape shape, final String label, final int numRuns )
+	{
+		final List< Shape > strels = Collections.singletonList( shape );
+		final List< long[][] > lines = LineMorphology.lines( strels, img.numDimensions() );
+
+		Img< UnsignedByteType > generic = null;
+		Img< UnsignedByteType > primitive = null;
+		Img< UnsignedByteType > strided = null;
+		final long[] genericTimes = new long[ numRuns ];
+		final long[] primitiveTimes = new long[ numRuns ];
+		final long[] stridedTimes = new long[ numRuns ];
+		for ( int i = 0; i < numRuns; ++i )
+		{
+			long start = System.currentTimeMillis();
+			generic = Dilation.dilate( img, strels, 1 );
+			genericTimes[ i ] = System.currentTimeMillis() - start;
+
+			start = System.currentTimeMillis();
+			primitive = PrimitiveMorphology.dilate( img, strels, 1 );
+			primitiveTimes[ i ] = System.currentTimeMillis() - start;
+
+			start = System.currentTimeMillis();
+			strided = LineMorphology.dilate( img, lines, 1 );
+			stridedTimes[ i ] = System.currentTimeMillis() - start;
+		}
+		final boolean identical = ImgComparison.identical( generic, primitive )
+				&& ImgComparison.identical( generic, strided );
+		System.out.println( label + "\t" + Util.median( genericTimes ) + "\t" + Util.median( primitiveTimes ) + "\t" + Util.median( stridedTimes ) + "\t" + identical );
+	}
+}
@@ -0,0 +1,235 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.algorithm.morphology;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.imglib2.algorithm.morphology.TiledMorphology.Operation;
+import net.imglib2.algorithm.neighborhood.Shape;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.util.Util;
+import tests.ResultStore;
+
+/**
+ * Sweeps number of threads and image size for every morphological operation
+ * and structuring element decomposition, with the {@code numThreads}
+ * parameter of the whole-image operators, with {@link TiledMorphology} and
+ * with {@link FusedMorphology}.
+ * <p>
+ * The other tests in this package all run with 1 thread. Here, for every
+ * combination, the median time and the speedup over 1 thread (of the same
+ * mode) is printed, and all times are appended to the {@link ResultStore}.
+ * </p>
+ * <p>
+ * Options: {@code -Dops=DILATE,OPEN,...} (default all), {@code -Dradius=5},
+ * {@code -Dthreads=1,2,4,8} (default powers of 2 up to the number of cores,
+ * 1 is always added for the speedup baseline),
+ * {@code -DtileSize=128}, {@code -Druns=3}.
+ * </p>
+ */
+public class MorphologyBenchmark
+{
+	private static final long[][] SIZES = new long[][] {
+			{ 512, 512 },
+			{ 2048, 2048 },
+			{ 256, 256, 64 } };
+
+	private static final String[] MODES = new String[] { "library", "tiled", "fused" };
+
+	private final int radius;
+
+	private final int[] threadCounts;
+
+	private final int tileSize;
+
+	private final int numRuns;
+
+	private final List< Operation > operations;
+
+	/** Metadata of this run, for the {@link ResultStore}. */
+	private final ResultStore.Run run = ResultStore.Run.current();
+
+	public static void main( final String[] args ) throws InterruptedException, ExecutionException, IOException
+	{
+		final List< Operation > operations = new ArrayList< Operation >();
+		final String ops = System.getProperty( "ops" );
+		if ( ops == null )
+			operations.addAll( Arrays.asList( Operation.values() ) );
+		else
+			for ( final String op : ops.split( "," ) )
+				operations.add( Operation.valueOf( op.trim() ) );
+
+		final String threads = System.getProperty( "threads" );
+		final int[] threadCounts;
+		if ( threads == null )
+		{
+			final List< Integer > counts = new ArrayList< Integer >();
+			final int cores = Runtime.getRuntime().availableProcessors();
+			for ( int t = 1; t < cores; t *= 2 )
+				counts.add( t );
+			counts.add( cores );
+			threadCounts = new int[ counts.size() ];
+			for ( int i = 0; i < threadCounts.length; ++i )
+				threadCounts[ i ] = counts.get( i );
+		}
+		else
+		{
+			final String[] parts = threads.split( "," );
+			threadCounts = new int[ parts.length ];
+			for ( int i = 0; i < parts.length; ++i )
+				threadCounts[ i ] = Integer.parseInt( parts[ i ].trim() );
+		}
+
+		final MorphologyBenchmark benchmark = new MorphologyBenchmark( operations, Integer.getInteger( "radius", 5 ), threadCounts, Integer.getInteger( "tileSize", 128 ), Integer.getInteger( "runs", 3 ) );
+		for ( final long[] size : SIZES )
+			benchmark.benchmark( size );
+		System.exit( 0 );
+	}
+
+	public MorphologyBenchmark( final List< Operation > operations, final int radius, final int[] threadCounts, final int tileSize, final int numRuns )
+	{
+		this.operations = operations;
+		this.radius = radius;
+		this.threadCounts = withSingleThread( threadCounts );
+		this.tileSize = tileSize;
+		this.numRuns = numRuns;
+	}
+
+	/**
+	 * The structuring elements to compare, by name.
+	 */
+	public static Map< String, List< Shape > > strels( final int radius, final int numDimensions )
+	{
+		final Map< String, List< Shape > > strels = new LinkedHashMap< String, List< Shape > >();
+		strels.put( "square", StructuringElements.square( radius, numDimensions, false ) );
+		strels.put( "square (decomposed)", StructuringElements.square( radius, numDimensions, true ) );
+		strels.put( "diamond", StructuringElements.diamond( radius, numDimensions, false ) );
+		strels.put( "diamond (decomposed)", StructuringElements.diamond( radius, numDimensions, true ) );
+		strels.put( "disk", StructuringElements.disk( radius, numDimensions, 0 ) );
+		strels.put( "disk (decomposed)", StructuringElements.disk( radius, numDimensions, 4 ) );
+		return strels;
+	}
+
+	public void benchmark( final long[] dimensions ) throws InterruptedException, ExecutionException, IOException
+	{
+		final int n = dimensions.length;
+		final Img< UnsignedByteType > img = ArrayImgs.unsignedBytes( dimensions );
+		final Random random = new Random( 1l );
+		for ( final UnsignedByteType t : img )
+			t.set( random.nextInt( 256 ) );
+		final int[] tile = new int[ n ];
+		Arrays.fill( tile, tileSize );
+
+		final String size = Util.printCoordinates( dimensions );
+		System.out.println();
+		System.out.println( "===== " + size + ", radius " + radius + ", tile size " + tileSize + " =====" );
+		System.out.println( String.format( "%-14s %-22s %-8s %8s %10s %8s", "operation", "strel", "mode", "threads", "median ms", "speedup" ) );
+
+		for ( final Operation operation : operations )
+		{
+			for ( final Map.Entry< String, List< Shape > > entry : strels( radius, n ).entrySet() )
+			{
+				final List< Shape > strels = entry.getValue();
+				final List< Map< String, Long > > results = new ArrayList< Map< String, Long > >();
+				for ( int i = 0; i < numRuns; ++i )
+					results.add( new HashMap< String, Long >() );
+
+				for ( final String mode : MODES )
+				{
+					long baseline = 0;
+					for ( final int numThreads : threadCounts )
+					{
+						final ExecutorService service = Executors.newFixedThreadPool( numThreads );
+						try
+						{
+							// warm up
+							run( operation, img, strels, numThreads, mode, tile, service );
+							final long[] times = new long[ numRuns ];
+							for ( int i = 0; i < numRuns; ++i )
+							{
+								final long start = System.currentTimeMillis();
+								run( operation, img, strels, numThreads, mode, tile, service );
+								times[ i ] = System.currentTimeMillis() - start;
+								results.get( i ).put( mode + " [" + numThreads + " threads]", times[ i ] );
+							}
+							final long median = Util.median( times );
+							if ( numThreads == 1 )
+								baseline = median;
+							System.out.println( String.format( "%-14s %-22s %-8s %8d %10d %8.2f", operation, entry.getKey(), mode, numThreads, median, median == 0 ? 0 : ( double ) baseline / median ) );
+						}
+						finally
+						{
+							service.shutdown();
+						}
+					}
+				}
+				ResultStore.getDefault().append( run, getClass().getSimpleName(), operation + " " + entry.getKey() + " r=" + radius, size, results );
+			}
+		}
+	}
+
+	/**
+	 * Returns the thread counts sorted and with 1 added, so the speedups are
+	 * relative to a measured single-threaded run.
+	 */
+	private static int[] withSingleThread( final int[] threadCounts )
+	{
+		final SortedSet< Integer > counts = new TreeSet< Integer >();
+		counts.add( 1 );
+		for ( final int count : threadCounts )
+			counts.add( count );
+		final int[] array = new int[ counts.size() ];
+		int i = 0;
+		for ( final int count : counts )
+			array[ i++ ] = count;
+		return array;
+	}
+
+	private static Img< UnsignedByteType > run( final Operation operation, final Img< UnsignedByteType > img, final List< Shape > strels, final int numThreads, final String mode, final int[] tileSize, final ExecutorService service ) throws InterruptedException, ExecutionException
+	{
+		if ( mode.equals( "tiled" ) )
+			return TiledMorphology.compute( operation, img, strels, tileSize, service );
+		if ( mode.equals( "fused" ) )
+			return FusedMorphology.compute( operation, img, strels, tileSize, numThreads );
+		return TiledMorphology.compute( operation, img, strels, numThreads );
+	}
+}
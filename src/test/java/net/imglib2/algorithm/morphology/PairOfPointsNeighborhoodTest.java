@@ -61,6 +61,11 @@ public class PairOfPointsNeighborhoodTest
 
 		System.out.println( "Processing done in " + ( end - start ) + " ms." );
 
+		final long startStrided = System.currentTimeMillis();
+		FastMorphology.dilate( img, shape, 1 );
+		final long endStrided = System.currentTimeMillis();
+		System.out.println( "Strided kernel done in " + ( endStrided - startStrided ) + " ms." );
+
 		ImageJFunctions.show( img );
 		ImageJFunctions.show( target );
 
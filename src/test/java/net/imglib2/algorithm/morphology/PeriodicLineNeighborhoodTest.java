@@ -58,6 +58,11 @@ public class PeriodicLineNeighborhoodTest {
 
 		System.out.println( "Processing done in " + ( end - start ) + " ms." );
 
+		final long startStrided = System.currentTimeMillis();
+		FastMorphology.erode( img, shape, 1 );
+		final long endStrided = System.currentTimeMillis();
+		System.out.println( "Strided kernel done in " + ( endStrided - startStrided ) + " ms." );
+
 		ImageJFunctions.show(img);
 		ImageJFunctions.show(target);
 
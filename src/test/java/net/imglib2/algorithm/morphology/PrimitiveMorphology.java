@@ -0,0 +1,331 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.algorithm.morphology;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import net.imglib2.algorithm.neighborhood.Shape;
+import net.imglib2.algorithm.util.Parallel;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.img.basictypeaccess.array.FloatArray;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+
+/**
+ * Grayscale dilation and erosion of {@link ArrayImg}s of
+ * {@link UnsignedByteType}, {@link UnsignedShortType} and {@link FloatType}
+ * that work on the underlying {@code byte[]}, {@code short[]} and
+ * {@code float[]} directly.
+ * <p>
+ * {@link Dilation} and {@link Erosion} iterate a {@code Neighborhood<T>} per
+ * pixel and call {@code compareTo} and {@code set} per neighbor. Here, the
+ * offsets of each shape are converted once into index differences in the
+ * flat array. The image is then processed row by row: for each offset, the
+ * pixels of a row whose neighbor at that offset is inside the image form one
+ * contiguous range, which is combined with the shifted row in a loop without
+ * bounds checks or virtual calls. Pixels outside the image count as the
+ * minimum (maximum) of the type, as in {@link Dilation} ({@link Erosion}), so
+ * the results are identical.
+ * </p>
+ */
+public class PrimitiveMorphology
+{
+	/**
+	 * @return whether {@code img} is an {@link ArrayImg} of a type supported
+	 *         here.
+	 */
+	public static boolean isSupported( final Img< ? > img )
+	{
+		return kernel( img ) != null;
+	}
+
+	public static < T extends RealType< T > & NativeType< T > > Img< T > dilate( final Img< T > source, final Shape strel, final int numThreads )
+	{
+		return dilate( source, Collections.singletonList( strel ), numThreads );
+	}
+
+	public static < T extends RealType< T > & NativeType< T > > Img< T > dilate( final Img< T > source, final List< Shape > strels, final int numThreads )
+	{
+		return apply( source, strels, true, numThreads );
+	}
+
+	public static < T extends RealType< T > & NativeType< T > > Img< T > erode( final Img< T > source, final Shape strel, final int numThreads )
+	{
+		return erode( source, Collections.singletonList( strel ), numThreads );
+	}
+
+	public static < T extends RealType< T > & NativeType< T > > Img< T > erode( final Img< T > source, final List< Shape > strels, final int numThreads )
+	{
+		return apply( source, strels, false, numThreads );
+	}
+
+	private static < T extends RealType< T > & NativeType< T > > Img< T > apply( final Img< T > source, final List< Shape > strels, final boolean dilate, final int numThreads )
+	{
+		final Kernel kernel = kernel( source );
+		if ( kernel == null )
+			throw new IllegalArgumentException( "not an ArrayImg of UnsignedByteType, UnsignedShortType or FloatType: " + source );
+
+		final Img< T > target = source.factory().create( source, source.firstElement().createVariable() );
+		final int n = source.numDimensions();
+		final int[] dimensions = new int[ n ];
+		for ( int d = 0; d < n; ++d )
+			dimensions[ d ] = ( int ) source.dimension( d );
+		final int size = ( int ) source.size();
+
+		// source -> scratch[ 0 ] -> scratch[ 1 ] -> scratch[ 0 ] ... -> target
+		final Object[] scratch = new Object[ 2 ];
+		Object in = storage( source );
+		for ( int s = 0; s < strels.size(); ++s )
+		{
+			final Object out;
+			if ( s == strels.size() - 1 )
+				out = storage( target );
+			else
+			{
+				if ( scratch[ s % 2 ] == null )
+					scratch[ s % 2 ] = kernel.create( size );
+				out = scratch[ s % 2 ];
+			}
+			final List< long[] > offsets = ShapeOffsets.offsets( strels.get( s ), n );
+			apply( kernel, in, out, dimensions, offsets.toArray( new long[ 0 ][] ), dilate, numThreads );
+			in = out;
+		}
+		if ( strels.isEmpty() )
+			System.arraycopy( in, 0, storage( target ), 0, size );
+		return target;
+	}
+
+	private static void apply( final Kernel kernel, final Object in, final Object out, final int[] dimensions, final long[][] offsets, final boolean dilate, final int numThreads )
+	{
+		final int n = dimensions.length;
+		int numRows = 1;
+		for ( int d = 1; d < n; ++d )
+			numRows *= dimensions[ d ];
+
+		Parallel.runRanges( "PrimitiveMorphology", numRows, numThreads, new Parallel.RangeTask()
+		{
+			@Override
+			public void run( final long firstRow, final long lastRow )
+			{
+				processRows( kernel, in, out, dimensions, offsets, dilate, ( int ) firstRow, ( int ) lastRow );
+			}
+		} );
+	}
+
+	private static void processRows( final Kernel kernel, final Object in, final Object out, final int[] dimensions, final long[][] offsets, final boolean dilate, final int firstRow, final int lastRow )
+	{
+		final int n = dimensions.length;
+		final int width = dimensions[ 0 ];
+		final int[] steps = new int[ n ];
+		steps[ 0 ] = 1;
+		for ( int d = 1; d < n; ++d )
+			steps[ d ] = steps[ d - 1 ] * dimensions[ d - 1 ];
+		final int[] deltas = new int[ offsets.length ];
+		for ( int o = 0; o < offsets.length; ++o )
+			for ( int d = 0; d < n; ++d )
+				deltas[ o ] += ( int ) offsets[ o ][ d ] * steps[ d ];
+
+		final int[] position = new int[ n ];
+		for ( int row = firstRow; row < lastRow; ++row )
+		{
+			for ( int d = 1, r = row; d < n; ++d )
+			{
+				position[ d ] = r % dimensions[ d ];
+				r /= dimensions[ d ];
+			}
+			final int rowStart = row * width;
+			kernel.fill( out, rowStart, rowStart + width - 1, dilate );
+
+			offsets: for ( int o = 0; o < offsets.length; ++o )
+			{
+				final long[] offset = offsets[ o ];
+				for ( int d = 1; d < n; ++d )
+				{
+					final long p = position[ d ] + offset[ d ];
+					if ( p < 0 || p >= dimensions[ d ] )
+						continue offsets;
+				}
+				final int from = rowStart + ( int ) Math.max( 0, -offset[ 0 ] );
+				final int to = rowStart + ( int ) Math.min( width - 1, width - 1 - offset[ 0 ] );
+				if ( from <= to )
+					kernel.combine( in, out, from, to, deltas[ o ], dilate );
+			}
+		}
+	}
+
+	private static Object storage( final Img< ? > img )
+	{
+		return ( ( ArrayDataAccess< ? > ) ( ( ArrayImg< ?, ? > ) img ).update( null ) ).getCurrentStorageArray();
+	}
+
+	private static Kernel kernel( final Img< ? > img )
+	{
+		if ( !( img instanceof ArrayImg ) )
+			return null;
+		final Object type = img.firstElement();
+		final Object access = ( ( ArrayImg< ?, ? > ) img ).update( null );
+		if ( type instanceof UnsignedByteType && access instanceof ByteArray )
+			return BYTE;
+		if ( type instanceof UnsignedShortType && access instanceof ShortArray )
+			return SHORT;
+		if ( type instanceof FloatType && access instanceof FloatArray )
+			return FLOAT;
+		return null;
+	}
+
+	/**
+	 * The per-type inner loops.
+	 */
+	private static abstract class Kernel
+	{
+		abstract Object create( int size );
+
+		/**
+		 * Sets {@code out[from..to]} to the value of pixels outside the
+		 * image.
+		 */
+		abstract void fill( Object out, int from, int to, boolean dilate );
+
+		/**
+		 * Sets {@code out[i]} to the maximum (minimum) of {@code out[i]} and
+		 * {@code in[i + delta]} for {@code i = from..to}.
+		 */
+		abstract void combine( Object in, Object out, int from, int to, int delta, boolean dilate );
+	}
+
+	private static final Kernel BYTE = new Kernel()
+	{
+		@Override
+		Object create( final int size )
+		{
+			return new byte[ size ];
+		}
+
+		@Override
+		void fill( final Object out, final int from, final int to, final boolean dilate )
+		{
+			Arrays.fill( ( byte[] ) out, from, to + 1, dilate ? ( byte ) 0 : ( byte ) 0xff );
+		}
+
+		@Override
+		void combine( final Object in, final Object out, final int from, final int to, final int delta, final boolean dilate )
+		{
+			final byte[] a = ( byte[] ) in;
+			final byte[] b = ( byte[] ) out;
+			if ( dilate )
+			{
+				for ( int i = from; i <= to; ++i )
+					if ( ( a[ i + delta ] & 0xff ) > ( b[ i ] & 0xff ) )
+						b[ i ] = a[ i + delta ];
+			}
+			else
+			{
+				for ( int i = from; i <= to; ++i )
+					if ( ( a[ i + delta ] & 0xff ) < ( b[ i ] & 0xff ) )
+						b[ i ] = a[ i + delta ];
+			}
+		}
+	};
+
+	private static final Kernel SHORT = new Kernel()
+	{
+		@Override
+		Object create( final int size )
+		{
+			return new short[ size ];
+		}
+
+		@Override
+		void fill( final Object out, final int from, final int to, final boolean dilate )
+		{
+			Arrays.fill( ( short[] ) out, from, to + 1, dilate ? ( short ) 0 : ( short ) 0xffff );
+		}
+
+		@Override
+		void combine( final Object in, final Object out, final int from, final int to, final int delta, final boolean dilate )
+		{
+			final short[] a = ( short[] ) in;
+			final short[] b = ( short[] ) out;
+			if ( dilate )
+			{
+				for ( int i = from; i <= to; ++i )
+					if ( ( a[ i + delta ] & 0xffff ) > ( b[ i ] & 0xffff ) )
+						b[ i ] = a[ i + delta ];
+			}
+			else
+			{
+				for ( int i = from; i <= to; ++i )
+					if ( ( a[ i + delta ] & 0xffff ) < ( b[ i ] & 0xffff ) )
+						b[ i ] = a[ i + delta ];
+			}
+		}
+	};
+
+	private static final Kernel FLOAT = new Kernel()
+	{
+		@Override
+		Object create( final int size )
+		{
+			return new float[ size ];
+		}
+
+		@Override
+		void fill( final Object out, final int from, final int to, final boolean dilate )
+		{
+			Arrays.fill( ( float[] ) out, from, to + 1, dilate ? -Float.MAX_VALUE : Float.MAX_VALUE );
+		}
+
+		@Override
+		void combine( final Object in, final Object out, final int from, final int to, final int delta, final boolean dilate )
+		{
+			final float[] a = ( float[] ) in;
+			final float[] b = ( float[] ) out;
+			if ( dilate )
+			{
+				for ( int i = from; i <= to; ++i )
+					if ( a[ i + delta ] > b[ i ] )
+						b[ i ] = a[ i + delta ];
+			}
+			else
+			{
+				for ( int i = from; i <= to; ++i )
+					if ( a[ i + delta ] < b[ i ] )
+						b[ i ] = a[ i + delta ];
+			}
+		}
+	};
+}
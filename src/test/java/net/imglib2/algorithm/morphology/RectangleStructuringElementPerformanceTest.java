@@ -30,9 +30,11 @@ import ij.ImageJ;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 import net.imglib2.Cursor;
 import net.imglib2.algorithm.neighborhood.Shape;
+import net.imglib2.algorithm.util.ImgComparison;
 import net.imglib2.img.Img;
 import net.imglib2.img.array.ArrayImg;
 import net.imglib2.img.array.ArrayImgs;
@@ -48,6 +50,66 @@ public class RectangleStructuringElementPerformanceTest
 	{
 		benchmark2DPerformance( args );
 //		benchmark3DPerformance( args );
+		benchmarkLargeRadii();
+	}
+
+	/**
+	 * Rectangles with radius r along x and r / 2 along the other axes, through
+	 * the optimized decomposition with {@link Dilation} (up to radius 128 in
+	 * 2D and 32 in 3D) and through {@link FastMorphology}, which uses
+	 * {@link VanHerkGilWerman}.
+	 */
+	public static void benchmarkLargeRadii()
+	{
+		final int[] radii = new int[] { 1, 2, 4, 8, 16, 32, 64, 100, 128, 200 };
+		final long[][] sizes = new long[][] { { 512, 512 }, { 128, 128, 128 } };
+		final int[] maxGenericRadius = new int[] { 128, 32 };
+		for ( int s = 0; s < sizes.length; ++s )
+		{
+			final ArrayImg< UnsignedByteType, ByteArray > img = ArrayImgs.unsignedBytes( sizes[ s ] );
+			final Random random = new Random( 1l );
+			for ( final UnsignedByteType t : img )
+				t.set( random.nextInt( 256 ) );
+
+			System.out.println();
+			System.out.println( "Rectangle structuring element, " + img.numDimensions() + "D, optimized vs. van Herk/Gil-Werman, 1 thread." );
+			System.out.println( "Radius\tOptimized (ms)\tvHGW (ms)\tIdentical" );
+			// warm up
+			performRectangle( img, 1, false );
+			performRectangle( img, 1, true );
+			performRectangle( img, 1, true );
+			// run test
+			for ( final int r : radii )
+			{
+				final Object[] fast = performRectangle( img, r, true );
+				if ( r <= maxGenericRadius[ s ] )
+				{
+					final Object[] generic = performRectangle( img, r, false );
+					@SuppressWarnings( "unchecked" )
+					final boolean identical = ImgComparison.identical( ( Img< UnsignedByteType > ) generic[ 1 ], ( Img< UnsignedByteType > ) fast[ 1 ] );
+					System.out.println( "" + r + '\t' + generic[ 0 ] + '\t' + fast[ 0 ] + '\t' + identical );
+				}
+				else
+					System.out.println( "" + r + "\t-\t" + fast[ 0 ] + "\t-" );
+			}
+		}
+	}
+
+	private static final Object[] performRectangle( final Img< UnsignedByteType > img, final int radius, final boolean fast )
+	{
+		final long start = System.currentTimeMillis();
+		final List< Shape > strels = StructuringElements.rectangle( radii( img.numDimensions(), radius ), true );
+		final Img< UnsignedByteType > dilated = fast ? FastMorphology.dilate( img, strels, 1 ) : Dilation.dilate( img, strels, 1 );
+		final long end = System.currentTimeMillis();
+		return new Object[] { Long.valueOf( end - start ), dilated };
+	}
+
+	private static int[] radii( final int numDimensions, final int radius )
+	{
+		final int[] radii = new int[ numDimensions ];
+		Arrays.fill( radii, Math.max( 1, radius / 2 ) );
+		radii[ 0 ] = radius;
+		return radii;
 	}
 
 	public static void benchmark3DPerformance( final String[] args )
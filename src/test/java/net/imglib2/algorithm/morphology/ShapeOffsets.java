@@ -0,0 +1,183 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.algorithm.morphology;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.algorithm.neighborhood.Neighborhood;
+import net.imglib2.algorithm.neighborhood.Shape;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.logic.BitType;
+import net.imglib2.view.Views;
+
+/**
+ * Geometry of a {@link Shape}, found by iterating its neighborhood at the
+ * origin. This works for every shape, without relying on shape-specific
+ * getters.
+ */
+public class ShapeOffsets
+{
+	/**
+	 * @return the offsets of all pixels in the neighborhood of a shape, in
+	 *         iteration order.
+	 */
+	public static List< long[] > offsets( final Shape shape, final int numDimensions )
+	{
+		final List< long[] > offsets = new ArrayList< long[] >();
+		final Cursor< BitType > c = neighborhoodAtOrigin( shape, numDimensions ).localizingCursor();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			final long[] offset = new long[ numDimensions ];
+			c.localize( offset );
+			offsets.add( offset );
+		}
+		return offsets;
+	}
+
+	/**
+	 * @return { min, max } of the shape's offsets along each axis if the shape
+	 *         is a full axis-aligned box, otherwise {@code null} (e.g. for
+	 *         disks, diamonds or shapes that skip the center).
+	 */
+	public static long[][] box( final Shape shape, final int numDimensions )
+	{
+		final long[] min = new long[ numDimensions ];
+		final long[] max = new long[ numDimensions ];
+		final long count = probe( shape, min, max );
+		if ( count == 0 )
+			return null;
+		long boxSize = 1;
+		for ( int d = 0; d < numDimensions; ++d )
+			boxSize *= max[ d ] - min[ d ] + 1;
+		return count == boxSize ? new long[][] { min, max } : null;
+	}
+
+	/**
+	 * @return { step, { kmin, kmax } } if the offsets of a shape are exactly
+	 *         {@code k * step} for {@code k = kmin..kmax} (for example
+	 *         {@code PeriodicLineShape} and {@code PairOfPointsShape}),
+	 *         otherwise {@code null}. The step is the lexicographically
+	 *         positive one, never zero.
+	 */
+	public static long[][] line( final Shape shape, final int numDimensions )
+	{
+		final List< long[] > offsets = offsets( shape, numDimensions );
+		if ( offsets.size() < 2 )
+			return null;
+		Collections.sort( offsets, new Comparator< long[] >()
+		{
+			@Override
+			public int compare( final long[] a, final long[] b )
+			{
+				for ( int d = 0; d < a.length; ++d )
+					if ( a[ d ] != b[ d ] )
+						return a[ d ] < b[ d ] ? -1 : 1;
+				return 0;
+			}
+		} );
+
+		final long[] first = offsets.get( 0 );
+		final long[] step = new long[ numDimensions ];
+		for ( int d = 0; d < numDimensions; ++d )
+			step[ d ] = offsets.get( 1 )[ d ] - first[ d ];
+		for ( int k = 2; k < offsets.size(); ++k )
+			for ( int d = 0; d < numDimensions; ++d )
+				if ( offsets.get( k )[ d ] != first[ d ] + k * step[ d ] )
+					return null;
+
+		// the first offset must be on the line through the origin; a zero
+		// step (all offsets equal, e.g. zero increments) is no line
+		int axis = 0;
+		while ( axis < numDimensions && step[ axis ] == 0 )
+			++axis;
+		if ( axis == numDimensions )
+			return null;
+		if ( first[ axis ] % step[ axis ] != 0 )
+			return null;
+		final long kmin = first[ axis ] / step[ axis ];
+		for ( int d = 0; d < numDimensions; ++d )
+			if ( first[ d ] != kmin * step[ d ] )
+				return null;
+		return new long[][] { step, { kmin, kmin + offsets.size() - 1 } };
+	}
+
+	/**
+	 * @return { min, max } of the offsets covered by a shape along each axis
+	 *         (the bounding box, whether or not the shape fills it).
+	 */
+	public static long[][] bounds( final Shape shape, final int numDimensions )
+	{
+		final long[] min = new long[ numDimensions ];
+		final long[] max = new long[ numDimensions ];
+		probe( shape, min, max );
+		return new long[][] { min, max };
+	}
+
+	/**
+	 * @return the number of offsets; their bounding box is stored in
+	 *         {@code min} and {@code max}.
+	 */
+	private static long probe( final Shape shape, final long[] min, final long[] max )
+	{
+		final int numDimensions = min.length;
+		final Cursor< BitType > c = neighborhoodAtOrigin( shape, numDimensions ).localizingCursor();
+		boolean first = true;
+		long count = 0;
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			for ( int d = 0; d < numDimensions; ++d )
+			{
+				final long p = c.getLongPosition( d );
+				if ( first || p < min[ d ] )
+					min[ d ] = p;
+				if ( first || p > max[ d ] )
+					max[ d ] = p;
+			}
+			first = false;
+			++count;
+		}
+		return count;
+	}
+
+	private static Neighborhood< BitType > neighborhoodAtOrigin( final Shape shape, final int numDimensions )
+	{
+		final long[] ones = new long[ numDimensions ];
+		for ( int d = 0; d < numDimensions; ++d )
+			ones[ d ] = 1;
+		final RandomAccess< Neighborhood< BitType > > ra = shape.neighborhoodsRandomAccessible( Views.extendZero( ArrayImgs.bits( ones ) ) ).randomAccess();
+		ra.setPosition( new long[ numDimensions ] );
+		return ra.get();
+	}
+}
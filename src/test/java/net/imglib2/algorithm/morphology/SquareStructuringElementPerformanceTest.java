@@ -29,15 +29,19 @@ package net.imglib2.algorithm.morphology;
 import ij.ImageJ;
 
 import java.util.List;
+import java.util.Random;
 
 import net.imglib2.Cursor;
 import net.imglib2.algorithm.neighborhood.Shape;
+import net.imglib2.algorithm.util.ImgComparison;
 import net.imglib2.img.Img;
 import net.imglib2.img.array.ArrayImg;
 import net.imglib2.img.array.ArrayImgs;
 import net.imglib2.img.array.ArrayRandomAccess;
 import net.imglib2.img.basictypeaccess.array.ByteArray;
 import net.imglib2.img.display.imagej.ImageJFunctions;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.numeric.integer.UnsignedByteType;
 
 public class SquareStructuringElementPerformanceTest
@@ -163,6 +167,104 @@ public class SquareStructuringElementPerformanceTest
 				}
 			}
 		}
+
+		/*
+		 * Large radii, van Herk/Gil-Werman
+		 */
+
+		System.out.println();
+		sweepLargeRadii( ArrayImgs.unsignedBytes( 512, 512 ), new int[] { 1, 2, 4, 8, 16, 32, 64, 100, 128 }, 128 );
+		System.out.println();
+		sweepLargeRadii( ArrayImgs.unsignedBytes( 128, 128, 128 ), new int[] { 1, 2, 4, 8, 16, 32, 64, 100 }, 32 );
+
+		/*
+		 * Primitive-specialized path
+		 */
+
+		final int[] radii = new int[] { 1, 2, 3, 5, 8 };
+		System.out.println();
+		comparePrimitive( ArrayImgs.unsignedBytes( 512, 512 ), radii );
+		System.out.println();
+		comparePrimitive( ArrayImgs.unsignedShorts( 512, 512 ), radii );
+		System.out.println();
+		comparePrimitive( ArrayImgs.floats( 512, 512 ), radii );
+		System.out.println();
+		comparePrimitive( ArrayImgs.unsignedBytes( 64, 64, 64 ), new int[] { 1, 2, 3 } );
+	}
+
+	/**
+	 * Compares {@link Dilation} with {@link PrimitiveMorphology}, using the
+	 * undecomposed square so that the cost per neighbor dominates.
+	 */
+	private static < T extends RealType< T > & NativeType< T > > void comparePrimitive( final Img< T > img, final int[] radii )
+	{
+		final int n = img.numDimensions();
+		final Random random = new Random( 1l );
+		for ( final T t : img )
+			t.setReal( random.nextInt( 256 ) );
+
+		System.out.println( "Square structuring element, " + n + "D " + img.firstElement().getClass().getSimpleName() + ", generic vs. primitive-specialized, 1 thread." );
+		System.out.println( "Radius\tGeneric (ms)\tPrimitive (ms)\tIdentical" );
+		// warm up, at every radius so that each kernel is compiled before it is timed
+		for ( final int r : radii )
+		{
+			final List< Shape > strels = StructuringElements.square( r, n, false );
+			Dilation.dilate( img, strels, 1 );
+			PrimitiveMorphology.dilate( img, strels, 1 );
+		}
+		// run test
+		for ( final int r : radii )
+		{
+			final List< Shape > strels = StructuringElements.square( r, n, false );
+			long start = System.currentTimeMillis();
+			final Img< T > generic = Dilation.dilate( img, strels, 1 );
+			final long genericTime = System.currentTimeMillis() - start;
+			start = System.currentTimeMillis();
+			final Img< T > primitive = PrimitiveMorphology.dilate( img, strels, 1 );
+			final long primitiveTime = System.currentTimeMillis() - start;
+			System.out.println( "" + r + '\t' + genericTime + '\t' + primitiveTime + '\t' + ImgComparison.identical( generic, primitive ) );
+		}
+	}
+
+	/**
+	 * Compares the optimized decomposition through {@link Dilation} (up to
+	 * {@code maxGenericRadius}, beyond that it takes too long) with
+	 * {@link FastMorphology}, which uses {@link VanHerkGilWerman} for squares.
+	 */
+	private static void sweepLargeRadii( final ArrayImg< UnsignedByteType, ByteArray > img, final int[] radii, final int maxGenericRadius )
+	{
+		final Random random = new Random( 1l );
+		for ( final UnsignedByteType t : img )
+			t.set( random.nextInt( 256 ) );
+
+		System.out.println( "Square structuring element, " + img.numDimensions() + "D, optimized vs. van Herk/Gil-Werman, 1 thread." );
+		System.out.println( "Radius\tOptimized (ms)\tvHGW (ms)\tIdentical" );
+		// warm up
+		perform( img, 1, true, 1 );
+		performFast( img, 1, 1 );
+		// run test
+		for ( final int r : radii )
+		{
+			final Object[] fast = performFast( img, r, 1 );
+			if ( r <= maxGenericRadius )
+			{
+				final Object[] generic = perform( img, r, true, 1 );
+				@SuppressWarnings( "unchecked" )
+				final boolean identical = ImgComparison.identical( ( Img< UnsignedByteType > ) generic[ 1 ], ( Img< UnsignedByteType > ) fast[ 1 ] );
+				System.out.println( "" + r + '\t' + generic[ 0 ] + '\t' + fast[ 0 ] + '\t' + identical );
+			}
+			else
+				System.out.println( "" + r + "\t-\t" + fast[ 0 ] + "\t-" );
+		}
+	}
+
+	private static final Object[] performFast( final Img< UnsignedByteType > img, final int radius, final int numThreads )
+	{
+		final long start = System.currentTimeMillis();
+		final List< Shape > strels = StructuringElements.square( radius, img.numDimensions(), true );
+		final Img< UnsignedByteType > dilated = FastMorphology.dilate( img, strels, numThreads );
+		final long end = System.currentTimeMillis();
+		return new Object[] { Long.valueOf( end - start ), dilated };
 	}
 
 	private static final Object[] perform( final Img< UnsignedByteType > img, final int radius, final boolean optimize, final int numThreads )
@@ -0,0 +1,176 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.algorithm.morphology;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.neighborhood.Shape;
+import net.imglib2.algorithm.util.Tiling;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.view.Views;
+
+/**
+ * Runs the morphological operators of this package tile by tile on an
+ * {@link ExecutorService}.
+ * <p>
+ * Each task copies its tile plus a halo (the extent of the structuring element
+ * chain, twice that for the compound operators, clipped at the image border)
+ * into a small scratch image, runs the single-threaded operator on it and
+ * copies the inner part to the result. Intermediate images are therefore only
+ * as large as one tile with halo, instead of the full image per decomposed
+ * shape, and each tile stays in cache while all shapes are applied to it.
+ * </p>
+ * <p>
+ * Because the halo is clipped exactly at the image border, the result is the
+ * same as that of the whole-image operator.
+ * </p>
+ */
+public class TiledMorphology
+{
+	public static enum Operation
+	{
+		DILATE( 1 ), ERODE( 1 ), OPEN( 2 ), CLOSE( 2 ), TOP_HAT( 2 ), BLACK_TOP_HAT( 2 );
+
+		/** number of times the structuring element is applied */
+		final int passes;
+
+		private Operation( final int passes )
+		{
+			this.passes = passes;
+		}
+	}
+
+	/**
+	 * Applies {@code operation} with the whole-image operator of this package
+	 * ({@link Dilation}, {@link Erosion}, {@link Opening}, {@link Closing},
+	 * {@link TopHat}, {@link BlackTopHat}).
+	 */
+	public static < T extends RealType< T > & NativeType< T > > Img< T > compute( final Operation operation, final Img< T > source, final List< Shape > strels, final int numThreads )
+	{
+		switch ( operation )
+		{
+		case DILATE:
+			return Dilation.dilate( source, strels, numThreads );
+		case ERODE:
+			return Erosion.erode( source, strels, numThreads );
+		case OPEN:
+			return Opening.open( source, strels, numThreads );
+		case CLOSE:
+			return Closing.close( source, strels, numThreads );
+		case TOP_HAT:
+			return TopHat.topHat( source, strels, numThreads );
+		case BLACK_TOP_HAT:
+			return BlackTopHat.blackTopHat( source, strels, numThreads );
+		default:
+			throw new IllegalArgumentException( "unknown operation: " + operation );
+		}
+	}
+
+	/**
+	 * @return the halo needed around a tile along each axis: the sum of the
+	 *         extents of all shapes, times the number of passes.
+	 */
+	public static long[] halo( final Operation operation, final List< Shape > strels, final int numDimensions )
+	{
+		final long[] halo = new long[ numDimensions ];
+		for ( final Shape strel : strels )
+		{
+			final long[][] bounds = ShapeOffsets.bounds( strel, numDimensions );
+			for ( int d = 0; d < numDimensions; ++d )
+				halo[ d ] += operation.passes * Math.max( -bounds[ 0 ][ d ], bounds[ 1 ][ d ] );
+		}
+		return halo;
+	}
+
+	/**
+	 * Applies {@code operation} tile by tile.
+	 *
+	 * @param tileSize
+	 *            size of the tiles (without halo) along each axis.
+	 * @param service
+	 *            executes one task per tile.
+	 */
+	public static < T extends RealType< T > & NativeType< T > > Img< T > compute( final Operation operation, final Img< T > source, final List< Shape > strels, final int[] tileSize, final ExecutorService service ) throws InterruptedException, ExecutionException
+	{
+		final int n = source.numDimensions();
+		final T type = source.firstElement().createVariable();
+		final Img< T > target = source.factory().create( source, type );
+		final long[] halo = halo( operation, strels, n );
+		final ArrayImgFactory< T > scratchFactory = new ArrayImgFactory< T >();
+
+		final List< Callable< Void > > tasks = new ArrayList< Callable< Void > >();
+		for ( final Interval tile : Tiling.tiles( source, tileSize ) )
+		{
+			tasks.add( new Callable< Void >()
+			{
+				@Override
+				public Void call()
+				{
+					final long[] min = new long[ n ];
+					final long[] max = new long[ n ];
+					for ( int d = 0; d < n; ++d )
+					{
+						min[ d ] = Math.max( source.min( d ), tile.min( d ) - halo[ d ] );
+						max[ d ] = Math.min( source.max( d ), tile.max( d ) + halo[ d ] );
+					}
+					final FinalInterval outer = new FinalInterval( min, max );
+					final Img< T > scratch = scratchFactory.create( outer, type );
+					copy( Views.interval( source, outer ), scratch );
+
+					final Img< T > result = compute( operation, scratch, strels, 1 );
+
+					copy( Views.interval( Views.translate( result, min ), tile ), Views.interval( target, tile ) );
+					return null;
+				}
+			} );
+		}
+		for ( final Future< Void > future : service.invokeAll( tasks ) )
+			future.get();
+		return target;
+	}
+
+	private static < T extends RealType< T > > void copy( final RandomAccessibleInterval< T > source, final RandomAccessibleInterval< T > target )
+	{
+		final Cursor< T > s = Views.flatIterable( source ).cursor();
+		final Cursor< T > t = Views.flatIterable( target ).cursor();
+		while ( s.hasNext() )
+			t.next().set( s.next() );
+	}
+}
@@ -0,0 +1,229 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.algorithm.morphology;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.imglib2.Cursor;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.neighborhood.Shape;
+import net.imglib2.algorithm.util.Parallel;
+import net.imglib2.img.Img;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Dilation and erosion with box-shaped structuring elements (rectangles,
+ * squares and axis-parallel lines, for example {@code CenteredRectangleShape},
+ * {@code RectangleShape} and {@code HorizontalLineShape}) using the van
+ * Herk/Gil-Werman algorithm: along every axis, the running maximum over a
+ * window of width w is computed from a forward and a backward block-wise
+ * maximum, with 3 comparisons per pixel regardless of w.
+ * <p>
+ * As in {@link Dilation} and {@link Erosion}, pixels outside the source do
+ * not contribute (they are treated as -&infin; for dilation and +&infin; for
+ * erosion). Erosion is computed as -dilate(-f).
+ * </p>
+ *
+ * @see FastMorphology
+ */
+public class VanHerkGilWerman
+{
+	/**
+	 * @return the {@link ShapeOffsets#box(Shape, int)} of every shape, or {@code null} if
+	 *         one of them is not a box.
+	 */
+	public static List< long[][] > boxes( final List< Shape > strels, final int numDimensions )
+	{
+		final List< long[][] > boxes = new ArrayList< long[][] >();
+		for ( final Shape strel : strels )
+		{
+			final long[][] box = ShapeOffsets.box( strel, numDimensions );
+			if ( box == null )
+				return null;
+			boxes.add( box );
+		}
+		return boxes;
+	}
+
+	public static < T extends RealType< T > & NativeType< T > > Img< T > dilate( final Img< T > source, final List< long[][] > boxes, final int numThreads )
+	{
+		final Img< T > target = source.factory().create( source, source.firstElement().createVariable() );
+		copy( source, target );
+		for ( final long[][] box : boxes )
+			apply( target, box, true, numThreads );
+		return target;
+	}
+
+	public static < T extends RealType< T > & NativeType< T > > Img< T > erode( final Img< T > source, final List< long[][] > boxes, final int numThreads )
+	{
+		final Img< T > target = source.factory().create( source, source.firstElement().createVariable() );
+		copy( source, target );
+		for ( final long[][] box : boxes )
+			apply( target, box, false, numThreads );
+		return target;
+	}
+
+	/**
+	 * Dilates (or erodes) {@code img} in place by the box with the given
+	 * offsets, one axis after the other.
+	 */
+	public static < T extends RealType< T > > void apply( final RandomAccessibleInterval< T > img, final long[][] box, final boolean dilate, final int numThreads )
+	{
+		for ( int d = 0; d < img.numDimensions(); ++d )
+			if ( box[ 0 ][ d ] != 0 || box[ 1 ][ d ] != 0 )
+				apply( img, d, box[ 0 ][ d ], box[ 1 ][ d ], dilate, numThreads );
+	}
+
+	/**
+	 * Replaces every pixel by the maximum (minimum) of the pixels at offsets
+	 * {@code min..max} along axis d, for all lines along d in parallel.
+	 */
+	public static < T extends RealType< T > > void apply( final RandomAccessibleInterval< T > img, final int d, final long min, final long max, final boolean dilate, final int numThreads )
+	{
+		final int n = img.numDimensions();
+		long numLines = 1;
+		for ( int e = 0; e < n; ++e )
+			if ( e != d )
+				numLines *= img.dimension( e );
+
+		Parallel.runRanges( "VanHerkGilWerman", numLines, numThreads, new Parallel.RangeTask()
+		{
+			@Override
+			public void run( final long firstLine, final long lastLine )
+			{
+				processLines( img, d, min, max, dilate, firstLine, lastLine );
+			}
+		} );
+	}
+
+	private static < T extends RealType< T > > void processLines( final RandomAccessibleInterval< T > img, final int d, final long min, final long max, final boolean dilate, final long firstLine, final long lastLine )
+	{
+		final int n = img.numDimensions();
+		final int length = ( int ) img.dimension( d );
+		final int w = ( int ) ( max - min + 1 );
+		final int padded = length + w - 1;
+		final double[] line = new double[ length ];
+		final double[] ext = new double[ padded ];
+		final double[] g = new double[ padded ];
+		final double[] h = new double[ padded ];
+		final double sign = dilate ? 1 : -1;
+
+		final RandomAccess< T > ra = img.randomAccess();
+		// for windows that lie completely outside the image
+		final T type = ra.get();
+		final double outside = dilate ? type.getMinValue() : type.getMaxValue();
+		final long[] position = new long[ n ];
+		for ( long lineIndex = firstLine; lineIndex < lastLine; ++lineIndex )
+		{
+			lineStart( img, d, lineIndex, position );
+			ra.setPosition( position );
+			for ( int i = 0; i < length; ++i )
+			{
+				line[ i ] = sign * ra.get().getRealDouble();
+				ra.fwd( d );
+			}
+
+			runningMax( line, length, min, w, ext, g, h );
+
+			ra.setPosition( position );
+			for ( int i = 0; i < length; ++i )
+			{
+				ra.get().setReal( line[ i ] == Double.NEGATIVE_INFINITY ? outside : sign * line[ i ] );
+				ra.fwd( d );
+			}
+		}
+	}
+
+	/**
+	 * In place, {@code line[i] = max(line[i + min .. i + max])}, with values
+	 * outside {@code [0, length)} ignored. {@code ext}, {@code g} and
+	 * {@code h} are scratch arrays of size {@code length + w - 1}.
+	 */
+	static void runningMax( final double[] line, final int length, final long min, final int w, final double[] ext, final double[] g, final double[] h )
+	{
+		final int padded = length + w - 1;
+		for ( int k = 0; k < padded; ++k )
+		{
+			final long j = k + min;
+			ext[ k ] = j >= 0 && j < length ? line[ ( int ) j ] : Double.NEGATIVE_INFINITY;
+		}
+
+		// g: maximum from the start of the block, h: maximum to the end of
+		// the block
+		for ( int k = 0; k < padded; ++k )
+			g[ k ] = k % w == 0 ? ext[ k ] : Math.max( g[ k - 1 ], ext[ k ] );
+		for ( int k = padded - 1; k >= 0; --k )
+			h[ k ] = ( k % w == w - 1 || k == padded - 1 ) ? ext[ k ] : Math.max( h[ k + 1 ], ext[ k ] );
+
+		for ( int i = 0; i < length; ++i )
+			line[ i ] = Math.max( h[ i ], g[ i + w - 1 ] );
+	}
+
+	/**
+	 * Sets {@code position} to the first pixel of line {@code lineIndex}
+	 * along axis d (lines are numbered in flat order of the other axes).
+	 */
+	static void lineStart( final Interval interval, final int d, final long lineIndex, final long[] position )
+	{
+		long i = lineIndex;
+		for ( int e = 0; e < position.length; ++e )
+		{
+			if ( e == d )
+				position[ e ] = interval.min( e );
+			else
+			{
+				final long size = interval.dimension( e );
+				position[ e ] = interval.min( e ) + i % size;
+				i /= size;
+			}
+		}
+	}
+
+	static < T extends RealType< T > > void copy( final Img< T > source, final Img< T > target )
+	{
+		final Cursor< T > s = source.cursor();
+		final Cursor< T > t = target.cursor();
+		if ( source.iterationOrder().equals( target.iterationOrder() ) )
+			while ( s.hasNext() )
+				t.next().set( s.next() );
+		else
+		{
+			final RandomAccess< T > ra = target.randomAccess();
+			while ( s.hasNext() )
+			{
+				s.fwd();
+				ra.setPosition( s );
+				ra.get().set( s.get() );
+			}
+		}
+	}
+}
@@ -160,11 +160,45 @@ A:		for ( final Neighborhood< T > neighborhood : shape.neighborhoods( source ) )
 			}
 		} );
 
+		final int numThreads = Runtime.getRuntime().availableProcessors();
+		System.out.println( "LocalMaximaFinder, 1 thread" );
+		System.out.println( "(precomputed offsets, early exit, coordinates in a long[])" );
+		BenchmarkHelper.benchmarkAndPrint( numRuns, printIndividualTimes, new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				LocalMaximaFinder.find( img, 1 );
+			}
+		} );
+
+		System.out.println( "LocalMaximaFinder, " + numThreads + " threads" );
+		BenchmarkHelper.benchmarkAndPrint( numRuns, printIndividualTimes, new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				LocalMaximaFinder.find( img, numThreads );
+			}
+		} );
+
+		System.out.println( "LocalMaximaFinder, " + numThreads + " threads, generic RandomAccess" );
+		BenchmarkHelper.benchmarkAndPrint( numRuns, printIndividualTimes, new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				LocalMaximaFinder.find( Views.translate( img, 0, 0, 0 ), numThreads );
+			}
+		} );
+
 		final int n = findLocalMaximaNeighborhood( img );
 		System.out.println( n );
 		final int n2 = findLocalMaximaNeighborhood2( img );
 		System.out.println( n2 );
 		final int n6 = findLocalMaximaNeighborhood6( img );
 		System.out.println( n6 );
+		final int nFinder = LocalMaximaFinder.find( img, numThreads ).size();
+		System.out.println( nFinder );
 	}
 }
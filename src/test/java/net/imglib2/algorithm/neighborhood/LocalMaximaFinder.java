@@ -0,0 +1,436 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.algorithm.neighborhood;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import net.imglib2.Cursor;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.morphology.VanHerkGilWerman;
+import net.imglib2.algorithm.util.Parallel;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.basictypeaccess.array.FloatArray;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+/**
+ * Finds the local maxima of an image in parallel and returns their
+ * coordinates in a flat {@code long[]} instead of a list of {@code Point}s.
+ * <p>
+ * A pixel is a local maximum if its value is above the threshold and no pixel
+ * in the {@link RectangleShape} of the given radius around it is larger
+ * (non-maximum suppression radius; radius 1 gives the 3^n - 1 neighbors of
+ * {@link LocalMaximaBenchmark}). As there, only pixels whose whole
+ * neighborhood is inside the image are considered, and plateaus yield several
+ * maxima.
+ * </p>
+ * <p>
+ * The neighbor offsets are computed once, sorted by distance to the center,
+ * so that a pixel is usually rejected after comparing with its nearest one or
+ * two neighbors. For {@link ArrayImg}s of {@link FloatType} the offsets are
+ * index differences into the {@code float[]}; otherwise they are applied to a
+ * {@link RandomAccess}. The image is split into slabs along the last axis,
+ * one per task; the maxima of each slab are collected into a growing
+ * {@code long[]} and the slabs are concatenated in order, so the result is in
+ * flat iteration order whatever the number of threads.
+ * </p>
+ * <p>
+ * For large radii,
+ * {@link #findSeparable(RandomAccessibleInterval, int, double, int)
+ * findSeparable()} compares every pixel with a max-filtered copy instead.
+ * </p>
+ */
+public class LocalMaximaFinder
+{
+	/**
+	 * Coordinates of local maxima.
+	 */
+	public static class Maxima
+	{
+		private final int n;
+
+		private long[] positions;
+
+		private int size;
+
+		public Maxima( final int numDimensions )
+		{
+			this.n = numDimensions;
+			this.positions = new long[ 64 * numDimensions ];
+			this.size = 0;
+		}
+
+		public int numDimensions()
+		{
+			return n;
+		}
+
+		/**
+		 * @return the number of maxima.
+		 */
+		public int size()
+		{
+			return size;
+		}
+
+		public long getLongPosition( final int i, final int d )
+		{
+			return positions[ i * n + d ];
+		}
+
+		public void localize( final int i, final long[] position )
+		{
+			System.arraycopy( positions, i * n, position, 0, n );
+		}
+
+		/**
+		 * @return the coordinates of all maxima, {@code n} values per
+		 *         maximum.
+		 */
+		public long[] positions()
+		{
+			return Arrays.copyOf( positions, size * n );
+		}
+
+		void add( final long[] position )
+		{
+			ensureCapacity( size + 1 );
+			System.arraycopy( position, 0, positions, size * n, n );
+			++size;
+		}
+
+		void addAll( final Maxima other )
+		{
+			ensureCapacity( size + other.size );
+			System.arraycopy( other.positions, 0, positions, size * n, other.size * n );
+			size += other.size;
+		}
+
+		private void ensureCapacity( final int capacity )
+		{
+			if ( capacity * n > positions.length )
+				positions = Arrays.copyOf( positions, Math.max( capacity * n, 2 * positions.length ) );
+		}
+	}
+
+	public static < T extends RealType< T > > Maxima find( final RandomAccessibleInterval< T > img, final int numThreads )
+	{
+		return find( img, 1, Double.NEGATIVE_INFINITY, numThreads );
+	}
+
+	/**
+	 * @param radius
+	 *            a maximum is larger than or equal to all pixels within this
+	 *            (Chebyshev) distance.
+	 * @param threshold
+	 *            a maximum is larger than this value.
+	 */
+	public static < T extends RealType< T > > Maxima find( final RandomAccessibleInterval< T > img, final int radius, final double threshold, final int numThreads )
+	{
+		final long[][] offsets = offsets( radius, img.numDimensions() );
+		final boolean isFloatArray = isFloatArray( img );
+		return inSlabs( Intervals.expand( img, -radius ), numThreads, new SlabSearch()
+		{
+			@Override
+			public Maxima find( final long[] min, final long[] max )
+			{
+				return isFloatArray
+						? findFloat( img, min, max, offsets, threshold )
+						: findGeneric( img, min, max, offsets, threshold );
+			}
+		} );
+	}
+
+	/**
+	 * Same result as
+	 * {@link #find(RandomAccessibleInterval, int, double, int) find()}, but
+	 * computed by first dilating a copy of the image with the
+	 * {@code (2 radius + 1)^n} box using {@link VanHerkGilWerman}, at 3
+	 * comparisons per pixel and axis whatever the radius, and then keeping the
+	 * pixels equal to their dilated value. This is faster for large radii,
+	 * where the direct comparison with {@code (2 radius + 1)^n - 1} neighbors
+	 * no longer exits early for the (many) pixels close to being maxima.
+	 */
+	public static < T extends RealType< T > & NativeType< T > > Maxima findSeparable( final RandomAccessibleInterval< T > img, final int radius, final double threshold, final int numThreads )
+	{
+		final int n = img.numDimensions();
+		final T type = Util.getTypeFromInterval( img ).createVariable();
+		final RandomAccessibleInterval< T > dilated = Views.translate( new ArrayImgFactory< T >().create( img, type ), Intervals.minAsLongArray( img ) );
+		final Cursor< T > s = Views.flatIterable( img ).cursor();
+		final Cursor< T > t = Views.flatIterable( dilated ).cursor();
+		while ( s.hasNext() )
+			t.next().set( s.next() );
+
+		final long[][] box = new long[ 2 ][ n ];
+		Arrays.fill( box[ 0 ], -radius );
+		Arrays.fill( box[ 1 ], radius );
+		VanHerkGilWerman.apply( dilated, box, true, numThreads );
+
+		return inSlabs( Intervals.expand( img, -radius ), numThreads, new SlabSearch()
+		{
+			@Override
+			public Maxima find( final long[] min, final long[] max )
+			{
+				return findEqual( img, dilated, min, max, threshold );
+			}
+		} );
+	}
+
+	/**
+	 * Searches for maxima in a part of an interval.
+	 */
+	private static interface SlabSearch
+	{
+		public Maxima find( long[] min, long[] max );
+	}
+
+	/**
+	 * Splits {@code interval} into slabs along the last axis, one per task,
+	 * and concatenates the maxima found in each, in order.
+	 */
+	private static Maxima inSlabs( final Interval interval, final int numThreads, final SlabSearch search )
+	{
+		final int n = interval.numDimensions();
+		for ( int d = 0; d < n; ++d )
+			if ( interval.dimension( d ) <= 0 )
+				return new Maxima( n );
+
+		final int slabAxis = n - 1;
+		final long numSlabs = interval.dimension( slabAxis );
+		final int numTasks = ( int ) Math.max( 1, Math.min( numThreads, numSlabs ) );
+		final Maxima[] results = new Maxima[ numTasks ];
+		Parallel.run( "LocalMaximaFinder", numTasks, new Parallel.Task()
+		{
+			@Override
+			public void run( final int t )
+			{
+				final long[] min = Intervals.minAsLongArray( interval );
+				final long[] max = Intervals.maxAsLongArray( interval );
+				min[ slabAxis ] = interval.min( slabAxis ) + numSlabs * t / numTasks;
+				max[ slabAxis ] = interval.min( slabAxis ) + numSlabs * ( t + 1 ) / numTasks - 1;
+				results[ t ] = search.find( min, max );
+			}
+		} );
+
+		final Maxima maxima = new Maxima( n );
+		for ( final Maxima result : results )
+			maxima.addAll( result );
+		return maxima;
+	}
+
+	/**
+	 * @return the offsets of the {@link RectangleShape} of the given radius,
+	 *         without the center, nearest first.
+	 */
+	static long[][] offsets( final int radius, final int n )
+	{
+		final List< long[] > offsets = new ArrayList< long[] >();
+		final long[] offset = new long[ n ];
+		Arrays.fill( offset, -radius );
+		while ( true )
+		{
+			boolean center = true;
+			for ( int d = 0; d < n; ++d )
+				center &= offset[ d ] == 0;
+			if ( !center )
+				offsets.add( offset.clone() );
+
+			int d = 0;
+			for ( ; d < n; ++d )
+			{
+				if ( ++offset[ d ] <= radius )
+					break;
+				offset[ d ] = -radius;
+			}
+			if ( d == n )
+				break;
+		}
+		Collections.sort( offsets, new Comparator< long[] >()
+		{
+			@Override
+			public int compare( final long[] a, final long[] b )
+			{
+				long da = 0, db = 0;
+				for ( int d = 0; d < a.length; ++d )
+				{
+					da += a[ d ] * a[ d ];
+					db += b[ d ] * b[ d ];
+				}
+				return da < db ? -1 : da > db ? 1 : 0;
+			}
+		} );
+		return offsets.toArray( new long[ 0 ][] );
+	}
+
+	private static boolean isFloatArray( final RandomAccessibleInterval< ? > img )
+	{
+		return img instanceof ArrayImg
+				&& ( ( ArrayImg< ?, ? > ) img ).firstElement() instanceof FloatType
+				&& ( ( ArrayImg< ?, ? > ) img ).update( null ) instanceof FloatArray;
+	}
+
+	/**
+	 * Maxima with positions in {@code min..max}, on the {@code float[]} of an
+	 * {@link ArrayImg}.
+	 */
+	private static Maxima findFloat( final RandomAccessibleInterval< ? > img, final long[] min, final long[] max, final long[][] offsets, final double threshold )
+	{
+		final int n = min.length;
+		final float[] data = ( ( FloatArray ) ( ( ArrayImg< ?, ? > ) img ).update( null ) ).getCurrentStorageArray();
+		final long[] steps = new long[ n ];
+		steps[ 0 ] = 1;
+		for ( int d = 1; d < n; ++d )
+			steps[ d ] = steps[ d - 1 ] * img.dimension( d - 1 );
+		final int[] deltas = new int[ offsets.length ];
+		for ( int o = 0; o < offsets.length; ++o )
+			for ( int d = 0; d < n; ++d )
+				deltas[ o ] += ( int ) ( offsets[ o ][ d ] * steps[ d ] );
+
+		final Maxima maxima = new Maxima( n );
+		if ( min[ n - 1 ] > max[ n - 1 ] )
+			return maxima;
+		final long[] position = min.clone();
+		while ( true )
+		{
+			int i = 0;
+			for ( int d = 0; d < n; ++d )
+				i += ( int ) ( ( position[ d ] - img.min( d ) ) * steps[ d ] );
+			A: for ( long x = min[ 0 ]; x <= max[ 0 ]; ++x, ++i )
+			{
+				final float v = data[ i ];
+				if ( !( v > threshold ) )
+					continue;
+				for ( final int delta : deltas )
+					if ( data[ i + delta ] > v )
+						continue A;
+				position[ 0 ] = x;
+				maxima.add( position );
+			}
+			position[ 0 ] = min[ 0 ];
+
+			int d = 1;
+			for ( ; d < n; ++d )
+			{
+				if ( ++position[ d ] <= max[ d ] )
+					break;
+				position[ d ] = min[ d ];
+			}
+			if ( d >= n )
+				break;
+		}
+		return maxima;
+	}
+
+	/**
+	 * Pixels in {@code min..max} above the threshold that are equal to their
+	 * value in {@code dilated}.
+	 */
+	private static < T extends RealType< T > > Maxima findEqual( final RandomAccessibleInterval< T > img, final RandomAccessibleInterval< T > dilated, final long[] min, final long[] max, final double threshold )
+	{
+		final int n = min.length;
+		final Maxima maxima = new Maxima( n );
+		final Cursor< T > c = Views.flatIterable( Views.interval( img, min, max ) ).localizingCursor();
+		final Cursor< T > m = Views.flatIterable( Views.interval( dilated, min, max ) ).cursor();
+		final long[] position = new long[ n ];
+		while ( c.hasNext() )
+		{
+			final double v = c.next().getRealDouble();
+			final double dilatedValue = m.next().getRealDouble();
+			if ( v > threshold && v == dilatedValue )
+			{
+				c.localize( position );
+				maxima.add( position );
+			}
+		}
+		return maxima;
+	}
+
+	/**
+	 * Maxima with positions in {@code min..max}, through a
+	 * {@link RandomAccess}.
+	 */
+	private static < T extends RealType< T > > Maxima findGeneric( final RandomAccessibleInterval< T > img, final long[] min, final long[] max, final long[][] offsets, final double threshold )
+	{
+		final int n = min.length;
+		// moves from one neighbor to the next
+		final long[][] moves = new long[ offsets.length ][ n ];
+		for ( int o = 0; o < offsets.length; ++o )
+			for ( int d = 0; d < n; ++d )
+				moves[ o ][ d ] = offsets[ o ][ d ] - ( o == 0 ? 0 : offsets[ o - 1 ][ d ] );
+
+		final Maxima maxima = new Maxima( n );
+		if ( min[ n - 1 ] > max[ n - 1 ] )
+			return maxima;
+		final RandomAccess< T > center = img.randomAccess();
+		final RandomAccess< T > neighbor = img.randomAccess();
+		final long[] position = min.clone();
+		center.setPosition( position );
+		while ( true )
+		{
+			A: for ( long x = min[ 0 ]; x <= max[ 0 ]; ++x, center.fwd( 0 ) )
+			{
+				final double v = center.get().getRealDouble();
+				if ( !( v > threshold ) )
+					continue;
+				neighbor.setPosition( center );
+				for ( final long[] move : moves )
+				{
+					neighbor.move( move );
+					if ( neighbor.get().getRealDouble() > v )
+						continue A;
+				}
+				position[ 0 ] = x;
+				maxima.add( position );
+			}
+			position[ 0 ] = min[ 0 ];
+
+			int d = 1;
+			for ( ; d < n; ++d )
+			{
+				if ( ++position[ d ] <= max[ d ] )
+					break;
+				position[ d ] = min[ d ];
+			}
+			if ( d >= n )
+				break;
+			center.setPosition( position );
+		}
+		return maxima;
+	}
+}
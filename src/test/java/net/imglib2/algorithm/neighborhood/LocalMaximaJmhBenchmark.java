@@ -0,0 +1,112 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.algorithm.neighborhood;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+
+import tests.BenchmarkRunner;
+
+/**
+ * JMH port of {@link LocalMaximaBenchmark}.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 10, time = 1 )
+@Fork( 2 )
+public class LocalMaximaJmhBenchmark
+{
+	@Param( { "1000x1000", "200x200x200" } )
+	public String dimensions;
+
+	private Img< FloatType > img;
+
+	@Setup
+	public void setup()
+	{
+		img = ArrayImgs.floats( BenchmarkRunner.parseDimensions( dimensions ) );
+		final Random random = new Random( 123914924 );
+		for ( final FloatType t : img )
+			t.set( random.nextFloat() );
+	}
+
+	@Benchmark
+	public int localNeighborhood()
+	{
+		return LocalMaximaBenchmark.findLocalMaximaNeighborhood( img );
+	}
+
+	@Benchmark
+	public int localNeighborhood2()
+	{
+		return LocalMaximaBenchmark.findLocalMaximaNeighborhood2( img );
+	}
+
+	@Benchmark
+	public int rectangleShape()
+	{
+		return LocalMaximaBenchmark.findLocalMaximaNeighborhood6( img );
+	}
+
+	@Benchmark
+	public int localMaximaFinder()
+	{
+		return LocalMaximaFinder.find( img, 1 ).size();
+	}
+
+	@Benchmark
+	public int localMaximaFinderParallel()
+	{
+		return LocalMaximaFinder.find( img, Runtime.getRuntime().availableProcessors() ).size();
+	}
+
+	public static void main( final String[] args ) throws CommandLineOptionException, RunnerException
+	{
+		BenchmarkRunner.main( new String[] { LocalMaximaJmhBenchmark.class.getSimpleName() } );
+	}
+}
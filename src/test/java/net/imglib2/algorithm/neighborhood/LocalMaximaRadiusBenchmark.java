@@ -0,0 +1,98 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.algorithm.neighborhood;
+
+import java.util.Random;
+
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+/**
+ * Sweeps the suppression radius from 1 to 15 and compares, for local maxima
+ * in the {@link RectangleShape} of that radius,
+ * {@link LocalMaximaBenchmark#countLocalMaxima(net.imglib2.RandomAccessibleInterval, Shape)},
+ * the direct {@link LocalMaximaFinder#find(net.imglib2.RandomAccessibleInterval, int, double, int)}
+ * and the separable
+ * {@link LocalMaximaFinder#findSeparable(net.imglib2.RandomAccessibleInterval, int, double, int)},
+ * all with 1 thread, and checks that they find the same number of maxima.
+ */
+public class LocalMaximaRadiusBenchmark
+{
+	public static void main( final String[] args )
+	{
+		final int numRuns = 3;
+		benchmark( new long[] { 1000, 1000 }, new int[] { 1, 2, 3, 4, 5, 7, 10, 15 }, numRuns );
+		benchmark( new long[] { 100, 100, 100 }, new int[] { 1, 2, 3, 4, 5, 7, 10, 15 }, numRuns );
+	}
+
+	public static void benchmark( final long[] dimensions, final int[] radii, final int numRuns )
+	{
+		final Img< FloatType > img = ArrayImgs.floats( dimensions );
+		final Random random = new Random( 123914924 );
+		for ( final FloatType t : img )
+			t.set( random.nextFloat() );
+
+		System.out.println();
+		System.out.println( "Local maxima, " + Util.printCoordinates( dimensions ) + " FloatType, 1 thread, median of " + numRuns + " runs." );
+		System.out.println( "Radius\tRectangleShape (ms)\tDirect (ms)\tSeparable (ms)\tMaxima\tSame count" );
+		// warm up
+		LocalMaximaFinder.find( img, 1, Double.NEGATIVE_INFINITY, 1 );
+		LocalMaximaFinder.findSeparable( img, 1, Double.NEGATIVE_INFINITY, 1 );
+		for ( final int radius : radii )
+		{
+			final long[] shapeTimes = new long[ numRuns ];
+			final long[] directTimes = new long[ numRuns ];
+			final long[] separableTimes = new long[ numRuns ];
+			int shapeCount = 0;
+			int directCount = 0;
+			int separableCount = 0;
+			for ( int i = 0; i < numRuns; ++i )
+			{
+				// countLocalMaxima shrinks its input by 1, the neighborhoods
+				// must stay inside the image
+				long start = System.currentTimeMillis();
+				shapeCount = LocalMaximaBenchmark.countLocalMaxima( Views.interval( img, Intervals.expand( img, 1 - radius ) ), new RectangleShape( radius, true ) );
+				shapeTimes[ i ] = System.currentTimeMillis() - start;
+
+				start = System.currentTimeMillis();
+				directCount = LocalMaximaFinder.find( img, radius, Double.NEGATIVE_INFINITY, 1 ).size();
+				directTimes[ i ] = System.currentTimeMillis() - start;
+
+				start = System.currentTimeMillis();
+				separableCount = LocalMaximaFinder.findSeparable( img, radius, Double.NEGATIVE_INFINITY, 1 ).size();
+				separableTimes[ i ] = System.currentTimeMillis() - start;
+			}
+			System.out.println( radius + "\t" + Util.median( shapeTimes ) + "\t" + Util.median( directTimes ) + "\t" + Util.median( separableTimes ) + "\t"
+					+ directCount + "\t" + ( shapeCount == directCount && directCount == separableCount ) );
+		}
+	}
+}
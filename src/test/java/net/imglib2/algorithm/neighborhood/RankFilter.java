@@ -0,0 +1,212 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.algorithm.neighborhood;
+
+import java.util.Arrays;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.util.Parallel;
+import net.imglib2.type.numeric.IntegerType;
+
+/**
+ * Rank filters (min, max, median, any percentile) over the
+ * {@link RectangleShape} neighborhood, for integer types with at most 2^16
+ * values ({@code UnsignedByteType}, {@code ByteType},
+ * {@code UnsignedShortType}, {@code ShortType}, ...).
+ * <p>
+ * Instead of visiting all (2 span + 1)^n neighbors of every pixel, as
+ * {@link MinFilterExample#minFilter(RandomAccessibleInterval, RandomAccessibleInterval, Shape)}
+ * does, a histogram of the window is updated as the window slides along a
+ * row (Huang et al., 1979): the slab of (2 span + 1)^(n-1) pixels that
+ * leaves the window is removed and the one that enters is added. The value of
+ * the requested rank is tracked incrementally together with the number of
+ * window values below it, so it usually moves by a few bins only. Rows are
+ * distributed over threads.
+ * </p>
+ */
+public class RankFilter
+{
+	public static < T extends IntegerType< T > > void min( final RandomAccessible< T > input, final RandomAccessibleInterval< T > output, final int span, final int numThreads )
+	{
+		percentile( input, output, span, 0, numThreads );
+	}
+
+	public static < T extends IntegerType< T > > void max( final RandomAccessible< T > input, final RandomAccessibleInterval< T > output, final int span, final int numThreads )
+	{
+		percentile( input, output, span, 1, numThreads );
+	}
+
+	public static < T extends IntegerType< T > > void median( final RandomAccessible< T > input, final RandomAccessibleInterval< T > output, final int span, final int numThreads )
+	{
+		percentile( input, output, span, 0.5, numThreads );
+	}
+
+	/**
+	 * Sets every pixel of {@code output} to the value of rank
+	 * {@code round( percentile * ( N - 1 ) )} (0-based, in ascending order)
+	 * among the {@code N = (2 span + 1)^n} pixels of {@code input} in the
+	 * {@link RectangleShape} of the given span around it. {@code input} must
+	 * be defined on {@code output} expanded by {@code span}, so extend it for
+	 * pixels near the border.
+	 *
+	 * @param percentile
+	 *            in [0, 1]: 0 is the minimum, 0.5 the median, 1 the maximum.
+	 */
+	public static < T extends IntegerType< T > > void percentile( final RandomAccessible< T > input, final RandomAccessibleInterval< T > output, final int span, final double percentile, final int numThreads )
+	{
+		if ( percentile < 0 || percentile > 1 )
+			throw new IllegalArgumentException( "percentile must be in [0, 1]: " + percentile );
+
+		final T type = output.randomAccess().get();
+		// in double: for LongType or UnsignedLongType, max - min + 1 overflows a long
+		final double range = type.getMaxValue() - type.getMinValue() + 1;
+		if ( !( range > 0 && range <= ( 1 << 16 ) ) )
+			throw new IllegalArgumentException( "rank filters are supported for types with at most 2^16 values, not " + type.getClass().getSimpleName() );
+		final long minValue = ( long ) type.getMinValue();
+		final int numBins = ( int ) range;
+
+		final int n = output.numDimensions();
+		long windowSize = 1;
+		for ( int d = 0; d < n; ++d )
+			windowSize *= 2 * span + 1;
+		final long rank = Math.round( percentile * ( windowSize - 1 ) );
+
+		long numRows = 1;
+		for ( int d = 1; d < n; ++d )
+			numRows *= output.dimension( d );
+
+		Parallel.runRanges( "RankFilter", numRows, numThreads, new Parallel.RangeTask()
+		{
+			@Override
+			public void run( final long firstRow, final long lastRow )
+			{
+				processRows( input, output, span, rank, minValue, numBins, firstRow, lastRow );
+			}
+		} );
+	}
+
+	private static < T extends IntegerType< T > > void processRows( final RandomAccessible< T > input, final RandomAccessibleInterval< T > output, final int span, final long rank, final long minValue, final int numBins, final long firstRow, final long lastRow )
+	{
+		final int n = output.numDimensions();
+		final int[] histogram = new int[ numBins ];
+		final int[] counter = new int[ n ];
+		final RandomAccess< T > in = input.randomAccess();
+		final RandomAccess< T > out = output.randomAccess();
+		final long[] position = new long[ n ];
+		final long width = output.dimension( 0 );
+
+		for ( long row = firstRow; row < lastRow; ++row )
+		{
+			long r = row;
+			position[ 0 ] = output.min( 0 );
+			for ( int d = 1; d < n; ++d )
+			{
+				position[ d ] = output.min( d ) + r % output.dimension( d );
+				r /= output.dimension( d );
+			}
+
+			// window of the first pixel of the row
+			Arrays.fill( histogram, 0 );
+			for ( long x = position[ 0 ] - span; x <= position[ 0 ] + span; ++x )
+				addSlab( in, position, x, span, histogram, minValue, 1, 0, counter );
+
+			// value of the requested rank, and number of window values below it
+			int value = 0;
+			long below = 0;
+			out.setPosition( position );
+			for ( long i = 0; i < width; ++i )
+			{
+				while ( below > rank )
+				{
+					--value;
+					below -= histogram[ value ];
+				}
+				while ( below + histogram[ value ] <= rank )
+				{
+					below += histogram[ value ];
+					++value;
+				}
+				out.get().setInteger( value + minValue );
+
+				if ( i < width - 1 )
+				{
+					out.fwd( 0 );
+					final long x = position[ 0 ] + i;
+					below -= addSlab( in, position, x - span, span, histogram, minValue, -1, value, counter );
+					below += addSlab( in, position, x + span + 1, span, histogram, minValue, 1, value, counter );
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds {@code increment} to the histogram bins of the (2 span + 1)^(n-1)
+	 * pixels at {@code x} along axis 0, within {@code span} of {@code center}
+	 * along the other axes.
+	 *
+	 * @return the number of these pixels whose bin is below
+	 *         {@code threshold}.
+	 */
+	private static < T extends IntegerType< T > > long addSlab( final RandomAccess< T > in, final long[] center, final long x, final int span, final int[] histogram, final long minValue, final int increment, final int threshold, final int[] counter )
+	{
+		final int n = center.length;
+		final int side = 2 * span + 1;
+		in.setPosition( x, 0 );
+		for ( int d = 1; d < n; ++d )
+		{
+			in.setPosition( center[ d ] - span, d );
+			counter[ d ] = 0;
+		}
+
+		long below = 0;
+		while ( true )
+		{
+			final int bin = ( int ) ( in.get().getIntegerLong() - minValue );
+			histogram[ bin ] += increment;
+			if ( bin < threshold )
+				++below;
+
+			int d = 1;
+			for ( ; d < n; ++d )
+			{
+				if ( ++counter[ d ] < side )
+				{
+					in.fwd( d );
+					break;
+				}
+				counter[ d ] = 0;
+				in.move( 1 - side, d );
+			}
+			if ( d >= n )
+				break;
+		}
+		return below;
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.algorithm.neighborhood;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.util.ImgComparison;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.view.Views;
+
+/**
+ * Compares {@link RankFilter} (1 thread and all cores) with the naive
+ * {@link Neighborhood} loop, for the min filter
+ * ({@link MinFilterExample#minFilter(RandomAccessibleInterval, RandomAccessibleInterval, Shape)})
+ * and the median, over spans 1 to 25, and checks that the results are
+ * identical.
+ * <p>
+ * The naive median sorts every neighborhood and is only run up to span
+ * {@code -DnaiveMaxSpan=8}.
+ * </p>
+ */
+public class RankFilterBenchmark
+{
+	private static final int[] SPANS = new int[] { 1, 2, 3, 5, 8, 12, 17, 25 };
+
+	public static void main( final String[] args )
+	{
+		final int naiveMaxSpan = Integer.getInteger( "naiveMaxSpan", 8 );
+		final int numThreads = Runtime.getRuntime().availableProcessors();
+
+		final Img< UnsignedByteType > img = ArrayImgs.unsignedBytes( 512, 512 );
+		final Random random = new Random( 1l );
+		for ( final UnsignedByteType t : img )
+			t.set( random.nextInt( 256 ) );
+		final RandomAccessibleInterval< UnsignedByteType > input = Views.interval( Views.extendMirrorSingle( img ), img );
+
+		final Img< UnsignedByteType > naive = img.factory().create( img, new UnsignedByteType() );
+		final Img< UnsignedByteType > fast = img.factory().create( img, new UnsignedByteType() );
+
+		for ( final double percentile : new double[] { 0, 0.5 } )
+		{
+			final String name = percentile == 0 ? "min" : "median";
+			System.out.println();
+			System.out.println( "Rank filter (" + name + "), 512x512 UnsignedByteType, RectangleShape." );
+			System.out.println( "Span\tNaive (ms)\tHistogram, 1 thread (ms)\tHistogram, " + numThreads + " threads (ms)\tIdentical" );
+			// warm up
+			RankFilter.percentile( input, fast, 1, percentile, 1 );
+			RankFilter.percentile( input, fast, 1, percentile, numThreads );
+			for ( final int span : SPANS )
+			{
+				long start = System.currentTimeMillis();
+				RankFilter.percentile( input, fast, span, percentile, numThreads );
+				final long parallelTime = System.currentTimeMillis() - start;
+
+				start = System.currentTimeMillis();
+				RankFilter.percentile( input, fast, span, percentile, 1 );
+				final long sequentialTime = System.currentTimeMillis() - start;
+
+				if ( percentile == 0 || span <= naiveMaxSpan )
+				{
+					start = System.currentTimeMillis();
+					if ( percentile == 0 )
+						MinFilterExample.minFilter( input, naive, new RectangleShape( span, false ) );
+					else
+						naivePercentile( input, naive, new RectangleShape( span, false ), percentile );
+					final long naiveTime = System.currentTimeMillis() - start;
+					System.out.println( span + "\t" + naiveTime + "\t" + sequentialTime + "\t" + parallelTime + "\t" + ImgComparison.identical( naive, fast ) );
+				}
+				else
+					System.out.println( span + "\t-\t" + sequentialTime + "\t" + parallelTime + "\t-" );
+			}
+		}
+	}
+
+	/**
+	 * Naive rank filter: copies every neighborhood into an array and sorts it.
+	 */
+	public static < T extends IntegerType< T > > void naivePercentile( final RandomAccessibleInterval< T > input, final RandomAccessibleInterval< T > output, final Shape shape, final double percentile )
+	{
+		final RandomAccess< T > out = output.randomAccess();
+		long[] values = new long[ 0 ];
+		for ( final Neighborhood< T > neighborhood : shape.neighborhoods( input ) )
+		{
+			final int size = ( int ) neighborhood.size();
+			if ( values.length != size )
+				values = new long[ size ];
+			int i = 0;
+			for ( final T t : neighborhood )
+				values[ i++ ] = t.getIntegerLong();
+			Arrays.sort( values );
+			out.setPosition( neighborhood );
+			out.get().setInteger( values[ ( int ) Math.round( percentile * ( size - 1 ) ) ] );
+		}
+	}
+}
@@ -0,0 +1,56 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.algorithm.util;
+
+import net.imglib2.Cursor;
+import net.imglib2.IterableInterval;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Checks the results of the optimized operators against a reference.
+ */
+public class ImgComparison
+{
+	/**
+	 * Returns whether {@code a} and {@code b} hold the same values, compared
+	 * as doubles in the iteration order of {@code a} and {@code b}. Both must
+	 * have the same size and iteration order, e.g., images created by the same
+	 * factory.
+	 */
+	public static < T extends RealType< T > > boolean identical( final IterableInterval< T > a, final IterableInterval< T > b )
+	{
+		if ( a.size() != b.size() )
+			return false;
+		final Cursor< T > ca = a.cursor();
+		final Cursor< T > cb = b.cursor();
+		while ( ca.hasNext() )
+			if ( ca.next().getRealDouble() != cb.next().getRealDouble() )
+				return false;
+		return true;
+	}
+}
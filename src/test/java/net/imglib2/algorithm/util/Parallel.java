@@ -0,0 +1,144 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.algorithm.util;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs a fixed number of tasks in parallel, one thread per task, as the
+ * multi-threaded operators of the benchmarks do.
+ */
+public class Parallel
+{
+	/**
+	 * One of the tasks passed to {@link Parallel#run(String, int, Task)}.
+	 */
+	public static interface Task
+	{
+		/**
+		 * @param task
+		 *            the index of this task in {@code [0, numTasks)}.
+		 */
+		public void run( int task );
+	}
+
+	/**
+	 * One of the tasks passed to
+	 * {@link Parallel#runRanges(String, long, int, RangeTask)}.
+	 */
+	public static interface RangeTask
+	{
+		/**
+		 * Processes the items in {@code [first, last)}.
+		 */
+		public void run( long first, long last );
+	}
+
+	/**
+	 * Runs {@code task} for the indices {@code 0} to {@code numTasks - 1},
+	 * each in its own thread named {@code name + " " + index}, and waits until
+	 * all have finished. A single task runs in the calling thread.
+	 * <p>
+	 * If a task throws, the other tasks still run to completion, and then the
+	 * first exception (in the order they were caught) is rethrown in the
+	 * calling thread.
+	 * </p>
+	 *
+	 * @throws RuntimeException
+	 *             if the calling thread is interrupted while waiting. Its
+	 *             interrupt flag is set again.
+	 */
+	public static void run( final String name, final int numTasks, final Task task )
+	{
+		if ( numTasks == 1 )
+		{
+			task.run( 0 );
+			return;
+		}
+
+		final AtomicReference< Throwable > failure = new AtomicReference< Throwable >();
+		final Thread[] threads = new Thread[ numTasks ];
+		for ( int t = 0; t < numTasks; ++t )
+		{
+			final int index = t;
+			threads[ t ] = new Thread( name + " " + t )
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						task.run( index );
+					}
+					catch ( final Throwable e )
+					{
+						failure.compareAndSet( null, e );
+					}
+				}
+			};
+		}
+		for ( final Thread thread : threads )
+			thread.start();
+		try
+		{
+			for ( final Thread thread : threads )
+				thread.join();
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException( e );
+		}
+
+		final Throwable e = failure.get();
+		if ( e instanceof RuntimeException )
+			throw ( RuntimeException ) e;
+		if ( e instanceof Error )
+			throw ( Error ) e;
+		if ( e != null )
+			throw new RuntimeException( e );
+	}
+
+	/**
+	 * Splits the items {@code [0, numItems)} into
+	 * {@code min( numThreads, numItems )} contiguous ranges of (almost) equal
+	 * size and processes them with {@link #run(String, int, Task)}.
+	 */
+	public static void runRanges( final String name, final long numItems, final int numThreads, final RangeTask task )
+	{
+		final int numTasks = ( int ) Math.max( 1, Math.min( numThreads, numItems ) );
+		run( name, numTasks, new Task()
+		{
+			@Override
+			public void run( final int t )
+			{
+				task.run( numItems * t / numTasks, numItems * ( t + 1 ) / numTasks );
+			}
+		} );
+	}
+}
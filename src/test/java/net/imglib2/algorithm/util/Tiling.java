@@ -0,0 +1,73 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.algorithm.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+
+/**
+ * Splits intervals into blocks that are processed independently, e.g., by
+ * different threads or to keep the working set in cache.
+ */
+public class Tiling
+{
+	/**
+	 * Splits an interval into tiles of (at most) the given size. The tiles
+	 * are listed in flat order, the first axis varying fastest.
+	 */
+	public static List< Interval > tiles( final Interval interval, final int[] tileSize )
+	{
+		final int n = interval.numDimensions();
+		final List< Interval > tiles = new ArrayList< Interval >();
+		final long[] min = new long[ n ];
+		interval.min( min );
+		while ( true )
+		{
+			final long[] tileMin = min.clone();
+			final long[] tileMax = new long[ n ];
+			for ( int d = 0; d < n; ++d )
+				tileMax[ d ] = Math.min( tileMin[ d ] + tileSize[ d ] - 1, interval.max( d ) );
+			tiles.add( new FinalInterval( tileMin, tileMax ) );
+
+			int d = 0;
+			for ( ; d < n; ++d )
+			{
+				min[ d ] += tileSize[ d ];
+				if ( min[ d ] <= interval.max( d ) )
+					break;
+				min[ d ] = interval.min( d );
+			}
+			if ( d == n )
+				break;
+		}
+		return tiles;
+	}
+}
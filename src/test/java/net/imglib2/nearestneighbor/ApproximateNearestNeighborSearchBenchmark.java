@@ -0,0 +1,149 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.nearestneighbor;
+
+import java.util.Random;
+
+import net.imglib2.KDTree;
+import net.imglib2.RealPoint;
+import net.imglib2.RealPointSampleList;
+import net.imglib2.algorithm.kdtree.ApproximateKNearestNeighborSearchOnFlatKDTree;
+import net.imglib2.algorithm.kdtree.FlatKDTree;
+import net.imglib2.algorithm.kdtree.KNearestNeighborSearchOnFlatKDTree;
+import net.imglib2.neighborsearch.KNearestNeighborSearchOnKDTree;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+
+/**
+ * Speedup against recall of {@link ApproximateKNearestNeighborSearchOnFlatKDTree}
+ * on the phyllotaxis of {@link KNearestNeighborSearchPhyllotaxisBehavior}
+ * scaled up to 2 x 10^6 samples in the 1024x768 frame. For each epsilon and
+ * visit budget, prints the time of the queries, the speedup over the exact
+ * search on the same tree, the recall (fraction of the true k nearest
+ * neighbors found), and the mean and largest ratio of the distance to the
+ * k-th neighbor found to the true one. The exact search on a {@link KDTree}
+ * is timed for reference.
+ */
+public class ApproximateNearestNeighborSearchBenchmark
+{
+	public static void main( final String[] args )
+	{
+		final long[] size = new long[] { 1024, 768 };
+		final int m = 1000000;
+		final int k = 8;
+		final int numQueries = 200000;
+		final double[] epsilons = new double[] { 0, 0.1, 0.25, 0.5, 1, 2 };
+		final int[] budgets = new int[] { Integer.MAX_VALUE, 64, 32 };
+
+		// r grows about as sqrt( 2 dr i ), so that the outermost samples are
+		// about 500 pixels from the center
+		final RealPointSampleList< UnsignedShortType > list = new RealPointSampleList< UnsignedShortType >( 3 );
+		KNearestNeighborSearchPhyllotaxisBehavior.createPhyllotaxis2( list, m, size[ 0 ] / 2.0, size[ 1 ] / 2.0, 0.125 );
+		final FlatKDTree< UnsignedShortType > tree = new FlatKDTree< UnsignedShortType >( list, Runtime.getRuntime().availableProcessors() );
+
+		final Random random = new Random( 1l );
+		final double[][] queries = new double[ numQueries ][];
+		for ( int i = 0; i < numQueries; ++i )
+			queries[ i ] = new double[] { random.nextDouble() * size[ 0 ], random.nextDouble() * size[ 1 ], 0 };
+
+		// exact results
+		final int[][] exactNodes = new int[ numQueries ][ k ];
+		final double[] exactDistances = new double[ numQueries ];
+		final KNearestNeighborSearchOnFlatKDTree< UnsignedShortType > exact = new KNearestNeighborSearchOnFlatKDTree< UnsignedShortType >( tree, k );
+		for ( int i = 0; i < numQueries; ++i )
+		{
+			exact.search( queries[ i ] );
+			for ( int j = 0; j < k; ++j )
+				exactNodes[ i ][ j ] = exact.getNode( j );
+			exactDistances[ i ] = exact.getDistance( k - 1 );
+		}
+		long start = System.currentTimeMillis();
+		for ( int i = 0; i < numQueries; ++i )
+			exact.search( queries[ i ] );
+		final long exactTime = System.currentTimeMillis() - start;
+
+		final KDTree< UnsignedShortType > kdtree = new KDTree< UnsignedShortType >( list );
+		final KNearestNeighborSearchOnKDTree< UnsignedShortType > library = new KNearestNeighborSearchOnKDTree< UnsignedShortType >( kdtree, k );
+		final RealPoint query = new RealPoint( 3 );
+		for ( int run = 0; run < 2; ++run )
+		{
+			start = System.currentTimeMillis();
+			for ( int i = 0; i < numQueries; ++i )
+			{
+				query.setPosition( queries[ i ] );
+				library.search( query );
+			}
+		}
+		final long libraryTime = System.currentTimeMillis() - start;
+
+		System.out.println( tree.size() + " samples, " + numQueries + " queries, k = " + k );
+		System.out.println( "exact, KDTree: " + libraryTime + " ms" );
+		System.out.println( "exact, FlatKDTree: " + exactTime + " ms" );
+		System.out.println( String.format( "%8s %8s %10s %10s %10s %10s %12s %12s", "epsilon", "budget", "ms", "speedup", "visits", "recall", "mean ratio", "max ratio" ) );
+		for ( final int budget : budgets )
+		{
+			for ( final double epsilon : epsilons )
+			{
+				final ApproximateKNearestNeighborSearchOnFlatKDTree< UnsignedShortType > search = new ApproximateKNearestNeighborSearchOnFlatKDTree< UnsignedShortType >( tree, k, epsilon, budget );
+				for ( int i = 0; i < numQueries; ++i )
+					search.search( queries[ i ] );
+				start = System.currentTimeMillis();
+				for ( int i = 0; i < numQueries; ++i )
+					search.search( queries[ i ] );
+				final long time = System.currentTimeMillis() - start;
+
+				long visits = 0;
+				long found = 0;
+				double sumRatio = 0;
+				double maxRatio = 1;
+				for ( int i = 0; i < numQueries; ++i )
+				{
+					search.search( queries[ i ] );
+					visits += search.getNumVisits();
+					for ( int j = 0; j < k; ++j )
+					{
+						final int node = search.getNode( j );
+						for ( int l = 0; l < k; ++l )
+						{
+							if ( exactNodes[ i ][ l ] == node )
+							{
+								++found;
+								break;
+							}
+						}
+					}
+					final double ratio = exactDistances[ i ] == 0 ? 1 : search.getDistance( k - 1 ) / exactDistances[ i ];
+					sumRatio += ratio;
+					maxRatio = Math.max( maxRatio, ratio );
+				}
+				System.out.println( String.format( "%8.2f %8s %10d %10.2f %10.1f %10.4f %12.4f %12.4f", epsilon,
+						budget == Integer.MAX_VALUE ? "-" : Integer.toString( budget ), time, ( double ) exactTime / Math.max( 1, time ),
+						( double ) visits / numQueries, ( double ) found / ( ( long ) numQueries * k ), sumRatio / numQueries, maxRatio ) );
+			}
+		}
+	}
+}
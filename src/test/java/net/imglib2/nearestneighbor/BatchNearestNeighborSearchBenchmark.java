@@ -0,0 +1,117 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.nearestneighbor;
+
+import net.imglib2.Cursor;
+import net.imglib2.KDTree;
+import net.imglib2.RealPointSampleList;
+import net.imglib2.algorithm.kdtree.BatchNearestNeighborSearchOnFlatKDTree;
+import net.imglib2.algorithm.kdtree.FlatKDTree;
+import net.imglib2.algorithm.kdtree.NearestNeighborSearchOnFlatKDTree;
+import net.imglib2.algorithm.util.ImgComparison;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.neighborsearch.NearestNeighborSearch;
+import net.imglib2.neighborsearch.NearestNeighborSearchOnKDTree;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.util.Util;
+
+/**
+ * Renders the nearest neighbor image of the phyllotaxis of
+ * {@link KNearestNeighborSearchPhyllotaxisBehavior} (1024x768x2, 2 x 10000
+ * samples) with the per-pixel loop of that class, on a {@link KDTree} and on a
+ * {@link FlatKDTree}, and with
+ * {@link BatchNearestNeighborSearchOnFlatKDTree#fill} on 1 and all threads.
+ * Checks that all images are identical.
+ */
+public class BatchNearestNeighborSearchBenchmark
+{
+	public static void main( final String[] args )
+	{
+		final long[] size = new long[] { 1024, 768, 2 };
+		final int m = 10000;
+		final int numRuns = 10;
+		final int numThreads = Runtime.getRuntime().availableProcessors();
+		final int[] tileSize = new int[] { 64, 64, 1 };
+
+		final RealPointSampleList< UnsignedShortType > list = new RealPointSampleList< UnsignedShortType >( 3 );
+		KNearestNeighborSearchPhyllotaxisBehavior.createPhyllotaxis2( list, m, size[ 0 ] / 2.0, size[ 1 ] / 2.0, 20 );
+		final KDTree< UnsignedShortType > kdtree = new KDTree< UnsignedShortType >( list );
+		final FlatKDTree< UnsignedShortType > flatKDTree = new FlatKDTree< UnsignedShortType >( list, numThreads );
+
+		final Img< UnsignedShortType > reference = ArrayImgs.unsignedShorts( size );
+		final Img< UnsignedShortType > img = ArrayImgs.unsignedShorts( size );
+		final long[] times = new long[ numRuns ];
+
+		System.out.println( String.format( "%-36s %10s %10s", "method", "ms", "identical" ) );
+
+		for ( int i = 0; i < numRuns; ++i )
+		{
+			final long start = System.currentTimeMillis();
+			drawNearestNeighbor( reference, new NearestNeighborSearchOnKDTree< UnsignedShortType >( kdtree ) );
+			times[ i ] = System.currentTimeMillis() - start;
+		}
+		System.out.println( String.format( "%-36s %10d %10s", "per pixel, KDTree", Util.median( times ), "-" ) );
+
+		for ( int i = 0; i < numRuns; ++i )
+		{
+			final long start = System.currentTimeMillis();
+			drawNearestNeighbor( img, new NearestNeighborSearchOnFlatKDTree< UnsignedShortType >( flatKDTree ) );
+			times[ i ] = System.currentTimeMillis() - start;
+		}
+		System.out.println( String.format( "%-36s %10d %10s", "per pixel, FlatKDTree", Util.median( times ), ImgComparison.identical( reference, img ) ) );
+
+		for ( final int threads : new int[] { 1, numThreads } )
+		{
+			for ( final UnsignedShortType t : img )
+				t.setZero();
+			for ( int i = 0; i < numRuns; ++i )
+			{
+				final long start = System.currentTimeMillis();
+				BatchNearestNeighborSearchOnFlatKDTree.fill( flatKDTree, img, tileSize, threads );
+				times[ i ] = System.currentTimeMillis() - start;
+			}
+			System.out.println( String.format( "%-36s %10d %10s", "batch, FlatKDTree, " + threads + " thread(s)", Util.median( times ), ImgComparison.identical( reference, img ) ) );
+		}
+	}
+
+	/**
+	 * The per-pixel loop of
+	 * {@link KNearestNeighborSearchPhyllotaxisBehavior}.
+	 */
+	static void drawNearestNeighbor( final Img< UnsignedShortType > target, final NearestNeighborSearch< UnsignedShortType > nnSearch )
+	{
+		final Cursor< UnsignedShortType > c = target.localizingCursor();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			nnSearch.search( c );
+			c.get().set( nnSearch.getSampler().get() );
+		}
+	}
+}
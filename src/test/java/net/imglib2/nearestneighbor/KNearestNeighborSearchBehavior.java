@@ -101,10 +101,11 @@ public class KNearestNeighborSearchBehavior
 	
 	final static private < T extends Type< T > > long drawNearestNeighbor(
 			final IterableInterval< T > target,
-			final NearestNeighborSearch< T > nnSearch )
+			final NearestNeighborSearch< T > nnSearch,
+			final Timer timer,
+			final String phase )
 	{
-		final Timer timer = new Timer();
-		timer.start();
+		timer.begin( phase );
 		final Cursor< T > c = target.localizingCursor();
 		while ( c.hasNext() )
 		{
@@ -112,7 +113,7 @@ public class KNearestNeighborSearchBehavior
 			nnSearch.search( c );
 			c.get().set( nnSearch.getSampler().get() );
 		}
-		return timer.stop();
+		return timer.end( target.size() ) / 1000000;
 	}
 
 	final static private < T extends RealType< T > > long drawWeightedByDistance(
@@ -121,10 +122,11 @@ public class KNearestNeighborSearchBehavior
 			final int k,
 			final double p,
 			final double min,
-			final double max )
+			final double max,
+			final Timer timer,
+			final String phase )
 	{
-		final Timer timer = new Timer();
-		timer.start();
+		timer.begin( phase );
 		final Cursor< T > c = target.localizingCursor();
 		while ( c.hasNext() )
 		{
@@ -151,7 +153,7 @@ public class KNearestNeighborSearchBehavior
 			
 			c.get().setReal( Math.max(  min, Math.min( max, v ) ) );
 		}
-		return timer.stop();
+		return timer.end( target.size() ) / 1000000;
 	}
 	
 	final static private < T extends RealType< T > > long drawWeightedByDistanceInterpolator(
@@ -160,10 +162,11 @@ public class KNearestNeighborSearchBehavior
 			final int k,
 			final double p,
 			final double min,
-			final double max )
+			final double max,
+			final Timer timer,
+			final String phase )
 	{
-		final Timer timer = new Timer();
-		timer.start();
+		timer.begin( phase );
 		final Cursor< T > c = target.localizingCursor();
 		final InverseDistanceWeightingInterpolator< T > interpolator= new InverseDistanceWeightingInterpolatorFactory< T >( p ).create( knnSearch, target );
 		while ( c.hasNext() )
@@ -172,7 +175,7 @@ public class KNearestNeighborSearchBehavior
 			interpolator.setPosition( c );
 			c.get().setReal( Math.max(  min, Math.min( max, interpolator.get().getRealDouble() ) ) );
 		}
-		return timer.stop();
+		return timer.end( target.size() ) / 1000000;
 	}
 	
 	
@@ -190,16 +193,21 @@ public class KNearestNeighborSearchBehavior
 		final ImagePlusImgFactory< UnsignedByteType > factory = new ImagePlusImgFactory< UnsignedByteType >();
 		
 		new ImageJ();
+
+		final Timer timer = new Timer();
 		
 		IJ.log( "Linear Search" );
 		IJ.log( "=============" );
+		timer.begin( "linear search" );
 		
 		/* nearest neighbor */
 		IJ.log( "Nearest neighbor ..." );
 		final ImagePlusImg< UnsignedByteType, ? > img1 = factory.create( size, new UnsignedByteType() );
 		long t = drawNearestNeighbor(
 				img1,
-				new NearestNeighborSearchOnIterableRealInterval< UnsignedByteType >( list ) );
+				new NearestNeighborSearchOnIterableRealInterval< UnsignedByteType >( list ),
+				timer,
+				"nearest neighbor" );
 		
 		IJ.log( t + "ms " );
 		
@@ -219,7 +227,9 @@ public class KNearestNeighborSearchBehavior
 		final ImagePlusImg< UnsignedByteType, ? > img2 = factory.create( size, new UnsignedByteType() );
 		t = drawNearestNeighbor(
 				img2,
-				new KNearestNeighborSearchOnIterableRealInterval< UnsignedByteType >( list, 1 ) );
+				new KNearestNeighborSearchOnIterableRealInterval< UnsignedByteType >( list, 1 ),
+				timer,
+				"nearest neighbor (k=1)" );
 		
 		IJ.log( t + "ms " );
 		
@@ -247,7 +257,7 @@ public class KNearestNeighborSearchBehavior
 			{
 				IJ.log( "  k=" + k + " p=" + String.format( "%.2f", p ) );
 				final ImagePlusImg< UnsignedByteType, ? > img3 = factory.create( size, new UnsignedByteType() );
-				t += drawWeightedByDistanceInterpolator( img3, new KNearestNeighborSearchOnIterableRealInterval< UnsignedByteType >( list, k ), k, p, 0, 255 );
+				t += drawWeightedByDistanceInterpolator( img3, new KNearestNeighborSearchOnIterableRealInterval< UnsignedByteType >( list, k ), k, p, 0, 255, timer, "weighted by distance k=" + k );
 				try
 				{
 					distanceStack.addSlice( "k=" + k + " p=" + String.format( "%.2f", p ), img3.getImagePlus().getProcessor() );
@@ -267,18 +277,22 @@ public class KNearestNeighborSearchBehavior
 		impDistance.setDimensions( 1, np, distanceStack.getSize() / np );
 		impDistance.show();
 		IJ.log( "Done." );
+		timer.end();
 		
 		
 		
 		IJ.log( "KDTree Search" );
 		IJ.log( "=============" );
+		timer.begin( "kdtree search" );
 		
 		/* nearest neighbor */
 		IJ.log( "Nearest neighbor ..." );
 		final ImagePlusImg< UnsignedByteType, ? > img4 = factory.create( size, new UnsignedByteType() );
 		t = drawNearestNeighbor(
 				img4,
-				new NearestNeighborSearchOnKDTree< UnsignedByteType >( kdtree ) );
+				new NearestNeighborSearchOnKDTree< UnsignedByteType >( kdtree ),
+				timer,
+				"nearest neighbor" );
 		
 		IJ.log( t + "ms " );
 		
@@ -298,7 +312,9 @@ public class KNearestNeighborSearchBehavior
 		final ImagePlusImg< UnsignedByteType, ? > img5 = factory.create( size, new UnsignedByteType() );
 		t = drawNearestNeighbor(
 				img5,
-				new KNearestNeighborSearchOnKDTree< UnsignedByteType >( kdtree, 1 ) );
+				new KNearestNeighborSearchOnKDTree< UnsignedByteType >( kdtree, 1 ),
+				timer,
+				"nearest neighbor (k=1)" );
 		
 		IJ.log( t + "ms " );
 		
@@ -328,7 +344,9 @@ public class KNearestNeighborSearchBehavior
 				final ImagePlusImg< UnsignedByteType, ? > img3 = factory.create( size, new UnsignedByteType() );
 				t += drawWeightedByDistanceInterpolator(
 						img3,
-						new KNearestNeighborSearchOnKDTree< UnsignedByteType >( kdtree, k ), k, p, 0, 255 );
+						new KNearestNeighborSearchOnKDTree< UnsignedByteType >( kdtree, k ), k, p, 0, 255,
+						timer,
+						"weighted by distance k=" + k );
 				try
 				{
 					distanceStack2.addSlice( "k=" + k + " p=" + String.format( "%.2f", p ), img3.getImagePlus().getProcessor() );
@@ -347,6 +365,9 @@ public class KNearestNeighborSearchBehavior
 		impDistance2.setOpenAsHyperStack( true );
 		impDistance2.setDimensions( 1, np, distanceStack2.getSize() / np );
 		impDistance2.show();
-		IJ.log( "Done." );		
+		IJ.log( "Done." );
+		timer.end();
+
+		IJ.log( timer.report() );
 	}
 }
@@ -131,7 +131,7 @@ public class KNearestNeighborSearchPhyllotaxisBehavior
 	}
 	
 	
-	final static private void createPhyllotaxis2(
+	final static void createPhyllotaxis2(
 			final RealPointSampleList< UnsignedShortType > phyllotaxis,
 			final int n,
 			final double tx,
@@ -186,10 +186,11 @@ public class KNearestNeighborSearchPhyllotaxisBehavior
 	
 	final static private < T extends Type< T > > long drawNearestNeighbor(
 			final IterableInterval< T > target,
-			final NearestNeighborSearch< T > nnSearch )
+			final NearestNeighborSearch< T > nnSearch,
+			final Timer timer,
+			final String phase )
 	{
-		final Timer timer = new Timer();
-		timer.start();
+		timer.begin( phase );
 		final Cursor< T > c = target.localizingCursor();
 		while ( c.hasNext() )
 		{
@@ -197,7 +198,7 @@ public class KNearestNeighborSearchPhyllotaxisBehavior
 			nnSearch.search( c );
 			c.get().set( nnSearch.getSampler().get() );
 		}
-		return timer.stop();
+		return timer.end( target.size() ) / 1000000;
 	}
 	
 	
@@ -207,10 +208,11 @@ public class KNearestNeighborSearchPhyllotaxisBehavior
 			final int k,
 			final double p,
 			final double min,
-			final double max )
+			final double max,
+			final Timer timer,
+			final String phase )
 	{
-		final Timer timer = new Timer();
-		timer.start();
+		timer.begin( phase );
 		final Cursor< T > c = target.localizingCursor();
 		while ( c.hasNext() )
 		{
@@ -237,7 +239,7 @@ public class KNearestNeighborSearchPhyllotaxisBehavior
 			
 			c.get().setReal( Math.max(  min, Math.min( max, v ) ) );
 		}
-		return timer.stop();
+		return timer.end( target.size() ) / 1000000;
 	}
 	
 	
@@ -266,6 +268,7 @@ public class KNearestNeighborSearchPhyllotaxisBehavior
 
 		new ImageJ();
 
+		final Timer timer = new Timer();
 		
 		IJ.log( "KDTree Search" );
 		IJ.log( "=============" );
@@ -275,9 +278,12 @@ public class KNearestNeighborSearchPhyllotaxisBehavior
 		final ImagePlusImg< UnsignedShortType, ? > img4 = factory.create( new long[]{ size[ 0 ], size[ 1 ], 2 }, new UnsignedShortType() );
 		t = drawNearestNeighbor(
 				img4,
-				new NearestNeighborSearchOnKDTree< UnsignedShortType >( kdtree ) );
+				new NearestNeighborSearchOnKDTree< UnsignedShortType >( kdtree ),
+				timer,
+				"nearest neighbor" );
 		
 		IJ.log( t + "ms " );
+		IJ.log( timer.report() );
 		
 		try
 		{
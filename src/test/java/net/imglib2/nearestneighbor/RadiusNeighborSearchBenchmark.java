@@ -0,0 +1,129 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.nearestneighbor;
+
+import net.imglib2.KDTree;
+import net.imglib2.RealPoint;
+import net.imglib2.RealPointSampleList;
+import net.imglib2.algorithm.kdtree.FlatKDTree;
+import net.imglib2.algorithm.kdtree.RadiusNeighborSearchOnFlatKDTree;
+import net.imglib2.neighborsearch.RadiusNeighborSearchOnKDTree;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+
+/**
+ * Query throughput of radius searches on the phyllotaxis of
+ * {@link KNearestNeighborSearchPhyllotaxisBehavior} as a function of the
+ * radius: {@link RadiusNeighborSearchOnKDTree} (sorted) against
+ * {@link RadiusNeighborSearchOnFlatKDTree} unsorted, sorted and capped at the
+ * 16 nearest. The queries are every 4th pixel of the 1024x768 plane z = 0.
+ * Checks that the number of neighbors found is the same.
+ */
+public class RadiusNeighborSearchBenchmark
+{
+	private static final int MAX_NEIGHBORS = 16;
+
+	public static void main( final String[] args )
+	{
+		final long[] size = new long[] { 1024, 768 };
+		final int m = 10000;
+		final int step = 4;
+		final double[] radii = new double[] { 2, 5, 10, 20, 40 };
+
+		final RealPointSampleList< UnsignedShortType > list = new RealPointSampleList< UnsignedShortType >( 3 );
+		KNearestNeighborSearchPhyllotaxisBehavior.createPhyllotaxis2( list, m, size[ 0 ] / 2.0, size[ 1 ] / 2.0, 20 );
+		final KDTree< UnsignedShortType > kdtree = new KDTree< UnsignedShortType >( list );
+		final FlatKDTree< UnsignedShortType > flatKDTree = new FlatKDTree< UnsignedShortType >( list, 1 );
+
+		final int numQueries = ( int ) ( ( size[ 0 ] / step ) * ( size[ 1 ] / step ) );
+		final double[][] queries = new double[ numQueries ][];
+		int q = 0;
+		for ( int y = 0; y < size[ 1 ]; y += step )
+			for ( int x = 0; x < size[ 0 ]; x += step )
+				queries[ q++ ] = new double[] { x, y, 0 };
+
+		System.out.println( numQueries + " queries, thousand queries per second" );
+		System.out.println( String.format( "%8s %12s %12s %12s %12s %12s %10s", "radius", "neighbors", "KDTree", "flat", "flat sorted", "flat k=" + MAX_NEIGHBORS, "same" ) );
+		for ( final double radius : radii )
+		{
+			// warm up and count
+			final long libraryCount = searchLibrary( kdtree, queries, radius );
+			final long flatCount = searchFlat( flatKDTree, queries, radius, false, Integer.MAX_VALUE );
+
+			long start = System.nanoTime();
+			searchLibrary( kdtree, queries, radius );
+			final double library = throughput( numQueries, System.nanoTime() - start );
+
+			start = System.nanoTime();
+			searchFlat( flatKDTree, queries, radius, false, Integer.MAX_VALUE );
+			final double flat = throughput( numQueries, System.nanoTime() - start );
+
+			start = System.nanoTime();
+			searchFlat( flatKDTree, queries, radius, true, Integer.MAX_VALUE );
+			final double sorted = throughput( numQueries, System.nanoTime() - start );
+
+			searchFlat( flatKDTree, queries, radius, true, MAX_NEIGHBORS );
+			start = System.nanoTime();
+			searchFlat( flatKDTree, queries, radius, true, MAX_NEIGHBORS );
+			final double capped = throughput( numQueries, System.nanoTime() - start );
+
+			System.out.println( String.format( "%8.0f %12.1f %12.1f %12.1f %12.1f %12.1f %10s", radius, ( double ) flatCount / numQueries,
+					library, flat, sorted, capped, libraryCount == flatCount ) );
+		}
+	}
+
+	private static long searchLibrary( final KDTree< UnsignedShortType > kdtree, final double[][] queries, final double radius )
+	{
+		final RadiusNeighborSearchOnKDTree< UnsignedShortType > search = new RadiusNeighborSearchOnKDTree< UnsignedShortType >( kdtree );
+		final RealPoint query = new RealPoint( kdtree.numDimensions() );
+		long count = 0;
+		for ( final double[] position : queries )
+		{
+			query.setPosition( position );
+			search.search( query, radius, true );
+			count += search.numNeighbors();
+		}
+		return count;
+	}
+
+	private static long searchFlat( final FlatKDTree< UnsignedShortType > tree, final double[][] queries, final double radius, final boolean sort, final int maxNeighbors )
+	{
+		final RadiusNeighborSearchOnFlatKDTree< UnsignedShortType > search = new RadiusNeighborSearchOnFlatKDTree< UnsignedShortType >( tree );
+		long count = 0;
+		for ( final double[] position : queries )
+		{
+			search.search( position, radius, sort, maxNeighbors );
+			count += search.numNeighbors();
+		}
+		return count;
+	}
+
+	private static double throughput( final int numQueries, final long nanos )
+	{
+		return numQueries / ( nanos / 1e6 );
+	}
+}
@@ -0,0 +1,194 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.nearestneighbor;
+
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.KDTree;
+import net.imglib2.RealPoint;
+import net.imglib2.RealPointSampleList;
+import net.imglib2.algorithm.kdtree.FlatKDTree;
+import net.imglib2.algorithm.kdtree.ScatteredDataRasterizer;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.interpolation.neighborsearch.InverseDistanceWeightingInterpolator;
+import net.imglib2.interpolation.neighborsearch.InverseDistanceWeightingInterpolatorFactory;
+import net.imglib2.neighborsearch.KNearestNeighborSearchOnKDTree;
+import net.imglib2.neighborsearch.NearestNeighborSearchOnKDTree;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Util;
+
+/**
+ * Renders 10^4 to 10^6 random samples into a 1024x768 image, with the
+ * per-pixel loops of {@link KNearestNeighborSearchBehavior} (nearest neighbor
+ * search and {@link InverseDistanceWeightingInterpolator} on a {@link KDTree})
+ * and with {@link ScatteredDataRasterizer} on 1 and all threads. Every method
+ * is run once to warm up, then the median of {@code numRuns} runs is printed
+ * in ms, with the largest difference to the per-pixel result. Shepard
+ * interpolation has no per-pixel counterpart and is only timed.
+ */
+public class ScatteredDataRasterizerBenchmark
+{
+	/**
+	 * One of the compared methods, rendering into an image with the given
+	 * number of threads (ignored by the per-pixel loops).
+	 */
+	private static interface Method
+	{
+		public void render( int numThreads );
+	}
+
+	public static void main( final String[] args )
+	{
+		final long[] size = new long[] { 1024, 768 };
+		final int k = 8;
+		final double[] exponents = new double[] { 1, 2, 1.5 };
+		final int numRuns = 5;
+		final int numThreads = Runtime.getRuntime().availableProcessors();
+		final int[] tileSize = new int[] { 64, 64 };
+
+		System.out.println( String.format( "%-10s %-14s %12s %12s %12s %12s", "samples", "method", "per pixel", "1 thread", numThreads + " threads", "max diff" ) );
+		for ( int numSamples = 10000; numSamples <= 1000000; numSamples *= 10 )
+		{
+			final Random random = new Random( 1l );
+			final RealPointSampleList< FloatType > list = new RealPointSampleList< FloatType >( 2 );
+			for ( int i = 0; i < numSamples; ++i )
+				list.add( new RealPoint( random.nextDouble() * size[ 0 ], random.nextDouble() * size[ 1 ] ), new FloatType( random.nextInt( 256 ) ) );
+			final KDTree< FloatType > kdtree = new KDTree< FloatType >( list );
+			final ScatteredDataRasterizer< FloatType > rasterizer = new ScatteredDataRasterizer< FloatType >( new FlatKDTree< FloatType >( list, numThreads ) );
+
+			final Img< FloatType > reference = ArrayImgs.floats( size );
+			final Img< FloatType > img = ArrayImgs.floats( size );
+			final long[] times = new long[ 2 ];
+
+			final long perPixel = time( new Method()
+			{
+				@Override
+				public void render( final int threads )
+				{
+					final NearestNeighborSearchOnKDTree< FloatType > nnSearch = new NearestNeighborSearchOnKDTree< FloatType >( kdtree );
+					final Cursor< FloatType > c = reference.localizingCursor();
+					while ( c.hasNext() )
+					{
+						c.fwd();
+						nnSearch.search( c );
+						c.get().set( nnSearch.getSampler().get() );
+					}
+				}
+			}, 1, numRuns );
+			final Method nearest = new Method()
+			{
+				@Override
+				public void render( final int threads )
+				{
+					rasterizer.nearestNeighbor( img, tileSize, threads );
+				}
+			};
+			times[ 0 ] = time( nearest, 1, numRuns );
+			times[ 1 ] = time( nearest, numThreads, numRuns );
+			print( numSamples, "nearest", perPixel, times, maxDifference( reference, img ) );
+
+			for ( final double p : exponents )
+			{
+				final long interpolatorTime = time( new Method()
+				{
+					@Override
+					public void render( final int threads )
+					{
+						final InverseDistanceWeightingInterpolator< FloatType > interpolator = new InverseDistanceWeightingInterpolatorFactory< FloatType >( p ).create( new KNearestNeighborSearchOnKDTree< FloatType >( kdtree, k ), reference );
+						final Cursor< FloatType > ci = reference.localizingCursor();
+						while ( ci.hasNext() )
+						{
+							ci.fwd();
+							interpolator.setPosition( ci );
+							ci.get().set( interpolator.get() );
+						}
+					}
+				}, 1, numRuns );
+				final Method idw = new Method()
+				{
+					@Override
+					public void render( final int threads )
+					{
+						rasterizer.inverseDistanceWeighting( img, k, p, tileSize, threads );
+					}
+				};
+				times[ 0 ] = time( idw, 1, numRuns );
+				times[ 1 ] = time( idw, numThreads, numRuns );
+				print( numSamples, "idw k=" + k + " p=" + p, interpolatorTime, times, maxDifference( reference, img ) );
+			}
+
+			// radius such that there are about 2k samples per disk
+			final double radius = Math.sqrt( 2 * k * size[ 0 ] * size[ 1 ] / ( Math.PI * numSamples ) );
+			final Method shepard = new Method()
+			{
+				@Override
+				public void render( final int threads )
+				{
+					rasterizer.shepard( img, radius, tileSize, threads );
+				}
+			};
+			times[ 0 ] = time( shepard, 1, numRuns );
+			times[ 1 ] = time( shepard, numThreads, numRuns );
+			print( numSamples, "shepard", -1, times, Double.NaN );
+		}
+	}
+
+	/**
+	 * Runs {@code method} once to warm up and returns the median time in ms of
+	 * the next {@code numRuns} runs.
+	 */
+	private static long time( final Method method, final int numThreads, final int numRuns )
+	{
+		method.render( numThreads );
+		final long[] times = new long[ numRuns ];
+		for ( int i = 0; i < numRuns; ++i )
+		{
+			final long start = System.currentTimeMillis();
+			method.render( numThreads );
+			times[ i ] = System.currentTimeMillis() - start;
+		}
+		return Util.median( times );
+	}
+
+	private static void print( final int numSamples, final String method, final long perPixel, final long[] times, final double maxDifference )
+	{
+		System.out.println( String.format( "%-10d %-14s %12s %12d %12d %12.4g", numSamples, method, perPixel < 0 ? "-" : Long.toString( perPixel ), times[ 0 ], times[ 1 ], maxDifference ) );
+	}
+
+	private static double maxDifference( final Img< FloatType > a, final Img< FloatType > b )
+	{
+		double max = 0;
+		final Cursor< FloatType > ca = a.cursor();
+		final Cursor< FloatType > cb = b.cursor();
+		while ( ca.hasNext() )
+			max = Math.max( max, Math.abs( ca.next().get() - cb.next().get() ) );
+		return max;
+	}
+}
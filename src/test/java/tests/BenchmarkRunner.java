@@ -0,0 +1,140 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package tests;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+
+/**
+ * Entry point for the JMH benchmarks in this repository.
+ * <p>
+ * Accepts the usual JMH command line (benchmark regexps, {@code -f},
+ * {@code -wi}, {@code -rf csv}, ...), runs the selected benchmarks and prints
+ * a summary with throughput (ops/s) and, for every benchmark that has a
+ * {@code dimensions} parameter, time per pixel (ns/pixel). Use the
+ * {@code benchmark} profile to run it from Maven.
+ * </p>
+ */
+public class BenchmarkRunner
+{
+	/**
+	 * Name of the {@code @Param} that benchmarks use to specify image size as
+	 * {@code "W x H x ..."}, e.g. {@code "1000x1000"}.
+	 */
+	public static final String DIMENSIONS_PARAM = "dimensions";
+
+	public static void main( final String[] args ) throws CommandLineOptionException, RunnerException
+	{
+		final CommandLineOptions options = new CommandLineOptions( args );
+		final Collection< RunResult > results = new Runner( options ).run();
+		printSummary( results );
+	}
+
+	/**
+	 * Parses a dimensions string such as {@code "384x384x384"}.
+	 */
+	public static long[] parseDimensions( final String dimensions )
+	{
+		final String[] parts = dimensions.trim().split( "x" );
+		final long[] dims = new long[ parts.length ];
+		for ( int d = 0; d < parts.length; ++d )
+			dims[ d ] = Long.parseLong( parts[ d ].trim() );
+		return dims;
+	}
+
+	public static long numElements( final long[] dimensions )
+	{
+		long n = 1;
+		for ( final long s : dimensions )
+			n *= s;
+		return n;
+	}
+
+	public static void printSummary( final Collection< RunResult > results )
+	{
+		System.out.println();
+		System.out.println( String.format( "%-70s %-16s %14s %14s %12s", "Benchmark", DIMENSIONS_PARAM, "ms/op", "ops/s", "ns/pixel" ) );
+		for ( final RunResult result : results )
+		{
+			final String benchmark = result.getParams().getBenchmark();
+			final String dimensions = result.getParams().getParam( DIMENSIONS_PARAM );
+			final double nsPerOp = toNanosPerOp( result.getPrimaryResult().getScore(), result.getPrimaryResult().getScoreUnit() );
+			if ( Double.isNaN( nsPerOp ) )
+			{
+				System.out.println( String.format( "%-70s %-16s %14s %14s %12s", benchmark, dimensions == null ? "--" : dimensions, "--", "--", "--" ) );
+				continue;
+			}
+			final String nsPerPixel = dimensions == null ? "--" : String.format( "%.3f", nsPerOp / numElements( parseDimensions( dimensions ) ) );
+			System.out.println( String.format( "%-70s %-16s %14.3f %14.3f %12s", benchmark, dimensions == null ? "--" : dimensions, nsPerOp / 1e6, 1e9 / nsPerOp, nsPerPixel ) );
+		}
+	}
+
+	/**
+	 * Converts a JMH score to nanoseconds per operation. Works for both
+	 * average-time ("ms/op") and throughput ("ops/ms") units. Returns
+	 * {@code NaN} for units that are not time based.
+	 */
+	static double toNanosPerOp( final double score, final String unit )
+	{
+		final String[] parts = unit.split( "/" );
+		if ( parts.length != 2 )
+			return Double.NaN;
+		if ( parts[ 1 ].equals( "op" ) )
+		{
+			final TimeUnit tu = timeUnit( parts[ 0 ] );
+			return tu == null ? Double.NaN : score * tu.toNanos( 1 );
+		}
+		else if ( parts[ 0 ].equals( "ops" ) )
+		{
+			final TimeUnit tu = timeUnit( parts[ 1 ] );
+			return tu == null ? Double.NaN : tu.toNanos( 1 ) / score;
+		}
+		return Double.NaN;
+	}
+
+	private static TimeUnit timeUnit( final String label )
+	{
+		if ( label.equals( "ns" ) )
+			return TimeUnit.NANOSECONDS;
+		if ( label.equals( "us" ) )
+			return TimeUnit.MICROSECONDS;
+		if ( label.equals( "ms" ) )
+			return TimeUnit.MILLISECONDS;
+		if ( label.equals( "s" ) )
+			return TimeUnit.SECONDS;
+		if ( label.equals( "min" ) )
+			return TimeUnit.MINUTES;
+		return null;
+	}
+}
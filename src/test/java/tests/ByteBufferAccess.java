@@ -0,0 +1,155 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.imglib2.img.basictypeaccess.ByteAccess;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+
+/**
+ * {@link ByteAccess} backed by a {@link ByteBuffer} instead of a
+ * {@code byte[]}, i.e. pixels that live outside the Java heap when the buffer
+ * is direct or memory-mapped.
+ * <p>
+ * Like {@code byte[]}, a single buffer is limited to {@link Integer#MAX_VALUE}
+ * entries. Larger images need several buffers, e.g. a {@code CellImg} with one
+ * buffer per cell, which gets them from {@link #createArray(int)} of a creator
+ * access: {@link #ByteBufferAccess(int)} for direct buffers or
+ * {@link #mapping(File)} for consecutive regions of one file.
+ * </p>
+ */
+public class ByteBufferAccess implements ByteAccess, ArrayDataAccess< ByteBufferAccess >
+{
+	private final ByteBuffer buffer;
+
+	/**
+	 * The file whose next region {@link #createArray(int)} maps, or
+	 * {@code null} to allocate direct buffers.
+	 */
+	private final File file;
+
+	/**
+	 * Offset of the next region to map, shared by all accesses created by
+	 * {@link #mapping(File)} for the same file.
+	 */
+	private final AtomicLong nextOffset;
+
+	public ByteBufferAccess( final ByteBuffer buffer )
+	{
+		this( buffer, null, null );
+	}
+
+	private ByteBufferAccess( final ByteBuffer buffer, final File file, final AtomicLong nextOffset )
+	{
+		this.buffer = buffer;
+		this.file = file;
+		this.nextOffset = nextOffset;
+	}
+
+	/**
+	 * Allocates a direct (off-heap) buffer of {@code numEntities} bytes.
+	 */
+	public ByteBufferAccess( final int numEntities )
+	{
+		this( ByteBuffer.allocateDirect( numEntities ) );
+	}
+
+	/**
+	 * Maps {@code numEntities} bytes of {@code file}, starting at
+	 * {@code offset}, read-write into memory. The file is grown if necessary.
+	 * The mapping stays valid until the access is garbage collected.
+	 */
+	public static ByteBufferAccess map( final File file, final long offset, final int numEntities ) throws IOException
+	{
+		final RandomAccessFile raf = new RandomAccessFile( file, "rw" );
+		try
+		{
+			final FileChannel channel = raf.getChannel();
+			return new ByteBufferAccess( channel.map( FileChannel.MapMode.READ_WRITE, offset, numEntities ) );
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	/**
+	 * Returns an empty access whose {@link #createArray(int)} maps the next
+	 * {@code numEntities} bytes of {@code file}, starting at offset 0. Used as
+	 * the creator of a cell image, every cell gets its own region of the file.
+	 */
+	public static ByteBufferAccess mapping( final File file )
+	{
+		return new ByteBufferAccess( ByteBuffer.allocate( 0 ), file, new AtomicLong() );
+	}
+
+	@Override
+	public byte getValue( final int index )
+	{
+		return buffer.get( index );
+	}
+
+	@Override
+	public void setValue( final int index, final byte value )
+	{
+		buffer.put( index, value );
+	}
+
+	@Override
+	public ByteBufferAccess createArray( final int numEntities )
+	{
+		if ( file == null )
+			return new ByteBufferAccess( numEntities );
+		try
+		{
+			final ByteBufferAccess access = map( file, nextOffset.getAndAdd( numEntities ), numEntities );
+			return new ByteBufferAccess( access.buffer, file, nextOffset );
+		}
+		catch ( final IOException e )
+		{
+			throw new RuntimeException( e );
+		}
+	}
+
+	@Override
+	public ByteBuffer getCurrentStorageArray()
+	{
+		return buffer;
+	}
+
+	public int getArrayLength()
+	{
+		return buffer.capacity();
+	}
+}
@@ -0,0 +1,701 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package tests;
+
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.imglib2.AbstractCursor;
+import net.imglib2.AbstractInterval;
+import net.imglib2.AbstractLocalizable;
+import net.imglib2.Cursor;
+import net.imglib2.Interval;
+import net.imglib2.IterableInterval;
+import net.imglib2.IterableRealInterval;
+import net.imglib2.Localizable;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.type.NativeType;
+
+/**
+ * A cell image whose cells are produced on demand by a {@link Loader} and held
+ * in a bounded cache, so that images larger than the heap can be processed.
+ * <p>
+ * At most {@code maxCells} cells are strongly referenced; when more are
+ * needed, the least recently used cell is evicted. If the loader is a
+ * {@link Store}, evicted cells are written back (every cell is assumed to be
+ * modified, as writes through {@code T.set()} cannot be tracked). Optionally,
+ * evicted cells are additionally kept through {@link SoftReference}s, so they
+ * can be reused without reloading until the garbage collector needs the
+ * memory.
+ * </p>
+ * <p>
+ * Iteration order is cell by cell, flat within each cell (like
+ * {@code CellImg}). The cache is thread-safe, but a cell that is evicted while
+ * another thread still writes to it loses these writes, so {@code maxCells}
+ * must be at least the number of threads working on the image.
+ * </p>
+ */
+public class CachedCellImg< T extends NativeType< T > > extends AbstractInterval implements RandomAccessibleInterval< T >, IterableInterval< T >
+{
+	/**
+	 * Produces the content of a cell.
+	 */
+	public interface Loader< T extends NativeType< T > >
+	{
+		/**
+		 * @param min
+		 *            position of the cell's min corner in the image.
+		 * @param dimensions
+		 *            size of the cell (smaller than the nominal cell size at
+		 *            the image border).
+		 */
+		public ArrayImg< T, ? > load( long[] min, int[] dimensions ) throws IOException;
+	}
+
+	/**
+	 * A {@link Loader} that can also persist modified cells.
+	 */
+	public interface Store< T extends NativeType< T > > extends Loader< T >
+	{
+		public void save( long[] min, ArrayImg< T, ? > cell ) throws IOException;
+	}
+
+	static final class Cell< T extends NativeType< T > >
+	{
+		final long index;
+
+		final long[] min;
+
+		final long[] max;
+
+		final long size;
+
+		final ArrayImg< T, ? > img;
+
+		Cell( final long index, final long[] min, final long[] max, final ArrayImg< T, ? > img )
+		{
+			this.index = index;
+			this.min = min;
+			this.max = max;
+			this.size = img.size();
+			this.img = img;
+		}
+
+		boolean contains( final long[] position )
+		{
+			for ( int d = 0; d < position.length; ++d )
+				if ( position[ d ] < min[ d ] || position[ d ] > max[ d ] )
+					return false;
+			return true;
+		}
+	}
+
+	private static final class CellReference< T extends NativeType< T > > extends SoftReference< Cell< T > >
+	{
+		final long index;
+
+		CellReference( final Cell< T > cell, final ReferenceQueue< Cell< T > > queue )
+		{
+			super( cell, queue );
+			this.index = cell.index;
+		}
+	}
+
+	private final int[] cellDimensions;
+
+	private final long[] gridDimensions;
+
+	private final long numCells;
+
+	private final Loader< T > loader;
+
+	private final int maxCells;
+
+	private final LinkedHashMap< Long, Cell< T > > cells;
+
+	private final HashMap< Long, CellReference< T > > softCells;
+
+	private final ReferenceQueue< Cell< T > > softQueue = new ReferenceQueue< Cell< T > >();
+
+	private long hits;
+
+	private long softHits;
+
+	private long misses;
+
+	private long evictions;
+
+	private long writeBacks;
+
+	/**
+	 * @param dimensions
+	 *            image size.
+	 * @param cellDimensions
+	 *            nominal cell size.
+	 * @param loader
+	 *            produces (and if it is a {@link Store}, persists) cells.
+	 * @param maxCells
+	 *            maximum number of strongly referenced cells.
+	 * @param useSoftReferences
+	 *            whether evicted cells should be kept softly referenced.
+	 */
+	public CachedCellImg( final long[] dimensions, final int[] cellDimensions, final Loader< T > loader, final int maxCells, final boolean useSoftReferences )
+	{
+		super( dimensions );
+		if ( maxCells < 1 )
+			throw new IllegalArgumentException( "maxCells must be at least 1" );
+		this.cellDimensions = cellDimensions.clone();
+		this.loader = loader;
+		this.maxCells = maxCells;
+		gridDimensions = new long[ n ];
+		long c = 1;
+		for ( int d = 0; d < n; ++d )
+		{
+			gridDimensions[ d ] = ( dimensions[ d ] + cellDimensions[ d ] - 1 ) / cellDimensions[ d ];
+			c *= gridDimensions[ d ];
+		}
+		numCells = c;
+		cells = new LinkedHashMap< Long, Cell< T > >( 16, 0.75f, true )
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry( final Map.Entry< Long, Cell< T > > eldest )
+			{
+				if ( size() <= CachedCellImg.this.maxCells )
+					return false;
+				evict( eldest.getValue() );
+				return true;
+			}
+		};
+		softCells = useSoftReferences ? new HashMap< Long, CellReference< T > >() : null;
+	}
+
+	public int[] getCellDimensions()
+	{
+		return cellDimensions.clone();
+	}
+
+	public long getNumCells()
+	{
+		return numCells;
+	}
+
+	public int getMaxCells()
+	{
+		return maxCells;
+	}
+
+	/**
+	 * Writes all cached cells back to the {@link Store} (if the loader is
+	 * one).
+	 */
+	public synchronized void flush()
+	{
+		if ( loader instanceof Store )
+			for ( final Cell< T > cell : cells.values() )
+				save( cell );
+	}
+
+	/**
+	 * Flushes and drops all cached cells.
+	 */
+	public synchronized void clear()
+	{
+		flush();
+		cells.clear();
+		if ( softCells != null )
+			softCells.clear();
+	}
+
+	// -- Cache statistics --
+
+	/** @return number of cell requests served from the LRU cache. */
+	public synchronized long getHits()
+	{
+		return hits;
+	}
+
+	/** @return number of cell requests served from soft references. */
+	public synchronized long getSoftHits()
+	{
+		return softHits;
+	}
+
+	/** @return number of cell requests that required loading. */
+	public synchronized long getMisses()
+	{
+		return misses;
+	}
+
+	/** @return number of cells evicted from the LRU cache. */
+	public synchronized long getEvictions()
+	{
+		return evictions;
+	}
+
+	/** @return number of cells written back to the {@link Store}. */
+	public synchronized long getWriteBacks()
+	{
+		return writeBacks;
+	}
+
+	public synchronized void resetStatistics()
+	{
+		hits = softHits = misses = evictions = writeBacks = 0;
+	}
+
+	public synchronized String statistics()
+	{
+		final long requests = hits + softHits + misses;
+		return String.format( "%d requests, %d hits, %d soft hits, %d misses (%.1f%% hit rate), %d evictions, %d write-backs",
+				requests, hits, softHits, misses, requests == 0 ? 0 : 100.0 * ( hits + softHits ) / requests, evictions, writeBacks );
+	}
+
+	// -- Cell access --
+
+	synchronized Cell< T > getCell( final long index )
+	{
+		expungeStaleSoftReferences();
+		Cell< T > cell = cells.get( index );
+		if ( cell != null )
+		{
+			++hits;
+			return cell;
+		}
+		if ( softCells != null )
+		{
+			final CellReference< T > ref = softCells.remove( index );
+			cell = ref == null ? null : ref.get();
+			if ( cell != null )
+			{
+				++softHits;
+				cells.put( index, cell );
+				return cell;
+			}
+		}
+		++misses;
+		cell = loadCell( index );
+		cells.put( index, cell );
+		return cell;
+	}
+
+	long cellIndex( final long[] position )
+	{
+		long index = 0;
+		for ( int d = n - 1; d >= 0; --d )
+			index = index * gridDimensions[ d ] + position[ d ] / cellDimensions[ d ];
+		return index;
+	}
+
+	/** @return number of pixels of cell {@code index}, without loading it. */
+	long cellSize( final long index )
+	{
+		long i = index;
+		long size = 1;
+		for ( int d = 0; d < n; ++d )
+		{
+			final long min = ( i % gridDimensions[ d ] ) * cellDimensions[ d ];
+			size *= Math.min( cellDimensions[ d ], dimension( d ) - min );
+			i /= gridDimensions[ d ];
+		}
+		return size;
+	}
+
+	private Cell< T > loadCell( final long index )
+	{
+		final long[] min = new long[ n ];
+		final long[] max = new long[ n ];
+		final int[] dims = new int[ n ];
+		long i = index;
+		for ( int d = 0; d < n; ++d )
+		{
+			min[ d ] = ( i % gridDimensions[ d ] ) * cellDimensions[ d ];
+			dims[ d ] = ( int ) Math.min( cellDimensions[ d ], dimension( d ) - min[ d ] );
+			max[ d ] = min[ d ] + dims[ d ] - 1;
+			i /= gridDimensions[ d ];
+		}
+		try
+		{
+			return new Cell< T >( index, min, max, loader.load( min, dims ) );
+		}
+		catch ( final IOException e )
+		{
+			throw new RuntimeException( "Could not load cell " + index, e );
+		}
+	}
+
+	private void evict( final Cell< T > cell )
+	{
+		++evictions;
+		if ( loader instanceof Store )
+			save( cell );
+		if ( softCells != null )
+			softCells.put( cell.index, new CellReference< T >( cell, softQueue ) );
+	}
+
+	private void save( final Cell< T > cell )
+	{
+		try
+		{
+			( ( Store< T > ) loader ).save( cell.min, cell.img );
+			++writeBacks;
+		}
+		catch ( final IOException e )
+		{
+			throw new RuntimeException( "Could not save cell " + cell.index, e );
+		}
+	}
+
+	@SuppressWarnings( "unchecked" )
+	private void expungeStaleSoftReferences()
+	{
+		CellReference< T > ref;
+		while ( ( ref = ( CellReference< T > ) softQueue.poll() ) != null )
+			if ( softCells.get( ref.index ) == ref )
+				softCells.remove( ref.index );
+	}
+
+	// -- RandomAccessible --
+
+	@Override
+	public CachedCellRandomAccess randomAccess()
+	{
+		return new CachedCellRandomAccess();
+	}
+
+	@Override
+	public CachedCellRandomAccess randomAccess( final Interval interval )
+	{
+		return randomAccess();
+	}
+
+	// -- IterableInterval --
+
+	@Override
+	public CachedCellCursor cursor()
+	{
+		return new CachedCellCursor();
+	}
+
+	@Override
+	public CachedCellCursor localizingCursor()
+	{
+		return cursor();
+	}
+
+	@Override
+	public long size()
+	{
+		long size = 1;
+		for ( int d = 0; d < n; ++d )
+			size *= dimension( d );
+		return size;
+	}
+
+	@Override
+	public T firstElement()
+	{
+		return cursor().next();
+	}
+
+	@Override
+	public Object iterationOrder()
+	{
+		return this;
+	}
+
+	public boolean equalIterationOrder( final IterableRealInterval< ? > f )
+	{
+		return iterationOrder().equals( f.iterationOrder() );
+	}
+
+	@Override
+	public Iterator< T > iterator()
+	{
+		return cursor();
+	}
+
+	/**
+	 * Visits the cells in flat order, and within each cell its pixels in flat
+	 * order. {@link #jumpFwd(long)} skips whole cells without loading them.
+	 */
+	public class CachedCellCursor extends AbstractCursor< T >
+	{
+		private long cellIndex;
+
+		private long indexInCell;
+
+		private Cell< T > cell;
+
+		private Cursor< T > cellCursor;
+
+		CachedCellCursor()
+		{
+			super( CachedCellImg.this.n );
+			reset();
+		}
+
+		CachedCellCursor( final CachedCellCursor c )
+		{
+			super( c.numDimensions() );
+			cellIndex = c.cellIndex;
+			indexInCell = c.indexInCell;
+			cell = c.cell;
+			cellCursor = c.cellCursor == null ? null : c.cellCursor.copyCursor();
+		}
+
+		@Override
+		public T get()
+		{
+			return cellCursor.get();
+		}
+
+		@Override
+		public void fwd()
+		{
+			if ( cell == null || indexInCell >= cell.size - 1 )
+				nextCell();
+			else
+				++indexInCell;
+			cellCursor.fwd();
+		}
+
+		@Override
+		public void jumpFwd( final long steps )
+		{
+			long remaining = steps;
+			while ( remaining > 0 )
+			{
+				final long leftInCell = cell == null ? 0 : cell.size - 1 - indexInCell;
+				if ( remaining <= leftInCell )
+				{
+					cellCursor.jumpFwd( remaining );
+					indexInCell += remaining;
+					return;
+				}
+				remaining -= leftInCell;
+				// skip cells that are passed completely
+				long next = cellIndex + 1;
+				long size = cellSize( next );
+				while ( remaining > size )
+				{
+					remaining -= size;
+					size = cellSize( ++next );
+				}
+				cellIndex = next - 1;
+				nextCell();
+				cellCursor.jumpFwd( remaining );
+				indexInCell = remaining - 1;
+				return;
+			}
+		}
+
+		private void nextCell()
+		{
+			cell = getCell( ++cellIndex );
+			cellCursor = cell.img.cursor();
+			indexInCell = 0;
+		}
+
+		@Override
+		public void reset()
+		{
+			cellIndex = -1;
+			indexInCell = -1;
+			cell = null;
+			cellCursor = null;
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			return cellIndex < numCells - 1 || ( cell != null && indexInCell < cell.size - 1 );
+		}
+
+		@Override
+		public void localize( final long[] position )
+		{
+			cellCursor.localize( position );
+			for ( int d = 0; d < n; ++d )
+				position[ d ] += cell.min[ d ];
+		}
+
+		@Override
+		public long getLongPosition( final int d )
+		{
+			return cellCursor.getLongPosition( d ) + cell.min[ d ];
+		}
+
+		@Override
+		public CachedCellCursor copy()
+		{
+			return new CachedCellCursor( this );
+		}
+
+		@Override
+		public CachedCellCursor copyCursor()
+		{
+			return copy();
+		}
+	}
+
+	/**
+	 * Looks up the cell containing the current position on {@link #get()},
+	 * reusing the previous cell while the position stays inside it.
+	 */
+	public class CachedCellRandomAccess extends AbstractLocalizable implements RandomAccess< T >
+	{
+		private Cell< T > cell;
+
+		private RandomAccess< T > cellAccess;
+
+		CachedCellRandomAccess()
+		{
+			super( CachedCellImg.this.n );
+		}
+
+		CachedCellRandomAccess( final CachedCellRandomAccess a )
+		{
+			super( a.numDimensions() );
+			for ( int d = 0; d < n; ++d )
+				position[ d ] = a.position[ d ];
+			cell = a.cell;
+			cellAccess = a.cellAccess == null ? null : a.cellAccess.copyRandomAccess();
+		}
+
+		@Override
+		public T get()
+		{
+			if ( cell == null || !cell.contains( position ) )
+			{
+				cell = getCell( cellIndex( position ) );
+				cellAccess = cell.img.randomAccess();
+			}
+			for ( int d = 0; d < n; ++d )
+				cellAccess.setPosition( position[ d ] - cell.min[ d ], d );
+			return cellAccess.get();
+		}
+
+		@Override
+		public void fwd( final int d )
+		{
+			++position[ d ];
+		}
+
+		@Override
+		public void bck( final int d )
+		{
+			--position[ d ];
+		}
+
+		@Override
+		public void move( final int distance, final int d )
+		{
+			position[ d ] += distance;
+		}
+
+		@Override
+		public void move( final long distance, final int d )
+		{
+			position[ d ] += distance;
+		}
+
+		@Override
+		public void move( final Localizable localizable )
+		{
+			for ( int d = 0; d < n; ++d )
+				position[ d ] += localizable.getLongPosition( d );
+		}
+
+		@Override
+		public void move( final int[] distance )
+		{
+			for ( int d = 0; d < n; ++d )
+				position[ d ] += distance[ d ];
+		}
+
+		@Override
+		public void move( final long[] distance )
+		{
+			for ( int d = 0; d < n; ++d )
+				position[ d ] += distance[ d ];
+		}
+
+		@Override
+		public void setPosition( final Localizable localizable )
+		{
+			localizable.localize( position );
+		}
+
+		@Override
+		public void setPosition( final int[] pos )
+		{
+			for ( int d = 0; d < n; ++d )
+				position[ d ] = pos[ d ];
+		}
+
+		@Override
+		public void setPosition( final long[] pos )
+		{
+			for ( int d = 0; d < n; ++d )
+				position[ d ] = pos[ d ];
+		}
+
+		@Override
+		public void setPosition( final int pos, final int d )
+		{
+			position[ d ] = pos;
+		}
+
+		@Override
+		public void setPosition( final long pos, final int d )
+		{
+			position[ d ] = pos;
+		}
+
+		@Override
+		public CachedCellRandomAccess copy()
+		{
+			return new CachedCellRandomAccess( this );
+		}
+
+		@Override
+		public CachedCellRandomAccess copyRandomAccess()
+		{
+			return copy();
+		}
+	}
+}
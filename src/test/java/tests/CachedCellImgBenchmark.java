@@ -0,0 +1,315 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.imglib2.Cursor;
+import net.imglib2.IterableInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.util.Util;
+
+/**
+ * Runs the cheap (invert) and expensive (randomize) workloads of
+ * {@link ImglibBenchmark} on {@link CachedCellImg}s whose cache holds only a
+ * fraction of the image, and on a fully loaded {@link CellImgFactory CellImg}
+ * with the same cell size (if it fits into the heap).
+ * <p>
+ * Cached variants:
+ * </p>
+ * <ul>
+ * <li>generator: cells are computed on demand (the ramp of
+ * {@link ImglibBenchmark}), modifications of evicted cells are lost.</li>
+ * <li>file: cells are read from an 8-bit raw file and written back on
+ * eviction ({@link RawFileCellStore}).</li>
+ * <li>file + soft: like file, but evicted cells are kept softly referenced
+ * until the heap runs low.</li>
+ * </ul>
+ * <p>
+ * Usage: {@code CachedCellImgBenchmark [W H [D]]}. Cell size can be set with
+ * {@code -DcellSize=64}, the number of strongly cached cells with
+ * {@code -DmaxCells=...} (default: a quarter of all cells), and the raw file
+ * with {@code -Dfile=...} (default: a temporary file). Run with a small
+ * {@code -Xmx} to see the cache working under a fixed heap.
+ * </p>
+ */
+public class CachedCellImgBenchmark {
+
+	private static final String METHOD_CELL = "Imglib (Cell)";
+	private static final String METHOD_GENERATOR = "Cached (generator)";
+	private static final String METHOD_FILE = "Cached (file)";
+	private static final String METHOD_FILE_SOFT = "Cached (file + soft)";
+
+	private final long[] dimensions;
+	private final int[] cellDimensions;
+	private final int maxCells;
+	private final File file;
+	private final Img<UnsignedByteType> imgCell;
+
+	/** Metadata of this run, for the {@link ResultStore}. */
+	private final ResultStore.Run run = ResultStore.Run.current();
+
+	public static void main(final String[] args) throws IOException {
+		final int iterations = 5;
+		final long[] dimensions;
+		if (args.length > 0) {
+			dimensions = new long[args.length];
+			for (int d = 0; d < args.length; ++d)
+				dimensions[d] = Long.parseLong(args[d]);
+		}
+		else {
+			dimensions = new long[] { 4096, 4096, 16 };
+		}
+		final CachedCellImgBenchmark bench = new CachedCellImgBenchmark(dimensions);
+		bench.testPerformance(iterations);
+		System.exit(0);
+	}
+
+	public CachedCellImgBenchmark(final long[] dimensions) throws IOException {
+		this.dimensions = dimensions;
+		final int cellSize = Integer.getInteger("cellSize", 64);
+		cellDimensions = new int[dimensions.length];
+		long numCells = 1;
+		for (int d = 0; d < dimensions.length; ++d) {
+			cellDimensions[d] = (int) Math.min(cellSize, dimensions[d]);
+			numCells *= (dimensions[d] + cellDimensions[d] - 1) / cellDimensions[d];
+		}
+		maxCells = Integer.getInteger("maxCells", (int) Math.max(1, numCells / 4));
+
+		final String path = System.getProperty("file");
+		if (path == null) {
+			file = File.createTempFile("cached-cell-img", ".raw");
+			file.deleteOnExit();
+		}
+		else file = new File(path);
+
+		System.out.println();
+		System.out.println("===== " + dimensionsString(" x ") + " =====");
+		System.out.println("cells: " + dimensionsString(cellDimensions) + ", " +
+			numCells + " cells, " + maxCells + " cached, max heap " +
+			Runtime.getRuntime().maxMemory() / (1024 * 1024) + " MB");
+
+		final long size = numPixels();
+		// leave room for the cache and the benchmark itself
+		imgCell = size < Runtime.getRuntime().maxMemory() / 2 ? createCellImage()
+			: null;
+		if (imgCell == null) System.out.println(METHOD_CELL +
+			": image does not fit into the heap, skipped");
+	}
+
+	public void testPerformance(final int iterationCount) throws IOException {
+		testPerformance(iterationCount, false);
+		testPerformance(iterationCount, true);
+	}
+
+	private void testPerformance(final int iterationCount,
+		final boolean expensive) throws IOException
+	{
+		System.out.println();
+		System.out.println("-- " + (expensive ? "EXPENSIVE" : "CHEAP") +
+			" --");
+		final List<Map<String, Long>> results = new ArrayList<Map<String, Long>>();
+		for (int i = 0; i < iterationCount; i++)
+			results.add(new HashMap<String, Long>());
+
+		if (imgCell != null) run(METHOD_CELL, imgCell, null, iterationCount,
+			expensive, results);
+
+		// the generator has nothing to write back to, so every iteration starts
+		// from the ramp again for evicted cells
+		run(METHOD_GENERATOR, new CachedCellImg<UnsignedByteType>(dimensions,
+			cellDimensions, createGenerator(), maxCells, false), null,
+			iterationCount, expensive, results);
+
+		// both file variants start from the same ramp
+		RawFileCellStore.createRamp(file, dimensions);
+		RawFileCellStore store = new RawFileCellStore(file, dimensions);
+		try {
+			run(METHOD_FILE, new CachedCellImg<UnsignedByteType>(dimensions,
+				cellDimensions, store, maxCells, false), store, iterationCount,
+				expensive, results);
+		}
+		finally {
+			store.close();
+		}
+		RawFileCellStore.createRamp(file, dimensions);
+		store = new RawFileCellStore(file, dimensions);
+		try {
+			run(METHOD_FILE_SOFT, new CachedCellImg<UnsignedByteType>(dimensions,
+				cellDimensions, store, maxCells, true), store, iterationCount,
+				expensive, results);
+		}
+		finally {
+			store.close();
+		}
+
+		ResultStore.getDefault().append(run, getClass().getSimpleName(),
+			expensive ? "expensive" : "cheap", dimensionsString("x"), results);
+	}
+
+	/**
+	 * Runs one workload repeatedly and prints timing and cache statistics. For
+	 * cached images backed by a store, every iteration includes flushing the
+	 * cache, so that all modifications have reached the file.
+	 */
+	private void run(final String method, final IterableInterval<UnsignedByteType> img,
+		final RawFileCellStore store, final int iterationCount,
+		final boolean expensive, final List<Map<String, Long>> results)
+	{
+		final long[] times = new long[iterationCount];
+		for (int i = 0; i < iterationCount; i++) {
+			final long start = System.currentTimeMillis();
+			if (expensive) randomize(img);
+			else invert(img);
+			if (store != null) ((CachedCellImg<UnsignedByteType>) img).flush();
+			times[i] = System.currentTimeMillis() - start;
+			results.get(i).put(method, times[i]);
+		}
+		System.out.println(String.format("%-22s median: %6d ms  %8.2f ns/pixel",
+			method, Util.median(times), Util.median(times) * 1e6 / numPixels()));
+		if (img instanceof CachedCellImg)
+			System.out.println("    " + ((CachedCellImg<?>) img).statistics());
+	}
+
+	private void invert(final IterableInterval<UnsignedByteType> img) {
+		final Cursor<UnsignedByteType> c = img.cursor();
+		while (c.hasNext()) {
+			final UnsignedByteType t = c.next();
+			final int value = t.get();
+			final int result = 255 - value;
+			t.set(result);
+		}
+	}
+
+	private void randomize(final IterableInterval<UnsignedByteType> img) {
+		final Cursor<UnsignedByteType> c = img.cursor();
+		while (c.hasNext()) {
+			final UnsignedByteType t = c.next();
+			final int value = t.get();
+			final double result = expensiveOperation(value);
+			t.set((int) result);
+		}
+	}
+
+	private double expensiveOperation(final int value) {
+		return 255 * Math.random() * Math.sin(value / 255.0);
+	}
+
+	// -- Helper methods --
+
+	private Img<UnsignedByteType> createCellImage() {
+		final Img<UnsignedByteType> img =
+			new CellImgFactory<UnsignedByteType>(cellDimensions).create(dimensions,
+				new UnsignedByteType());
+		fillRamp(img);
+		return img;
+	}
+
+	/** Computes cells with the ramp (flat index modulo 256) on demand. */
+	private CachedCellImg.Loader<UnsignedByteType> createGenerator() {
+		return new CachedCellImg.Loader<UnsignedByteType>() {
+
+			@Override
+			public ArrayImg<UnsignedByteType, ?> load(final long[] min,
+				final int[] dims)
+			{
+				final long[] size = new long[dims.length];
+				for (int d = 0; d < dims.length; ++d)
+					size[d] = dims[d];
+				final ArrayImg<UnsignedByteType, ByteArray> cell =
+					ArrayImgs.unsignedBytes(size);
+				final byte[] data = cell.update(null).getCurrentStorageArray();
+				final int[] row = new int[dims.length];
+				for (int offset = 0; offset < data.length; offset += dims[0]) {
+					long index = min[0];
+					long step = 1;
+					for (int d = 1; d < dims.length; ++d) {
+						step *= dimensions[d - 1];
+						index += (min[d] + row[d]) * step;
+					}
+					for (int x = 0; x < dims[0]; ++x)
+						data[offset + x] = (byte) (index + x);
+					for (int d = 1; d < dims.length; ++d) {
+						if (++row[d] < dims[d]) break;
+						row[d] = 0;
+					}
+				}
+				return cell;
+			}
+		};
+	}
+
+	private void fillRamp(final Img<UnsignedByteType> img) {
+		final Cursor<UnsignedByteType> c = img.localizingCursor();
+		final long[] pos = new long[dimensions.length];
+		while (c.hasNext()) {
+			c.fwd();
+			c.localize(pos);
+			long index = 0;
+			for (int d = dimensions.length - 1; d >= 0; --d)
+				index = index * dimensions[d] + pos[d];
+			c.get().set((int) (index % 256));
+		}
+	}
+
+	private long numPixels() {
+		long size = 1;
+		for (final long d : dimensions)
+			size *= d;
+		return size;
+	}
+
+	private String dimensionsString(final String separator) {
+		final StringBuilder sb = new StringBuilder();
+		for (int d = 0; d < dimensions.length; ++d) {
+			if (d > 0) sb.append(separator);
+			sb.append(dimensions[d]);
+		}
+		return sb.toString();
+	}
+
+	private static String dimensionsString(final int[] dims) {
+		final StringBuilder sb = new StringBuilder();
+		for (int d = 0; d < dims.length; ++d) {
+			if (d > 0) sb.append(" x ");
+			sb.append(dims[d]);
+		}
+		return sb.toString();
+	}
+
+}
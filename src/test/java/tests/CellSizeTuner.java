@@ -0,0 +1,482 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package tests;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.gauss3.FloatConvolverRealTypeBuffered;
+import net.imglib2.algorithm.gauss3.Gauss3;
+import net.imglib2.algorithm.gauss3.SeparableSymmetricConvolution;
+import net.imglib2.img.Img;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+/**
+ * Sweeps {@link CellImgFactory} cell shapes against a set of access patterns
+ * and recommends the fastest shape per workload and dimensionality.
+ * <p>
+ * Candidate shapes are all combinations of power-of-two side lengths
+ * (isotropic and anisotropic) whose number of pixels lies between
+ * {@code minCellSize} and {@code maxCellSize}. Workloads, on a
+ * {@link FloatType} image:
+ * </p>
+ * <ul>
+ * <li>{@code cursor}: flat iteration with the image cursor.</li>
+ * <li>{@code random access}: reading pixels at random positions.</li>
+ * <li>{@code gauss3 axis d}: {@link SeparableSymmetricConvolution} with a
+ * Gaussian kernel along axis d and identity kernels along the other axes
+ * (temporary images use the same cell shape).</li>
+ * <li>{@code hyperslice axis d}: summing every {@link Views#hyperSlice
+ * hyperslice} orthogonal to axis d.</li>
+ * </ul>
+ * <p>
+ * All timings are appended to the {@link ResultStore} (operation = workload,
+ * method = cell shape). The winners are appended to
+ * {@code cell-size-recommendations.tsv} (or {@code -Dtuner.store=...}), where
+ * {@link #recommendedCellSize(String, int, int[])} looks them up.
+ * </p>
+ * <p>
+ * Usage: {@code CellSizeTuner [W H [D]]}. Side lengths can be set with
+ * {@code -Dsides=16,32,64,128,256}, cell size limits with
+ * {@code -DminCellSize=1024 -DmaxCellSize=4194304}, number of runs with
+ * {@code -Druns=5}.
+ * </p>
+ */
+public class CellSizeTuner
+{
+	public static final String DEFAULT_STORE = "cell-size-recommendations.tsv";
+
+	public static final String WORKLOAD_CURSOR = "cursor";
+
+	public static final String WORKLOAD_RANDOM_ACCESS = "random access";
+
+	public static final String WORKLOAD_GAUSS3 = "gauss3 axis ";
+
+	public static final String WORKLOAD_HYPERSLICE = "hyperslice axis ";
+
+	private static final String[] COLUMNS = { "Timestamp", "JavaVersion", "Cores", "Dimensions", "Workload", "CellShape", "MedianMs", "ReferenceShape", "ReferenceMs" };
+
+	private final long[] dimensions;
+
+	private final int n;
+
+	private final List< int[] > candidates;
+
+	private final int numRuns;
+
+	private final double sigma = 3;
+
+	private final int numRandomAccesses = 1000000;
+
+	private final ExecutorService service;
+
+	/** Sum of all workload results, printed at the end of {@link #tune(File)}. */
+	private double blackhole;
+
+	/** Metadata of this run, for the {@link ResultStore}. */
+	private final ResultStore.Run run = ResultStore.Run.current();
+
+	public static void main( final String[] args ) throws IOException
+	{
+		final long[] dimensions;
+		if ( args.length > 0 )
+		{
+			dimensions = new long[ args.length ];
+			for ( int d = 0; d < args.length; ++d )
+				dimensions[ d ] = Long.parseLong( args[ d ] );
+		}
+		else
+			dimensions = new long[] { 2048, 2048 };
+
+		final int[] sides = parseInts( System.getProperty( "sides", "8,16,32,64,128,256,512,1024" ) );
+		final long minCellSize = Long.getLong( "minCellSize", 1 << 10 );
+		final long maxCellSize = Long.getLong( "maxCellSize", 1 << 22 );
+		final int numRuns = Integer.getInteger( "runs", 5 );
+
+		final CellSizeTuner tuner = new CellSizeTuner( dimensions, candidates( dimensions, sides, minCellSize, maxCellSize ), numRuns );
+		try
+		{
+			tuner.tune( new File( System.getProperty( "tuner.store", DEFAULT_STORE ) ) );
+		}
+		finally
+		{
+			tuner.service.shutdown();
+		}
+		System.exit( 0 );
+	}
+
+	public CellSizeTuner( final long[] dimensions, final List< int[] > candidates, final int numRuns )
+	{
+		this.dimensions = dimensions;
+		this.n = dimensions.length;
+		this.candidates = candidates;
+		this.numRuns = numRuns;
+		service = Executors.newFixedThreadPool( Runtime.getRuntime().availableProcessors() );
+	}
+
+	/**
+	 * Times every workload for every candidate, prints the ranking, and
+	 * appends the winners to {@code store}.
+	 *
+	 * @return map from workload to recommended cell shape.
+	 */
+	public Map< String, int[] > tune( final File store ) throws IOException
+	{
+		final List< String > workloads = workloads( n );
+		// workload -> shape -> median time
+		final Map< String, Map< String, Long > > medians = new LinkedHashMap< String, Map< String, Long > >();
+		final Map< String, List< Map< String, Long > > > times = new LinkedHashMap< String, List< Map< String, Long > > >();
+		for ( final String workload : workloads )
+		{
+			medians.put( workload, new LinkedHashMap< String, Long >() );
+			final List< Map< String, Long > > iterations = new ArrayList< Map< String, Long > >();
+			for ( int i = 0; i < numRuns; ++i )
+				iterations.add( new HashMap< String, Long >() );
+			times.put( workload, iterations );
+		}
+
+		System.out.println( "tuning cell size for " + shapeString( dimensions ) + " FloatType image, " + candidates.size() + " candidates, median of " + numRuns + " runs" );
+		for ( final int[] cellDimensions : candidates )
+		{
+			final String shape = shapeString( cellDimensions );
+			final CellImgFactory< FloatType > factory = new CellImgFactory< FloatType >( cellDimensions );
+			final Img< FloatType > img = factory.create( dimensions, new FloatType() );
+			final Img< FloatType > target = factory.create( dimensions, new FloatType() );
+			fillRandom( img );
+
+			final StringBuilder line = new StringBuilder( String.format( "%-16s", shape ) );
+			for ( final String workload : workloads )
+			{
+				final long[] t = new long[ numRuns ];
+				runWorkload( workload, img, target, factory ); // warm-up
+				for ( int i = 0; i < numRuns; ++i )
+				{
+					final long start = System.nanoTime();
+					runWorkload( workload, img, target, factory );
+					t[ i ] = ( System.nanoTime() - start ) / 1000000;
+					times.get( workload ).get( i ).put( shape, t[ i ] );
+				}
+				final long median = Util.median( t );
+				medians.get( workload ).put( shape, median );
+				line.append( String.format( "  %s: %d ms", workload, median ) );
+			}
+			System.out.println( line );
+		}
+
+		final ResultStore results = ResultStore.getDefault();
+		for ( final String workload : workloads )
+			results.append( run, getClass().getSimpleName(), workload, shapeString( dimensions ), times.get( workload ) );
+
+		final String reference = shapeString( referenceShape( n ) );
+		final Map< String, int[] > recommendations = new LinkedHashMap< String, int[] >();
+		System.out.println();
+		System.out.println( String.format( "%-22s %-16s %10s %16s", "workload", "best cell shape", "ms", reference + " ms" ) );
+		for ( final String workload : workloads )
+		{
+			String best = null;
+			long bestTime = Long.MAX_VALUE;
+			for ( final Map.Entry< String, Long > e : medians.get( workload ).entrySet() )
+				if ( e.getValue() < bestTime )
+				{
+					best = e.getKey();
+					bestTime = e.getValue();
+				}
+			final Long referenceTime = medians.get( workload ).get( reference );
+			System.out.println( String.format( "%-22s %-16s %10d %16s", workload, best, bestTime, referenceTime == null ? "-" : referenceTime.toString() ) );
+			recommendations.put( workload, parseShape( best ) );
+			appendRecommendation( store, workload, best, bestTime, reference, referenceTime );
+		}
+		System.out.println( "(checksum " + blackhole + ")" );
+		return recommendations;
+	}
+
+	public static List< String > workloads( final int numDimensions )
+	{
+		final List< String > workloads = new ArrayList< String >();
+		workloads.add( WORKLOAD_CURSOR );
+		workloads.add( WORKLOAD_RANDOM_ACCESS );
+		for ( int d = 0; d < numDimensions; ++d )
+			workloads.add( WORKLOAD_GAUSS3 + d );
+		for ( int d = 0; d < numDimensions; ++d )
+			workloads.add( WORKLOAD_HYPERSLICE + d );
+		return workloads;
+	}
+
+	/**
+	 * Looks up the most recent recommendation for {@code workload} on images
+	 * with {@code numDimensions} dimensions in the default store (or
+	 * {@code -Dtuner.store=...}).
+	 *
+	 * @return the recommended cell shape, or {@code fallback} if the tuner was
+	 *         not run for this case.
+	 */
+	public static int[] recommendedCellSize( final String workload, final int numDimensions, final int[] fallback )
+	{
+		final File store = new File( System.getProperty( "tuner.store", DEFAULT_STORE ) );
+		if ( !store.exists() )
+			return fallback;
+		int[] recommended = fallback;
+		try
+		{
+			final BufferedReader in = new BufferedReader( new FileReader( store ) );
+			try
+			{
+				String line = in.readLine(); // header
+				while ( ( line = in.readLine() ) != null )
+				{
+					final String[] fields = line.split( "\t" );
+					if ( fields.length < COLUMNS.length || !fields[ 4 ].equals( workload ) )
+						continue;
+					final int[] shape = parseShape( fields[ 5 ] );
+					if ( shape.length == numDimensions )
+						recommended = shape;
+				}
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+		catch ( final IOException e )
+		{
+			e.printStackTrace();
+		}
+		return recommended;
+	}
+
+	// -- Workloads --
+
+	/**
+	 * Runs a workload and adds its result to {@link #blackhole}, so that the
+	 * JIT cannot drop the work.
+	 */
+	private void runWorkload( final String workload, final Img< FloatType > img, final Img< FloatType > target, final CellImgFactory< FloatType > factory )
+	{
+		if ( workload.equals( WORKLOAD_CURSOR ) )
+			blackhole += sum( img );
+		else if ( workload.equals( WORKLOAD_RANDOM_ACCESS ) )
+			blackhole += randomAccess( img );
+		else if ( workload.startsWith( WORKLOAD_GAUSS3 ) )
+		{
+			gauss3( img, target, factory, Integer.parseInt( workload.substring( WORKLOAD_GAUSS3.length() ) ) );
+			blackhole += target.firstElement().get();
+		}
+		else if ( workload.startsWith( WORKLOAD_HYPERSLICE ) )
+			blackhole += hyperSlices( img, Integer.parseInt( workload.substring( WORKLOAD_HYPERSLICE.length() ) ) );
+		else
+			throw new IllegalArgumentException( "unknown workload: " + workload );
+	}
+
+	private static double sum( final Iterable< FloatType > img )
+	{
+		double sum = 0;
+		for ( final FloatType t : img )
+			sum += t.get();
+		return sum;
+	}
+
+	private double randomAccess( final RandomAccessibleInterval< FloatType > img )
+	{
+		// same positions for every candidate
+		final Random random = new Random( 42 );
+		final RandomAccess< FloatType > a = img.randomAccess();
+		double sum = 0;
+		for ( int i = 0; i < numRandomAccesses; ++i )
+		{
+			for ( int d = 0; d < n; ++d )
+				a.setPosition( ( long ) ( random.nextDouble() * dimensions[ d ] ), d );
+			sum += a.get().get();
+		}
+		return sum;
+	}
+
+	private void gauss3( final Img< FloatType > img, final Img< FloatType > target, final CellImgFactory< FloatType > factory, final int axis )
+	{
+		final double[][] halfkernels = new double[ n ][];
+		for ( int d = 0; d < n; ++d )
+			halfkernels[ d ] = d == axis ? Gauss3.halfkernels( new double[] { sigma } )[ 0 ] : new double[] { 1 };
+		SeparableSymmetricConvolution.convolve( halfkernels, Views.extendMirrorSingle( img ), target,
+				FloatConvolverRealTypeBuffered.< FloatType, FloatType >factory(),
+				FloatConvolverRealTypeBuffered.< FloatType, FloatType >factory(),
+				FloatConvolverRealTypeBuffered.< FloatType, FloatType >factory(),
+				FloatConvolverRealTypeBuffered.< FloatType, FloatType >factory(),
+				factory, new FloatType(), service );
+	}
+
+	private double hyperSlices( final RandomAccessibleInterval< FloatType > img, final int axis )
+	{
+		if ( n == 1 )
+			return sum( Views.iterable( img ) );
+		double sum = 0;
+		for ( long pos = 0; pos < dimensions[ axis ]; ++pos )
+			sum += sum( Views.flatIterable( Views.hyperSlice( img, axis, pos ) ) );
+		return sum;
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * @return all shapes with side lengths from {@code sides} (clipped to the
+	 *         image size) with between {@code minCellSize} and
+	 *         {@code maxCellSize} pixels.
+	 */
+	public static List< int[] > candidates( final long[] dimensions, final int[] sides, final long minCellSize, final long maxCellSize )
+	{
+		final int n = dimensions.length;
+		final List< int[] > candidates = new ArrayList< int[] >();
+		final Map< String, int[] > unique = new LinkedHashMap< String, int[] >();
+		final int[] index = new int[ n ];
+		while ( true )
+		{
+			final int[] shape = new int[ n ];
+			long size = 1;
+			for ( int d = 0; d < n; ++d )
+			{
+				shape[ d ] = ( int ) Math.min( sides[ index[ d ] ], dimensions[ d ] );
+				size *= shape[ d ];
+			}
+			if ( size >= minCellSize && size <= maxCellSize )
+				unique.put( shapeString( shape ), shape );
+
+			int d = 0;
+			for ( ; d < n; ++d )
+			{
+				if ( ++index[ d ] < sides.length )
+					break;
+				index[ d ] = 0;
+			}
+			if ( d == n )
+				break;
+		}
+		candidates.addAll( unique.values() );
+		return candidates;
+	}
+
+	/** The cell shape used so far ({@link OpenAndDisplayWithCellContainer}). */
+	private static int[] referenceShape( final int n )
+	{
+		final int[] shape = new int[ n ];
+		for ( int d = 0; d < n; ++d )
+			shape[ d ] = 64;
+		return shape;
+	}
+
+	private static void fillRandom( final Img< FloatType > img )
+	{
+		final Random random = new Random( 1 );
+		for ( final FloatType t : img )
+			t.set( random.nextFloat() );
+	}
+
+	private void appendRecommendation( final File store, final String workload, final String shape, final long time, final String reference, final Long referenceTime ) throws IOException
+	{
+		final boolean writeHeader = !store.exists() || store.length() == 0;
+		final PrintWriter out = new PrintWriter( new FileWriter( store, true ) );
+		try
+		{
+			if ( writeHeader )
+				out.println( join( COLUMNS ) );
+			out.println( join( new String[] {
+					new SimpleDateFormat( "yyyy-MM-dd'T'HH:mm:ss" ).format( new Date() ),
+					System.getProperty( "java.version" ),
+					Integer.toString( Runtime.getRuntime().availableProcessors() ),
+					shapeString( dimensions ), workload, shape, Long.toString( time ), reference,
+					referenceTime == null ? "" : referenceTime.toString() } ) );
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	private static String join( final String[] fields )
+	{
+		final StringBuilder sb = new StringBuilder();
+		for ( int i = 0; i < fields.length; ++i )
+		{
+			if ( i > 0 )
+				sb.append( '\t' );
+			sb.append( fields[ i ] );
+		}
+		return sb.toString();
+	}
+
+	static String shapeString( final long[] shape )
+	{
+		final StringBuilder sb = new StringBuilder();
+		for ( int d = 0; d < shape.length; ++d )
+			sb.append( d == 0 ? "" : "x" ).append( shape[ d ] );
+		return sb.toString();
+	}
+
+	static String shapeString( final int[] shape )
+	{
+		final StringBuilder sb = new StringBuilder();
+		for ( int d = 0; d < shape.length; ++d )
+			sb.append( d == 0 ? "" : "x" ).append( shape[ d ] );
+		return sb.toString();
+	}
+
+	static int[] parseShape( final String shape )
+	{
+		final String[] s = shape.split( "x" );
+		final int[] dims = new int[ s.length ];
+		for ( int d = 0; d < s.length; ++d )
+			dims[ d ] = Integer.parseInt( s[ d ].trim() );
+		return dims;
+	}
+
+	private static int[] parseInts( final String s )
+	{
+		final String[] parts = s.split( "," );
+		final int[] values = new int[ parts.length ];
+		for ( int i = 0; i < parts.length; ++i )
+			values[ i ] = Integer.parseInt( parts[ i ].trim() );
+		return values;
+	}
+}
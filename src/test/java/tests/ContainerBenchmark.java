@@ -0,0 +1,300 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package tests;
+
+import ij.ImagePlus;
+import ij.process.ByteProcessor;
+
+import java.util.concurrent.TimeUnit;
+
+import net.imglib2.img.ImagePlusAdapter;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayCursor;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.img.cell.CellCursor;
+import net.imglib2.img.cell.CellImg;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.img.imageplus.ByteImagePlus;
+import net.imglib2.img.planar.PlanarCursor;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.util.Fraction;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+
+/**
+ * JMH port of the cheap (invert) and expensive (randomize) workloads of
+ * {@link PerformanceBenchmark} and {@link ImglibBenchmark}.
+ * <p>
+ * Every container gets its own copy of the pixel data, so the benchmarks do
+ * not influence each other through shared arrays. The per-container methods
+ * use the explicit cursor types, like the originals.
+ * </p>
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 10, time = 1 )
+@Fork( 2 )
+public class ContainerBenchmark
+{
+	@Param( { "1000x1000", "2000x2000", "4000x4000" } )
+	public String dimensions;
+
+	private byte[] rawData;
+
+	private ByteProcessor byteProc;
+
+	private ArrayImg< UnsignedByteType, ByteArray > imgArray;
+
+	private CellImg< UnsignedByteType, ByteArray, ? > imgCell;
+
+	private PlanarImg< UnsignedByteType, ByteArray > imgPlanar;
+
+	private ByteImagePlus< UnsignedByteType > imgImagePlus;
+
+	@Setup
+	public void setup()
+	{
+		final long[] dims = BenchmarkRunner.parseDimensions( dimensions );
+		final int width = ( int ) dims[ 0 ];
+		final int height = ( int ) dims[ 1 ];
+
+		rawData = createRawData( width, height );
+
+		byteProc = new ByteProcessor( width, height, createRawData( width, height ), null );
+
+		imgArray = new ArrayImg< UnsignedByteType, ByteArray >( new ByteArray( createRawData( width, height ) ), dims, new Fraction() );
+		imgArray.setLinkedType( new UnsignedByteType( imgArray ) );
+
+		final Img< UnsignedByteType > cellImg = new CellImgFactory< UnsignedByteType >().create( dims, new UnsignedByteType() );
+		fill( cellImg );
+		@SuppressWarnings( "unchecked" )
+		final CellImg< UnsignedByteType, ByteArray, ? > cellContainer = ( CellImg< UnsignedByteType, ByteArray, ? > ) cellImg;
+		imgCell = cellContainer;
+
+		imgPlanar = new PlanarImg< UnsignedByteType, ByteArray >( dims, new Fraction() );
+		imgPlanar.setPlane( 0, new ByteArray( createRawData( width, height ) ) );
+		imgPlanar.setLinkedType( new UnsignedByteType( imgPlanar ) );
+
+		final ByteProcessor ip = new ByteProcessor( width, height, createRawData( width, height ), null );
+		imgImagePlus = ImagePlusAdapter.wrapByte( new ImagePlus( "image", ip ) );
+	}
+
+	// -- Inversion benchmarks --
+
+	@Benchmark
+	public byte[] invertRaw()
+	{
+		final byte[] data = rawData;
+		for ( int i = 0; i < data.length; i++ )
+		{
+			final int value = data[ i ] & 0xff;
+			final int result = 255 - value;
+			data[ i ] = ( byte ) result;
+		}
+		return data;
+	}
+
+	@Benchmark
+	public ByteProcessor invertImageProcessor()
+	{
+		final ByteProcessor ip = byteProc;
+		for ( int i = 0; i < ip.getPixelCount(); i++ )
+		{
+			final int value = ip.get( i );
+			final int result = 255 - value;
+			ip.set( i, result );
+		}
+		return ip;
+	}
+
+	@Benchmark
+	public Img< UnsignedByteType > invertArrayImage()
+	{
+		final ArrayCursor< UnsignedByteType > c = imgArray.cursor();
+		while ( c.hasNext() )
+		{
+			final UnsignedByteType t = c.next();
+			t.set( 255 - t.get() );
+		}
+		return imgArray;
+	}
+
+	@Benchmark
+	public Img< UnsignedByteType > invertCellImage()
+	{
+		final CellCursor< UnsignedByteType, ByteArray, ? > c = imgCell.cursor();
+		while ( c.hasNext() )
+		{
+			final UnsignedByteType t = c.next();
+			t.set( 255 - t.get() );
+		}
+		return imgCell;
+	}
+
+	@Benchmark
+	public Img< UnsignedByteType > invertPlanarImage()
+	{
+		final PlanarCursor< UnsignedByteType > c = imgPlanar.cursor();
+		while ( c.hasNext() )
+		{
+			final UnsignedByteType t = c.next();
+			t.set( 255 - t.get() );
+		}
+		return imgPlanar;
+	}
+
+	@Benchmark
+	public Img< UnsignedByteType > invertImagePlusImage()
+	{
+		final PlanarCursor< UnsignedByteType > c = imgImagePlus.cursor();
+		while ( c.hasNext() )
+		{
+			final UnsignedByteType t = c.next();
+			t.set( 255 - t.get() );
+		}
+		return imgImagePlus;
+	}
+
+	// -- Randomization benchmarks --
+
+	@Benchmark
+	public byte[] randomizeRaw()
+	{
+		final byte[] data = rawData;
+		for ( int i = 0; i < data.length; i++ )
+		{
+			final int value = data[ i ] & 0xff;
+			data[ i ] = ( byte ) expensiveOperation( value );
+		}
+		return data;
+	}
+
+	@Benchmark
+	public ByteProcessor randomizeImageProcessor()
+	{
+		final ByteProcessor ip = byteProc;
+		for ( int i = 0; i < ip.getPixelCount(); i++ )
+		{
+			final int value = ip.get( i );
+			ip.set( i, ( int ) expensiveOperation( value ) );
+		}
+		return ip;
+	}
+
+	@Benchmark
+	public Img< UnsignedByteType > randomizeArrayImage()
+	{
+		final ArrayCursor< UnsignedByteType > c = imgArray.cursor();
+		while ( c.hasNext() )
+		{
+			final UnsignedByteType t = c.next();
+			t.set( ( int ) expensiveOperation( t.get() ) );
+		}
+		return imgArray;
+	}
+
+	@Benchmark
+	public Img< UnsignedByteType > randomizeCellImage()
+	{
+		final CellCursor< UnsignedByteType, ByteArray, ? > c = imgCell.cursor();
+		while ( c.hasNext() )
+		{
+			final UnsignedByteType t = c.next();
+			t.set( ( int ) expensiveOperation( t.get() ) );
+		}
+		return imgCell;
+	}
+
+	@Benchmark
+	public Img< UnsignedByteType > randomizePlanarImage()
+	{
+		final PlanarCursor< UnsignedByteType > c = imgPlanar.cursor();
+		while ( c.hasNext() )
+		{
+			final UnsignedByteType t = c.next();
+			t.set( ( int ) expensiveOperation( t.get() ) );
+		}
+		return imgPlanar;
+	}
+
+	@Benchmark
+	public Img< UnsignedByteType > randomizeImagePlusImage()
+	{
+		final PlanarCursor< UnsignedByteType > c = imgImagePlus.cursor();
+		while ( c.hasNext() )
+		{
+			final UnsignedByteType t = c.next();
+			t.set( ( int ) expensiveOperation( t.get() ) );
+		}
+		return imgImagePlus;
+	}
+
+	// -- Helper methods --
+
+	private static byte[] createRawData( final int w, final int h )
+	{
+		final int size = w * h;
+		final byte[] data = new byte[ size ];
+		for ( int i = 0; i < size; ++i )
+			data[ i ] = ( byte ) ( i % 256 );
+		return data;
+	}
+
+	private static void fill( final Img< UnsignedByteType > img )
+	{
+		long i = 0;
+		for ( final UnsignedByteType t : img )
+			t.set( ( int ) ( i++ % 256 ) );
+	}
+
+	private static double expensiveOperation( final int value )
+	{
+		return 255 * Math.random() * Math.sin( value / 255.0 );
+	}
+
+	public static void main( final String[] args ) throws CommandLineOptionException, RunnerException
+	{
+		BenchmarkRunner.main( new String[] { ContainerBenchmark.class.getSimpleName() } );
+	}
+}
@@ -31,24 +31,31 @@ import ij.ImagePlus;
 import ij.process.ByteProcessor;
 import ij.process.ImageProcessor;
 
+import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import net.imglib2.Cursor;
 import net.imglib2.img.ImagePlusAdapter;
 import net.imglib2.img.Img;
 import net.imglib2.img.ImgFactory;
+import net.imglib2.img.NativeImg;
 import net.imglib2.img.array.ArrayCursor;
 import net.imglib2.img.array.ArrayImg;
 import net.imglib2.img.basictypeaccess.array.ByteArray;
 import net.imglib2.img.cell.CellCursor;
 import net.imglib2.img.cell.CellImg;
 import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.img.cell.DefaultCell;
+import net.imglib2.img.cell.ListImgCells;
 import net.imglib2.img.imageplus.ByteImagePlus;
 import net.imglib2.img.imageplus.ImagePlusImgFactory;
 import net.imglib2.img.list.ListCursor;
@@ -78,6 +85,8 @@ public class ImglibBenchmark {
 	private static final String METHOD_IMGLIB_PLANAR = "Imglib (Planar)";
 	private static final String METHOD_IMGLIB_IMAGEPLUS = "Imglib (ImagePlus)";
 	private static final String METHOD_IMGLIB_LIST = "Imglib (List)";
+	private static final String METHOD_IMGLIB_OFFHEAP = "Imglib (Off-heap)";
+	private static final String METHOD_IMGLIB_MAPPED = "Imglib (Mapped)";
 
 //	private final int imageSize;
 	private final int numDimensions;
@@ -89,6 +98,8 @@ public class ImglibBenchmark {
 	private final PlanarImg<UnsignedByteType, ByteArray> imgPlanar;
 	private final ByteImagePlus<UnsignedByteType> imgImagePlus;
 	private final ListImg<UnsignedByteType> imgList;
+	private final NativeImg<UnsignedByteType, ByteBufferAccess> imgOffHeap;
+	private final NativeImg<UnsignedByteType, ByteBufferAccess> imgMapped;
 
 	/**
 	 * List of timing results.
@@ -99,8 +110,14 @@ public class ImglibBenchmark {
 	private final List<Map<String, Long>> results =
 		new ArrayList<Map<String, Long>>();
 
+	/** Metadata of this run, for the {@link ResultStore}. */
+	private final ResultStore.Run run = ResultStore.Run.current();
+
 	public static void main(final String[] args) throws IOException {
 		final boolean testListImg = false;
+		// off-heap and memory-mapped images need another image size of direct
+		// memory and of temporary disk space, respectively
+		final boolean testByteBufferImgs = false;
 		final int iterations = 10;
 		final long[] dimensions;
 		if (args.length > 0)
@@ -120,13 +137,13 @@ public class ImglibBenchmark {
 
 			dimensions = new long[] {50000,50000};
 		}
-		final ImglibBenchmark bench = new ImglibBenchmark(dimensions, testListImg);
+		final ImglibBenchmark bench = new ImglibBenchmark(dimensions, testListImg, testByteBufferImgs);
 		bench.testPerformance(iterations);
 		System.exit(0);
 	}
 
 	/** Creates objects and measures memory usage. */
-	public ImglibBenchmark(final long[] dimensions, final boolean testListImg) {
+	public ImglibBenchmark(final long[] dimensions, final boolean testListImg, final boolean testByteBufferImgs) throws IOException {
 		this.numDimensions = dimensions.length;
 		this.dimensions = dimensions;
 		System.out.println();
@@ -154,6 +171,16 @@ public class ImglibBenchmark {
 		else
 			imgList = null;
 		memUsage.add(getMemUsage());
+		if ( testByteBufferImgs )
+			imgOffHeap = createOffHeapImage();
+		else
+			imgOffHeap = null;
+		memUsage.add(getMemUsage());
+		if ( testByteBufferImgs )
+			imgMapped = createMappedImage();
+		else
+			imgMapped = null;
+		memUsage.add(getMemUsage());
 
 		reportMemoryUsage(memUsage);
 	}
@@ -188,6 +215,10 @@ public class ImglibBenchmark {
 	 *
 	 * The CSV file produced enables graph #1 very easily.
 	 * For graph #2, results from several files must be combined.
+	 *
+	 * The results are also appended, together with the run metadata, to the
+	 * default {@link ResultStore}, where runs can be compared with
+	 * {@link ResultComparator}.
 	 */
 	public void saveResults(final String prefix) throws IOException {
 		final StringBuilder sb = new StringBuilder();
@@ -215,12 +246,15 @@ public class ImglibBenchmark {
 		}
 
 		// write to disk
-		String path = "results-" + prefix + "-";
+		String size = "";
 		for ( int d = 0; d < numDimensions; ++d )
-			path += dimensions[ d ] + ( d == numDimensions - 1 ? ".csv" : "x");
+			size += dimensions[ d ] + ( d == numDimensions - 1 ? "" : "x");
+		final String path = "results-" + prefix + "-" + size + ".csv";
 		final PrintWriter out = new PrintWriter(new FileWriter(path));
 		out.print(sb.toString());
 		out.close();
+
+		ResultStore.getDefault().append(run, getClass().getSimpleName(), prefix, size, results);
 	}
 
 	// -- Helper methods --
@@ -229,10 +263,11 @@ public class ImglibBenchmark {
 	private void testCheapPerformance(final int iterationCount) {
 		System.out.println();
 		System.out.println("-- TIME PERFORMANCE - CHEAP OPERATION --");
-		final long[] min = new long[ 7 ];
-		final long[] max = new long[ 7 ];
-		final long[] avg = new long[ 7 ];
-		final long[][] median = new long[ 7 ][ iterationCount ];
+		final long[] min = new long[ 9 ];
+		final long[] max = new long[ 9 ];
+		final long[] avg = new long[ 9 ];
+		final long[][] median = new long[ 9 ][ iterationCount ];
+		final long[] gc = getGcCountAndTime();
 
 		for (int i = 0; i < iterationCount; i++) {
 			System.gc();
@@ -254,21 +289,27 @@ public class ImglibBenchmark {
 			times.add(System.currentTimeMillis());
 			if ( imgList != null ) invertListImage(imgList);
 			times.add(System.currentTimeMillis());
+			if ( imgOffHeap != null ) invertOffHeapImage(imgOffHeap);
+			times.add(System.currentTimeMillis());
+			if ( imgMapped != null ) invertOffHeapImage(imgMapped);
+			times.add(System.currentTimeMillis());
 
 			logTimePerformance(i, times, min, max, avg, median );
 		}
 
 		reportMinAvgMax( min, max, avg, median, iterationCount );
+		reportGc( gc );
 	}
 
 	/** Measures performance of a computationally more expensive operation. */
 	private void testExpensivePerformance(final int iterationCount) {
 		System.out.println();
 		System.out.println("-- TIME PERFORMANCE - EXPENSIVE OPERATION --");
-		final long[] min = new long[ 7 ];
-		final long[] max = new long[ 7 ];
-		final long[] avg = new long[ 7 ];
-		final long[][] median = new long[ 7 ][ iterationCount ];
+		final long[] min = new long[ 9 ];
+		final long[] max = new long[ 9 ];
+		final long[] avg = new long[ 9 ];
+		final long[][] median = new long[ 9 ][ iterationCount ];
+		final long[] gc = getGcCountAndTime();
 
 		for (int i = 0; i < iterationCount; i++) {
 			System.gc();
@@ -289,11 +330,16 @@ public class ImglibBenchmark {
 			times.add(System.currentTimeMillis());
 			if ( imgList != null ) randomizeListImage(imgList);
 			times.add(System.currentTimeMillis());
+			if ( imgOffHeap != null ) randomizeOffHeapImage(imgOffHeap);
+			times.add(System.currentTimeMillis());
+			if ( imgMapped != null ) randomizeOffHeapImage(imgMapped);
+			times.add(System.currentTimeMillis());
 
 			logTimePerformance(i, times, min, max, avg, median );
 		}
 
 		reportMinAvgMax( min, max, avg, median, iterationCount );
+		reportGc( gc );
 	}
 
 	private void reportMinAvgMax(final long[] min, final long[] max, final long[] avg, final long[][] median, final int iterationCount) {
@@ -310,6 +356,24 @@ public class ImglibBenchmark {
 		System.out.println(METHOD_IMGLIB_PLANAR + " min: " + min[ 4 ] + " avg: " +  avg[ 4 ] + " max: " +  max[ 4 ] + " median: " + Util.median( median[ 4 ] ) );
 		System.out.println(METHOD_IMGLIB_IMAGEPLUS + " min: " + min[ 5 ] + " avg: " +  avg[ 5 ] + " max: " +  max[ 5 ] + " median: " + Util.median( median[ 5 ] ) );
 		System.out.println(METHOD_IMGLIB_LIST + " min: " + min[ 6 ] + " avg: " +  avg[ 6 ] + " max: " +  max[ 6 ] + " median: " + Util.median( median[ 6 ] ) );
+		System.out.println(METHOD_IMGLIB_OFFHEAP + " min: " + min[ 7 ] + " avg: " +  avg[ 7 ] + " max: " +  max[ 7 ] + " median: " + Util.median( median[ 7 ] ) );
+		System.out.println(METHOD_IMGLIB_MAPPED + " min: " + min[ 8 ] + " avg: " +  avg[ 8 ] + " max: " +  max[ 8 ] + " median: " + Util.median( median[ 8 ] ) );
+	}
+
+	/** Prints number and duration of garbage collections since {@code start}. */
+	private void reportGc(final long[] start) {
+		final long[] end = getGcCountAndTime();
+		System.out.println( "GC: " + ( end[ 0 ] - start[ 0 ] ) + " collections, " + ( end[ 1 ] - start[ 1 ] ) + " ms" );
+	}
+
+	private long[] getGcCountAndTime() {
+		final long[] gc = new long[ 2 ];
+		for ( final GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans() )
+		{
+			gc[ 0 ] += Math.max( 0, bean.getCollectionCount() );
+			gc[ 1 ] += Math.max( 0, bean.getCollectionTime() );
+		}
+		return gc;
 	}
 	private long getMemUsage() {
 		final Runtime r = Runtime.getRuntime();
@@ -326,6 +390,8 @@ public class ImglibBenchmark {
 		final long imgLibPlanarMem    = computeDifference(memUsage);
 		final long imgLibImagePlusMem = computeDifference(memUsage);
 		final long imgLibListMem      = computeDifference(memUsage);
+		final long imgLibOffHeapMem   = computeDifference(memUsage);
+		final long imgLibMappedMem    = computeDifference(memUsage);
 		System.out.println();
 		System.out.println("-- MEMORY OVERHEAD --");
 		System.out.println(METHOD_RAW + ": " + rawMem + " bytes");
@@ -335,6 +401,12 @@ public class ImglibBenchmark {
 		System.out.println(METHOD_IMGLIB_PLANAR + ": " + imgLibPlanarMem + " bytes");
 		System.out.println(METHOD_IMGLIB_IMAGEPLUS + ": " + imgLibImagePlusMem + " bytes");
 		System.out.println(METHOD_IMGLIB_LIST + ": " + imgLibListMem + " bytes");
+		System.out.println(METHOD_IMGLIB_OFFHEAP + ": " + imgLibOffHeapMem + " bytes (+ " + offHeapBytes( imgOffHeap ) + " bytes off-heap)");
+		System.out.println(METHOD_IMGLIB_MAPPED + ": " + imgLibMappedMem + " bytes (+ " + offHeapBytes( imgMapped ) + " bytes mapped)");
+	}
+
+	private long offHeapBytes(final NativeImg<UnsignedByteType, ByteBufferAccess> img) {
+		return img == null ? 0 : img.size();
 	}
 
 	private void logTimePerformance(final int iter, final List<Long> times, final long[] min, final long[] max, final long[] avg, final long[][] median) {
@@ -345,6 +417,8 @@ public class ImglibBenchmark {
 		long imgLibPlanarTime    = computeDifference(times);
 		long imgLibImagePlusTime = computeDifference(times);
 		long imgLibListTime      = computeDifference(times);
+		long imgLibOffHeapTime   = computeDifference(times);
+		long imgLibMappedTime    = computeDifference(times);
 
 		if ( rawData == null )
 			rawTime = -1;
@@ -360,6 +434,10 @@ public class ImglibBenchmark {
 			imgLibImagePlusTime = -1;
 		if ( imgList == null )
 			imgLibListTime = -1;
+		if ( imgOffHeap == null )
+			imgLibOffHeapTime = -1;
+		if ( imgMapped == null )
+			imgLibMappedTime = -1;
 
 		final Map<String, Long> entry = results.get(iter);
 		entry.put(METHOD_RAW, rawTime);
@@ -369,6 +447,8 @@ public class ImglibBenchmark {
 		entry.put(METHOD_IMGLIB_PLANAR, imgLibPlanarTime);
 		entry.put(METHOD_IMGLIB_IMAGEPLUS, imgLibImagePlusTime);
 		entry.put(METHOD_IMGLIB_LIST, imgLibListTime);
+		entry.put(METHOD_IMGLIB_OFFHEAP, imgLibOffHeapTime);
+		entry.put(METHOD_IMGLIB_MAPPED, imgLibMappedTime);
 
 		reportTime(METHOD_RAW, rawTime, rawTime, ipTime);
 		reportTime(METHOD_IMAGEJ, ipTime, rawTime, ipTime);
@@ -377,6 +457,8 @@ public class ImglibBenchmark {
 		reportTime(METHOD_IMGLIB_PLANAR, imgLibPlanarTime, rawTime, ipTime);
 		reportTime(METHOD_IMGLIB_IMAGEPLUS, imgLibImagePlusTime, rawTime, ipTime);
 		reportTime(METHOD_IMGLIB_LIST, imgLibListTime, rawTime, ipTime);
+		reportTime(METHOD_IMGLIB_OFFHEAP, imgLibOffHeapTime, rawTime, ipTime);
+		reportTime(METHOD_IMGLIB_MAPPED, imgLibMappedTime, rawTime, ipTime);
 
 		if ( iter == 0 )
 		{
@@ -387,6 +469,8 @@ public class ImglibBenchmark {
 			min[ 4 ] = max[ 4 ] = avg[ 4 ] = median[ 4 ][ 0 ] = imgLibPlanarTime;
 			min[ 5 ] = max[ 5 ] = avg[ 5 ] = median[ 5 ][ 0 ] = imgLibImagePlusTime;
 			min[ 6 ] = max[ 6 ] = avg[ 6 ] = median[ 6 ][ 0 ] = imgLibListTime;
+			min[ 7 ] = max[ 7 ] = avg[ 7 ] = median[ 7 ][ 0 ] = imgLibOffHeapTime;
+			min[ 8 ] = max[ 8 ] = avg[ 8 ] = median[ 8 ][ 0 ] = imgLibMappedTime;
 		}
 		else
 		{
@@ -424,6 +508,16 @@ public class ImglibBenchmark {
 			max[ 6 ] = Math.max( max[ 6 ], imgLibListTime );
 			median[ 6 ][ iter ] = imgLibListTime;
 			avg[ 6 ] += imgLibListTime;
+
+			min[ 7 ] = Math.min( min[ 7 ], imgLibOffHeapTime );
+			max[ 7 ] = Math.max( max[ 7 ], imgLibOffHeapTime );
+			median[ 7 ][ iter ] = imgLibOffHeapTime;
+			avg[ 7 ] += imgLibOffHeapTime;
+
+			min[ 8 ] = Math.min( min[ 8 ], imgLibMappedTime );
+			max[ 8 ] = Math.max( max[ 8 ], imgLibMappedTime );
+			median[ 8 ][ iter ] = imgLibMappedTime;
+			avg[ 8 ] += imgLibMappedTime;
 		}
 	}
 
@@ -511,6 +605,14 @@ public class ImglibBenchmark {
 	}
 
 	private CellImg<UnsignedByteType, ByteArray, ?> createCellImage() {
+		@SuppressWarnings( "unchecked" )
+		final
+		CellImg<UnsignedByteType, ByteArray, ?> cellContainer = ( CellImg<UnsignedByteType, ByteArray, ?> ) createImage( dimensions, new CellImgFactory< UnsignedByteType >( cellSize() ) );
+		return cellContainer;
+	}
+
+	/** Largest cell size such that a cell fits into one array. */
+	private int cellSize() {
 		final UnsignedByteType type = new UnsignedByteType();
 		final int cellSize = ( int ) Math.pow( Integer.MAX_VALUE / type.getEntitiesPerPixel().getRatio(), 1.0 / numDimensions );
 
@@ -522,11 +624,7 @@ public class ImglibBenchmark {
 		t /= type.getEntitiesPerPixel().getDenominator();
 		if ( t > Integer.MAX_VALUE )
 			throw new RuntimeException( "there were rounding errors and cellSize is actually too big" );
-
-		@SuppressWarnings( "unchecked" )
-		final
-		CellImg<UnsignedByteType, ByteArray, ?> cellContainer = ( CellImg<UnsignedByteType, ByteArray, ?> ) createImage( dimensions, new CellImgFactory< UnsignedByteType >( cellSize ) );
-		return cellContainer;
+		return cellSize;
 	}
 
 	private ByteImagePlus<UnsignedByteType> createImagePlusImage(final ImageProcessor ip) {
@@ -553,6 +651,51 @@ public class ImglibBenchmark {
 		return listContainer;
 	}
 
+	/** Image backed by direct (off-heap) ByteBuffers. */
+	private NativeImg<UnsignedByteType, ByteBufferAccess> createOffHeapImage() {
+		return createByteBufferImage( new ByteBufferAccess( 0 ) );
+	}
+
+	/** Image backed by memory-mapped regions of a temporary file. */
+	private NativeImg<UnsignedByteType, ByteBufferAccess> createMappedImage() throws IOException {
+		final File file = File.createTempFile( "imglib-benchmark-", ".raw" );
+		file.deleteOnExit();
+		return createByteBufferImage( ByteBufferAccess.mapping( file ) );
+	}
+
+	/**
+	 * An ArrayImg if the image fits into one buffer, otherwise a CellImg with
+	 * one buffer per cell and the cell size of {@link #createCellImage()}.
+	 * The buffers are created by {@code creator}.
+	 */
+	private NativeImg<UnsignedByteType, ByteBufferAccess> createByteBufferImage(final ByteBufferAccess creator) {
+		final long size = numPixels();
+		final NativeImg<UnsignedByteType, ByteBufferAccess> img;
+		if ( size <= Integer.MAX_VALUE )
+		{
+			img = new ArrayImg<UnsignedByteType, ByteBufferAccess>( creator.createArray( ( int ) size ), dimensions, new Fraction() );
+		}
+		else
+		{
+			final int[] cellDimensions = new int[ numDimensions ];
+			Arrays.fill( cellDimensions, cellSize() );
+			final ListImgCells<ByteBufferAccess> cells = new ListImgCells<ByteBufferAccess>( creator, new Fraction(), dimensions, cellDimensions );
+			img = new CellImg<UnsignedByteType, ByteBufferAccess, DefaultCell<ByteBufferAccess>>( new CellImgFactory<UnsignedByteType>( cellDimensions ), cells );
+		}
+		img.setLinkedType( new UnsignedByteType( img ) );
+		long i = 0;
+		for ( final UnsignedByteType t : img )
+			t.set( ( int ) ( i++ % 256 ) );
+		return img;
+	}
+
+	private long numPixels() {
+		long size = 1;
+		for ( int d = 0; d < numDimensions; ++d )
+			size *= dimensions[ d ];
+		return size;
+	}
+
 	private Img< UnsignedByteType > createImage(final long[] dims, final ImgFactory< UnsignedByteType > cf )
 	{
 		final Img< UnsignedByteType > img = cf.create( dims, new UnsignedByteType() );
@@ -645,6 +788,17 @@ public class ImglibBenchmark {
 		}
 	}
 
+	/** Explicit off-heap version (direct or memory-mapped ByteBuffer). */
+	private void invertOffHeapImage(final NativeImg<UnsignedByteType, ByteBufferAccess> img) {
+		final Cursor<UnsignedByteType> c = img.cursor();
+		while ( c.hasNext() ) {
+			final UnsignedByteType t = c.next();
+			final int value = t.get();
+			final int result = 255 - value;
+			t.set(result);
+		}
+	}
+
 	// -- Randomization methods --
 
 	private void randomizeRaw(final byte[] data) {
@@ -728,6 +882,17 @@ public class ImglibBenchmark {
 		}
 	}
 
+	/** Explicit off-heap version (direct or memory-mapped ByteBuffer). */
+	private void randomizeOffHeapImage(final NativeImg<UnsignedByteType, ByteBufferAccess> img) {
+		final Cursor<UnsignedByteType> c = img.cursor();
+		while ( c.hasNext() ) {
+			final UnsignedByteType t = c.next();
+			final int value = t.get();
+			final double result = expensiveOperation(value);
+			t.set((int) result);
+		}
+	}
+
 	private double expensiveOperation(final int value) {
 		return 255 * Math.random() * Math.sin(value / 255.0);
 	}
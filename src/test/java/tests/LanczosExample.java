@@ -94,6 +94,7 @@ public class LanczosExample
 		imp.show();
 
 		final Timer timer = new Timer();
+		final long numPixels = screenImage.dimension( 0 ) * screenImage.dimension( 1 );
 
 		projector.setPosition( imgPlus.dimension( 2 ) / 2, 2 );
 
@@ -108,6 +109,7 @@ public class LanczosExample
 		for ( int k = 0; k < 3; ++k )
 		{
 			timer.start();
+			timer.begin( "loop" );
 			for ( int i = 45; i < 48; ++i )
 			{
 				rotation.rotate( 1, Math.PI / 360 );
@@ -124,13 +126,18 @@ public class LanczosExample
 
 				affine.set( forward.inverse() );
 
+				timer.begin( "map" );
 				projector.map();
+				timer.end( numPixels );
 
 				imp.setImage( screenImage.image() );
 			}
+			timer.end();
 			IJ.log( "loop " + ( k + 1 ) + ": " + timer.stop() );
 		}
 
+		IJ.log( timer.report() );
+
 		final ColorProcessor cpa = new ColorProcessor( screenImage.image() );
 		imp.setProcessor( cpa );
 		imp.updateAndDraw();
@@ -100,18 +100,23 @@ public class OpenAndDisplayAffineTransformedScreenImage
 		imp.show();
 
 		final Timer timer = new Timer();
+		final long numPixels = screenImage.dimension( 0 ) * screenImage.dimension( 1 );
 
 		for ( int k = 0; k < 0; ++k )
 		{
 			timer.start();
+			timer.begin( "slice loop" );
 //			final long last = img.dimension( 3 ) * 2 - 2;
 			final long last = imgPlus.dimension( 2 ) * 2 - 2;
 			for ( int i = 0; i < last; ++i )
 			{
 				projector.setPosition( i, 2 );
+				timer.begin( "map slice" );
 				projector.map();
+				timer.end( numPixels );
 				imp.updateAndDraw();
 			}
+			timer.end();
 			IJ.log( "loop " + ( k + 1 ) + ": " + timer.stop() );
 		}
 
@@ -128,6 +133,7 @@ public class OpenAndDisplayAffineTransformedScreenImage
 		for ( int k = 0; k < 3; ++k )
 		{
 			timer.start();
+			timer.begin( "loop" );
 			for ( int i = 0; i < 360; ++i )
 			{
 				rotation.rotate( 1, Math.PI / 360 );
@@ -150,12 +156,17 @@ public class OpenAndDisplayAffineTransformedScreenImage
 //
 				//System.out.println( affine );
 
+				timer.begin( "map" );
 				projector.map();
+				timer.end( numPixels );
 				imp.updateAndDraw();
 			}
+			timer.end();
 			IJ.log( "loop " + ( k + 1 ) + ": " + timer.stop() );
 		}
 
+		IJ.log( timer.report() );
+
 		final ColorProcessor cpa = new ColorProcessor( screenImage.image() );
 		imp.setProcessor( cpa );
 		imp.updateAndDraw();
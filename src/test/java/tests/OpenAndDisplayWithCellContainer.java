@@ -48,7 +48,9 @@ public class OpenAndDisplayWithCellContainer
 		Img< FloatType > img = null;
 		try
 		{
-			ImgFactory< FloatType > imgFactory = new CellImgFactory<FloatType>( new int[] {64, 64} );
+			// use the CellSizeTuner recommendation for flat iteration, if there is one
+			final int[] cellSize = CellSizeTuner.recommendedCellSize( CellSizeTuner.WORKLOAD_CURSOR, 2, new int[] {64, 64} );
+			ImgFactory< FloatType > imgFactory = new CellImgFactory<FloatType>( cellSize );
 			final ImgOpener io = new ImgOpener();
 			img = io.openImg( "/home/tobias/workspace/data/73_float.tif", imgFactory, new FloatType() );
 		}
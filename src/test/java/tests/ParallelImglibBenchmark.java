@@ -0,0 +1,535 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package tests;
+
+import ij.ImagePlus;
+import ij.process.ByteProcessor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.imglib2.Cursor;
+import net.imglib2.img.ImagePlusAdapter;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayCursor;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.img.imageplus.ImagePlusImgFactory;
+import net.imglib2.img.planar.PlanarCursor;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.img.planar.PlanarImgFactory;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.util.Fraction;
+import net.imglib2.util.Util;
+
+/**
+ * Multi-threaded version of the cheap (invert) and expensive (randomize)
+ * workloads of {@link ImglibBenchmark}, with a thread-count sweep.
+ * <p>
+ * Each container is split in the way that suits it best:
+ * </p>
+ * <ul>
+ * <li>Raw, ImageJ and Array: by flat index range (the cursor is moved to the
+ * start of its range with {@link Cursor#jumpFwd(long)}).</li>
+ * <li>Planar and ImagePlus: by plane, if there are enough planes for the
+ * number of tasks, otherwise by flat index range.</li>
+ * <li>Cell: by cell. Every task processes a set of whole cells with the cursor
+ * of the cell image, which iterates cell by cell, moved to the first pixel of
+ * its cells with {@link Cursor#jumpFwd(long)}. Note that this needs a cell
+ * size that gives enough cells. (ImglibBenchmark uses one giant cell.)</li>
+ * </ul>
+ * <p>
+ * The expensive operation uses one {@link Random} per task instead of the
+ * shared {@link Math#random()}, which would serialize all threads. For every
+ * container the single-thread run of the same code is the baseline; the report
+ * lists median time, speedup and parallel efficiency (speedup / threads). A
+ * single-thread run is always measured, also if the sweep does not list 1.
+ * </p>
+ * <p>
+ * Usage: {@code ParallelImglibBenchmark [W H [D]]}. Thread counts can be set
+ * with {@code -Dthreads=1,2,4,8}, tasks per thread with
+ * {@code -DtasksPerThread=4}, cell size with {@code -DcellSize=256}.
+ * </p>
+ */
+public class ParallelImglibBenchmark {
+
+	private static final String OPERATION_CHEAP = "cheap-parallel";
+	private static final String OPERATION_EXPENSIVE = "expensive-parallel";
+
+	private enum Method {
+		RAW("Raw"), IMAGEJ("ImageJ"), ARRAY("Imglib (Array)"), CELL(
+			"Imglib (Cell)"), PLANAR("Imglib (Planar)"), IMAGEPLUS(
+			"Imglib (ImagePlus)");
+
+		private final String label;
+
+		private Method(final String label) {
+			this.label = label;
+		}
+	}
+
+	private final long[] dimensions;
+	private final int cellSize;
+	private final int tasksPerThread;
+	private final byte[] rawData;
+	private final ByteProcessor byteProc;
+	private final ArrayImg<UnsignedByteType, ByteArray> imgArray;
+	private final Img<UnsignedByteType> imgCell;
+	private final PlanarImg<UnsignedByteType, ByteArray> imgPlanar;
+	private final PlanarImg<UnsignedByteType, ?> imgImagePlus;
+
+	/** Metadata of this run, for the {@link ResultStore}. */
+	private final ResultStore.Run run = ResultStore.Run.current();
+
+	public static void main(final String[] args) throws IOException,
+		InterruptedException, ExecutionException
+	{
+		final int iterations = 10;
+		final long[] dimensions;
+		if (args.length > 0) {
+			dimensions = new long[args.length];
+			for (int d = 0; d < args.length; ++d)
+				dimensions[d] = Long.parseLong(args[d]);
+		}
+		else {
+			dimensions = new long[] { 8192, 8192 };
+		}
+		final int[] threadCounts = parseThreadCounts(System.getProperty("threads"));
+		final int cellSize = Integer.getInteger("cellSize", 256);
+		final int tasksPerThread = Integer.getInteger("tasksPerThread", 4);
+
+		final ParallelImglibBenchmark bench =
+			new ParallelImglibBenchmark(dimensions, cellSize, tasksPerThread);
+		bench.testPerformance(iterations, threadCounts);
+		System.exit(0);
+	}
+
+	public ParallelImglibBenchmark(final long[] dimensions, final int cellSize,
+		final int tasksPerThread)
+	{
+		this.dimensions = dimensions;
+		this.cellSize = cellSize;
+		this.tasksPerThread = tasksPerThread;
+		System.out.println();
+		System.out.println("===== " + dimensionsString(" x ") + " =====");
+
+		final long size = numPixels();
+		if (size <= Integer.MAX_VALUE) {
+			rawData = createRawData((int) size);
+			imgArray =
+				new ArrayImg<UnsignedByteType, ByteArray>(new ByteArray(
+					createRawData((int) size)), dimensions, new Fraction());
+			imgArray.setLinkedType(new UnsignedByteType(imgArray));
+		}
+		else {
+			rawData = null;
+			imgArray = null;
+		}
+		if (rawData != null && dimensions.length == 2) {
+			byteProc =
+				new ByteProcessor((int) dimensions[0], (int) dimensions[1],
+					createRawData((int) size), null);
+			imgImagePlus =
+				ImagePlusAdapter.wrapByte(new ImagePlus("image", new ByteProcessor(
+					(int) dimensions[0], (int) dimensions[1], createRawData((int) size),
+					null)));
+		}
+		else {
+			byteProc = null;
+			imgImagePlus =
+				dimensions.length <= 5 && dimensions[0] * dimensions[1] <= Integer.MAX_VALUE
+					? (PlanarImg<UnsignedByteType, ?>) fill(new ImagePlusImgFactory<UnsignedByteType>()
+						.create(dimensions, new UnsignedByteType())) : null;
+		}
+		imgCell =
+			fill(new CellImgFactory<UnsignedByteType>(cellSize).create(dimensions,
+				new UnsignedByteType()));
+		if (dimensions[0] * dimensions[1] <= Integer.MAX_VALUE) {
+			@SuppressWarnings("unchecked")
+			final PlanarImg<UnsignedByteType, ByteArray> planar =
+				(PlanarImg<UnsignedByteType, ByteArray>) fill(new PlanarImgFactory<UnsignedByteType>()
+					.create(dimensions, new UnsignedByteType()));
+			imgPlanar = planar;
+		}
+		else {
+			imgPlanar = null;
+		}
+	}
+
+	public void testPerformance(final int iterationCount,
+		final int[] threadCounts) throws IOException, InterruptedException,
+		ExecutionException
+	{
+		testPerformance(iterationCount, threadCounts, false);
+		testPerformance(iterationCount, threadCounts, true);
+	}
+
+	// -- Helper methods --
+
+	private void testPerformance(final int iterationCount,
+		final int[] threadCounts, final boolean expensive) throws IOException,
+		InterruptedException, ExecutionException
+	{
+		System.out.println();
+		System.out.println("-- TIME PERFORMANCE - " +
+			(expensive ? "EXPENSIVE" : "CHEAP") + " OPERATION, PARALLEL --");
+
+		// results.get( iteration ) maps "method [n threads]" to time in ms
+		final List<Map<String, Long>> results = new ArrayList<Map<String, Long>>();
+		for (int i = 0; i < iterationCount; i++)
+			results.add(new HashMap<String, Long>());
+
+		final Map<Method, Double> baseline = new HashMap<Method, Double>();
+		System.out.println(String.format("%-20s %8s %12s %10s %10s", "Method",
+			"Threads", "median ms", "speedup", "efficiency"));
+		for (final int numThreads : withSingleThread(threadCounts)) {
+			final ExecutorService service = Executors.newFixedThreadPool(numThreads);
+			try {
+				for (final Method method : Method.values()) {
+					if (!isAvailable(method)) continue;
+					final int numTasks = numThreads * tasksPerThread;
+
+					// warm up
+					runParallel(service, method, numTasks, expensive);
+
+					final long[] times = new long[iterationCount];
+					for (int i = 0; i < iterationCount; i++) {
+						System.gc();
+						final long start = System.nanoTime();
+						runParallel(service, method, numTasks, expensive);
+						times[i] = System.nanoTime() - start;
+						results.get(i).put(method.label + " [" + numThreads + " threads]",
+							times[i] / 1000000);
+					}
+					final double median = Util.median(times) / 1e6;
+					// the single-thread run comes first and is the baseline
+					if (numThreads == 1) baseline.put(method, median);
+					final double speedup = baseline.get(method) / median;
+					System.out.println(String.format("%-20s %8d %12.2f %10.2f %10.2f",
+						method.label, numThreads, median, speedup, speedup / numThreads));
+				}
+			}
+			finally {
+				service.shutdown();
+			}
+		}
+
+		ResultStore.getDefault().append(run, getClass().getSimpleName(),
+			expensive ? OPERATION_EXPENSIVE : OPERATION_CHEAP, dimensionsString("x"),
+			results);
+	}
+
+	private boolean isAvailable(final Method method) {
+		switch (method) {
+			case RAW:
+				return rawData != null;
+			case IMAGEJ:
+				return byteProc != null;
+			case ARRAY:
+				return imgArray != null;
+			case CELL:
+				return imgCell != null;
+			case PLANAR:
+				return imgPlanar != null;
+			case IMAGEPLUS:
+				return imgImagePlus != null;
+			default:
+				return false;
+		}
+	}
+
+	private void runParallel(final ExecutorService service, final Method method,
+		final int numTasks, final boolean expensive) throws InterruptedException,
+		ExecutionException
+	{
+		final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		switch (method) {
+			case RAW:
+				for (final long[] range : split(rawData.length, numTasks, 1))
+					tasks.add(new Callable<Void>() {
+
+						@Override
+						public Void call() {
+							processRaw(rawData, (int) range[0], (int) range[1], expensive,
+								new Random(range[0]));
+							return null;
+						}
+					});
+				break;
+			case IMAGEJ:
+				for (final long[] range : split(byteProc.getPixelCount(), numTasks, 1))
+					tasks.add(new Callable<Void>() {
+
+						@Override
+						public Void call() {
+							processImageProcessor(byteProc, (int) range[0], (int) range[1],
+								expensive, new Random(range[0]));
+							return null;
+						}
+					});
+				break;
+			case ARRAY:
+				for (final long[] range : split(numPixels(), numTasks, 1))
+					tasks.add(new Callable<Void>() {
+
+						@Override
+						public Void call() {
+							processArrayImage(imgArray, range[0], range[1] - range[0],
+								expensive, new Random(range[0]));
+							return null;
+						}
+					});
+				break;
+			case PLANAR:
+			case IMAGEPLUS:
+				final PlanarImg<UnsignedByteType, ?> planar =
+					method == Method.PLANAR ? imgPlanar : imgImagePlus;
+				final long planeSize = dimensions[0] * dimensions[1];
+				final long numPlanes = numPixels() / planeSize;
+				final long alignment = numPlanes >= numTasks ? planeSize : 1;
+				for (final long[] range : split(numPixels(), numTasks, alignment))
+					tasks.add(new Callable<Void>() {
+
+						@Override
+						public Void call() {
+							processPlanarImage(planar, range[0], range[1] - range[0],
+								expensive, new Random(range[0]));
+							return null;
+						}
+					});
+				break;
+			case CELL:
+				final long[] cellOffsets = cellOffsets();
+				for (final long[] range : split(cellOffsets.length - 1, numTasks, 1))
+					tasks.add(new Callable<Void>() {
+
+						@Override
+						public Void call() {
+							final long from = cellOffsets[(int) range[0]];
+							processCellImage(imgCell, from, cellOffsets[(int) range[1]] - from,
+								expensive, new Random(range[0]));
+							return null;
+						}
+					});
+				break;
+		}
+		for (final Future<Void> future : service.invokeAll(tasks))
+			future.get();
+	}
+
+	/**
+	 * Splits {@code [0, size)} into at most {@code numParts} ranges
+	 * {@code [from, to)} whose boundaries are multiples of {@code alignment}.
+	 */
+	static List<long[]> split(final long size, final int numParts,
+		final long alignment)
+	{
+		final long units = (size + alignment - 1) / alignment;
+		final long parts = Math.max(1, Math.min(numParts, units));
+		final List<long[]> ranges = new ArrayList<long[]>();
+		for (long i = 0; i < parts; i++) {
+			final long from = Math.min(size, units * i / parts * alignment);
+			final long to = Math.min(size, units * (i + 1) / parts * alignment);
+			if (to > from) ranges.add(new long[] { from, to });
+		}
+		return ranges;
+	}
+
+	/**
+	 * Flat index of the first pixel of each cell of {@link #imgCell} in its
+	 * iteration order (cell by cell, cells in flat order), followed by the
+	 * number of pixels.
+	 */
+	private long[] cellOffsets() {
+		final int n = dimensions.length;
+		final long[] gridSize = new long[n];
+		long numCells = 1;
+		for (int d = 0; d < n; d++) {
+			gridSize[d] = (dimensions[d] + cellSize - 1) / cellSize;
+			numCells *= gridSize[d];
+		}
+		final long[] offsets = new long[(int) numCells + 1];
+		for (int index = 0; index < numCells; index++) {
+			long i = index;
+			long cellPixels = 1;
+			for (int d = 0; d < n; d++) {
+				final long min = (i % gridSize[d]) * cellSize;
+				cellPixels *= Math.min(dimensions[d], min + cellSize) - min;
+				i /= gridSize[d];
+			}
+			offsets[index + 1] = offsets[index] + cellPixels;
+		}
+		return offsets;
+	}
+
+	private long numPixels() {
+		long size = 1;
+		for (final long d : dimensions)
+			size *= d;
+		return size;
+	}
+
+	private String dimensionsString(final String separator) {
+		final StringBuilder sb = new StringBuilder();
+		for (int d = 0; d < dimensions.length; ++d)
+			sb.append(d == 0 ? "" : separator).append(dimensions[d]);
+		return sb.toString();
+	}
+
+	/**
+	 * @return the thread counts in increasing order, with 1 added if missing,
+	 *         so that the speedups are relative to a measured single-thread
+	 *         run.
+	 */
+	static int[] withSingleThread(final int[] threadCounts) {
+		final SortedSet<Integer> counts = new TreeSet<Integer>();
+		counts.add(1);
+		for (final int count : threadCounts)
+			counts.add(count);
+		final int[] array = new int[counts.size()];
+		int i = 0;
+		for (final int count : counts)
+			array[i++] = count;
+		return array;
+	}
+
+	private static int[] parseThreadCounts(final String threads) {
+		if (threads != null) {
+			final String[] parts = threads.split(",");
+			final int[] counts = new int[parts.length];
+			for (int i = 0; i < parts.length; i++)
+				counts[i] = Integer.parseInt(parts[i].trim());
+			return counts;
+		}
+		final int numProcessors = Runtime.getRuntime().availableProcessors();
+		final List<Integer> counts = new ArrayList<Integer>();
+		for (int t = 1; t < numProcessors; t *= 2)
+			counts.add(t);
+		counts.add(numProcessors);
+		final int[] array = new int[counts.size()];
+		for (int i = 0; i < array.length; i++)
+			array[i] = counts.get(i);
+		return array;
+	}
+
+	private static byte[] createRawData(final int size) {
+		final byte[] data = new byte[size];
+		for (int i = 0; i < size; ++i)
+			data[i] = (byte) (i % 256);
+		return data;
+	}
+
+	private static Img<UnsignedByteType> fill(final Img<UnsignedByteType> img) {
+		long i = 0;
+		for (final UnsignedByteType t : img)
+			t.set((int) (i++ % 256));
+		return img;
+	}
+
+	// -- Processing methods --
+
+	private static void processRaw(final byte[] data, final int from,
+		final int to, final boolean expensive, final Random random)
+	{
+		for (int i = from; i < to; i++) {
+			final int value = data[i] & 0xff;
+			data[i] = (byte) compute(value, expensive, random);
+		}
+	}
+
+	private static void processImageProcessor(final ByteProcessor ip,
+		final int from, final int to, final boolean expensive,
+		final Random random)
+	{
+		for (int i = from; i < to; i++) {
+			final int value = ip.get(i);
+			ip.set(i, compute(value, expensive, random));
+		}
+	}
+
+	/** Explicit array version. */
+	private static void processArrayImage(
+		final ArrayImg<UnsignedByteType, ByteArray> img, final long from,
+		final long count, final boolean expensive, final Random random)
+	{
+		final ArrayCursor<UnsignedByteType> c = img.cursor();
+		c.jumpFwd(from);
+		for (long i = 0; i < count; i++) {
+			final UnsignedByteType t = c.next();
+			t.set(compute(t.get(), expensive, random));
+		}
+	}
+
+	/** Explicit planar version (also used for ImagePlus). */
+	private static void processPlanarImage(
+		final PlanarImg<UnsignedByteType, ?> img, final long from,
+		final long count, final boolean expensive, final Random random)
+	{
+		final PlanarCursor<UnsignedByteType> c = img.cursor();
+		c.jumpFwd(from);
+		for (long i = 0; i < count; i++) {
+			final UnsignedByteType t = c.next();
+			t.set(compute(t.get(), expensive, random));
+		}
+	}
+
+	/**
+	 * Cell version, {@code from} and {@code count} are aligned with cell
+	 * boundaries.
+	 */
+	private static void processCellImage(final Img<UnsignedByteType> img,
+		final long from, final long count, final boolean expensive,
+		final Random random)
+	{
+		final Cursor<UnsignedByteType> c = img.cursor();
+		c.jumpFwd(from);
+		for (long i = 0; i < count; i++) {
+			final UnsignedByteType t = c.next();
+			t.set(compute(t.get(), expensive, random));
+		}
+	}
+
+	private static int compute(final int value, final boolean expensive,
+		final Random random)
+	{
+		if (expensive) return (int) (255 * random.nextDouble() * Math.sin(value / 255.0));
+		return 255 - value;
+	}
+}
@@ -89,6 +89,9 @@ public class PerformanceBenchmark {
 	private final List<Map<String, Long>> results =
 		new ArrayList<Map<String, Long>>();
 
+	/** Metadata of this run, for the {@link ResultStore}. */
+	private final ResultStore.Run run = ResultStore.Run.current();
+
 	public static void main(final String[] args) throws IOException {
 		final int iterations = 10;
 		final int size;
@@ -161,6 +164,11 @@ public class PerformanceBenchmark {
 	 * The CSV file produced enables graph #1 very easily. For graph #2, results
 	 * from several files must be combined.
 	 * </p>
+	 * <p>
+	 * The results are also appended, together with the run metadata, to the
+	 * default {@link ResultStore}, where runs can be compared with
+	 * {@link ResultComparator}.
+	 * </p>
 	 */
 	public void saveResults(final String prefix) throws IOException {
 		final StringBuilder sb = new StringBuilder();
@@ -193,6 +201,9 @@ public class PerformanceBenchmark {
 		final PrintWriter out = new PrintWriter(new FileWriter(path));
 		out.print(sb.toString());
 		out.close();
+
+		ResultStore.getDefault().append(run, getClass().getSimpleName(), prefix,
+			width + "x" + height, results);
 	}
 
 	// -- Helper methods --
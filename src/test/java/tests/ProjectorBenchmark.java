@@ -0,0 +1,143 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package tests;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.imglib2.converter.ChannelARGBConverter;
+import net.imglib2.converter.RealARGBConverter;
+import net.imglib2.display.projector.IterableIntervalProjector2D;
+import net.imglib2.display.projector.RandomAccessibleProjector2D;
+import net.imglib2.display.projector.composite.CompositeXYProjector;
+import net.imglib2.display.projector.composite.CompositeXYRandomAccessibleProjector;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+
+/**
+ * JMH port of {@link IterableIntervalProjector2DBenchmark},
+ * {@link RandomAccessibleProjector2DBenchmark},
+ * {@link CompositeXYProjectorBenchmark} and
+ * {@link CompositeXYRandomAccessibleProjectorBenchmark}.
+ * <p>
+ * Uses random images instead of files, so sizes can be varied. The composite
+ * projectors map a {@code W x H x 3} image; {@code dimensions} is the size of
+ * the 2D target.
+ * </p>
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 10, time = 1 )
+@Fork( 2 )
+public class ProjectorBenchmark
+{
+	@Param( { "512x512", "2048x2048" } )
+	public String dimensions;
+
+	private IterableIntervalProjector2D< UnsignedByteType, ARGBType > iterableIntervalProjector;
+
+	private RandomAccessibleProjector2D< UnsignedByteType, ARGBType > randomAccessibleProjector;
+
+	private CompositeXYProjector< UnsignedByteType > compositeProjector;
+
+	private CompositeXYRandomAccessibleProjector< UnsignedByteType > compositeRandomAccessibleProjector;
+
+	@Setup
+	public void setup()
+	{
+		final long[] dims = BenchmarkRunner.parseDimensions( dimensions );
+		final long[] compositeDims = new long[] { dims[ 0 ], dims[ 1 ], 3 };
+
+		final Img< UnsignedByteType > img = ArrayImgs.unsignedBytes( dims );
+		final Img< UnsignedByteType > compositeImg = ArrayImgs.unsignedBytes( compositeDims );
+		final Random random = new Random( 1232324970l );
+		for ( final UnsignedByteType t : img )
+			t.set( random.nextInt( 256 ) );
+		for ( final UnsignedByteType t : compositeImg )
+			t.set( random.nextInt( 256 ) );
+
+		final Img< ARGBType > argbImg = ArrayImgs.argbs( dims );
+		iterableIntervalProjector = new IterableIntervalProjector2D< UnsignedByteType, ARGBType >( 0, 1, img, argbImg, new RealARGBConverter< UnsignedByteType >( 0, 1000 ) );
+		randomAccessibleProjector = new RandomAccessibleProjector2D< UnsignedByteType, ARGBType >( 0, 1, img, argbImg, new RealARGBConverter< UnsignedByteType >( 0, 1000 ) );
+		compositeProjector = new CompositeXYProjector< UnsignedByteType >( compositeImg, argbImg, ChannelARGBConverter.converterListRGBA, 2 );
+		compositeProjector.setComposite( true );
+		compositeRandomAccessibleProjector = new CompositeXYRandomAccessibleProjector< UnsignedByteType >( compositeImg, argbImg, ChannelARGBConverter.converterListRGBA, 2 );
+		compositeRandomAccessibleProjector.setComposite( true );
+	}
+
+	@Benchmark
+	public Object iterableIntervalProjector2D()
+	{
+		iterableIntervalProjector.map();
+		return iterableIntervalProjector;
+	}
+
+	@Benchmark
+	public Object randomAccessibleProjector2D()
+	{
+		randomAccessibleProjector.map();
+		return randomAccessibleProjector;
+	}
+
+	@Benchmark
+	public Object compositeXYProjector()
+	{
+		compositeProjector.map();
+		return compositeProjector;
+	}
+
+	@Benchmark
+	public Object compositeXYRandomAccessibleProjector()
+	{
+		compositeRandomAccessibleProjector.map();
+		return compositeRandomAccessibleProjector;
+	}
+
+	public static void main( final String[] args ) throws CommandLineOptionException, RunnerException
+	{
+		BenchmarkRunner.main( new String[] { ProjectorBenchmark.class.getSimpleName() } );
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package tests;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+/**
+ * Loads and saves cells of a {@link CachedCellImg} from/to an uncompressed
+ * 8-bit raw file, stored in flat (x fastest) order.
+ */
+public class RawFileCellStore implements CachedCellImg.Store< UnsignedByteType >
+{
+	private final RandomAccessFile file;
+
+	private final long[] dimensions;
+
+	private final long[] steps;
+
+	public RawFileCellStore( final File file, final long[] dimensions ) throws IOException
+	{
+		this.dimensions = dimensions.clone();
+		steps = new long[ dimensions.length ];
+		long size = 1;
+		for ( int d = 0; d < dimensions.length; ++d )
+		{
+			steps[ d ] = size;
+			size *= dimensions[ d ];
+		}
+		this.file = new RandomAccessFile( file, "rw" );
+		if ( this.file.length() < size )
+			this.file.setLength( size );
+	}
+
+	public long[] getDimensions()
+	{
+		return dimensions.clone();
+	}
+
+	@Override
+	public synchronized ArrayImg< UnsignedByteType, ? > load( final long[] min, final int[] cellDimensions ) throws IOException
+	{
+		final long[] dims = new long[ cellDimensions.length ];
+		for ( int d = 0; d < dims.length; ++d )
+			dims[ d ] = cellDimensions[ d ];
+		final ArrayImg< UnsignedByteType, ByteArray > cell = ArrayImgs.unsignedBytes( dims );
+		transfer( min, cellDimensions, cell.update( null ).getCurrentStorageArray(), false );
+		return cell;
+	}
+
+	@Override
+	public synchronized void save( final long[] min, final ArrayImg< UnsignedByteType, ? > cell ) throws IOException
+	{
+		final int[] cellDimensions = new int[ cell.numDimensions() ];
+		for ( int d = 0; d < cellDimensions.length; ++d )
+			cellDimensions[ d ] = ( int ) cell.dimension( d );
+		transfer( min, cellDimensions, ( ( ByteArray ) cell.update( null ) ).getCurrentStorageArray(), true );
+	}
+
+	public synchronized void close() throws IOException
+	{
+		file.close();
+	}
+
+	/**
+	 * Copies a cell row by row between the file and {@code data}.
+	 */
+	private void transfer( final long[] min, final int[] cellDimensions, final byte[] data, final boolean write ) throws IOException
+	{
+		final int n = cellDimensions.length;
+		final int rowLength = cellDimensions[ 0 ];
+		final int[] row = new int[ n ];
+		for ( int offset = 0; offset < data.length; offset += rowLength )
+		{
+			long filePosition = min[ 0 ];
+			for ( int d = 1; d < n; ++d )
+				filePosition += ( min[ d ] + row[ d ] ) * steps[ d ];
+			file.seek( filePosition );
+			if ( write )
+				file.write( data, offset, rowLength );
+			else
+				file.readFully( data, offset, rowLength );
+			for ( int d = 1; d < n; ++d )
+			{
+				if ( ++row[ d ] < cellDimensions[ d ] )
+					break;
+				row[ d ] = 0;
+			}
+		}
+	}
+
+	/**
+	 * Writes a raw file of the given size, filled with the same ramp
+	 * (flat index modulo 256) as {@link ImglibBenchmark} uses.
+	 */
+	public static void createRamp( final File file, final long[] dimensions ) throws IOException
+	{
+		long size = 1;
+		for ( final long d : dimensions )
+			size *= d;
+		final OutputStream out = new BufferedOutputStream( new FileOutputStream( file ), 1 << 20 );
+		try
+		{
+			final byte[] ramp = new byte[ 256 ];
+			for ( int i = 0; i < 256; ++i )
+				ramp[ i ] = ( byte ) i;
+			for ( long i = 0; i < size; i += 256 )
+				out.write( ramp, 0, ( int ) Math.min( 256, size - i ) );
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+}
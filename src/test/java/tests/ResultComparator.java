@@ -0,0 +1,319 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares two runs in a {@link ResultStore} and flags statistically
+ * significant slowdowns per benchmark, operation, image size and method (Raw,
+ * Array, Cell, Planar, ImagePlus, List, ...).
+ * <p>
+ * For every method measured in both runs, the iteration times are compared
+ * with a one-sided Mann-Whitney U test. A method is reported as a regression
+ * if the candidate is slower with {@code p < alpha} <em>and</em> its median
+ * time is at least {@code threshold} (relative) above the baseline median.
+ * Improvements are reported the same way.
+ * </p>
+ * <p>
+ * Usage:
+ * </p>
+ * 
+ * <pre>
+ * ResultComparator [-store file] [-alpha 0.01] [-threshold 0.05] [-skip 1]
+ *                  [baselineRunId candidateRunId]
+ * </pre>
+ * <p>
+ * Without run ids, the two most recent runs in the store are compared.
+ * {@code -skip} ignores the first iterations of each run (JIT warm-up). The
+ * exit status is 1 if any regression was found, so the comparator can gate a
+ * release.
+ * </p>
+ */
+public class ResultComparator {
+
+	public enum Verdict {
+		REGRESSION, IMPROVEMENT, UNCHANGED
+	}
+
+	/** Outcome of comparing one method between two runs. */
+	public static class Comparison {
+
+		public final String key;
+		public final long[] baseline;
+		public final long[] candidate;
+		public final double baselineMedian;
+		public final double candidateMedian;
+		public final double pSlower;
+		public final double pFaster;
+		public final Verdict verdict;
+
+		Comparison(final String key, final long[] baseline,
+			final long[] candidate, final double alpha, final double threshold)
+		{
+			this.key = key;
+			this.baseline = baseline;
+			this.candidate = candidate;
+			baselineMedian = median(baseline);
+			candidateMedian = median(candidate);
+			pSlower = mannWhitneyGreater(candidate, baseline);
+			pFaster = mannWhitneyGreater(baseline, candidate);
+			final double ratio = getRatio();
+			if (pSlower < alpha && ratio >= 1 + threshold) verdict =
+				Verdict.REGRESSION;
+			else if (pFaster < alpha && ratio <= 1 - threshold) verdict =
+				Verdict.IMPROVEMENT;
+			else verdict = Verdict.UNCHANGED;
+		}
+
+		/** @return candidate median / baseline median. */
+		public double getRatio() {
+			if (baselineMedian == 0) return candidateMedian == 0 ? 1 : Double.POSITIVE_INFINITY;
+			return candidateMedian / baselineMedian;
+		}
+	}
+
+	private final double alpha;
+
+	private final double threshold;
+
+	private final int skipIterations;
+
+	public ResultComparator(final double alpha, final double threshold,
+		final int skipIterations)
+	{
+		this.alpha = alpha;
+		this.threshold = threshold;
+		this.skipIterations = skipIterations;
+	}
+
+	public static void main(final String[] args) throws IOException {
+		ResultStore store = ResultStore.getDefault();
+		double alpha = 0.01;
+		double threshold = 0.05;
+		int skip = 1;
+		final List<String> runIds = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-store")) store =
+				new ResultStore(new File(args[++i]));
+			else if (args[i].equals("-alpha")) alpha = Double.parseDouble(args[++i]);
+			else if (args[i].equals("-threshold")) threshold =
+				Double.parseDouble(args[++i]);
+			else if (args[i].equals("-skip")) skip = Integer.parseInt(args[++i]);
+			else runIds.add(args[i]);
+		}
+
+		final String baselineId, candidateId;
+		if (runIds.size() == 2) {
+			baselineId = runIds.get(0);
+			candidateId = runIds.get(1);
+		}
+		else if (runIds.isEmpty()) {
+			final List<String> ids = store.runIds();
+			if (ids.size() < 2) {
+				System.err.println("Need at least two runs in " + store.getFile() +
+					", found " + ids.size() + ".");
+				System.exit(2);
+				return;
+			}
+			baselineId = ids.get(ids.size() - 2);
+			candidateId = ids.get(ids.size() - 1);
+		}
+		else {
+			System.err.println("Usage: ResultComparator [-store file] " +
+				"[-alpha 0.01] [-threshold 0.05] [-skip 1] " +
+				"[baselineRunId candidateRunId]");
+			System.exit(2);
+			return;
+		}
+
+		final List<ResultStore.Sample> samples = store.read();
+		final ResultComparator comparator =
+			new ResultComparator(alpha, threshold, skip);
+		final List<Comparison> comparisons =
+			comparator.compare(samples, baselineId, candidateId);
+		print(samples, baselineId, candidateId, comparisons);
+
+		int regressions = 0;
+		for (final Comparison c : comparisons)
+			if (c.verdict == Verdict.REGRESSION) regressions++;
+		System.out.println();
+		System.out.println(regressions + " regression(s) found.");
+		System.exit(regressions > 0 ? 1 : 0);
+	}
+
+	/**
+	 * Compares all methods measured in both runs.
+	 */
+	public List<Comparison> compare(final List<ResultStore.Sample> samples,
+		final String baselineId, final String candidateId)
+	{
+		final Map<String, List<Long>> baseline = collect(samples, baselineId);
+		final Map<String, List<Long>> candidate = collect(samples, candidateId);
+		final List<Comparison> comparisons = new ArrayList<Comparison>();
+		for (final Map.Entry<String, List<Long>> entry : baseline.entrySet()) {
+			final List<Long> c = candidate.get(entry.getKey());
+			if (c == null || c.isEmpty() || entry.getValue().isEmpty()) continue;
+			comparisons.add(new Comparison(entry.getKey(), toArray(entry
+				.getValue()), toArray(c), alpha, threshold));
+		}
+		return comparisons;
+	}
+
+	// -- Statistics --
+
+	/**
+	 * One-sided Mann-Whitney U test (normal approximation with tie and
+	 * continuity correction).
+	 *
+	 * @return p-value for the hypothesis that values in {@code x} tend to be
+	 *         greater than values in {@code y}.
+	 */
+	static double mannWhitneyGreater(final long[] x, final long[] y) {
+		final int n1 = x.length;
+		final int n2 = y.length;
+		final int n = n1 + n2;
+		final long[] values = new long[n];
+		final boolean[] fromX = new boolean[n];
+		final Integer[] order = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			values[i] = i < n1 ? x[i] : y[i - n1];
+			fromX[i] = i < n1;
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+
+			@Override
+			public int compare(final Integer a, final Integer b) {
+				return values[a] < values[b] ? -1 : values[a] > values[b] ? 1 : 0;
+			}
+		});
+
+		// average ranks of ties, accumulate tie correction
+		double rankSumX = 0;
+		double tieCorrection = 0;
+		for (int i = 0; i < n;) {
+			int j = i;
+			while (j + 1 < n && values[order[j + 1]] == values[order[i]])
+				j++;
+			final double rank = (i + j) / 2.0 + 1;
+			for (int k = i; k <= j; k++)
+				if (fromX[order[k]]) rankSumX += rank;
+			final double t = j - i + 1;
+			tieCorrection += t * t * t - t;
+			i = j + 1;
+		}
+
+		final double u = rankSumX - n1 * (n1 + 1) / 2.0;
+		final double mean = n1 * (double) n2 / 2.0;
+		final double variance =
+			n1 * (double) n2 / 12.0 * ((n + 1) - tieCorrection / (n * (n - 1.0)));
+		if (variance <= 0) return 1;
+		final double z = (u - mean - 0.5) / Math.sqrt(variance);
+		return 1 - normalCdf(z);
+	}
+
+	static double median(final long[] values) {
+		final long[] sorted = values.clone();
+		Arrays.sort(sorted);
+		final int n = sorted.length;
+		if (n == 0) return Double.NaN;
+		return n % 2 == 1 ? sorted[n / 2] : (sorted[n / 2 - 1] + sorted[n / 2]) / 2.0;
+	}
+
+	/** Standard normal CDF (Abramowitz and Stegun 7.1.26). */
+	static double normalCdf(final double z) {
+		final double x = Math.abs(z) / Math.sqrt(2);
+		final double t = 1 / (1 + 0.3275911 * x);
+		final double erf =
+			1 - t *
+				(0.254829592 + t *
+					(-0.284496736 + t *
+						(1.421413741 + t * (-1.453152027 + t * 1.061405429)))) *
+				Math.exp(-x * x);
+		return z >= 0 ? 0.5 * (1 + erf) : 0.5 * (1 - erf);
+	}
+
+	// -- Helper methods --
+
+	private Map<String, List<Long>> collect(
+		final List<ResultStore.Sample> samples, final String runId)
+	{
+		final Map<String, List<Long>> times =
+			new LinkedHashMap<String, List<Long>>();
+		for (final ResultStore.Sample sample : samples) {
+			if (!sample.run.id.equals(runId) || sample.iteration <= skipIterations) continue;
+			List<Long> list = times.get(sample.key());
+			if (list == null) {
+				list = new ArrayList<Long>();
+				times.put(sample.key(), list);
+			}
+			list.add(sample.timeMs);
+		}
+		return times;
+	}
+
+	private static long[] toArray(final List<Long> list) {
+		final long[] array = new long[list.size()];
+		for (int i = 0; i < array.length; i++)
+			array[i] = list.get(i);
+		return array;
+	}
+
+	private static void print(final List<ResultStore.Sample> samples,
+		final String baselineId, final String candidateId,
+		final List<Comparison> comparisons)
+	{
+		System.out.println("baseline:  " + findRun(samples, baselineId));
+		System.out.println("candidate: " + findRun(samples, candidateId));
+		System.out.println();
+		System.out.println(String.format("%-60s %12s %12s %8s %10s  %s", "Benchmark / operation / size / method", "base ms", "cand ms", "ratio", "p", "verdict"));
+		for (final Comparison c : comparisons) {
+			final double p =
+				c.verdict == Verdict.IMPROVEMENT ? c.pFaster : c.pSlower;
+			System.out.println(String.format("%-60s %12.1f %12.1f %8.3f %10.4f  %s",
+				c.key, c.baselineMedian, c.candidateMedian, c.getRatio(), p,
+				c.verdict));
+		}
+	}
+
+	private static Object findRun(final List<ResultStore.Sample> samples,
+		final String runId)
+	{
+		for (final ResultStore.Sample sample : samples)
+			if (sample.run.id.equals(runId)) return sample.run;
+		return runId + " (not found)";
+	}
+}
@@ -0,0 +1,292 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package tests;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import net.imglib2.img.Img;
+
+/**
+ * Append-only, machine-readable store of benchmark timings.
+ * <p>
+ * The store is a single tab-separated file with a header line. Every line
+ * holds one measurement (one method in one iteration) together with the
+ * metadata of the run that produced it (commit, ImgLib2 version, JVM, cores,
+ * heap), so results of different machines and runs can be compared with
+ * {@link ResultComparator}. Lines are only ever appended.
+ * </p>
+ * <p>
+ * The default location is {@code benchmark-results.tsv} in the working
+ * directory; it can be changed with the {@code benchmark.store} system
+ * property. The commit is taken from the {@code benchmark.commit} system
+ * property, falling back to {@code git rev-parse --short HEAD}. The run id is
+ * generated from date and commit unless given as {@code benchmark.run}, which
+ * allows several JVM invocations (e.g. one per image size) to form one run.
+ * </p>
+ */
+public class ResultStore {
+
+	public static final String DEFAULT_PATH = "benchmark-results.tsv";
+
+	static final String[] COLUMNS = { "RunId", "Timestamp", "Commit",
+		"ImgLib2Version", "JavaVersion", "JavaVM", "OS", "Cores", "MaxHeapMB",
+		"Benchmark", "Operation", "Dimensions", "Method", "Iteration", "TimeMs" };
+
+	private final File file;
+
+	public ResultStore(final File file) {
+		this.file = file;
+	}
+
+	/** @return the store configured by the {@code benchmark.store} property. */
+	public static ResultStore getDefault() {
+		return new ResultStore(new File(System.getProperty("benchmark.store",
+			DEFAULT_PATH)));
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Appends the timing results of one benchmark run.
+	 *
+	 * @param run metadata of the run.
+	 * @param benchmark name of the benchmark, e.g. {@code "ImglibBenchmark"}.
+	 * @param operation the measured operation, e.g. {@code "cheap"}.
+	 * @param dimensions image dimensions, e.g. {@code "4000x4000"}.
+	 * @param results one map per iteration, from method name to time in ms.
+	 *          Negative times (method not run) are skipped.
+	 */
+	public synchronized void append(final Run run, final String benchmark,
+		final String operation, final String dimensions,
+		final List<Map<String, Long>> results) throws IOException
+	{
+		final boolean writeHeader = !file.exists() || file.length() == 0;
+		final PrintWriter out = new PrintWriter(new FileWriter(file, true));
+		try {
+			if (writeHeader) out.print(join(COLUMNS));
+			for (int iter = 0; iter < results.size(); iter++) {
+				for (final Map.Entry<String, Long> entry : results.get(iter).entrySet()) {
+					final Long time = entry.getValue();
+					if (time == null || time < 0) continue;
+					out.print(join(new String[] { run.id, run.timestamp, run.commit,
+						run.imglib2Version, run.javaVersion, run.javaVM, run.os,
+						Integer.toString(run.cores), Long.toString(run.maxHeapMB),
+						benchmark, operation, dimensions, entry.getKey(),
+						Integer.toString(iter + 1), Long.toString(time) }));
+				}
+			}
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	/** Reads all measurements in the store. */
+	public List<Sample> read() throws IOException {
+		final List<Sample> samples = new ArrayList<Sample>();
+		if (!file.exists()) return samples;
+		final BufferedReader in = new BufferedReader(new FileReader(file));
+		try {
+			String line = in.readLine();
+			if (line == null) return samples;
+			if (!Arrays.equals(line.split("\t", -1), COLUMNS)) {
+				throw new IOException("Unexpected header in " + file + ": " + line);
+			}
+			while ((line = in.readLine()) != null) {
+				if (line.trim().isEmpty()) continue;
+				final String[] f = line.split("\t", -1);
+				if (f.length != COLUMNS.length) {
+					throw new IOException("Malformed line in " + file + ": " + line);
+				}
+				final Run run = new Run(f[0], f[1], f[2], f[3], f[4], f[5], f[6],
+					Integer.parseInt(f[7]), Long.parseLong(f[8]));
+				samples.add(new Sample(run, f[9], f[10], f[11], f[12], Integer
+					.parseInt(f[13]), Long.parseLong(f[14])));
+			}
+		}
+		finally {
+			in.close();
+		}
+		return samples;
+	}
+
+	/** @return the ids of all runs in the store, oldest first. */
+	public List<String> runIds() throws IOException {
+		final LinkedHashSet<String> ids = new LinkedHashSet<String>();
+		for (final Sample sample : read())
+			ids.add(sample.run.id);
+		return new ArrayList<String>(ids);
+	}
+
+	// -- Helper methods --
+
+	private static String join(final String[] fields) {
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < fields.length; i++) {
+			if (i > 0) sb.append('\t');
+			sb.append(sanitize(fields[i]));
+		}
+		sb.append('\n');
+		return sb.toString();
+	}
+
+	private static String sanitize(final String s) {
+		if (s == null || s.isEmpty()) return "unknown";
+		return s.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+	}
+
+	// -- Helper classes --
+
+	/** Metadata of one benchmark run. */
+	public static class Run {
+
+		public final String id;
+		public final String timestamp;
+		public final String commit;
+		public final String imglib2Version;
+		public final String javaVersion;
+		public final String javaVM;
+		public final String os;
+		public final int cores;
+		public final long maxHeapMB;
+
+		public Run(final String id, final String timestamp, final String commit,
+			final String imglib2Version, final String javaVersion,
+			final String javaVM, final String os, final int cores,
+			final long maxHeapMB)
+		{
+			this.id = id;
+			this.timestamp = timestamp;
+			this.commit = commit;
+			this.imglib2Version = imglib2Version;
+			this.javaVersion = javaVersion;
+			this.javaVM = javaVM;
+			this.os = os;
+			this.cores = cores;
+			this.maxHeapMB = maxHeapMB;
+		}
+
+		/** Captures the metadata of the running JVM. */
+		public static Run current() {
+			final Date now = new Date();
+			final SimpleDateFormat iso =
+				new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+			iso.setTimeZone(TimeZone.getTimeZone("UTC"));
+			final String commit = commit();
+			final String id = System.getProperty("benchmark.run",
+				new SimpleDateFormat("yyyyMMdd-HHmmss").format(now) + "-" + commit);
+			final Runtime r = Runtime.getRuntime();
+			return new Run(id, iso.format(now), commit, imglib2Version(), System
+				.getProperty("java.version"), System.getProperty("java.vm.name"),
+				System.getProperty("os.name") + " " + System.getProperty("os.arch"),
+				r.availableProcessors(), r.maxMemory() / (1024 * 1024));
+		}
+
+		@Override
+		public String toString() {
+			return id + " (ImgLib2 " + imglib2Version + ", Java " + javaVersion +
+				" " + javaVM + ", " + os + ", " + cores + " cores, " + maxHeapMB +
+				" MB heap)";
+		}
+
+		private static String commit() {
+			final String commit = System.getProperty("benchmark.commit");
+			if (commit != null) return commit;
+			try {
+				final Process p =
+					new ProcessBuilder("git", "rev-parse", "--short", "HEAD")
+						.redirectErrorStream(true).start();
+				final BufferedReader in =
+					new BufferedReader(new InputStreamReader(p.getInputStream()));
+				final String line = in.readLine();
+				in.close();
+				if (p.waitFor() == 0 && line != null) return line.trim();
+			}
+			catch (final IOException e) {
+				// no git available
+			}
+			catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return "unknown";
+		}
+
+		private static String imglib2Version() {
+			final Package p = Img.class.getPackage();
+			if (p == null || p.getImplementationVersion() == null) return "unknown";
+			return p.getImplementationVersion();
+		}
+	}
+
+	/** One timing measurement. */
+	public static class Sample {
+
+		public final Run run;
+		public final String benchmark;
+		public final String operation;
+		public final String dimensions;
+		public final String method;
+		public final int iteration;
+		public final long timeMs;
+
+		public Sample(final Run run, final String benchmark,
+			final String operation, final String dimensions, final String method,
+			final int iteration, final long timeMs)
+		{
+			this.run = run;
+			this.benchmark = benchmark;
+			this.operation = operation;
+			this.dimensions = dimensions;
+			this.method = method;
+			this.iteration = iteration;
+			this.timeMs = timeMs;
+		}
+
+		/** @return key identifying what was measured, independent of the run. */
+		public String key() {
+			return benchmark + " / " + operation + " / " + dimensions + " / " +
+				method;
+		}
+	}
+}
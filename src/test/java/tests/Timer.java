@@ -26,22 +26,303 @@
  */
 package tests;
 
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Clean room implementation of the Timer used in ImgLib's test classes.
  * 
  * This is a clean-room, CC0-licensed (no matter what this file's license
  * header says) version of the timer.
+ * <p>
+ * Besides the plain {@link #start()}/{@link #stop()} stopwatch, the timer
+ * records named, nestable phases via {@link #begin(String)} and
+ * {@link #end(long)}. For each phase it accumulates wall-clock time
+ * ({@link System#nanoTime()}), bytes allocated by the calling thread, and the
+ * number and duration of garbage collections that happened meanwhile.
+ * Repeated phases with the same name (e.g. in a loop) are aggregated.
+ * Allocation is only counted for the thread that calls begin/end, work
+ * submitted to other threads is not included. GC counts are JVM-wide.
+ * </p>
+ * <p>
+ * A Timer is not thread-safe, use one instance per thread.
+ * </p>
  * 
  * @author Johannes Schindelin
  */
 public class Timer {
 	private long start;
 
+	private final Map<String, Phase> phases = new LinkedHashMap<String, Phase>();
+
+	private final List<Frame> stack = new ArrayList<Frame>();
+
 	public void start() {
-		start = System.currentTimeMillis();
+		start = System.nanoTime();
 	}
 
+	/**
+	 * @return milliseconds since {@link #start()}.
+	 */
 	public long stop() {
-		return System.currentTimeMillis() - start;
+		return stopNanos() / 1000000;
+	}
+
+	/**
+	 * @return nanoseconds since {@link #start()}.
+	 */
+	public long stopNanos() {
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * Starts a phase. Phases can be nested; a phase started while another one
+	 * is running is recorded as {@code "outer/inner"}.
+	 */
+	public void begin(final String name) {
+		final String path = stack.isEmpty() ? name : stack.get(stack.size() - 1).phase.path + "/" + name;
+		Phase phase = phases.get(path);
+		if (phase == null) {
+			phase = new Phase(path, name, stack.size());
+			phases.put(path, phase);
+		}
+		final Frame frame = new Frame(phase);
+		stack.add(frame);
+		frame.gcCount = gcCount();
+		frame.gcMillis = gcMillis();
+		frame.allocatedBytes = allocatedBytes();
+		frame.start = System.nanoTime();
+	}
+
+	/**
+	 * Ends the innermost running phase.
+	 * 
+	 * @return nanoseconds spent in the phase.
+	 */
+	public long end() {
+		return end(0);
+	}
+
+	/**
+	 * Ends the innermost running phase, recording that {@code items} elements
+	 * (e.g. pixels) were processed, for throughput reporting.
+	 * 
+	 * @return nanoseconds spent in the phase.
+	 */
+	public long end(final long items) {
+		final long end = System.nanoTime();
+		final long allocated = allocatedBytes();
+		if (stack.isEmpty()) throw new IllegalStateException("end() without begin()");
+		final Frame frame = stack.remove(stack.size() - 1);
+		final long nanos = end - frame.start;
+		final Phase phase = frame.phase;
+		phase.count++;
+		phase.totalNanos += nanos;
+		phase.minNanos = Math.min(phase.minNanos, nanos);
+		phase.maxNanos = Math.max(phase.maxNanos, nanos);
+		phase.items += items;
+		// once a run could not be measured, the sum would be incomplete
+		if (allocated < 0 || frame.allocatedBytes < 0) phase.allocationUnavailable = true;
+		else if (!phase.allocationUnavailable) phase.allocatedBytes += allocated - frame.allocatedBytes;
+		phase.gcCount += gcCount() - frame.gcCount;
+		phase.gcMillis += gcMillis() - frame.gcMillis;
+		return nanos;
+	}
+
+	/** Discards all recorded phases. */
+	public void reset() {
+		phases.clear();
+		stack.clear();
+	}
+
+	/**
+	 * @return the recorded phases, in the order they were first started.
+	 */
+	public List<Phase> getPhases() {
+		return new ArrayList<Phase>(phases.values());
+	}
+
+	/**
+	 * @return a human-readable table of all phases.
+	 */
+	public String report() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%-40s %6s %12s %12s %12s %14s %14s %10s %8s%n", "Phase", "count", "total ms", "min ms", "max ms", "items/s", "ns/item", "B/item", "gc ms"));
+		for (final Phase phase : phases.values()) {
+			final StringBuilder name = new StringBuilder();
+			for (int i = 0; i < phase.depth; i++)
+				name.append("  ");
+			name.append(phase.name);
+			sb.append(String.format("%-40s %6d %12.3f %12.3f %12.3f %14s %14s %10s %8d%n", name, phase.count, phase.totalNanos / 1e6, phase.minNanos / 1e6, phase.maxNanos / 1e6,
+				phase.items > 0 ? String.format("%.1f", phase.getItemsPerSecond()) : "--",
+				phase.items > 0 ? String.format("%.3f", phase.getNanosPerItem()) : "--",
+				phase.items > 0 && !phase.allocationUnavailable ? String.format("%.2f", phase.getAllocatedBytesPerItem()) : "--",
+				phase.gcMillis));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Writes all phases as tab-separated values with a header line, one phase
+	 * per line.
+	 */
+	public void writeTable(final Appendable out) throws IOException {
+		out.append("Phase\tCount\tTotalNanos\tMinNanos\tMaxNanos\tItems\tAllocatedBytes\tGcCount\tGcMillis\n");
+		for (final Phase phase : phases.values()) {
+			out.append(phase.path).append('\t');
+			out.append(Long.toString(phase.count)).append('\t');
+			out.append(Long.toString(phase.totalNanos)).append('\t');
+			out.append(Long.toString(phase.minNanos)).append('\t');
+			out.append(Long.toString(phase.maxNanos)).append('\t');
+			out.append(Long.toString(phase.items)).append('\t');
+			out.append(Long.toString(phase.getAllocatedBytes())).append('\t');
+			out.append(Long.toString(phase.gcCount)).append('\t');
+			out.append(Long.toString(phase.gcMillis)).append('\n');
+		}
+	}
+
+	// -- Helper methods --
+
+	private static final com.sun.management.ThreadMXBean threadBean = initThreadBean();
+
+	private static com.sun.management.ThreadMXBean initThreadBean() {
+		final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) return null;
+		final com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+		if (!sunBean.isThreadAllocatedMemorySupported()) return null;
+		if (!sunBean.isThreadAllocatedMemoryEnabled()) sunBean.setThreadAllocatedMemoryEnabled(true);
+		return sunBean;
+	}
+
+	/**
+	 * @return bytes allocated by the current thread so far, or -1 if the JVM
+	 *         does not support it.
+	 */
+	private static long allocatedBytes() {
+		if (threadBean == null) return -1;
+		return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private static long gcCount() {
+		long count = 0;
+		for (final GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			count += Math.max(0, gc.getCollectionCount());
+		return count;
+	}
+
+	private static long gcMillis() {
+		long millis = 0;
+		for (final GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			millis += Math.max(0, gc.getCollectionTime());
+		return millis;
+	}
+
+	private static class Frame {
+		private final Phase phase;
+		private long start;
+		private long allocatedBytes;
+		private long gcCount;
+		private long gcMillis;
+
+		private Frame(final Phase phase) {
+			this.phase = phase;
+		}
+	}
+
+	/**
+	 * Accumulated measurements of all runs of one named phase.
+	 */
+	public static class Phase {
+		private final String path;
+		private final String name;
+		private final int depth;
+		private long count;
+		private long totalNanos;
+		private long minNanos = Long.MAX_VALUE;
+		private long maxNanos;
+		private long items;
+		private long allocatedBytes;
+		private boolean allocationUnavailable;
+		private long gcCount;
+		private long gcMillis;
+
+		private Phase(final String path, final String name, final int depth) {
+			this.path = path;
+			this.name = name;
+			this.depth = depth;
+		}
+
+		/** @return slash-separated names of this phase and its parents. */
+		public String getPath() {
+			return path;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/** @return nesting level, 0 for top-level phases. */
+		public int getDepth() {
+			return depth;
+		}
+
+		/** @return how often the phase was run. */
+		public long getCount() {
+			return count;
+		}
+
+		public long getTotalNanos() {
+			return totalNanos;
+		}
+
+		public long getMinNanos() {
+			return minNanos;
+		}
+
+		public long getMaxNanos() {
+			return maxNanos;
+		}
+
+		/** @return number of processed elements passed to {@link Timer#end(long)}. */
+		public long getItems() {
+			return items;
+		}
+
+		/**
+		 * @return bytes allocated by the calling thread, or -1 if they could
+		 *         not be measured for some run of the phase.
+		 */
+		public long getAllocatedBytes() {
+			return allocationUnavailable ? -1 : allocatedBytes;
+		}
+
+		/** @return number of garbage collections (JVM-wide) during the phase. */
+		public long getGcCount() {
+			return gcCount;
+		}
+
+		/** @return time spent in garbage collection (JVM-wide) during the phase. */
+		public long getGcMillis() {
+			return gcMillis;
+		}
+
+		public double getItemsPerSecond() {
+			return items * 1e9 / totalNanos;
+		}
+
+		public double getNanosPerItem() {
+			return (double) totalNanos / items;
+		}
+
+		/** @return bytes allocated per item, or NaN if not measured. */
+		public double getAllocatedBytesPerItem() {
+			return allocationUnavailable ? Double.NaN : (double) allocatedBytes / items;
+		}
 	}
 }
@@ -29,7 +29,9 @@
 
 # This simple script executes the imglib performance benchmark on
 # images with varying numbers of pixels. Results are written to
-# CSV in the current directory.
+# CSV in the current directory, and appended as one run to the
+# result store (benchmark-results.tsv), where they are compared
+# against the previous run.
 
 DIR="$(dirname "$0")"
 TARGET="$DIR/../../../target"
@@ -42,6 +44,7 @@ $TARGET/test-classes
 JAVA=java
 MEM=512m
 MAIN_CLASS=tests.PerformanceBenchmark
+RUN_ID="$(date +%Y%m%d-%H%M%S)"
 
 # copy dependent JARs first
 cd "$DIR/../../.."
@@ -49,22 +52,25 @@ mvn -DskipTests package dependency:copy-dependencies
 cd -
 
 # 1 million
-$JAVA -mx$MEM -cp "$CP" $MAIN_CLASS 1000
+$JAVA -mx$MEM -Dbenchmark.run=$RUN_ID -cp "$CP" $MAIN_CLASS 1000
 # 4 million
-$JAVA -mx$MEM -cp "$CP" $MAIN_CLASS 2000
+$JAVA -mx$MEM -Dbenchmark.run=$RUN_ID -cp "$CP" $MAIN_CLASS 2000
 # 7 million
-$JAVA -mx$MEM -cp "$CP" $MAIN_CLASS 2646
+$JAVA -mx$MEM -Dbenchmark.run=$RUN_ID -cp "$CP" $MAIN_CLASS 2646
 # 10 million
-$JAVA -mx$MEM -cp "$CP" $MAIN_CLASS 3162
+$JAVA -mx$MEM -Dbenchmark.run=$RUN_ID -cp "$CP" $MAIN_CLASS 3162
 # 13 million
-$JAVA -mx$MEM -cp "$CP" $MAIN_CLASS 3606
+$JAVA -mx$MEM -Dbenchmark.run=$RUN_ID -cp "$CP" $MAIN_CLASS 3606
 # 16 million
-$JAVA -mx$MEM -cp "$CP" $MAIN_CLASS 4000
+$JAVA -mx$MEM -Dbenchmark.run=$RUN_ID -cp "$CP" $MAIN_CLASS 4000
 # 19 million
-$JAVA -mx$MEM -cp "$CP" $MAIN_CLASS 4359
+$JAVA -mx$MEM -Dbenchmark.run=$RUN_ID -cp "$CP" $MAIN_CLASS 4359
 # 22 million
-$JAVA -mx$MEM -cp "$CP" $MAIN_CLASS 4690
+$JAVA -mx$MEM -Dbenchmark.run=$RUN_ID -cp "$CP" $MAIN_CLASS 4690
 # 25 million
-$JAVA -mx$MEM -cp "$CP" $MAIN_CLASS 5000
+$JAVA -mx$MEM -Dbenchmark.run=$RUN_ID -cp "$CP" $MAIN_CLASS 5000
 
 python "$DIR/chart-gen.py" > pchart-data.wiki
+
+# flag regressions against the previous run
+$JAVA -cp "$CP" tests.ResultComparator